@@ -0,0 +1,70 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockData;
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the calculations for a single Stock that do not depend on the trade history,
+ * for a COMMON Stock (POP) and a PREFERRED Stock (GIN)
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StockCalculationBenchmark {
+
+    @Param({"POP", "GIN"})
+    public String symbol;
+
+    @Param({"120"})
+    public int price;
+
+    private StockData stockData;
+    private StockReferenceData stockReferenceData;
+    private final CalculationResult result = new CalculationResult();
+
+    @Setup
+    public void setUp() throws SuperSimpleStocksException {
+        stockData = StockData.getStockDataForSymbol(StockSymbol.getStockSymbolFor(symbol));
+        stockReferenceData = StockReferenceData.of(stockData);
+    }
+
+    @Benchmark
+    public BigDecimal calculateDividendYield() throws SuperSimpleStocksException {
+        return CalculationUtility.calculateDividendYield(stockData, price);
+    }
+
+    @Benchmark
+    public BigDecimal calculatePriceEarningsRatio() throws SuperSimpleStocksException {
+        return CalculationUtility.calculatePriceEarningsRatio(stockData, price);
+    }
+
+    @Benchmark
+    public long calculateDividendYieldIntoResult() throws SuperSimpleStocksException {
+        CalculationUtility.calculateDividendYield(stockReferenceData, price, result);
+        return result.getUnscaledValue();
+    }
+
+    @Benchmark
+    public long calculatePriceEarningsRatioIntoResult() throws SuperSimpleStocksException {
+        CalculationUtility.calculatePriceEarningsRatio(stockReferenceData, price, result);
+        return result.getUnscaledValue();
+    }
+}
@@ -0,0 +1,177 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockData;
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the calculations over the trade history, and adding to and reading from it
+ *
+ * The history holds the number of trades given, spread evenly over the last 30 minutes
+ * and shared between the number of Stocks given, so the window length decides
+ * what share of a Stock's trades the Volume Weighted Stock Price is calculated from.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StockTradeHistoryBenchmark {
+
+    private static final long HISTORY_NANOS = TimeUnit.MINUTES.toNanos(30);
+
+    @Param({"1000", "100000"})
+    public int historySize;
+
+    @Param({"1", "5", "10000"})
+    public int symbolCount;
+
+    @Param({"1", "15"})
+    public long windowMinutes;
+
+    private StockSymbol[] symbols;
+    private StockTrade[] historyTrades;
+    private StockTradeHistory stockTradeHistory;
+    private List<StockTrade> symbolTrades;
+    private List<StockTrade> allTrades;
+    private StockTradeListCursor symbolTradeCursor;
+    private final CalculationResult result = new CalculationResult();
+    private final StockTradeRecalculator parallelRecalculator = new StockTradeRecalculator(StockTradeRecalculator.Mode.PARALLEL);
+
+    private StockTrade[] tradesToAdd;
+    private int tradesAdded;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+
+        //The sample Stocks, then as many more as are needed
+        symbols = new StockSymbol[symbolCount];
+
+        for(int i = 0; i < symbolCount; i++){
+            symbols[i] = i < StockData.values().length ? StockData.values()[i].getSymbol() : StockSymbol.intern("BENCH" + i);
+        }
+
+        Random random = new Random(42);
+        long startTime = FixedPointUtility.currentEpochNanos() - HISTORY_NANOS;
+
+        historyTrades = new StockTrade[historySize];
+
+        for(int i = 0; i < historySize; i++){
+            historyTrades[i] = randomTrade(random, i, startTime + HISTORY_NANOS * i / historySize);
+        }
+
+        //Trades to add all come after the history, so are added in time order
+        tradesToAdd = new StockTrade[1024];
+        long now = FixedPointUtility.currentEpochNanos();
+
+        for(int i = 0; i < tradesToAdd.length; i++){
+            tradesToAdd[i] = randomTrade(random, i, now);
+        }
+    }
+
+    private StockTrade randomTrade(Random random, int index, long timeStamp){
+        return new StockTrade(TransactionType.values()[random.nextInt(2)], symbols[index % symbolCount], timeStamp,
+                100 + random.nextInt(9900), 50 + random.nextInt(450));
+    }
+
+    /**
+     * Replaces the history with a new one of the original size before each iteration,
+     * so the trades added by the last iteration are not counted in the next
+     */
+    @Setup(Level.Iteration)
+    public void resetStockTradeHistory(){
+
+        stockTradeHistory = new StockTradeHistory();
+
+        for(StockTrade stockTrade : historyTrades){
+            stockTradeHistory.addTrade(stockTrade);
+        }
+
+        symbolTrades = stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.TEA);
+        allTrades = stockTradeHistory.getStockTradeHistoryListForAllStocks();
+        symbolTradeCursor = new StockTradeListCursor(symbolTrades);
+        tradesAdded = 0;
+    }
+
+    @Benchmark
+    public BigDecimal calculateVolumeWeightedStockPrice(){
+        return CalculationUtility.calculateVolumeWeightedStockPrice(symbolTrades, windowMinutes);
+    }
+
+    @Benchmark
+    public long calculateVolumeWeightedStockPriceIntoResult(){
+
+        symbolTradeCursor.reset();
+        CalculationUtility.calculateVolumeWeightedStockPrice(symbolTradeCursor,
+                FixedPointUtility.currentEpochNanos() - TimeUnit.MINUTES.toNanos(windowMinutes), result);
+
+        return result.getUnscaledValue();
+    }
+
+    @Benchmark
+    public BigDecimal calculateGBCE() throws SuperSimpleStocksException {
+        return CalculationUtility.calculateGBCE(allTrades);
+    }
+
+    @Benchmark
+    public BigDecimal recalculateGBCEInParallel() throws SuperSimpleStocksException {
+        return parallelRecalculator.calculateGBCE(allTrades);
+    }
+
+    @Benchmark
+    public Map<StockSymbol, BigDecimal> recalculateVolumeWeightedStockPricesInParallel(){
+        return parallelRecalculator.calculateVolumeWeightedStockPrices(allTrades,
+                FixedPointUtility.currentEpochNanos() - TimeUnit.MINUTES.toNanos(windowMinutes));
+    }
+
+    /**
+     * Adds trades to a history that starts each iteration at the history size
+     */
+    @Benchmark
+    public void addTrade(){
+        stockTradeHistory.addTrade(tradesToAdd[tradesAdded++ & (tradesToAdd.length - 1)]);
+    }
+
+    @Benchmark
+    public List<StockTrade> getStockTradeHistoryListForSymbol(){
+        return stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.TEA);
+    }
+
+    @Benchmark
+    public List<StockTrade> getStockTradeHistoryListForSymbolInWindow(){
+
+        long now = FixedPointUtility.currentEpochNanos();
+
+        return stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.TEA,
+                now - TimeUnit.MINUTES.toNanos(windowMinutes), now);
+    }
+
+    @Benchmark
+    public BigDecimal getVolumeWeightedStockPriceInWindow(){
+
+        long now = FixedPointUtility.currentEpochNanos();
+
+        return stockTradeHistory.getVolumeWeightedStockPrice(StockSymbol.TEA,
+                now - TimeUnit.MINUTES.toNanos(windowMinutes), now);
+    }
+}
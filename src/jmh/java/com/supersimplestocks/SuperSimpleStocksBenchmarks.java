@@ -0,0 +1,38 @@
+package com.supersimplestocks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the Super Simple Stocks benchmarks with the GC profiler,
+ * so allocation rates are reported alongside throughput and latency
+ *
+ * Takes the usual JMH command line options, for example a regular expression to choose benchmarks:
+ *
+ * java -jar target/benchmarks.jar StockTradeHistoryBenchmark.addTrade -p historySize=1000
+ */
+public class SuperSimpleStocksBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+        if(commandLineOptions.shouldHelp()){
+            commandLineOptions.showHelp();
+            return;
+        }
+
+        Runner runner = new Runner(new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build());
+
+        if(commandLineOptions.shouldList()){
+            runner.list();
+        }else{
+            runner.run();
+        }
+    }
+}
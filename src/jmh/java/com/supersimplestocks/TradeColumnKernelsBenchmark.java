@@ -0,0 +1,88 @@
+package com.supersimplestocks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the scalar kernels against those chosen at start up, which are the vector kernels
+ * when built with the vector profile as well as the jmh profile:
+ *
+ * $mvn -P jmh,vector clean package
+ *
+ * Half of the trades are after the calculation time, in no particular order, so every trade has to be checked.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class TradeColumnKernelsBenchmark {
+
+    @Param({"scalar", "chosen"})
+    public String kernels;
+
+    @Param({"1000", "1000000"})
+    public int numberOfTrades;
+
+    private TradeColumnKernels tradeColumnKernels;
+    private long[] timeStamps;
+    private long[] quantities;
+    private long[] tradePrices;
+    private long calculationTime;
+
+    @Setup
+    public void setUp(){
+
+        tradeColumnKernels = kernels.equals("scalar") ? new ScalarTradeColumnKernels() : TradeColumnKernels.get();
+
+        Random random = new Random(42);
+        long now = FixedPointUtility.currentEpochNanos();
+
+        timeStamps = new long[numberOfTrades];
+        quantities = new long[numberOfTrades];
+        tradePrices = new long[numberOfTrades];
+
+        for(int i = 0; i < numberOfTrades; i++){
+            timeStamps[i] = now - random.nextInt(1_000_000);
+            quantities[i] = 100 + random.nextInt(9900);
+            tradePrices[i] = 50 + random.nextInt(450);
+        }
+
+        calculationTime = now - 500_000;
+
+        System.out.println("Kernels: " + tradeColumnKernels);
+    }
+
+    @Benchmark
+    public long countAfter(){
+        return tradeColumnKernels.countAfter(timeStamps, 0, numberOfTrades, calculationTime);
+    }
+
+    @Benchmark
+    public long sumQuantitiesAfter(){
+        return tradeColumnKernels.sumQuantitiesAfter(timeStamps, quantities, 0, numberOfTrades, calculationTime);
+    }
+
+    @Benchmark
+    public long sumTradePricesMultipliedByQuantitiesAfter(){
+        return tradeColumnKernels.sumTradePricesMultipliedByQuantitiesAfter(timeStamps, quantities, tradePrices, 0, numberOfTrades, calculationTime);
+    }
+
+    @Benchmark
+    public double sumLogTradePrices(){
+        return tradeColumnKernels.sumLogTradePrices(tradePrices, 0, numberOfTrades);
+    }
+}
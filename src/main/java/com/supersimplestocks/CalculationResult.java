@@ -0,0 +1,44 @@
+package com.supersimplestocks;
+
+import java.math.BigDecimal;
+
+/**
+ * Reusable holder for the result of a calculation, filled in by the allocation free
+ * variants of the calculations so that repeated calculations create no garbage
+ *
+ * Results are held to 2 Decimal Places, multiplied by 100, as sent by StockTradeProtocol.
+ * A holder must only be used by one thread at a time.
+ */
+final class CalculationResult {
+
+    private long unscaledValue;
+    private long numberOfTrades;
+
+    /**
+     * @return result to 2 Decimal Places, multiplied by 100
+     */
+    long getUnscaledValue(){
+        return unscaledValue;
+    }
+
+    /**
+     * @return number of trades the result was calculated from, or 0 for calculations that do not use trades
+     */
+    long getNumberOfTrades(){
+        return numberOfTrades;
+    }
+
+    /**
+     * Creates a BigDecimal of the result, for when the result is needed in the same form as the other calculations give
+     *
+     * @return result to 2 Decimal Places
+     */
+    BigDecimal toBigDecimal(){
+        return BigDecimal.valueOf(unscaledValue, FixedPointUtility.RESULT_SCALE);
+    }
+
+    void set(long unscaledValue, long numberOfTrades){
+        this.unscaledValue = unscaledValue;
+        this.numberOfTrades = numberOfTrades;
+    }
+}
@@ -4,8 +4,10 @@ import com.supersimplestocks.enums.StockData;
 import com.supersimplestocks.exception.SuperSimpleStocksException;
 
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
+import java.math.BigInteger;
+import java.math.RoundingMode;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides static methods for performing various calculations for the
@@ -26,18 +28,27 @@ class CalculationUtility {
      * @throws SuperSimpleStocksException if there would be a divide by zero Arithmetic Exception
      */
     static BigDecimal calculatePriceEarningsRatio(StockData stockData, int price) throws SuperSimpleStocksException{
+        return calculatePriceEarningsRatio(StockReferenceData.of(stockData), price);
+    }
 
-        //Convert Last Dividend value to BigDecimal so easier to perform mathematical operations on
-        BigDecimal dividendAsBigDecimal = new BigDecimal(stockData.getLastDividend());
+    /**
+     * Calculates and returns the P/E Ratio
+     *
+     * Formula used is: market Price/Dividend  (assumed Dividend is the Last Dividend)
+     *
+     * @param stockData Reference data relating to the Stock
+     * @param price market price
+     * @return Calculated P/E ratio to 2 Decimal Places
+     * @throws SuperSimpleStocksException if there would be a divide by zero Arithmetic Exception
+     */
+    static BigDecimal calculatePriceEarningsRatio(StockReferenceData stockData, int price) throws SuperSimpleStocksException{
 
-        if (dividendAsBigDecimal.compareTo(BigDecimal.ZERO) == 0){
+        if (stockData.getLastDividend() == 0){
             throw new SuperSimpleStocksException("Cannot calculate PE Ratio as last Dividend for "+ stockData.getSymbol() +" is zero" +
                     " and would result in a divide by zero Arithmetic Exception");
         }
 
-        BigDecimal priceAsBigDecimal = new BigDecimal(price);
-
-        return priceAsBigDecimal.divide(dividendAsBigDecimal, 2, BigDecimal.ROUND_HALF_UP); //Assume 2 dp is sufficient precision
+        return FixedPointUtility.divideHalfUp(price, stockData.getLastDividend()); //Assume 2 dp is sufficient precision
     }
 
     /**
@@ -52,34 +63,147 @@ class CalculationUtility {
      *         or 0 if no trades have happened in the last number of minutes given
      */
      static BigDecimal calculateVolumeWeightedStockPrice(List<StockTrade> stockTradeList, long minutes) {
+        return calculateVolumeWeightedStockPrice(new StockTradeListCursor(stockTradeList), minutes);
+    }
+
+    /**
+     * Calculates and returns the Volume Weighted Stock Price for every trade in the given Stock Transaction List,
+     * whenever it occurred
+     *
+     * Formula used is: Sum of (Quantity * Trade price) / Sum of Quantity
+     *
+     * @param stockTradeList List of transactions
+     * @return Calculated Volume weighted Stock Price to 2 Decimal Places,
+     *         or 0 if the list is empty
+     */
+    static BigDecimal calculateVolumeWeightedStockPrice(List<StockTrade> stockTradeList) {
+        return calculateVolumeWeightedStockPrice(new StockTradeListCursor(stockTradeList));
+    }
+
+    /**
+     * Calculates and returns the Volume Weighted Stock Price for every trade given by the cursor,
+     * whenever it occurred
+     *
+     * @param stockTradeCursor cursor over transactions, positioned before the first
+     * @return Calculated Volume weighted Stock Price to 2 Decimal Places,
+     *         or 0 if there are no trades
+     */
+    static BigDecimal calculateVolumeWeightedStockPrice(StockTradeCursor stockTradeCursor) {
+
+        try {
+            return calculateVolumeWeightedStockPriceForTradesAfter(stockTradeCursor, Long.MIN_VALUE);
+        } catch (ArithmeticException e){
+            //Sums too large to be held as a long, so fall back to BigDecimal
+            stockTradeCursor.reset();
+            return calculateVolumeWeightedStockPriceAsBigDecimal(stockTradeCursor, Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Calculates and returns the Volume Weighted Stock Price for the trades given by the cursor
+     * that have occurred in the last number of minutes given
+     *
+     * Formula used is: Sum of (Quantity * Trade price) / Sum of Quantity
+     *
+     * @param stockTradeCursor cursor over transactions, positioned before the first
+     * @param minutes Only trades that have occurred in the last number of minutes set will be used in the calculation
+     * @return Calculated Volume weighted Stock Price to 2 Decimal Places,
+     *         or 0 if no trades have happened in the last number of minutes given
+     */
+     static BigDecimal calculateVolumeWeightedStockPrice(StockTradeCursor stockTradeCursor, long minutes) {
+        return calculateVolumeWeightedStockPrice(stockTradeCursor, minutes, TradeClock.system());
+     }
+
+    /**
+     * Calculates and returns the Volume Weighted Stock Price for the trades given by the cursor
+     * that have occurred in the last number of minutes by the given clock
+     *
+     * @param stockTradeCursor cursor over transactions, positioned before the first
+     * @param minutes Only trades that have occurred in the last number of minutes set will be used in the calculation
+     * @param tradeClock clock giving the time the minutes are counted back from
+     * @return Calculated Volume weighted Stock Price to 2 Decimal Places,
+     *         or 0 if no trades have happened in the last number of minutes given
+     */
+     static BigDecimal calculateVolumeWeightedStockPrice(StockTradeCursor stockTradeCursor, long minutes, TradeClock tradeClock) {
 
         //Set time to start including trades for calculation
-        LocalDateTime calculationTime = LocalDateTime.now().minusMinutes(minutes);
+        long calculationTime = tradeClock.currentEpochNanos() - TimeUnit.MINUTES.toNanos(minutes);
+
+        try {
+            return calculateVolumeWeightedStockPriceForTradesAfter(stockTradeCursor, calculationTime);
+        } catch (ArithmeticException e){
+            //Sums too large to be held as a long, so fall back to BigDecimal
+            stockTradeCursor.reset();
+            return calculateVolumeWeightedStockPriceAsBigDecimal(stockTradeCursor, calculationTime);
+        }
+    }
 
-        BigDecimal totalQuantity = BigDecimal.ZERO;
-        BigDecimal sumOfTradePriceMultipliedByQuantity = BigDecimal.ZERO;
+    /**
+     * Calculates the Volume Weighted Stock Price for trades after the given time using fixed point long arithmetic
+     *
+     * @param stockTradeCursor cursor over transactions, positioned before the first
+     * @param calculationTime Only trades after this time, in nanoseconds since the epoch, will be used in the calculation
+     * @return Calculated Volume weighted Stock Price to 2 Decimal Places,
+     *         or 0 if no trades have happened after the given time
+     * @throws ArithmeticException if the sums are too large to be held as a long
+     */
+    private static BigDecimal calculateVolumeWeightedStockPriceForTradesAfter(StockTradeCursor stockTradeCursor, long calculationTime) {
 
+        long totalQuantity = 0; //Hundredths of a share
+        long sumOfTradePriceMultipliedByQuantity = 0; //Hundredths of a share multiplied by pence
 
         // Only consider trades that have happened in the last X minutes
         // Build up a sum of Quantity * Trade Price, and a sum of Quantity
-        for(StockTrade stockTrade : stockTradeList){
+        while(stockTradeCursor.next()){
 
-            if(stockTrade.getTimeStamp().isAfter(calculationTime)){
+            if(stockTradeCursor.getTimeStampEpochNanos() > calculationTime){
 
-                sumOfTradePriceMultipliedByQuantity = sumOfTradePriceMultipliedByQuantity
-                        .add(stockTrade.getQuantityOfShares()
-                                .multiply(stockTrade.getTradePrice()));
+                sumOfTradePriceMultipliedByQuantity = Math.addExact(sumOfTradePriceMultipliedByQuantity,
+                        Math.multiplyExact(stockTradeCursor.getQuantityInHundredths(), stockTradeCursor.getTradePriceInPence()));
 
-                totalQuantity = totalQuantity.add(stockTrade.getQuantityOfShares());
+                totalQuantity = Math.addExact(totalQuantity, stockTradeCursor.getQuantityInHundredths());
             }
         }
 
         //If totalQuantity is 0, then no trades have happened in the last X minutes so return 0
+        if(totalQuantity == 0){
+            return BigDecimal.ZERO;
+        }else {
+            //Calculate and return value as Sum of (Quantity * Trade price) / Sum of Quantity, the hundredths cancel out leaving pence
+            return FixedPointUtility.divideHalfUp(sumOfTradePriceMultipliedByQuantity, totalQuantity); //Assume 2 dp is sufficient precision
+        }
+    }
+
+    /**
+     * Calculates the Volume Weighted Stock Price for trades after the given time using BigDecimal arithmetic
+     *
+     * @param stockTradeCursor cursor over transactions, positioned before the first
+     * @param calculationTime Only trades after this time, in nanoseconds since the epoch, will be used in the calculation
+     * @return Calculated Volume weighted Stock Price to 2 Decimal Places,
+     *         or 0 if no trades have happened after the given time
+     */
+    private static BigDecimal calculateVolumeWeightedStockPriceAsBigDecimal(StockTradeCursor stockTradeCursor, long calculationTime) {
+
+        BigDecimal totalQuantity = BigDecimal.ZERO;
+        BigDecimal sumOfTradePriceMultipliedByQuantity = BigDecimal.ZERO;
+
+        while(stockTradeCursor.next()){
+
+            if(stockTradeCursor.getTimeStampEpochNanos() > calculationTime){
+
+                BigDecimal quantity = FixedPointUtility.fromHundredths(stockTradeCursor.getQuantityInHundredths());
+
+                sumOfTradePriceMultipliedByQuantity = sumOfTradePriceMultipliedByQuantity
+                        .add(quantity.multiply(FixedPointUtility.fromPence(stockTradeCursor.getTradePriceInPence())));
+
+                totalQuantity = totalQuantity.add(quantity);
+            }
+        }
+
         if(totalQuantity.compareTo(BigDecimal.ZERO) == 0){
           return BigDecimal.ZERO;
         }else {
-            //Calculate and return value as Sum of (Quantity * Trade price) / Sum of Quantity
-            return sumOfTradePriceMultipliedByQuantity.divide(totalQuantity, 2, BigDecimal.ROUND_HALF_UP); //Assume 2 dp is sufficient precision
+            return sumOfTradePriceMultipliedByQuantity.divide(totalQuantity, 2, RoundingMode.HALF_UP); //Assume 2 dp is sufficient precision
         }
     }
 
@@ -93,25 +217,79 @@ class CalculationUtility {
      * @return Calculated GBCE to 2 Decimal Places
      */
      static BigDecimal calculateGBCE(List<StockTrade> stockTradeList) throws SuperSimpleStocksException{
+        return calculateGBCE(new StockTradeListCursor(stockTradeList));
+    }
+
+    /**
+     * Calculates and returns the GBCE All share index for the trades given by the cursor
+     *
+     * Multiplies all stock trade prices then returns the nth root of that number
+     * where n is the total number of trades
+     *
+     * @param stockTradeCursor cursor over transactions, positioned before the first
+     * @return Calculated GBCE to 2 Decimal Places
+     */
+     static BigDecimal calculateGBCE(StockTradeCursor stockTradeCursor) throws SuperSimpleStocksException{
+
+        long numberOfTrades = 0;
+
+        //Multiply as longs for as long as the product fits, then carry on as a BigDecimal
+        long allTradePricesMultipliedAsLong = 1;  //Initially 1 so the first trade price is handled correctly
+        BigDecimal allTradePricesMultiplied = null;
+
+        while(stockTradeCursor.next()){
 
-        if(stockTradeList.isEmpty()){
+            numberOfTrades++;
+
+            if(allTradePricesMultiplied == null){
+                try {
+                    allTradePricesMultipliedAsLong = Math.multiplyExact(allTradePricesMultipliedAsLong, stockTradeCursor.getTradePriceInPence());
+                    continue;
+                } catch (ArithmeticException e){
+                    allTradePricesMultiplied = BigDecimal.valueOf(allTradePricesMultipliedAsLong);
+                }
+            }
+
+            allTradePricesMultiplied = allTradePricesMultiplied.multiply(BigDecimal.valueOf(stockTradeCursor.getTradePriceInPence()));
+        }
+
+        if(numberOfTrades == 0){
             throw new SuperSimpleStocksException("GBCE can not be calculated as there have been no trades");
         }
 
-        double nThRoot = stockTradeList.size();
+        double nThRoot = numberOfTrades;
 
-        BigDecimal allTradePricesMultiplied = new BigDecimal("1");  //Initially 1 so the first trade price is handled correctly
+        double allTradePricesMultipliedAsDouble = allTradePricesMultiplied == null
+                ? (double) allTradePricesMultipliedAsLong
+                : allTradePricesMultiplied.doubleValue();
 
-        for(StockTrade stockTrade : stockTradeList){
+        //Have to convert values to double to get the nth root, then convert back to BigDecimal
+        BigDecimal result;
 
-            allTradePricesMultiplied = allTradePricesMultiplied.multiply(stockTrade.getTradePrice());
+        if(Double.isInfinite(allTradePricesMultipliedAsDouble)){
+            //Too large to be held as a double, so take the nth root using the log of the product instead
+            result = BigDecimal.valueOf(Math.exp(log(allTradePricesMultiplied) / nThRoot));
+        }else{
+            result = BigDecimal.valueOf(Math.pow(allTradePricesMultipliedAsDouble, 1 / nThRoot));
         }
 
-        //Have to convert values to double to get the nth root, then convert back to BigDecimal
-        BigDecimal result = BigDecimal.valueOf(Math.pow(allTradePricesMultiplied.doubleValue(), 1 / nThRoot));
+        return result.setScale(2, RoundingMode.HALF_UP); //Assume 2 dp is sufficient precision
+
+    }
+
+    /**
+     * Returns the natural log of a whole number too large to be held as a double,
+     * by shifting it down to the top 53 bits and adding the log of the bits shifted off
+     *
+     * @param value whole number greater than Double.MAX_VALUE
+     * @return natural log of the value
+     */
+    private static double log(BigDecimal value){
 
-        return result.setScale(2, BigDecimal.ROUND_HALF_UP); //Assume 2 dp is sufficient precision
+        BigInteger unscaledValue = value.toBigInteger();
+        int shift = unscaledValue.bitLength() - 53;
 
+        return Math.log(unscaledValue.shiftRight(shift).doubleValue()) + shift * Math.log(2);
     }
 
     /**
@@ -123,20 +301,30 @@ class CalculationUtility {
      * @return Calculated dividend yield to 2 Decimal Places
      */
      static BigDecimal calculateDividendYield(StockData stockData, int price) throws SuperSimpleStocksException {
+        return calculateDividendYield(StockReferenceData.of(stockData), price);
+    }
 
-        //Convert price to BigDecimal so its easier to perform mathematical operations on
-        BigDecimal priceAsBigDecimal = new BigDecimal(price);
+    /**
+     * Determines which calculation to use to calculate the Dividend Yield
+     * depending on Stock Type, then returns the calculated value.
+     *
+     * @param stockData Reference data relating to the Stock
+     * @param price market price in Pence
+     * @return Calculated dividend yield to 2 Decimal Places
+     */
+     static BigDecimal calculateDividendYield(StockReferenceData stockData, int price) throws SuperSimpleStocksException {
 
         //Check for Market Price of 0, which will cause a divide by 0 Arithmetic Exception
-         if(priceAsBigDecimal.compareTo(BigDecimal.ZERO) == 0){
+         if(price == 0){
              throw new SuperSimpleStocksException("Price cannot be 0 for the Dividend Yield Calculation");
          }
 
         switch(stockData.getType()){
             case COMMON:
-                return calculateCommonDividendYield(stockData, priceAsBigDecimal);
+                return calculateCommonDividendYield(stockData, price);
             case PREFERRED:
-                return calculatePreferredDividendYield(stockData, priceAsBigDecimal);
+                //Fixed Dividend is a BigDecimal percentage, so this calculation stays in BigDecimal
+                return calculatePreferredDividendYield(stockData, new BigDecimal(price));
             default:
                 throw new SuperSimpleStocksException("Stock Type "+ stockData.getType() + "not recognised, unable to calculate dividend yield");
         }
@@ -150,17 +338,14 @@ class CalculationUtility {
      *
      * Assumes Market Price will never be zero
      *
-     * @param stockData Data relating to the Stock
-     * @param priceAsBigDecimal market price in Pence represented as BigDecimal
+     * @param stockData Reference data relating to the Stock
+     * @param price market price in Pence
      * @return Calculated Dividend Yield to 2 Decimal Places
      */
-    private static BigDecimal calculateCommonDividendYield(StockData stockData, BigDecimal priceAsBigDecimal){
-
-        //Convert Last Dividend value to BigDecimal so easier to perform mathematical operations on
-        BigDecimal lastDividendAsBigDecimal = new BigDecimal(stockData.getLastDividend());
+    private static BigDecimal calculateCommonDividendYield(StockReferenceData stockData, int price){
 
         //Last Dividend / Market Price
-        return lastDividendAsBigDecimal.divide(priceAsBigDecimal, 2, BigDecimal.ROUND_HALF_UP); //Assume 2 dp is sufficient precision
+        return FixedPointUtility.divideHalfUp(stockData.getLastDividend(), price); //Assume 2 dp is sufficient precision
     }
 
     /**
@@ -170,18 +355,259 @@ class CalculationUtility {
      *
      * Assumes Market Price will never be zero
      *
-     * @param stockData Data relating to the Stock
+     * @param stockData Reference data relating to the Stock
      * @param priceAsBigDecimal market price in Pence represented as BigDecimal
      * @return Calculated Dividend Yield to 2 Decimal Places
      */
-    private static BigDecimal calculatePreferredDividendYield(StockData stockData, BigDecimal priceAsBigDecimal){
+    private static BigDecimal calculatePreferredDividendYield(StockReferenceData stockData, BigDecimal priceAsBigDecimal){
 
         //Convert Par Value to BigDecimal so easier to perform mathematical operations on
         BigDecimal parValueAsBigDecimal = new BigDecimal(stockData.getParValue());
 
         //Fixed Dividend * Par Value / Market Price
         return (stockData.getFixedDividend().multiply(parValueAsBigDecimal))
-                .divide(priceAsBigDecimal, 2, BigDecimal.ROUND_HALF_UP); //Assume 2 dp is sufficient precision
+                .divide(priceAsBigDecimal, 2, RoundingMode.HALF_UP); //Assume 2 dp is sufficient precision
+    }
+
+    /**
+     * Calculates the Dividend Yield as calculateDividendYield does, into the given result
+     * without creating any objects
+     *
+     * @param stockData Reference data relating to the Stock
+     * @param price market price in Pence
+     * @param result holder to fill in with the Dividend Yield
+     * @throws SuperSimpleStocksException if the price is 0
+     */
+    static void calculateDividendYield(StockReferenceData stockData, long price, CalculationResult result) throws SuperSimpleStocksException {
+
+        if(price == 0){
+            throw new SuperSimpleStocksException("Price cannot be 0 for the Dividend Yield Calculation");
+        }
+
+        switch(stockData.getType()){
+            case COMMON:
+                //Last Dividend / Market Price
+                result.set(FixedPointUtility.divideHalfUpUnscaled(stockData.getLastDividend(), price), 0);
+                return;
+            case PREFERRED:
+                result.set(calculatePreferredDividendYieldUnscaled(stockData, price), 0);
+                return;
+            default:
+                throw new SuperSimpleStocksException("Stock Type "+ stockData.getType() + "not recognised, unable to calculate dividend yield");
+        }
+    }
+
+    /**
+     * Calculates the P/E Ratio as calculatePriceEarningsRatio does, into the given result
+     * without creating any objects
+     *
+     * @param stockData Reference data relating to the Stock
+     * @param price market price
+     * @param result holder to fill in with the P/E Ratio
+     * @throws SuperSimpleStocksException if there would be a divide by zero Arithmetic Exception
+     */
+    static void calculatePriceEarningsRatio(StockReferenceData stockData, long price, CalculationResult result) throws SuperSimpleStocksException {
+
+        if (stockData.getLastDividend() == 0){
+            throw new SuperSimpleStocksException("Cannot calculate PE Ratio as last Dividend for "+ stockData.getSymbol() +" is zero" +
+                    " and would result in a divide by zero Arithmetic Exception");
+        }
+
+        result.set(FixedPointUtility.divideHalfUpUnscaled(price, stockData.getLastDividend()), 0);
+    }
+
+    /**
+     * Calculates the Volume Weighted Stock Price for the trades given by the cursor that occurred after the given time,
+     * into the given result without creating any objects, unless the sums are too large to be held as a long
+     *
+     * The time is given rather than a number of minutes, so the caller can take it from a clock that does not create objects
+     *
+     * @param stockTradeCursor cursor over transactions, positioned before the first
+     * @param calculationTime Only trades after this time, in nanoseconds since the epoch, will be used in the calculation
+     * @param result holder to fill in with the Volume Weighted Stock Price, or 0 if no trades happened after the given time
+     */
+    static void calculateVolumeWeightedStockPrice(StockTradeCursor stockTradeCursor, long calculationTime, CalculationResult result) {
+
+        long numberOfTrades = 0;
+        long totalQuantity = 0; //Hundredths of a share
+        long sumOfTradePriceMultipliedByQuantity = 0; //Hundredths of a share multiplied by pence
+
+        try {
+            while(stockTradeCursor.next()){
+
+                if(stockTradeCursor.getTimeStampEpochNanos() > calculationTime){
+
+                    sumOfTradePriceMultipliedByQuantity = Math.addExact(sumOfTradePriceMultipliedByQuantity,
+                            Math.multiplyExact(stockTradeCursor.getQuantityInHundredths(), stockTradeCursor.getTradePriceInPence()));
+
+                    totalQuantity = Math.addExact(totalQuantity, stockTradeCursor.getQuantityInHundredths());
+                    numberOfTrades++;
+                }
+            }
+        } catch (ArithmeticException e){
+            //Sums too large to be held as a long, so fall back to BigDecimal
+            stockTradeCursor.reset();
+            BigDecimal volumeWeightedStockPrice = calculateVolumeWeightedStockPriceAsBigDecimal(stockTradeCursor, calculationTime);
+
+            stockTradeCursor.reset();
+            numberOfTrades = 0;
+
+            while(stockTradeCursor.next()){
+                if(stockTradeCursor.getTimeStampEpochNanos() > calculationTime){
+                    numberOfTrades++;
+                }
+            }
+
+            result.set(volumeWeightedStockPrice.unscaledValue().longValueExact(), numberOfTrades);
+            return;
+        }
+
+        result.set(totalQuantity == 0 ? 0 : FixedPointUtility.divideHalfUpUnscaled(sumOfTradePriceMultipliedByQuantity, totalQuantity), numberOfTrades);
     }
 
+    /**
+     * Calculates the GBCE All share index for the trades given by the cursor, into the given result
+     * without creating any objects
+     *
+     * Trade prices are multiplied as calculateGBCE does for as long as the product fits in a long,
+     * after which the logs of the remaining trade prices are summed instead. The result is rounded
+     * from the double value, see FixedPointUtility.roundHalfUpUnscaled.
+     *
+     * @param stockTradeCursor cursor over transactions, positioned before the first
+     * @param result holder to fill in with the GBCE
+     * @throws SuperSimpleStocksException if there are no trades
+     */
+    static void calculateGBCE(StockTradeCursor stockTradeCursor, CalculationResult result) throws SuperSimpleStocksException {
+
+        long numberOfTrades = 0;
+        long allTradePricesMultiplied = 1;
+        double sumOfLogTradePrices = 0;
+        boolean multiplying = true;
+
+        while(stockTradeCursor.next()){
+
+            numberOfTrades++;
+
+            long tradePrice = stockTradeCursor.getTradePriceInPence();
+
+            if(multiplying){
+                try {
+                    allTradePricesMultiplied = Math.multiplyExact(allTradePricesMultiplied, tradePrice);
+                    continue;
+                } catch (ArithmeticException e){
+                    //Only created once, when the product first becomes too large
+                    multiplying = false;
+                    sumOfLogTradePrices = Math.log(allTradePricesMultiplied);
+                }
+            }
+            sumOfLogTradePrices += Math.log(tradePrice);
+        }
+
+        if(numberOfTrades == 0){
+            throw new SuperSimpleStocksException("GBCE can not be calculated as there have been no trades");
+        }
+
+        double gbce = multiplying
+                ? Math.pow(allTradePricesMultiplied, 1 / (double) numberOfTrades)
+                : Math.exp(sumOfLogTradePrices / numberOfTrades);
+
+        result.set(FixedPointUtility.roundHalfUpUnscaled(gbce), numberOfTrades);
+    }
+
+    /**
+     * Calculates the Volume Weighted Stock Price for trades held in columns that occurred after the given time,
+     * into the given result, summing with TradeColumnKernels. No objects are created unless the sums are too large
+     * to be held as a long.
+     *
+     * @param timeStamps timestamps in nanoseconds since the epoch
+     * @param quantities quantities in hundredths of a share
+     * @param tradePrices trade prices in pence
+     * @param from index of the first trade
+     * @param to index after the last trade
+     * @param calculationTime Only trades after this time, in nanoseconds since the epoch, will be used in the calculation
+     * @param result holder to fill in with the Volume Weighted Stock Price, or 0 if no trades happened after the given time
+     */
+    static void calculateVolumeWeightedStockPrice(long[] timeStamps, long[] quantities, long[] tradePrices, int from, int to,
+                                                  long calculationTime, CalculationResult result) {
+
+        TradeColumnKernels tradeColumnKernels = TradeColumnKernels.get();
+        long numberOfTrades = tradeColumnKernels.countAfter(timeStamps, from, to, calculationTime);
+
+        try {
+            long totalQuantity = tradeColumnKernels.sumQuantitiesAfter(timeStamps, quantities, from, to, calculationTime);
+            long sumOfTradePriceMultipliedByQuantity = tradeColumnKernels.sumTradePricesMultipliedByQuantitiesAfter(timeStamps, quantities, tradePrices,
+                    from, to, calculationTime);
+
+            result.set(totalQuantity == 0 ? 0 : FixedPointUtility.divideHalfUpUnscaled(sumOfTradePriceMultipliedByQuantity, totalQuantity), numberOfTrades);
+
+        } catch (ArithmeticException e){
+            //Sums too large to be held as a long, so fall back to BigDecimal
+            BigInteger totalQuantity = BigInteger.ZERO;
+            BigInteger sumOfTradePriceMultipliedByQuantity = BigInteger.ZERO;
+
+            for(int i = from; i < to; i++){
+                if(timeStamps[i] > calculationTime){
+                    totalQuantity = totalQuantity.add(BigInteger.valueOf(quantities[i]));
+                    sumOfTradePriceMultipliedByQuantity = sumOfTradePriceMultipliedByQuantity.add(BigInteger.valueOf(quantities[i]).multiply(BigInteger.valueOf(tradePrices[i])));
+                }
+            }
+
+            //The hundredths of the quantities cancel out leaving pence
+            result.set(totalQuantity.signum() == 0 ? 0 : new BigDecimal(sumOfTradePriceMultipliedByQuantity).divide(new BigDecimal(totalQuantity), 2, RoundingMode.HALF_UP)
+                    .unscaledValue().longValueExact(), numberOfTrades);
+        }
+    }
+
+    /**
+     * Calculates the GBCE All share index for trades held in a column, into the given result without creating any objects,
+     * as e raised to the mean of the logs of the trade prices summed with TradeColumnKernels
+     *
+     * The result is rounded from the double value, see FixedPointUtility.roundHalfUpUnscaled
+     *
+     * @param tradePrices trade prices in pence
+     * @param from index of the first trade
+     * @param to index after the last trade
+     * @param result holder to fill in with the GBCE
+     * @throws SuperSimpleStocksException if there are no trades
+     */
+    static void calculateGBCE(long[] tradePrices, int from, int to, CalculationResult result) throws SuperSimpleStocksException {
+
+        if(from >= to){
+            throw new SuperSimpleStocksException("GBCE can not be calculated as there have been no trades");
+        }
+
+        int numberOfTrades = to - from;
+        double gbce = Math.exp(TradeColumnKernels.get().sumLogTradePrices(tradePrices, from, to) / numberOfTrades);
+
+        result.set(FixedPointUtility.roundHalfUpUnscaled(gbce), numberOfTrades);
+    }
+
+    /**
+     * Calculates the Dividend Yield for the PREFERRED StockType, multiplied by 100, from the whole part of
+     * Fixed Dividend * Par Value * 100 and whether its fraction is at least a half
+     *
+     * Rounding (whole + fraction) / price half up only needs to know whether the fraction
+     * is at least a half, as twice the remainder of the whole part is a whole number.
+     *
+     * @param stockData Reference data relating to the Stock
+     * @param price market price in Pence
+     * @return Calculated Dividend Yield to 2 Decimal Places, multiplied by 100
+     */
+    private static long calculatePreferredDividendYieldUnscaled(StockReferenceData stockData, long price){
+
+        if(price < 0){
+            //Rounding away from zero below zero is left to BigDecimal
+            return calculatePreferredDividendYield(stockData, BigDecimal.valueOf(price)).unscaledValue().longValueExact();
+        }
+
+        long fixedDividendMultipliedByParValue = stockData.getFixedDividendMultipliedByParValueInHundredths();
+        long quotient = fixedDividendMultipliedByParValue / price;
+        long twiceRemainder = 2 * (fixedDividendMultipliedByParValue % price);
+
+        boolean roundUp = stockData.isFixedDividendMultipliedByParValueFractionAtLeastHalf()
+                ? twiceRemainder >= price - 1
+                : twiceRemainder >= price;
+
+        return roundUp ? quotient + 1 : quotient;
+    }
 }
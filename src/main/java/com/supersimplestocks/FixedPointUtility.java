@@ -0,0 +1,171 @@
+package com.supersimplestocks;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides static methods for converting between the BigDecimal and LocalDateTime values
+ * used at the edges of the Super Simple Stocks application and the fixed point long values
+ * used to hold and calculate with trades
+ *
+ * Quantities of shares are held in hundredths of a share, as quantities are limited to 2 decimal places.
+ * Prices are held in pence, as prices are limited to whole pence.
+ * Timestamps are held in nanoseconds since the epoch.
+ */
+final class FixedPointUtility {
+
+    //Number of decimal places in quantities, and in calculated results
+    static final int QUANTITY_SCALE = 2;
+    static final int RESULT_SCALE = 2;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private FixedPointUtility(){
+    }
+
+    /**
+     * Converts a quantity of shares to hundredths of a share,
+     * rounding to 2 decimal places if needed
+     *
+     * @param quantityOfShares quantity of shares
+     * @return quantity of shares in hundredths
+     * @throws ArithmeticException if the quantity is too large to be held as a long
+     */
+    static long toHundredths(BigDecimal quantityOfShares){
+        return quantityOfShares.setScale(QUANTITY_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * @param quantityInHundredths quantity of shares in hundredths
+     * @return quantity of shares to 2 decimal places
+     */
+    static BigDecimal fromHundredths(long quantityInHundredths){
+        return BigDecimal.valueOf(quantityInHundredths, QUANTITY_SCALE);
+    }
+
+    /**
+     * Converts a price to whole pence, rounding if needed
+     *
+     * @param price price in pence
+     * @return price in whole pence
+     * @throws ArithmeticException if the price is too large to be held as a long
+     */
+    static long toPence(BigDecimal price){
+        return price.setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    /**
+     * @param priceInPence price in whole pence
+     * @return price in pence
+     */
+    static BigDecimal fromPence(long priceInPence){
+        return BigDecimal.valueOf(priceInPence);
+    }
+
+    /**
+     * Converts a local date time in the system time zone to nanoseconds since the epoch
+     *
+     * @param timeStamp local date time
+     * @return nanoseconds since the epoch
+     */
+    static long toEpochNanos(LocalDateTime timeStamp){
+        return toEpochNanos(timeStamp.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * @param instant point in time
+     * @return nanoseconds since the epoch
+     */
+    static long toEpochNanos(Instant instant){
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), NANOS_PER_SECOND), instant.getNano());
+    }
+
+    /**
+     * Converts nanoseconds since the epoch to a local date time in the system time zone
+     *
+     * @param epochNanos nanoseconds since the epoch
+     * @return local date time
+     */
+    static LocalDateTime toLocalDateTime(long epochNanos){
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND), Math.floorMod(epochNanos, NANOS_PER_SECOND));
+        return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+    }
+
+    /**
+     * @return the current time in nanoseconds since the epoch
+     */
+    static long currentEpochNanos(){
+        return toEpochNanos(Instant.now());
+    }
+
+    /**
+     * Divides one long by another, giving a result to 2 decimal places rounded half up,
+     * the same as BigDecimal.divide(divisor, 2, RoundingMode.HALF_UP)
+     *
+     * The division is done in long arithmetic unless the values are too large,
+     * so the only BigDecimal created is the result
+     *
+     * @param dividend value to divide
+     * @param divisor value to divide by, must not be zero
+     * @return result to 2 Decimal Places
+     */
+    static BigDecimal divideHalfUp(long dividend, long divisor){
+
+        if(!canDivideAsLong(dividend, divisor)){
+            return BigDecimal.valueOf(dividend).divide(BigDecimal.valueOf(divisor), RESULT_SCALE, RoundingMode.HALF_UP);
+        }
+        return BigDecimal.valueOf(divideScaledHalfUp(dividend * 100, divisor), RESULT_SCALE);
+    }
+
+    /**
+     * Divides one long by another as divideHalfUp does, but gives the result multiplied by 100
+     * rather than as a BigDecimal, so nothing is created unless the values are too large for long arithmetic
+     *
+     * @param dividend value to divide
+     * @param divisor value to divide by, must not be zero
+     * @return result to 2 Decimal Places, multiplied by 100
+     * @throws ArithmeticException if the result multiplied by 100 is too large for a long
+     */
+    static long divideHalfUpUnscaled(long dividend, long divisor){
+
+        if(!canDivideAsLong(dividend, divisor)){
+            return divideHalfUp(dividend, divisor).unscaledValue().longValueExact();
+        }
+        return divideScaledHalfUp(dividend * 100, divisor);
+    }
+
+    /**
+     * Rounds a value half up to 2 decimal places, giving it multiplied by 100
+     *
+     * Rounds the double itself, so a value within a rounding error of a half penny may round differently
+     * to BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP), which rounds its shortest decimal form
+     *
+     * @param value value to round
+     * @return value to 2 Decimal Places, multiplied by 100
+     */
+    static long roundHalfUpUnscaled(double value){
+        return value < 0 ? -(long) Math.floor(-value * 100 + 0.5) : (long) Math.floor(value * 100 + 0.5);
+    }
+
+    private static boolean canDivideAsLong(long dividend, long divisor){
+        return dividend <= Long.MAX_VALUE / 100 && dividend >= -(Long.MAX_VALUE / 100) && divisor != Long.MIN_VALUE;
+    }
+
+    private static long divideScaledHalfUp(long scaledDividend, long divisor){
+
+        long quotient = scaledDividend / divisor;
+        long remainder = Math.abs(scaledDividend % divisor);
+        long absoluteDivisor = Math.abs(divisor);
+
+        //Round half up, i.e. away from zero, when the remainder is at least half of the divisor
+        if(remainder >= absoluteDivisor - remainder){
+            quotient += (scaledDividend < 0) == (divisor < 0) ? 1 : -1;
+        }
+
+        return quotient;
+    }
+}
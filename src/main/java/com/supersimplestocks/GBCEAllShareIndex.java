@@ -0,0 +1,241 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Maintains the GBCE All Share Index as trades are recorded,
+ * so it can be returned at any time without touching the trade history
+ *
+ * The geometric mean of n trade prices is the same as e raised to the mean of their natural logs,
+ * so only a running sum of the log of each trade price and a count of trades need to be kept.
+ * Unlike multiplying all of the trade prices together, the running sum can not overflow
+ * and costs the same to update however many trades there have been.
+ *
+ * The sums are kept separately for each Stock, and only added together when the index is read,
+ * so trades for different Stocks, which the trade history adds on different threads at once,
+ * never wait for each other here.
+ *
+ * Safe to use from several threads at once.
+ */
+class GBCEAllShareIndex implements StockTradeListener {
+
+    /**
+     * How the index is calculated
+     */
+    enum Mode {
+
+        /**
+         * e raised to the mean of the logs of all trade prices
+         */
+        LOGARITHMIC,
+
+        /**
+         * The nth root of all trade prices multiplied, as done by CalculationUtility.calculateGBCE,
+         * for as long as that product can be represented as a double. After that LOGARITHMIC is used.
+         */
+        COMPATIBLE
+    }
+
+    //Largest product of trade prices that can still be converted to a double to take the nth root of
+    private static final BigDecimal MAXIMUM_PRODUCT = new BigDecimal(Double.MAX_VALUE);
+
+    private final Mode mode;
+
+    private final StockSymbolTable<Sums> sums;
+
+    GBCEAllShareIndex(){
+        this(Mode.LOGARITHMIC);
+    }
+
+    GBCEAllShareIndex(Mode mode){
+        this.mode = mode;
+
+        sums = new StockSymbolTable<>(symbol -> new Sums(mode));
+    }
+
+    @Override
+    public void tradeAdded(StockSymbol symbol, TransactionType transactionType, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence) {
+
+        Sums symbolSums = sums.get(symbol);
+
+        synchronized (symbolSums){
+            symbolSums.add(tradePriceInPence);
+        }
+    }
+
+    @Override
+    public void tradesAdded(StockTradeBatch stockTradeBatch) {
+
+        //Add each run of trades for the same Stock to its sums in one go
+        int start = 0;
+
+        while(start < stockTradeBatch.size()){
+
+            StockSymbol symbol = stockTradeBatch.getSymbol(start);
+            int end = start + 1;
+
+            while(end < stockTradeBatch.size() && stockTradeBatch.getSymbol(end) == symbol){
+                end++;
+            }
+
+            Sums symbolSums = sums.get(symbol);
+
+            synchronized (symbolSums){
+                symbolSums.addAll(stockTradeBatch, start, end);
+            }
+            start = end;
+        }
+    }
+
+    Mode getMode(){
+        return mode;
+    }
+
+    long getNumberOfTrades(){
+
+        long numberOfTrades = 0;
+
+        for(int symbolId = 0; symbolId < sums.length(); symbolId++){
+
+            Sums symbolSums = sums.getById(symbolId);
+
+            if(symbolSums != null){
+                synchronized (symbolSums){
+                    numberOfTrades += symbolSums.numberOfTrades;
+                }
+            }
+        }
+        return numberOfTrades;
+    }
+
+    /**
+     * Returns the GBCE All share index for all trades recorded so far
+     *
+     * @return GBCE to 2 Decimal Places
+     * @throws SuperSimpleStocksException if there have been no trades
+     */
+    BigDecimal getGBCE() throws SuperSimpleStocksException {
+        return BigDecimal.valueOf(calculateGBCE(null)).setScale(2, RoundingMode.HALF_UP); //Assume 2 dp is sufficient precision
+    }
+
+    /**
+     * Returns the GBCE All share index for all trades recorded so far into the given result,
+     * without creating any objects in LOGARITHMIC mode
+     *
+     * The result is rounded from the double value, see FixedPointUtility.roundHalfUpUnscaled
+     *
+     * @param result holder to fill in with the GBCE
+     * @throws SuperSimpleStocksException if there have been no trades
+     */
+    void getGBCE(CalculationResult result) throws SuperSimpleStocksException {
+        calculateGBCE(result);
+    }
+
+    /**
+     * Adds up the sums for every Stock, each read with its Stock locked, and takes the geometric mean
+     *
+     * @param result if not null, filled in with the GBCE and the number of trades it is for
+     * @return GBCE
+     * @throws SuperSimpleStocksException if there have been no trades
+     */
+    private double calculateGBCE(CalculationResult result) throws SuperSimpleStocksException {
+
+        long numberOfTrades = 0;
+        double sumOfLogTradePrices = 0;
+        BigDecimal allTradePricesMultiplied = mode == Mode.COMPATIBLE ? BigDecimal.ONE : null;
+
+        for(int symbolId = 0; symbolId < sums.length(); symbolId++){
+
+            Sums symbolSums = sums.getById(symbolId);
+
+            if(symbolSums == null){
+                continue;
+            }
+
+            synchronized (symbolSums){
+
+                numberOfTrades += symbolSums.numberOfTrades;
+                sumOfLogTradePrices += symbolSums.sumOfLogTradePrices;
+
+                if(allTradePricesMultiplied != null){
+                    allTradePricesMultiplied = symbolSums.allTradePricesMultiplied == null ? null
+                            : allTradePricesMultiplied.multiply(symbolSums.allTradePricesMultiplied);
+                }
+            }
+
+            if(allTradePricesMultiplied != null && allTradePricesMultiplied.compareTo(MAXIMUM_PRODUCT) > 0){
+                allTradePricesMultiplied = null;
+            }
+        }
+
+        if(numberOfTrades == 0){
+            throw new SuperSimpleStocksException("GBCE can not be calculated as there have been no trades");
+        }
+
+        double gbce;
+
+        if(allTradePricesMultiplied != null){
+            gbce = Math.pow(allTradePricesMultiplied.doubleValue(), 1 / (double) numberOfTrades);
+        }else{
+            gbce = Math.exp(sumOfLogTradePrices / numberOfTrades);
+        }
+
+        if(result != null){
+            result.set(FixedPointUtility.roundHalfUpUnscaled(gbce), numberOfTrades);
+        }
+        return gbce;
+    }
+
+    /**
+     * Sums for the trades of a single Stock, only read or changed with the Stock's sums locked
+     */
+    private static class Sums {
+
+        private long numberOfTrades;
+        private double sumOfLogTradePrices;
+
+        //Only used in COMPATIBLE mode, null once the product is too large to be represented as a double
+        private BigDecimal allTradePricesMultiplied;
+
+        Sums(Mode mode){
+
+            if(mode == Mode.COMPATIBLE){
+                allTradePricesMultiplied = BigDecimal.ONE;
+            }
+        }
+
+        void add(long tradePrice){
+
+            numberOfTrades++;
+            sumOfLogTradePrices += Math.log(tradePrice);
+
+            if(allTradePricesMultiplied != null){
+
+                allTradePricesMultiplied = allTradePricesMultiplied.multiply(BigDecimal.valueOf(tradePrice));
+
+                if(allTradePricesMultiplied.compareTo(MAXIMUM_PRODUCT) > 0){
+                    allTradePricesMultiplied = null;
+                }
+            }
+        }
+
+        void addAll(StockTradeBatch stockTradeBatch, int start, int end){
+
+            if(allTradePricesMultiplied == null){
+                //Only the logs are needed, which can be summed as a column
+                numberOfTrades += end - start;
+                sumOfLogTradePrices += stockTradeBatch.getSumOfLogTradePrices(start, end);
+                return;
+            }
+
+            for(int i = start; i < end; i++){
+                add(stockTradeBatch.getTradePriceInPence(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.supersimplestocks;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in nanoseconds in log-linear buckets, in the same way as HdrHistogram,
+ * so percentiles can be read at any time without keeping every latency
+ *
+ * Latencies below 128ns each have their own bucket. Above that, each power of 2 is split into
+ * 64 equal buckets, so a percentile is never more than 1/64 (about 1.6%) above the latency it stands for.
+ * Latencies of 2^40ns (about 18 minutes) or more are counted in the last bucket.
+ *
+ * Recording is a single atomic increment plus a sum and a maximum that only contend
+ * when many threads record at once, and is safe from any number of threads.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKETS = SUB_BUCKETS << 1;
+    private static final int MAXIMUM_BITS = 40;
+
+    static final long MAXIMUM_TRACKABLE_NANOS = (1L << MAXIMUM_BITS) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAXIMUM_TRACKABLE_NANOS) + 1);
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maximumNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param nanos latency to count, negative latencies are counted as 0
+     */
+    void record(long nanos){
+
+        long clamped = Math.min(Math.max(nanos, 0), MAXIMUM_TRACKABLE_NANOS);
+
+        counts.incrementAndGet(indexOf(clamped));
+        totalNanos.add(clamped);
+        maximumNanos.accumulate(clamped);
+    }
+
+    /**
+     * @return number of latencies counted
+     */
+    long getCount(){
+
+        long count = 0;
+
+        for(int i = 0; i < counts.length(); i++){
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    long getMaximumNanos(){
+        return maximumNanos.get();
+    }
+
+    /**
+     * @return mean latency, or 0 if none have been counted
+     */
+    double getMeanNanos(){
+
+        long count = getCount();
+
+        return count == 0 ? 0 : totalNanos.doubleValue() / count;
+    }
+
+    /**
+     * Returns the highest latency in the bucket holding the given percentile, so at least
+     * that percentage of the latencies counted were at or below the value returned
+     *
+     * @param percentile from 0 to 100
+     * @return latency at the percentile, or 0 if none have been counted
+     * @throws IllegalArgumentException if percentile is not from 0 to 100
+     */
+    long getValueAtPercentile(double percentile){
+
+        if(!(percentile >= 0 && percentile <= 100)){
+            throw new IllegalArgumentException("Percentile must be from 0 to 100: " + percentile);
+        }
+
+        //Copied first, as more latencies may be counted while the buckets are walked
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+
+        for(int i = 0; i < snapshot.length; i++){
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+
+        if(count == 0){
+            return 0;
+        }
+
+        long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long countSoFar = 0;
+
+        for(int i = 0; i < snapshot.length; i++){
+
+            countSoFar += snapshot[i];
+
+            if(countSoFar >= countAtPercentile){
+                return Math.min(highestValueAt(i), getMaximumNanos());
+            }
+        }
+        return getMaximumNanos();
+    }
+
+    /**
+     * Clears every latency counted so far, latencies counted at the same time may or may not be kept
+     */
+    void reset(){
+
+        for(int i = 0; i < counts.length(); i++){
+            counts.set(i, 0);
+        }
+        totalNanos.reset();
+        maximumNanos.reset();
+    }
+
+    static int indexOf(long nanos){
+
+        if(nanos < LINEAR_BUCKETS){
+            return (int) nanos;
+        }
+
+        //Shifted so the top SUB_BUCKET_BITS + 1 bits are left, the top one always being set
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos)) - SUB_BUCKET_BITS;
+        int subBucket = (int) (nanos >>> shift) - SUB_BUCKETS;
+
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueAt(int index){
+
+        if(index < LINEAR_BUCKETS){
+            return index;
+        }
+
+        int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,455 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds a history of Stock Trades in columns of direct (off heap) memory
+ *
+ * Each trade is a row across the timestamp, symbol, transaction type, quantity and price columns,
+ * so a full day of trades does not create any objects per trade for the garbage collector to track.
+ * Each Stock also has a column of the rows holding its trades, kept in timestamp order,
+ * so they can be read without a scan and time ranges found with a binary search.
+ *
+ * Can be used wherever a StockTradeHistory is, with listeners and a journal attached in the same way.
+ * Every trade is kept, so there is no retention policy and nothing is evicted.
+ * The whole history is locked to add a trade or take a snapshot, so it suits holding
+ * many trades in little heap rather than adding trades from many threads at once.
+ *
+ * Trades should be read back through cursors, which do not create a StockTrade for each,
+ * but cursors must not be used while trades are being added. The List snapshots copy
+ * every trade onto the heap, so are kept only for callers that need a List.
+ */
+class OffHeapStockTradeHistory extends StockTradeHistory {
+
+    //Columns grow a chunk at a time so that memory is only allocated as it is needed
+    private static final int ROWS_PER_CHUNK_SHIFT = 16;
+
+    //Smaller chunks for the rows of each Stock, as there can be many Stocks with few trades
+    private static final int SYMBOL_ROWS_PER_CHUNK_SHIFT = 10;
+
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+
+    private final Column timeStamps = new Column(Long.BYTES, ROWS_PER_CHUNK_SHIFT);
+    private final Column symbols = new Column(Integer.BYTES, ROWS_PER_CHUNK_SHIFT);
+    private final Column transactionTypes = new Column(Byte.BYTES, ROWS_PER_CHUNK_SHIFT);
+    private final Column quantities = new Column(Long.BYTES, ROWS_PER_CHUNK_SHIFT);
+    private final Column tradePrices = new Column(Long.BYTES, ROWS_PER_CHUNK_SHIFT);
+
+    //Indexed by Stock Symbol id, grown as Stocks listed since are traded
+    private Column[] rowsBySymbol = new Column[0];
+    private long[] numberOfTradesBySymbol = new long[0];
+
+    private volatile long numberOfTrades;
+
+    @Override
+    void addTrade(StockTrade stockTrade){
+        addTrade(stockTrade.getSymbol(), stockTrade.getTransactionType(), stockTrade.getTimeStampEpochNanos(),
+                stockTrade.getQuantityInHundredths(), stockTrade.getTradePriceInPence());
+    }
+
+    /**
+     * Adds a trade from its fixed point values
+     *
+     * @param symbol Stock Symbol traded
+     * @param transactionType BUY or SELL
+     * @param timeStampEpochNanos timestamp in nanoseconds since the epoch
+     * @param quantityInHundredths quantity of shares in hundredths of a share
+     * @param tradePriceInPence trade price in pence
+     * @throws ArithmeticException if a listener would overflow, in which case the trade is not added
+     */
+    synchronized void addTrade(StockSymbol symbol, TransactionType transactionType, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence){
+
+        checkTradeAdded(symbol, timeStampEpochNanos, quantityInHundredths, tradePriceInPence);
+
+        storeTrade(symbol, transactionType, timeStampEpochNanos, quantityInHundredths, tradePriceInPence);
+
+        journalTrade(symbol, transactionType, timeStampEpochNanos, quantityInHundredths, tradePriceInPence);
+
+        notifyTradeAdded(symbol, transactionType, timeStampEpochNanos, quantityInHundredths, tradePriceInPence);
+    }
+
+    /**
+     * Adds a batch of trades, telling listeners about the whole batch at once
+     *
+     * @param stockTradeBatch trades to add
+     * @throws ArithmeticException if a listener would overflow, in which case none of the trades are added
+     */
+    @Override
+    synchronized void addTrades(StockTradeBatch stockTradeBatch){
+
+        checkTradesAdded(stockTradeBatch);
+
+        for(int i = 0; i < stockTradeBatch.size(); i++){
+            storeTrade(stockTradeBatch.getSymbol(i), stockTradeBatch.getTransactionType(i), stockTradeBatch.getTimeStampEpochNanos(i),
+                    stockTradeBatch.getQuantityInHundredths(i), stockTradeBatch.getTradePriceInPence(i));
+        }
+
+        journalTrades(stockTradeBatch);
+
+        notifyTradesAdded(stockTradeBatch);
+    }
+
+    private void storeTrade(StockSymbol symbol, TransactionType transactionType, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence){
+
+        long row = numberOfTrades;
+
+        timeStamps.putLong(row, timeStampEpochNanos);
+        symbols.putInt(row, symbol.getId());
+        transactionTypes.putByte(row, (byte) transactionType.ordinal());
+        quantities.putLong(row, quantityInHundredths);
+        tradePrices.putLong(row, tradePriceInPence);
+
+        if(symbol.getId() >= rowsBySymbol.length){
+            growRowsBySymbol(symbol.getId());
+        }
+
+        Column rows = rowsBySymbol[symbol.getId()];
+
+        //Trades normally arrive in time order, but if not, move the rows of any later trades
+        //along one place so the Stock's rows stay in time order
+        long position = numberOfTradesBySymbol[symbol.getId()]++;
+
+        while(position > 0 && timeStamps.getLong(rows.getLong(position - 1)) > timeStampEpochNanos){
+            rows.putLong(position, rows.getLong(position - 1));
+            position--;
+        }
+        rows.putLong(position, row);
+
+        numberOfTrades = row + 1;
+    }
+
+    long getNumberOfTrades(){
+        return numberOfTrades;
+    }
+
+    synchronized long getNumberOfTrades(StockSymbol symbol){
+        return symbol.getId() < numberOfTradesBySymbol.length ? numberOfTradesBySymbol[symbol.getId()] : 0;
+    }
+
+    @Override
+    long getNumberOfTradesHeld(){
+        return numberOfTrades;
+    }
+
+    /**
+     * @param symbol Stock Symbol
+     * @return timestamp of the Stock's last row in timestamp order, or Long.MIN_VALUE if it has not been traded
+     */
+    @Override
+    synchronized long getLatestTimeStamp(StockSymbol symbol){
+
+        int symbolId = symbol.getId();
+
+        if(symbolId >= numberOfTradesBySymbol.length || numberOfTradesBySymbol[symbolId] == 0){
+            return Long.MIN_VALUE;
+        }
+        return timeStamps.getLong(rowsBySymbol[symbolId].getLong(numberOfTradesBySymbol[symbolId] - 1));
+    }
+
+    /**
+     * Slow path for callers that need a List, such as tests and the benchmarks.
+     * Creates a StockTrade on the heap for every trade held, with the whole history locked while it does,
+     * so should not be used on the trade or calculation paths, which read the columns through getStockTradeCursorForAllStocks.
+     *
+     * @return copy of all trades for all Stocks, grouped by Stock and in timestamp order within each Stock
+     */
+    @Override
+    synchronized List<StockTrade> getStockTradeHistoryListForAllStocks(){
+
+        List<StockTrade> stockTrades = new ArrayList<>((int) Math.min(numberOfTrades, Integer.MAX_VALUE));
+
+        for(int symbolId = 0; symbolId < rowsBySymbol.length; symbolId++){
+            addStockTrades(stockTrades, new Cursor(rowsBySymbol[symbolId], 0, numberOfTradesBySymbol[symbolId]));
+        }
+        return Collections.unmodifiableList(stockTrades);
+    }
+
+    /**
+     * Slow path for callers that need a List, creating a StockTrade on the heap for each of the Stock's trades.
+     * Use getStockTradeCursorForSymbol to read them from the columns.
+     *
+     * @param symbol Stock Symbol
+     * @return copy of all trades for the given Stock in timestamp order
+     */
+    @Override
+    synchronized List<StockTrade> getStockTradeHistoryListForSymbol(StockSymbol symbol){
+        return getStockTradeHistoryListForSymbol(symbol, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Slow path for callers that need a List, creating a StockTrade on the heap for each trade in the time range.
+     * Use getStockTradeCursorForSymbol to read them from the columns.
+     *
+     * @param symbol Stock Symbol
+     * @param from start of the time range in nanoseconds since the epoch (inclusive)
+     * @param to end of the time range in nanoseconds since the epoch (exclusive)
+     * @return copy of the trades for the given Stock in the time range, in timestamp order
+     */
+    @Override
+    synchronized List<StockTrade> getStockTradeHistoryListForSymbol(StockSymbol symbol, long from, long to){
+
+        List<StockTrade> stockTrades = new ArrayList<>();
+
+        addStockTrades(stockTrades, getStockTradeCursorForSymbol(symbol, from, to));
+
+        return Collections.unmodifiableList(stockTrades);
+    }
+
+    /**
+     * Returns the Volume Weighted Stock Price for the given Stock based on trades
+     * that happened at or after the from time and before the to time,
+     * reading the trades in the time range from the columns
+     *
+     * @param symbol Stock Symbol
+     * @param from start of the time range in nanoseconds since the epoch (inclusive)
+     * @param to end of the time range in nanoseconds since the epoch (exclusive)
+     * @return Volume weighted Stock Price to 2 Decimal Places,
+     *         or 0 if no trades happened in the time range
+     */
+    @Override
+    synchronized BigDecimal getVolumeWeightedStockPrice(StockSymbol symbol, long from, long to){
+        return CalculationUtility.calculateVolumeWeightedStockPrice(getStockTradeCursorForSymbol(symbol, from, to));
+    }
+
+    /**
+     * @param symbol Stock Symbol
+     * @return empty summary, as every trade is kept
+     */
+    @Override
+    StockTradeSummary getEvictedTrades(StockSymbol symbol){
+        return StockTradeSummary.EMPTY;
+    }
+
+    @Override
+    synchronized BigDecimal getGBCE() throws SuperSimpleStocksException {
+        return CalculationUtility.calculateGBCE(getStockTradeCursorForAllStocks());
+    }
+
+    private static void addStockTrades(List<StockTrade> stockTrades, StockTradeCursor stockTradeCursor){
+
+        while(stockTradeCursor.next()){
+            stockTrades.add(new StockTrade(stockTradeCursor.getTransactionType(), stockTradeCursor.getSymbol(), stockTradeCursor.getTimeStampEpochNanos(),
+                    stockTradeCursor.getQuantityInHundredths(), stockTradeCursor.getTradePriceInPence()));
+        }
+    }
+
+    /**
+     * Returns a flyweight cursor over all trades for all Stocks in the order they were added,
+     * reading each value from the columns as it is asked for.
+     * Trades added after the cursor is created are not included.
+     *
+     * @return cursor positioned before the first trade
+     */
+    @Override
+    StockTradeCursor getStockTradeCursorForAllStocks(){
+        return new Cursor(null, 0, numberOfTrades);
+    }
+
+    /**
+     * Returns a cursor over all trades for the given Stock in timestamp order.
+     * Trades added after the cursor is created are not included.
+     *
+     * @param symbol Stock Symbol
+     * @return cursor positioned before the first trade
+     */
+    @Override
+    StockTradeCursor getStockTradeCursorForSymbol(StockSymbol symbol){
+        return getStockTradeCursorForSymbol(symbol, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns a cursor over the trades for the given Stock that happened
+     * at or after the from time and before the to time, in timestamp order
+     *
+     * @param symbol Stock Symbol
+     * @param from start of the time range in nanoseconds since the epoch (inclusive)
+     * @param to end of the time range in nanoseconds since the epoch (exclusive)
+     * @return cursor positioned before the first trade
+     */
+    @Override
+    synchronized StockTradeCursor getStockTradeCursorForSymbol(StockSymbol symbol, long from, long to){
+
+        if(symbol.getId() >= rowsBySymbol.length){
+            growRowsBySymbol(symbol.getId());
+        }
+
+        Column rows = rowsBySymbol[symbol.getId()];
+        long size = numberOfTradesBySymbol[symbol.getId()];
+
+        long fromPosition = positionOfFirstTradeNotBefore(rows, size, from);
+        long toPosition = Math.max(fromPosition, positionOfFirstTradeNotBefore(rows, size, to));
+
+        return new Cursor(rows, fromPosition, toPosition);
+    }
+
+    /**
+     * Binary search for the first of a Stock's rows with a timestamp at or after the given time
+     *
+     * @return position of the first matching row, or size if there is none
+     */
+    private long positionOfFirstTradeNotBefore(Column rows, long size, long timeStamp){
+
+        long low = 0;
+        long high = size;
+
+        while(low < high){
+            long middle = (low + high) >>> 1;
+
+            if(timeStamps.getLong(rows.getLong(middle)) < timeStamp){
+                low = middle + 1;
+            }else{
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void growRowsBySymbol(int symbolId){
+
+        int length = rowsBySymbol.length;
+        int grownLength = Math.max(symbolId + 1, Math.max(StockSymbol.count(), length * 2));
+
+        rowsBySymbol = Arrays.copyOf(rowsBySymbol, grownLength);
+        numberOfTradesBySymbol = Arrays.copyOf(numberOfTradesBySymbol, grownLength);
+
+        for(int symbol = length; symbol < grownLength; symbol++){
+            rowsBySymbol[symbol] = new Column(Long.BYTES, SYMBOL_ROWS_PER_CHUNK_SHIFT);
+        }
+    }
+
+    /**
+     * Flyweight over the columns, reading the values of the current row on demand
+     */
+    private class Cursor implements StockTradeCursor {
+
+        //Column of rows to visit, or null to visit every row
+        private final Column rows;
+        private final long from;
+        private final long to;
+
+        private long position;
+        private long row;
+
+        /**
+         * @param rows column of rows to visit, or null to visit every row
+         * @param from position of the first row to visit (inclusive)
+         * @param to position after the last row to visit (exclusive)
+         */
+        Cursor(Column rows, long from, long to){
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.position = from - 1;
+        }
+
+        @Override
+        public boolean next() {
+
+            if(position + 1 >= to){
+                position = to;
+                return false;
+            }
+
+            position++;
+            row = rows == null ? position : rows.getLong(position);
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            position = from - 1;
+        }
+
+        @Override
+        public StockSymbol getSymbol() {
+            return StockSymbol.forId(symbols.getInt(row));
+        }
+
+        @Override
+        public TransactionType getTransactionType() {
+            return TRANSACTION_TYPES[transactionTypes.getByte(row)];
+        }
+
+        @Override
+        public long getTimeStampEpochNanos() {
+            return timeStamps.getLong(row);
+        }
+
+        @Override
+        public long getQuantityInHundredths() {
+            return quantities.getLong(row);
+        }
+
+        @Override
+        public long getTradePriceInPence() {
+            return tradePrices.getLong(row);
+        }
+    }
+
+    /**
+     * A column of fixed width values held in chunks of direct memory
+     */
+    private static class Column {
+
+        private final int bytesPerValue;
+        private final int rowsPerChunkShift;
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+
+        Column(int bytesPerValue, int rowsPerChunkShift){
+            this.bytesPerValue = bytesPerValue;
+            this.rowsPerChunkShift = rowsPerChunkShift;
+        }
+
+        void putLong(long row, long value){
+            chunkForWrite(row).putLong(offset(row), value);
+        }
+
+        void putInt(long row, int value){
+            chunkForWrite(row).putInt(offset(row), value);
+        }
+
+        void putByte(long row, byte value){
+            chunkForWrite(row).put(offset(row), value);
+        }
+
+        long getLong(long row){
+            return chunks.get(chunk(row)).getLong(offset(row));
+        }
+
+        int getInt(long row){
+            return chunks.get(chunk(row)).getInt(offset(row));
+        }
+
+        byte getByte(long row){
+            return chunks.get(chunk(row)).get(offset(row));
+        }
+
+        private ByteBuffer chunkForWrite(long row){
+
+            int chunk = chunk(row);
+
+            while(chunk >= chunks.size()){
+                chunks.add(ByteBuffer.allocateDirect((1 << rowsPerChunkShift) * bytesPerValue).order(ByteOrder.nativeOrder()));
+            }
+            return chunks.get(chunk);
+        }
+
+        private int chunk(long row){
+            return (int) (row >>> rowsPerChunkShift);
+        }
+
+        private int offset(long row){
+            return (int) (row & ((1 << rowsPerChunkShift) - 1)) * bytesPerValue;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.Operations;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs DY, PE, T, VWSP and GBCE requests away from the thread that received them,
+ * so whoever is receiving requests, such as the command line or the server, is never held up
+ * by the requests themselves
+ *
+ * Each request runs on its own virtual thread, so requests waiting on locks or I/O do not hold up a platform thread.
+ *
+ * The number of requests waiting or running is limited. Once the limit is reached, dispatch
+ * waits for a request to finish, and tryDispatch returns null so the caller can stop taking requests.
+ *
+ * How long each request takes to run is recorded in the OperationMetrics given, if any,
+ * and each request is logged with its result to the OperationEventLog given, if any.
+ */
+class OperationDispatcher implements Closeable {
+
+    static final int DEFAULT_MAXIMUM_PENDING_REQUESTS = 10_000;
+
+    private final StockTradeHistory stockTradeHistory;
+    private final VolumeWeightedStockPriceAggregator volumeWeightedStockPriceAggregator;
+    private final GBCEAllShareIndex gbceAllShareIndex;
+    private final StockCalculationCache stockCalculationCache;
+    private final OperationMetrics operationMetrics;
+    private final OperationEventLog operationEventLog;
+
+    private final ExecutorService executorService;
+    private final Semaphore pendingRequests;
+
+    OperationDispatcher(StockTradeHistory stockTradeHistory, VolumeWeightedStockPriceAggregator volumeWeightedStockPriceAggregator,
+                        GBCEAllShareIndex gbceAllShareIndex){
+        this(stockTradeHistory, volumeWeightedStockPriceAggregator, gbceAllShareIndex, DEFAULT_MAXIMUM_PENDING_REQUESTS);
+    }
+
+    OperationDispatcher(StockTradeHistory stockTradeHistory, VolumeWeightedStockPriceAggregator volumeWeightedStockPriceAggregator,
+                        GBCEAllShareIndex gbceAllShareIndex, int maximumPendingRequests){
+        this(stockTradeHistory, volumeWeightedStockPriceAggregator, gbceAllShareIndex, new ReferenceDataRegistry(), maximumPendingRequests);
+    }
+
+    /**
+     * @param stockTradeHistory history that trades are added to
+     * @param volumeWeightedStockPriceAggregator rolling Volume Weighted Stock Price for all Stocks, registered with the history
+     * @param gbceAllShareIndex GBCE All Share Index, registered with the history
+     * @param referenceDataRegistry reference data used by DY and PE requests, whose results are cached
+     * @param maximumPendingRequests most requests that can be waiting or running at once
+     */
+    OperationDispatcher(StockTradeHistory stockTradeHistory, VolumeWeightedStockPriceAggregator volumeWeightedStockPriceAggregator,
+                        GBCEAllShareIndex gbceAllShareIndex, ReferenceDataRegistry referenceDataRegistry, int maximumPendingRequests){
+        this(stockTradeHistory, volumeWeightedStockPriceAggregator, gbceAllShareIndex, referenceDataRegistry, OperationMetrics.disabled(), maximumPendingRequests);
+    }
+
+    /**
+     * @param stockTradeHistory history that trades are added to
+     * @param volumeWeightedStockPriceAggregator rolling Volume Weighted Stock Price for all Stocks, registered with the history
+     * @param gbceAllShareIndex GBCE All Share Index, registered with the history
+     * @param referenceDataRegistry reference data used by DY and PE requests, whose results are cached
+     * @param operationMetrics records how long each request takes to run, and watches the history and cache
+     * @param maximumPendingRequests most requests that can be waiting or running at once
+     */
+    OperationDispatcher(StockTradeHistory stockTradeHistory, VolumeWeightedStockPriceAggregator volumeWeightedStockPriceAggregator,
+                        GBCEAllShareIndex gbceAllShareIndex, ReferenceDataRegistry referenceDataRegistry, OperationMetrics operationMetrics,
+                        int maximumPendingRequests){
+        this(stockTradeHistory, volumeWeightedStockPriceAggregator, gbceAllShareIndex, referenceDataRegistry, operationMetrics,
+                OperationEventLog.disabled(), maximumPendingRequests);
+    }
+
+    /**
+     * @param stockTradeHistory history that trades are added to
+     * @param volumeWeightedStockPriceAggregator rolling Volume Weighted Stock Price for all Stocks, registered with the history
+     * @param gbceAllShareIndex GBCE All Share Index, registered with the history
+     * @param referenceDataRegistry reference data used by DY and PE requests, whose results are cached
+     * @param operationMetrics records how long each request takes to run, and watches the history and cache
+     * @param operationEventLog logs each request once it has run
+     * @param maximumPendingRequests most requests that can be waiting or running at once
+     */
+    OperationDispatcher(StockTradeHistory stockTradeHistory, VolumeWeightedStockPriceAggregator volumeWeightedStockPriceAggregator,
+                        GBCEAllShareIndex gbceAllShareIndex, ReferenceDataRegistry referenceDataRegistry, OperationMetrics operationMetrics,
+                        OperationEventLog operationEventLog, int maximumPendingRequests){
+
+        this.stockTradeHistory = stockTradeHistory;
+        this.volumeWeightedStockPriceAggregator = volumeWeightedStockPriceAggregator;
+        this.gbceAllShareIndex = gbceAllShareIndex;
+        this.stockCalculationCache = new StockCalculationCache(referenceDataRegistry, StockCalculationCache.DEFAULT_MAXIMUM_SIZE);
+        this.operationMetrics = operationMetrics;
+        this.operationEventLog = operationEventLog;
+
+        operationMetrics.watch(stockTradeHistory, stockCalculationCache);
+
+        pendingRequests = new Semaphore(maximumPendingRequests);
+
+        executorService = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * @return clock trades should be timestamped by, the one the Volume Weighted Stock Price window is measured by
+     */
+    TradeClock getTradeClock(){
+        return volumeWeightedStockPriceAggregator.getTradeClock();
+    }
+
+    /**
+     * @return cache of DY and PE results, for its hit and miss counts
+     */
+    StockCalculationCache getStockCalculationCache(){
+        return stockCalculationCache;
+    }
+
+    /**
+     * Runs the request, first waiting for another request to finish if the limit of pending requests has been reached
+     *
+     * @param operationRequest request to run
+     * @return completes with the result of the calculation, or null for a trade once it has been recorded,
+     *         or completes exceptionally with a SuperSimpleStocksException if the request could not be run
+     */
+    CompletableFuture<BigDecimal> dispatch(OperationRequest operationRequest){
+
+        try {
+            pendingRequests.acquire();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            CompletableFuture<BigDecimal> interrupted = new CompletableFuture<>();
+            interrupted.completeExceptionally(new SuperSimpleStocksException("Interrupted while waiting to run " + operationRequest.getOperation()));
+            return interrupted;
+        }
+        return submit(operationRequest);
+    }
+
+    /**
+     * Runs the request, unless the limit of pending requests has been reached
+     *
+     * @param operationRequest request to run
+     * @return as for dispatch, or null if the request was not run
+     */
+    CompletableFuture<BigDecimal> tryDispatch(OperationRequest operationRequest){
+        return pendingRequests.tryAcquire() ? submit(operationRequest) : null;
+    }
+
+    /**
+     * Stops taking requests, waiting briefly for requests already taken to finish
+     */
+    @Override
+    public void close(){
+
+        executorService.shutdown();
+
+        try {
+            executorService.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<BigDecimal> submit(OperationRequest operationRequest){
+
+        CompletableFuture<BigDecimal> result = new CompletableFuture<>();
+
+        try {
+            executorService.execute(() -> {
+                long startTime = operationMetrics.startTime();
+                try {
+                    BigDecimal value = run(operationRequest);
+                    operationMetrics.record(operationRequest.getOperation(), startTime, false);
+                    logEvent(operationRequest, value, false);
+                    result.complete(value);
+                } catch (SuperSimpleStocksException | RuntimeException e){
+                    operationMetrics.record(operationRequest.getOperation(), startTime, true);
+                    logEvent(operationRequest, null, true);
+                    result.completeExceptionally(e);
+                } finally {
+                    pendingRequests.release();
+                }
+            });
+        } catch (RuntimeException e){
+            //Rejected as the dispatcher has been closed
+            pendingRequests.release();
+            result.completeExceptionally(new SuperSimpleStocksException("Unable to run " + operationRequest.getOperation() + " as the dispatcher is closed"));
+        }
+        return result;
+    }
+
+    private void logEvent(OperationRequest operationRequest, BigDecimal value, boolean failed){
+
+        if(operationEventLog.isEnabled()){
+
+            //Trades are logged with their own timestamp, calculations with when they ran
+            long timeStampEpochNanos = operationRequest.getOperation() == Operations.T
+                    ? operationRequest.getTimeStampEpochNanos() : getTradeClock().currentEpochNanos();
+
+            operationEventLog.log(operationRequest.getOperation(), operationRequest.getSymbol(), operationRequest.getTransactionType(),
+                    timeStampEpochNanos, operationRequest.getQuantityInHundredths(), operationRequest.getPriceInPence(), value, failed);
+        }
+    }
+
+    private BigDecimal run(OperationRequest operationRequest) throws SuperSimpleStocksException {
+
+        switch(operationRequest.getOperation()){
+            case DY:
+                return stockCalculationCache.getDividendYield(operationRequest.getSymbol(), Math.toIntExact(operationRequest.getPriceInPence()));
+            case PE:
+                return stockCalculationCache.getPriceEarningsRatio(operationRequest.getSymbol(), Math.toIntExact(operationRequest.getPriceInPence()));
+            case T:
+                stockTradeHistory.addTrade(new StockTrade(operationRequest.getTransactionType(), operationRequest.getSymbol(),
+                        operationRequest.getTimeStampEpochNanos(), operationRequest.getQuantityInHundredths(), operationRequest.getPriceInPence()));
+                return null;
+            case VWSP:
+                return volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(operationRequest.getSymbol());
+            case GBCE:
+                return gbceAllShareIndex.getGBCE();
+            default:
+                throw new SuperSimpleStocksException("Operation " + operationRequest.getOperation() + " can not be dispatched");
+        }
+    }
+}
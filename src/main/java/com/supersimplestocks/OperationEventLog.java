@@ -0,0 +1,427 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.Operations;
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log of every request run by an OperationDispatcher, written by a background thread
+ * so that requests never wait for a file or the console
+ *
+ * Each request puts a fixed size event into a ring buffer of preallocated slots, which takes a few
+ * stores and creates no objects. A single thread takes events from the ring buffer in order and writes them
+ * as fixed size binary records to a channel, as a line of text to a print stream, or both.
+ * If the ring buffer is full the event is dropped and counted rather than holding up the request.
+ *
+ * Binary records are RECORD_SIZE bytes in BYTE_ORDER, laid out by the offsets below. Results are held
+ * in hundredths, as results are to 2 decimal places, or NO_RESULT for a trade or a request that failed.
+ *
+ * Stocks are recorded by their Stock Symbol id, which is only the order the Stocks were listed in by the process
+ * writing the log, so before the first event for each Stock a symbol definition record is written. It has
+ * SYMBOL_DEFINITION in place of the operation, the id, and the symbol in ASCII padded with zeros, and applies
+ * to the records after it, as a log appended to by several runs may use an id for different Stocks.
+ *
+ * Safe to log to from several threads at once.
+ */
+final class OperationEventLog implements Closeable {
+
+    static final int RECORD_SIZE = 48;
+    static final int SEQUENCE_OFFSET = 0;
+    static final int TIMESTAMP_OFFSET = 8;
+    static final int QUANTITY_OFFSET = 16;
+    static final int PRICE_OFFSET = 24;
+    static final int RESULT_OFFSET = 32;
+    static final int SYMBOL_OFFSET = 40;
+    static final int OPERATION_OFFSET = 44;
+    static final int TRANSACTION_TYPE_OFFSET = 45;
+    static final int FAILED_OFFSET = 46;
+    static final int SYMBOL_TEXT_OFFSET = 8;
+    static final int SYMBOL_TEXT_LENGTH = 16;
+
+    static final long NO_RESULT = Long.MIN_VALUE;
+    static final int NO_SYMBOL = -1;
+    static final byte NO_TRANSACTION_TYPE = -1;
+    static final byte SYMBOL_DEFINITION = -1;
+
+    static final int DEFAULT_CAPACITY = 1 << 14;
+
+    private static final int RECORDS_PER_WRITE = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final Operations[] OPERATIONS = Operations.values();
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+
+    private static final OperationEventLog DISABLED = new OperationEventLog();
+
+    private final boolean enabled;
+    private final int mask;
+
+    //One entry per slot in the ring buffer
+    private final long[] timeStamps;
+    private final long[] quantities;
+    private final long[] prices;
+    private final long[] results;
+    private final int[] symbolIds;
+    private final byte[] operations;
+    private final byte[] transactionTypes;
+    private final boolean[] failures;
+
+    //Sequence number plus one of the event last put in each slot, set once the event is complete
+    private final AtomicLongArray published;
+
+    private final AtomicLong nextSequence = new AtomicLong();
+    private volatile long writtenSequence;
+    private final LongAdder dropped = new LongAdder();
+
+    private final WritableByteChannel channel;
+    private final PrintStream printStream;
+    private final ByteBuffer records;
+    private final StringBuilder line = new StringBuilder();
+
+    //Whether a symbol definition record has been written for each Stock Symbol id, only used by the writer
+    private boolean[] definedSymbols = new boolean[0];
+
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile IOException writeFailure;
+
+    private OperationEventLog(){
+
+        enabled = false;
+        mask = 0;
+        timeStamps = quantities = prices = results = null;
+        symbolIds = null;
+        operations = transactionTypes = null;
+        failures = null;
+        published = null;
+        channel = null;
+        printStream = null;
+        records = null;
+        writer = null;
+    }
+
+    /**
+     * Starts the thread that writes the events
+     *
+     * @param capacity most events waiting to be written, must be a power of 2
+     * @param channel where to write binary records, or null
+     * @param printStream where to write a line of text for each event, or null
+     * @throws IllegalArgumentException if capacity is not a power of 2, or there is nowhere to write events
+     */
+    OperationEventLog(int capacity, WritableByteChannel channel, PrintStream printStream){
+
+        if(capacity < 1 || Integer.bitCount(capacity) != 1){
+            throw new IllegalArgumentException("Capacity must be a power of 2: " + capacity);
+        }
+
+        if(channel == null && printStream == null){
+            throw new IllegalArgumentException("Events must be written to a channel, a print stream or both");
+        }
+
+        enabled = true;
+        mask = capacity - 1;
+        timeStamps = new long[capacity];
+        quantities = new long[capacity];
+        prices = new long[capacity];
+        results = new long[capacity];
+        symbolIds = new int[capacity];
+        operations = new byte[capacity];
+        transactionTypes = new byte[capacity];
+        failures = new boolean[capacity];
+        published = new AtomicLongArray(capacity);
+
+        this.channel = channel;
+        this.printStream = printStream;
+        records = ByteBuffer.allocate(RECORDS_PER_WRITE * RECORD_SIZE).order(StockTradeJournal.BYTE_ORDER);
+
+        writer = new Thread(this::writeEvents, "operation-event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return log that logs nothing
+     */
+    static OperationEventLog disabled(){
+        return DISABLED;
+    }
+
+    boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * Logs a request that has run
+     *
+     * @param operation Operation requested
+     * @param symbol Stock Symbol requested, or null
+     * @param transactionType BUY or SELL for a trade, otherwise null
+     * @param timeStampEpochNanos time of the trade or of the calculation in nanoseconds since the epoch
+     * @param quantityInHundredths quantity of a trade, otherwise 0
+     * @param priceInPence trade price or market price, otherwise 0
+     * @param result result of a calculation, or null
+     * @param failed whether the request completed exceptionally
+     * @return whether the event was logged, false if disabled, closed or the ring buffer was full
+     */
+    boolean log(Operations operation, StockSymbol symbol, TransactionType transactionType, long timeStampEpochNanos,
+                long quantityInHundredths, long priceInPence, BigDecimal result, boolean failed){
+
+        if(!enabled || closed){
+            return false;
+        }
+
+        long sequence;
+
+        do {
+            sequence = nextSequence.get();
+
+            if(sequence - writtenSequence > mask){
+                dropped.increment();
+                return false;
+            }
+        } while(!nextSequence.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+
+        timeStamps[slot] = timeStampEpochNanos;
+        quantities[slot] = quantityInHundredths;
+        prices[slot] = priceInPence;
+        results[slot] = toHundredths(result);
+        symbolIds[slot] = symbol == null ? NO_SYMBOL : symbol.getId();
+        operations[slot] = (byte) operation.ordinal();
+        transactionTypes[slot] = transactionType == null ? NO_TRANSACTION_TYPE : (byte) transactionType.ordinal();
+        failures[slot] = failed;
+
+        //Publishes the stores above to the writer
+        published.set(slot, sequence + 1);
+
+        return true;
+    }
+
+    /**
+     * @return number of events dropped as the ring buffer was full
+     */
+    long getDropped(){
+        return dropped.sum();
+    }
+
+    /**
+     * Waits until every event logged so far has been written, for example so the command line
+     * can show a result before asking for the next Operation
+     */
+    void awaitWritten(){
+
+        if(!enabled){
+            return;
+        }
+
+        long sequence = nextSequence.get();
+
+        while(writtenSequence < sequence && writer.isAlive()){
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+        }
+    }
+
+    /**
+     * Stops taking events, waiting briefly for those already taken to be written, then closes the channel
+     *
+     * @throws IOException if an event could not be written or the channel could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+
+        if(!enabled || closed){
+            return;
+        }
+
+        closed = true;
+        LockSupport.unpark(writer);
+
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+
+        if(channel != null){
+            channel.close();
+        }
+
+        if(writeFailure != null){
+            throw writeFailure;
+        }
+    }
+
+    /**
+     * Runs on the writer thread, writing events in order until closed and every event taken has been written
+     */
+    private void writeEvents(){
+
+        long sequence = 0;
+
+        try {
+            while(true){
+
+                int slot = (int) sequence & mask;
+
+                if(published.get(slot) == sequence + 1){
+
+                    writeEvent(sequence, slot);
+                    sequence++;
+
+                    //Frees the slot for the next time round the ring buffer once the event is no longer needed
+                    if(!records.hasRemaining() || (sequence & (RECORDS_PER_WRITE - 1)) == 0){
+                        flush();
+                        writtenSequence = sequence;
+                    }
+                    continue;
+                }
+
+                flush();
+                writtenSequence = sequence;
+
+                if(closed && nextSequence.get() == sequence){
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        } catch (IOException e){
+            writeFailure = e;
+        }
+    }
+
+    private void writeEvent(long sequence, int slot) throws IOException {
+
+        if(channel != null){
+
+            if(symbolIds[slot] != NO_SYMBOL){
+                defineSymbol(symbolIds[slot]);
+            }
+
+            int position = records.position();
+
+            records.putLong(position + SEQUENCE_OFFSET, sequence);
+            records.putLong(position + TIMESTAMP_OFFSET, timeStamps[slot]);
+            records.putLong(position + QUANTITY_OFFSET, quantities[slot]);
+            records.putLong(position + PRICE_OFFSET, prices[slot]);
+            records.putLong(position + RESULT_OFFSET, results[slot]);
+            records.putInt(position + SYMBOL_OFFSET, symbolIds[slot]);
+            records.put(position + OPERATION_OFFSET, operations[slot]);
+            records.put(position + TRANSACTION_TYPE_OFFSET, transactionTypes[slot]);
+            records.put(position + FAILED_OFFSET, (byte) (failures[slot] ? 1 : 0));
+            records.position(position + RECORD_SIZE);
+        }
+
+        if(printStream != null){
+            printStream.println(formatEvent(slot));
+        }
+    }
+
+    /**
+     * Writes a symbol definition record for the Stock Symbol id, unless one has already been written
+     */
+    private void defineSymbol(int symbolId) throws IOException {
+
+        if(symbolId < definedSymbols.length && definedSymbols[symbolId]){
+            return;
+        }
+
+        if(symbolId >= definedSymbols.length){
+            definedSymbols = Arrays.copyOf(definedSymbols, Math.max(symbolId + 1, definedSymbols.length * 2));
+        }
+        definedSymbols[symbolId] = true;
+
+        //Leaves room for the event's record after the definition
+        if(records.remaining() < 2 * RECORD_SIZE){
+            flush();
+        }
+
+        int position = records.position();
+        String text = StockSymbol.forId(symbolId).getSymbol();
+
+        for(int i = 0; i < RECORD_SIZE; i++){
+            records.put(position + i, (byte) 0);
+        }
+        for(int i = 0; i < text.length() && i < SYMBOL_TEXT_LENGTH; i++){
+            records.put(position + SYMBOL_TEXT_OFFSET + i, (byte) text.charAt(i));
+        }
+        records.putInt(position + SYMBOL_OFFSET, symbolId);
+        records.put(position + OPERATION_OFFSET, SYMBOL_DEFINITION);
+        records.position(position + RECORD_SIZE);
+    }
+
+    /**
+     * @return the event as text, for example "T BUY GIN quantity 1.00 price 100 at 2017-06-05T10:15:30" or "DY GIN price 100 = 1.00"
+     */
+    private CharSequence formatEvent(int slot){
+
+        Operations operation = OPERATIONS[operations[slot]];
+
+        line.setLength(0);
+        line.append(operation);
+
+        if(transactionTypes[slot] != NO_TRANSACTION_TYPE){
+            line.append(' ').append(TRANSACTION_TYPES[transactionTypes[slot]]);
+        }
+
+        if(symbolIds[slot] != NO_SYMBOL){
+            line.append(' ').append(StockSymbol.forId(symbolIds[slot]));
+        }
+
+        if(operation == Operations.T){
+            line.append(" quantity ").append(FixedPointUtility.fromHundredths(quantities[slot]));
+        }
+
+        if(prices[slot] != 0){
+            line.append(" price ").append(prices[slot]);
+        }
+
+        if(operation == Operations.T){
+            line.append(" at ").append(FixedPointUtility.toLocalDateTime(timeStamps[slot]));
+        }
+
+        if(failures[slot]){
+            line.append(" failed");
+        }else if(results[slot] != NO_RESULT){
+            line.append(" = ").append(BigDecimal.valueOf(results[slot], FixedPointUtility.RESULT_SCALE));
+        }
+        return line;
+    }
+
+    private void flush() throws IOException {
+
+        if(channel != null && records.position() > 0){
+
+            records.flip();
+
+            while(records.hasRemaining()){
+                channel.write(records);
+            }
+            records.clear();
+        }
+    }
+
+    /**
+     * Converts a result to hundredths without creating any objects, which doubleValue does not for
+     * results to 2 decimal places of less than 2^52 hundredths, far larger than any price or index
+     *
+     * @return result in hundredths, or NO_RESULT if null
+     */
+    private static long toHundredths(BigDecimal result){
+        return result == null ? NO_RESULT : Math.round(result.doubleValue() * 100);
+    }
+}
@@ -0,0 +1,320 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.Operations;
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the requests run by an OperationDispatcher for each Operation, and how long they took to run
+ * in a LatencyHistogram, along with the size of the trade history and the DY and P/E cache hits and misses
+ *
+ * DY and PE requests are the cache's calls into CalculationUtility, and VWSP and GBCE requests are the rolling values
+ * kept for every trade, so between them the requests time each calculation the application makes as well as adding trades.
+ *
+ * The results can be registered with the platform MBeanServer to be read through JMX, for example with jconsole,
+ * and printed as text every so often. Disabled metrics, which the dispatcher uses unless given others,
+ * record nothing, costing a check of a final field per request.
+ *
+ * Safe to use from several threads at once.
+ */
+final class OperationMetrics implements Closeable {
+
+    private static final OperationMetrics DISABLED = new OperationMetrics(false);
+
+    private static final String DOMAIN = "com.supersimplestocks";
+
+    private final boolean enabled;
+    private final OperationStatistics[] operationStatistics;
+    private final StockTradeStore stockTradeStore = new StockTradeStore();
+
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+    private ScheduledExecutorService reporter;
+
+    OperationMetrics(){
+        this(true);
+    }
+
+    private OperationMetrics(boolean enabled){
+
+        this.enabled = enabled;
+
+        Operations[] operations = Operations.values();
+        operationStatistics = new OperationStatistics[operations.length];
+
+        for(Operations operation : operations){
+            operationStatistics[operation.ordinal()] = new OperationStatistics();
+        }
+    }
+
+    /**
+     * @return metrics that record nothing
+     */
+    static OperationMetrics disabled(){
+        return DISABLED;
+    }
+
+    boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * @return time to pass to record once the request has run, or 0 if disabled
+     */
+    long startTime(){
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Counts a request that has run
+     *
+     * @param operation Operation requested
+     * @param startTime as returned by startTime before the request was run
+     * @param failed whether the request completed exceptionally
+     */
+    void record(Operations operation, long startTime, boolean failed){
+
+        if(enabled){
+            operationStatistics[operation.ordinal()].record(System.nanoTime() - startTime, failed);
+        }
+    }
+
+    /**
+     * Reports the size of the given trade history and the hits and misses of the given cache from now on
+     *
+     * @param stockTradeHistory history the dispatcher adds trades to
+     * @param stockCalculationCache cache the dispatcher gets DY and PE results from
+     */
+    void watch(StockTradeHistory stockTradeHistory, StockCalculationCache stockCalculationCache){
+
+        if(enabled){
+            stockTradeStore.stockTradeHistory = stockTradeHistory;
+            stockTradeStore.stockCalculationCache = stockCalculationCache;
+        }
+    }
+
+    OperationStatisticsMXBean getOperationStatistics(Operations operation){
+        return operationStatistics[operation.ordinal()];
+    }
+
+    StockTradeStoreMXBean getStockTradeStore(){
+        return stockTradeStore;
+    }
+
+    /**
+     * Registers the statistics for each Operation that is dispatched, and for the trade store, with the platform MBeanServer
+     *
+     * @throws SuperSimpleStocksException if they could not be registered, for example if other metrics already are
+     */
+    synchronized void registerMBeans() throws SuperSimpleStocksException {
+
+        if(!enabled || !registeredNames.isEmpty()){
+            return;
+        }
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            for(Operations operation : Operations.values()){
+
+                if(operation != Operations.Q){
+                    registeredNames.add(mBeanServer.registerMBean(operationStatistics[operation.ordinal()],
+                            new ObjectName(DOMAIN + ":type=Operation,name=" + operation)).getObjectName());
+                }
+            }
+            registeredNames.add(mBeanServer.registerMBean(stockTradeStore, new ObjectName(DOMAIN + ":type=StockTradeStore")).getObjectName());
+        } catch (JMException e){
+            unregisterMBeans();
+            throw new SuperSimpleStocksException("Unable to register metrics with JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints the report to the given stream every period until closed
+     *
+     * @param printStream where to print the report
+     * @param period time between reports
+     * @param timeUnit unit of the period
+     */
+    synchronized void startReporting(PrintStream printStream, long period, TimeUnit timeUnit){
+
+        if(!enabled || reporter != null){
+            return;
+        }
+
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "operation-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> printStream.print(report()), period, period, timeUnit);
+    }
+
+    /**
+     * @return counts and latencies in microseconds for each Operation that has been requested,
+     *         followed by the size of the trade history and the cache hits and misses, one per line
+     */
+    String report(){
+
+        StringBuilder report = new StringBuilder();
+
+        report.append(String.format("%-5s %10s %8s %10s %10s %10s %10s %10s %10s%n",
+                "Op", "Count", "Failed", "Mean us", "p50 us", "p90 us", "p99 us", "p99.9 us", "Max us"));
+
+        for(Operations operation : Operations.values()){
+
+            OperationStatistics statistics = operationStatistics[operation.ordinal()];
+            long count = statistics.getCount();
+
+            if(count > 0){
+                report.append(String.format("%-5s %10d %8d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", operation, count, statistics.getFailures(),
+                        statistics.getMeanNanos() / 1000, statistics.getMedianNanos() / 1000.0, statistics.get90thPercentileNanos() / 1000.0,
+                        statistics.get99thPercentileNanos() / 1000.0, statistics.get999thPercentileNanos() / 1000.0, statistics.getMaximumNanos() / 1000.0));
+            }
+        }
+
+        report.append("Trades held: ").append(stockTradeStore.getNumberOfTradesHeld())
+                .append(", Stocks: ").append(stockTradeStore.getNumberOfStocks())
+                .append(", DY and PE cache hits: ").append(stockTradeStore.getCacheHits())
+                .append(", misses: ").append(stockTradeStore.getCacheMisses())
+                .append(", evictions: ").append(stockTradeStore.getCacheEvictions())
+                .append(System.lineSeparator());
+
+        return report.toString();
+    }
+
+    /**
+     * Stops reporting and unregisters from the platform MBeanServer
+     */
+    @Override
+    public synchronized void close(){
+
+        if(reporter != null){
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        unregisterMBeans();
+    }
+
+    private void unregisterMBeans(){
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        for(ObjectName registeredName : registeredNames){
+            try {
+                mBeanServer.unregisterMBean(registeredName);
+            } catch (JMException e){
+                //Already unregistered
+            }
+        }
+        registeredNames.clear();
+    }
+
+    private static class OperationStatistics implements OperationStatisticsMXBean {
+
+        private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+
+        void record(long nanos, boolean failed){
+
+            latencyHistogram.record(nanos);
+
+            if(failed){
+                failures.increment();
+            }
+        }
+
+        @Override
+        public long getCount() {
+            return latencyHistogram.getCount();
+        }
+
+        @Override
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        @Override
+        public double getMeanNanos() {
+            return latencyHistogram.getMeanNanos();
+        }
+
+        @Override
+        public long getMedianNanos() {
+            return latencyHistogram.getValueAtPercentile(50);
+        }
+
+        @Override
+        public long get90thPercentileNanos() {
+            return latencyHistogram.getValueAtPercentile(90);
+        }
+
+        @Override
+        public long get99thPercentileNanos() {
+            return latencyHistogram.getValueAtPercentile(99);
+        }
+
+        @Override
+        public long get999thPercentileNanos() {
+            return latencyHistogram.getValueAtPercentile(99.9);
+        }
+
+        @Override
+        public long getMaximumNanos() {
+            return latencyHistogram.getMaximumNanos();
+        }
+
+        @Override
+        public void reset() {
+            latencyHistogram.reset();
+            failures.reset();
+        }
+    }
+
+    private static class StockTradeStore implements StockTradeStoreMXBean {
+
+        private volatile StockTradeHistory stockTradeHistory;
+        private volatile StockCalculationCache stockCalculationCache;
+
+        @Override
+        public long getNumberOfTradesHeld() {
+            StockTradeHistory history = stockTradeHistory;
+            return history == null ? 0 : history.getNumberOfTradesHeld();
+        }
+
+        @Override
+        public int getNumberOfStocks() {
+            return StockSymbol.count();
+        }
+
+        @Override
+        public long getCacheHits() {
+            StockCalculationCache cache = stockCalculationCache;
+            return cache == null ? 0 : cache.getHits();
+        }
+
+        @Override
+        public long getCacheMisses() {
+            StockCalculationCache cache = stockCalculationCache;
+            return cache == null ? 0 : cache.getMisses();
+        }
+
+        @Override
+        public long getCacheEvictions() {
+            StockCalculationCache cache = stockCalculationCache;
+            return cache == null ? 0 : cache.getEvictions();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.Operations;
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+
+/**
+ * A request for one of the Operations, holding the values the user or client gave for it
+ *
+ * Trades are given their timestamp when the request is created, so a trade
+ * is timed from when it was received rather than from when it was run.
+ */
+final class OperationRequest {
+
+    private final Operations operation;
+    private final StockSymbol symbol;
+    private final TransactionType transactionType;
+    private final long timeStampEpochNanos;
+    private final long quantityInHundredths;
+    private final long priceInPence;
+
+    private OperationRequest(Operations operation, StockSymbol symbol, TransactionType transactionType,
+                             long timeStampEpochNanos, long quantityInHundredths, long priceInPence){
+        this.operation = operation;
+        this.symbol = symbol;
+        this.transactionType = transactionType;
+        this.timeStampEpochNanos = timeStampEpochNanos;
+        this.quantityInHundredths = quantityInHundredths;
+        this.priceInPence = priceInPence;
+    }
+
+    static OperationRequest dividendYield(StockSymbol symbol, int marketPrice){
+        return new OperationRequest(Operations.DY, symbol, null, 0, 0, marketPrice);
+    }
+
+    static OperationRequest priceEarningsRatio(StockSymbol symbol, int marketPrice){
+        return new OperationRequest(Operations.PE, symbol, null, 0, 0, marketPrice);
+    }
+
+    static OperationRequest trade(StockSymbol symbol, TransactionType transactionType, long quantityInHundredths, long tradePriceInPence){
+        return trade(symbol, transactionType, quantityInHundredths, tradePriceInPence, TradeClock.system());
+    }
+
+    /**
+     * @param tradeClock clock to timestamp the trade by, which should be the one its Volume Weighted Stock Price window is measured by
+     */
+    static OperationRequest trade(StockSymbol symbol, TransactionType transactionType, long quantityInHundredths, long tradePriceInPence,
+                                  TradeClock tradeClock){
+        return new OperationRequest(Operations.T, symbol, transactionType, tradeClock.currentEpochNanos(), quantityInHundredths, tradePriceInPence);
+    }
+
+    static OperationRequest volumeWeightedStockPrice(StockSymbol symbol){
+        return new OperationRequest(Operations.VWSP, symbol, null, 0, 0, 0);
+    }
+
+    static OperationRequest gbce(){
+        return new OperationRequest(Operations.GBCE, null, null, 0, 0, 0);
+    }
+
+    Operations getOperation(){
+        return operation;
+    }
+
+    StockSymbol getSymbol(){
+        return symbol;
+    }
+
+    TransactionType getTransactionType(){
+        return transactionType;
+    }
+
+    /**
+     * @return timestamp of a trade in nanoseconds since the epoch
+     */
+    long getTimeStampEpochNanos(){
+        return timeStampEpochNanos;
+    }
+
+    long getQuantityInHundredths(){
+        return quantityInHundredths;
+    }
+
+    /**
+     * @return market price for DY and PE, or trade price for a trade, in pence
+     */
+    long getPriceInPence(){
+        return priceInPence;
+    }
+}
@@ -0,0 +1,35 @@
+package com.supersimplestocks;
+
+/**
+ * Counts and latencies of one Operation run by the OperationDispatcher, as seen through JMX,
+ * registered as com.supersimplestocks:type=Operation,name= followed by the operation code
+ *
+ * Public only because JMX requires it. Latencies are how long the request took to run,
+ * not counting the time it waited to start.
+ */
+public interface OperationStatisticsMXBean {
+
+    long getCount();
+
+    /**
+     * @return number of requests that completed exceptionally
+     */
+    long getFailures();
+
+    double getMeanNanos();
+
+    long getMedianNanos();
+
+    long get90thPercentileNanos();
+
+    long get99thPercentileNanos();
+
+    long get999thPercentileNanos();
+
+    long getMaximumNanos();
+
+    /**
+     * Clears the counts and latencies, for example at the start of a test run
+     */
+    void reset();
+}
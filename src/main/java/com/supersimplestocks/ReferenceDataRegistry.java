@@ -0,0 +1,265 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockData;
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.StockType;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the reference data for every listed Stock, looked up in constant time by Stock Symbol
+ *
+ * The reference data is an array indexed by the Stock Symbol's id. It is never changed once
+ * published: loading a new universe or changing a Stock's dividend or par value builds a new array
+ * and swaps it in atomically, so calculations running at the time see either the old or the new values,
+ * never a mixture, and lookups never lock.
+ *
+ * Symbols entered as text are looked up with StockSymbol.findStockSymbol, which is case insensitive
+ * and does not create any objects.
+ *
+ * A reference data file has one Stock per line as symbol,type,last dividend,fixed dividend,par value,
+ * with dividends and par values in pence and the fixed dividend as a percentage such as 2% or a fraction
+ * such as 0.02, which must be left empty for COMMON Stocks. An optional header line and lines starting with # are skipped.
+ *
+ * Symbols in a file that are not listed yet are listed once the whole file has been read without errors,
+ * in the order they appear, so the file sets the universe of Stocks. The trade journal, the event log and
+ * the server's clients all identify Stocks by symbol as well as id, so Stocks can be listed in any order.
+ */
+class ReferenceDataRegistry {
+
+    private final AtomicReference<StockReferenceData[]> stockReferenceData;
+
+    /**
+     * Creates a registry holding the sample StockData
+     */
+    ReferenceDataRegistry(){
+        this(sampleStockData());
+    }
+
+    /**
+     * @param stockReferenceData reference data for every listed Stock
+     * @throws IllegalArgumentException if a Stock is given more than once
+     */
+    ReferenceDataRegistry(Collection<StockReferenceData> stockReferenceData){
+        this.stockReferenceData = new AtomicReference<>(toTable(stockReferenceData));
+    }
+
+    /**
+     * Creates a registry holding the Stocks listed in a reference data file
+     *
+     * @param referenceDataFile file to load
+     * @return registry holding the Stocks in the file
+     * @throws IOException if the file can not be read
+     * @throws SuperSimpleStocksException if a line of the file is not valid reference data
+     */
+    static ReferenceDataRegistry load(Path referenceDataFile) throws IOException, SuperSimpleStocksException {
+        return new ReferenceDataRegistry(read(referenceDataFile));
+    }
+
+    /**
+     * @param symbol Stock Symbol
+     * @return reference data for the Stock
+     * @throws SuperSimpleStocksException if the Stock is not listed
+     */
+    StockReferenceData getStockReferenceData(StockSymbol symbol) throws SuperSimpleStocksException {
+
+        StockReferenceData[] current = stockReferenceData.get();
+        StockReferenceData stockData = symbol.getId() < current.length ? current[symbol.getId()] : null;
+
+        if(stockData == null){
+            throw new SuperSimpleStocksException("No Stock Data found for symbol " + symbol);
+        }
+        return stockData;
+    }
+
+    /**
+     * @param symbol Stock Symbol entered as text, in any case
+     * @return reference data for the Stock, or null if the Stock is not listed
+     */
+    StockReferenceData findStockReferenceData(CharSequence symbol){
+
+        StockSymbol stockSymbol = StockSymbol.findStockSymbol(symbol);
+        StockReferenceData[] current = stockReferenceData.get();
+
+        return stockSymbol == null || stockSymbol.getId() >= current.length ? null : current[stockSymbol.getId()];
+    }
+
+    /**
+     * Replaces the whole universe of Stocks with those in a reference data file.
+     * Nothing is replaced if the file can not be loaded.
+     *
+     * @param referenceDataFile file to load
+     * @throws IOException if the file can not be read
+     * @throws SuperSimpleStocksException if a line of the file is not valid reference data
+     */
+    void reload(Path referenceDataFile) throws IOException, SuperSimpleStocksException {
+        stockReferenceData.set(toTable(read(referenceDataFile)));
+    }
+
+    /**
+     * Changes the dividends and par value of a listed Stock, keeping its Stock Type
+     *
+     * @param symbol Stock Symbol
+     * @param lastDividend new last dividend in pence
+     * @param fixedDividend new fixed dividend as a fraction, or null if the Stock is not PREFERRED
+     * @param parValue new par value in pence
+     * @throws SuperSimpleStocksException if the Stock is not listed, or if the fixed dividend does not suit its Stock Type
+     */
+    void update(StockSymbol symbol, int lastDividend, BigDecimal fixedDividend, int parValue) throws SuperSimpleStocksException {
+
+        while(true){
+
+            StockReferenceData[] current = stockReferenceData.get();
+            StockReferenceData stockData = symbol.getId() < current.length ? current[symbol.getId()] : null;
+
+            if(stockData == null){
+                throw new SuperSimpleStocksException("No Stock Data found for symbol " + symbol);
+            }
+
+            StockReferenceData[] updated = current.clone();
+            updated[symbol.getId()] = new StockReferenceData(symbol, stockData.getType(), lastDividend, fixedDividend, parValue);
+
+            //Another update may have been swapped in since this one started, in which case apply this one to it
+            if(stockReferenceData.compareAndSet(current, updated)){
+                return;
+            }
+        }
+    }
+
+    private static List<StockReferenceData> sampleStockData(){
+
+        List<StockReferenceData> sampleStockData = new ArrayList<>();
+
+        for(StockData stockData : StockData.values()){
+            sampleStockData.add(StockReferenceData.of(stockData));
+        }
+        return sampleStockData;
+    }
+
+    private static StockReferenceData[] toTable(Collection<StockReferenceData> stockReferenceData){
+
+        StockReferenceData[] table = new StockReferenceData[StockSymbol.count()];
+
+        for(StockReferenceData stockData : stockReferenceData){
+
+            if(table[stockData.getSymbol().getId()] != null){
+                throw new IllegalArgumentException("Stock " + stockData.getSymbol() + " is given more than once");
+            }
+            table[stockData.getSymbol().getId()] = stockData;
+        }
+        return table;
+    }
+
+    private static List<StockReferenceData> read(Path referenceDataFile) throws IOException, SuperSimpleStocksException {
+
+        List<ReferenceDataLine> referenceDataLines = new ArrayList<>();
+        Set<String> symbols = new HashSet<>();
+
+        try(BufferedReader reader = Files.newBufferedReader(referenceDataFile, StandardCharsets.UTF_8)){
+
+            String line;
+            int lineNumber = 0;
+
+            while((line = reader.readLine()) != null){
+
+                lineNumber++;
+                line = line.trim();
+
+                if(line.isEmpty() || line.startsWith("#") || (lineNumber == 1 && line.regionMatches(true, 0, "symbol,", 0, 7))){
+                    continue;
+                }
+
+                ReferenceDataLine referenceDataLine = parse(line, lineNumber);
+
+                if(!symbols.add(referenceDataLine.symbol.toUpperCase(Locale.ROOT))){
+                    throw new SuperSimpleStocksException("Invalid reference data at line " + lineNumber + ": " + referenceDataLine.symbol + " is listed more than once");
+                }
+                referenceDataLines.add(referenceDataLine);
+            }
+        }
+
+        //Only list new symbols once the whole file is known to be valid
+        List<StockReferenceData> stockReferenceData = new ArrayList<>(referenceDataLines.size());
+
+        for(ReferenceDataLine referenceDataLine : referenceDataLines){
+            stockReferenceData.add(new StockReferenceData(StockSymbol.intern(referenceDataLine.symbol), referenceDataLine.type,
+                    referenceDataLine.lastDividend, referenceDataLine.fixedDividend, referenceDataLine.parValue));
+        }
+        return stockReferenceData;
+    }
+
+    private static ReferenceDataLine parse(String line, int lineNumber) throws SuperSimpleStocksException {
+
+        String[] fields = line.split(",", -1);
+
+        if(fields.length != 5){
+            throw new SuperSimpleStocksException("Invalid reference data at line " + lineNumber + ": " + line);
+        }
+
+        String symbol = fields[0].trim();
+
+        if(!StockSymbol.isValidSymbol(symbol)){
+            throw new SuperSimpleStocksException("Invalid reference data at line " + lineNumber + ": invalid Stock Symbol " + symbol);
+        }
+
+        try {
+            StockType type = StockType.valueOf(fields[1].trim().toUpperCase(Locale.ROOT));
+            int lastDividend = Integer.parseInt(fields[2].trim());
+            String fixedDividendField = fields[3].trim();
+            int parValue = Integer.parseInt(fields[4].trim());
+
+            BigDecimal fixedDividend = null;
+
+            if(fixedDividendField.endsWith("%")){
+                fixedDividend = new BigDecimal(fixedDividendField.substring(0, fixedDividendField.length() - 1).trim()).movePointLeft(2);
+            }else if(!fixedDividendField.isEmpty()){
+                fixedDividend = new BigDecimal(fixedDividendField);
+            }
+
+            //Checked here as well as when the reference data is created, so no new symbol is listed from a file with an error in it
+            try {
+                StockReferenceData.validate(type, fixedDividend, parValue);
+            } catch (SuperSimpleStocksException e){
+                throw new SuperSimpleStocksException("Invalid reference data at line " + lineNumber + ": " + e.getMessage());
+            }
+
+            return new ReferenceDataLine(symbol, type, lastDividend, fixedDividend, parValue);
+
+        } catch (IllegalArgumentException | ArithmeticException e){
+            throw new SuperSimpleStocksException("Invalid reference data at line " + lineNumber + ": " + line);
+        }
+    }
+
+    /**
+     * Values read from a line of a reference data file, before its symbol is listed
+     */
+    private static class ReferenceDataLine {
+
+        final String symbol;
+        final StockType type;
+        final int lastDividend;
+        final BigDecimal fixedDividend;
+        final int parValue;
+
+        ReferenceDataLine(String symbol, StockType type, int lastDividend, BigDecimal fixedDividend, int parValue){
+            this.symbol = symbol;
+            this.type = type;
+            this.lastDividend = lastDividend;
+            this.fixedDividend = fixedDividend;
+            this.parValue = parValue;
+        }
+    }
+}
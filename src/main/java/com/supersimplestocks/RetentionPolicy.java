@@ -0,0 +1,99 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Which trades a StockTradeHistory keeps for each Stock, by their age, their number,
+ * or the memory they take up
+ *
+ * Policies can be combined with and, keeping only the trades that every policy would keep.
+ * Ages are measured back from the latest trade for the Stock rather than from the current time,
+ * so trades replayed or imported from the past are kept the same way as live trades.
+ */
+final class RetentionPolicy {
+
+    /**
+     * Approximate heap used by a trade held in a StockTradeHistory: the StockTrade object, and its slot
+     * in the partition's arrays of trades, timestamps and running sums, allowing for the arrays having
+     * up to half as many slots again free
+     */
+    static final long BYTES_PER_TRADE = 128;
+
+    private static final RetentionPolicy KEEP_ALL = new RetentionPolicy(Long.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final long maximumAgeNanos;
+    private final int maximumTradesPerStock;
+
+    private RetentionPolicy(long maximumAgeNanos, int maximumTradesPerStock){
+        this.maximumAgeNanos = maximumAgeNanos;
+        this.maximumTradesPerStock = maximumTradesPerStock;
+    }
+
+    /**
+     * @return policy that never evicts trades
+     */
+    static RetentionPolicy keepAll(){
+        return KEEP_ALL;
+    }
+
+    /**
+     * @param age how long to keep trades for, counted back from the latest trade for the Stock,
+     *            which should be at least the largest window any calculation uses
+     * @param unit unit of the age
+     * @return policy that evicts trades older than the age given
+     */
+    static RetentionPolicy keepFor(long age, TimeUnit unit){
+
+        if(age < 0){
+            throw new IllegalArgumentException("Age to keep trades for must not be negative");
+        }
+        return new RetentionPolicy(unit.toNanos(age), Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maximumTradesPerStock number of latest trades to keep for each Stock
+     * @return policy that evicts the oldest trades for a Stock once it has more than the number given
+     */
+    static RetentionPolicy keepLatest(int maximumTradesPerStock){
+
+        if(maximumTradesPerStock < 1){
+            throw new IllegalArgumentException("Number of trades to keep must be at least 1");
+        }
+        return new RetentionPolicy(Long.MAX_VALUE, maximumTradesPerStock);
+    }
+
+    /**
+     * @param bytes heap to allow for trades, shared equally between the Stocks listed when the policy is created,
+     *              so the Stocks should be listed first
+     * @return policy that evicts the oldest trades for a Stock once they take up more than its share
+     */
+    static RetentionPolicy keepWithin(long bytes){
+
+        long maximumTradesPerStock = bytes / BYTES_PER_TRADE / StockSymbol.count();
+
+        return keepLatest((int) Math.max(1, Math.min(Integer.MAX_VALUE, maximumTradesPerStock)));
+    }
+
+    /**
+     * @param other policy to combine with this one
+     * @return policy that keeps only the trades both this and the other policy would keep
+     */
+    RetentionPolicy and(RetentionPolicy other){
+        return new RetentionPolicy(Math.min(maximumAgeNanos, other.maximumAgeNanos),
+                Math.min(maximumTradesPerStock, other.maximumTradesPerStock));
+    }
+
+    boolean keepsAll(){
+        return maximumAgeNanos == Long.MAX_VALUE && maximumTradesPerStock == Integer.MAX_VALUE;
+    }
+
+    long getMaximumAgeNanos(){
+        return maximumAgeNanos;
+    }
+
+    int getMaximumTradesPerStock(){
+        return maximumTradesPerStock;
+    }
+}
@@ -0,0 +1,65 @@
+package com.supersimplestocks;
+
+/**
+ * Sums over trades held in columns one trade at a time, which every JVM and CPU can run
+ *
+ * Also used by VectorTradeColumnKernels for the trades left over once it has summed
+ * as many as fill its vectors, and for sums it can not be sure will fit in a long.
+ */
+final class ScalarTradeColumnKernels extends TradeColumnKernels {
+
+    @Override
+    long countAfter(long[] timeStamps, int from, int to, long calculationTime) {
+
+        long numberOfTrades = 0;
+
+        for(int i = from; i < to; i++){
+            if(timeStamps[i] > calculationTime){
+                numberOfTrades++;
+            }
+        }
+        return numberOfTrades;
+    }
+
+    @Override
+    long sumQuantitiesAfter(long[] timeStamps, long[] quantities, int from, int to, long calculationTime) {
+
+        long totalQuantity = 0;
+
+        for(int i = from; i < to; i++){
+            if(timeStamps[i] > calculationTime){
+                totalQuantity = Math.addExact(totalQuantity, quantities[i]);
+            }
+        }
+        return totalQuantity;
+    }
+
+    @Override
+    long sumTradePricesMultipliedByQuantitiesAfter(long[] timeStamps, long[] quantities, long[] tradePrices, int from, int to, long calculationTime) {
+
+        long sumOfTradePriceMultipliedByQuantity = 0;
+
+        for(int i = from; i < to; i++){
+            if(timeStamps[i] > calculationTime){
+                sumOfTradePriceMultipliedByQuantity = Math.addExact(sumOfTradePriceMultipliedByQuantity, Math.multiplyExact(quantities[i], tradePrices[i]));
+            }
+        }
+        return sumOfTradePriceMultipliedByQuantity;
+    }
+
+    @Override
+    double sumLogTradePrices(long[] tradePrices, int from, int to) {
+
+        double sumOfLogTradePrices = 0;
+
+        for(int i = from; i < to; i++){
+            sumOfLogTradePrices += Math.log(tradePrices[i]);
+        }
+        return sumOfLogTradePrices;
+    }
+
+    @Override
+    public String toString(){
+        return "scalar";
+    }
+}
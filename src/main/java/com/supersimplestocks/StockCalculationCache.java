@@ -0,0 +1,224 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers Dividend Yields and P/E Ratios already calculated, by Stock and market price,
+ * so asking for the same Stock at the same price again is a lookup rather than a calculation
+ *
+ * Both are worked out from the Stock's reference data and the price alone. Each result is kept with the
+ * reference data it was calculated from, and is only used while the registry still holds that same reference data,
+ * so results are never stale once a Stock's dividends or par value are changed or the reference data is reloaded.
+ * Results found to be stale are counted as invalidations and calculated again.
+ *
+ * The cache holds at most the given number of results, evicting those used least recently once full.
+ * It is split into segments by key, each with its own lock and share of the maximum size, so calculations
+ * for different Stocks and prices seldom wait for each other. Calculations that fail are not cached.
+ *
+ * Safe to use from several threads at once.
+ */
+final class StockCalculationCache {
+
+    static final int DEFAULT_MAXIMUM_SIZE = 65_536;
+
+    private static final int SEGMENTS = 16; //Must be a power of 2
+
+    private final ReferenceDataRegistry referenceDataRegistry;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param referenceDataRegistry reference data the Dividend Yields and P/E Ratios are calculated from
+     * @param maximumSize most results to hold
+     * @throws IllegalArgumentException if the maximum size is less than 1
+     */
+    StockCalculationCache(ReferenceDataRegistry referenceDataRegistry, int maximumSize){
+
+        if(maximumSize < 1){
+            throw new IllegalArgumentException("Maximum size must be at least 1: " + maximumSize);
+        }
+
+        this.referenceDataRegistry = referenceDataRegistry;
+
+        //Share the maximum size out between the segments, the first ones taking any left over
+        for(int i = 0; i < SEGMENTS; i++){
+            segments[i] = new Segment(maximumSize / SEGMENTS + (i < maximumSize % SEGMENTS ? 1 : 0));
+        }
+    }
+
+    /**
+     * @param symbol Stock Symbol
+     * @param price market price in Pence
+     * @return Dividend Yield to 2 Decimal Places, as CalculationUtility.calculateDividendYield calculates it
+     * @throws SuperSimpleStocksException if the Stock is not listed or the price is 0
+     */
+    BigDecimal getDividendYield(StockSymbol symbol, int price) throws SuperSimpleStocksException {
+        return get(Calculation.DIVIDEND_YIELD, symbol, price);
+    }
+
+    /**
+     * @param symbol Stock Symbol
+     * @param price market price in Pence
+     * @return P/E Ratio to 2 Decimal Places, as CalculationUtility.calculatePriceEarningsRatio calculates it
+     * @throws SuperSimpleStocksException if the Stock is not listed or its last dividend is zero
+     */
+    BigDecimal getPriceEarningsRatio(StockSymbol symbol, int price) throws SuperSimpleStocksException {
+        return get(Calculation.PRICE_EARNINGS_RATIO, symbol, price);
+    }
+
+    /**
+     * Removes every result held, for example to free the memory they use
+     */
+    void clear(){
+        for(Segment segment : segments){
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return number of results held
+     */
+    int size(){
+
+        int size = 0;
+
+        for(Segment segment : segments){
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return number of results found in the cache and still valid
+     */
+    long getHits(){
+        return hits.sum();
+    }
+
+    /**
+     * @return number of results that had to be calculated, including those found to be stale
+     */
+    long getMisses(){
+        return misses.sum();
+    }
+
+    /**
+     * @return number of results removed to make room for others
+     */
+    long getEvictions(){
+        return evictions.sum();
+    }
+
+    /**
+     * @return number of results found to have been calculated from reference data that has since changed
+     */
+    long getInvalidations(){
+        return invalidations.sum();
+    }
+
+    private BigDecimal get(Calculation calculation, StockSymbol symbol, int price) throws SuperSimpleStocksException {
+
+        StockReferenceData stockData = referenceDataRegistry.getStockReferenceData(symbol);
+
+        //Stock id, which calculation, then the price
+        long key = (long) symbol.getId() << 33 | (long) calculation.ordinal() << 32 | (price & 0xFFFFFFFFL);
+        Segment segment = segments[segmentIndex(key)];
+
+        CachedResult cachedResult = segment.get(key);
+
+        if(cachedResult != null){
+
+            //Reference data is replaced rather than changed, so the same instance means the same values
+            if(cachedResult.stockData == stockData){
+                hits.increment();
+                return cachedResult.result;
+            }
+            invalidations.increment();
+        }
+
+        misses.increment();
+
+        BigDecimal result = calculation == Calculation.DIVIDEND_YIELD
+                ? CalculationUtility.calculateDividendYield(stockData, price)
+                : CalculationUtility.calculatePriceEarningsRatio(stockData, price);
+
+        segment.put(key, new CachedResult(stockData, result));
+
+        return result;
+    }
+
+    private static int segmentIndex(long key){
+
+        //Spread the bits of the price and id so that neighbouring prices use different segments
+        long hash = key * 0x9E3779B97F4A7C15L;
+
+        return (int) (hash >>> 60) & (SEGMENTS - 1);
+    }
+
+    private enum Calculation {
+        DIVIDEND_YIELD,
+        PRICE_EARNINGS_RATIO
+    }
+
+    /**
+     * A result, with the reference data it was calculated from
+     */
+    private static class CachedResult {
+
+        final StockReferenceData stockData;
+        final BigDecimal result;
+
+        CachedResult(StockReferenceData stockData, BigDecimal result){
+            this.stockData = stockData;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Results for a share of the keys, in order of when they were last used
+     */
+    private class Segment {
+
+        private final Map<Long, CachedResult> cachedResults;
+
+        Segment(int maximumSize){
+            cachedResults = new LinkedHashMap<Long, CachedResult>(16, 0.75f, true){
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, CachedResult> eldest){
+
+                    if(size() > maximumSize){
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized CachedResult get(long key){
+            return cachedResults.get(key);
+        }
+
+        synchronized void put(long key, CachedResult cachedResult){
+            cachedResults.put(key, cachedResult);
+        }
+
+        synchronized void clear(){
+            cachedResults.clear();
+        }
+
+        synchronized int size(){
+            return cachedResults.size();
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+/**
+ * Pushes a new Volume Weighted Stock Price for the Stock traded, and a new GBCE All Share Index,
+ * to every subscriber whenever trades are added to the history
+ *
+ * Adding a trade only marks its Stock as changed, by setting the bit for its Stock Symbol id,
+ * so publishing never holds up the thread adding trades.
+ * A single publishing thread then reads the new values once for every Stock changed since it last ran,
+ * coalescing all the trades in between into one update, and only passes on values that have changed.
+ *
+ * Each subscriber holds just the latest value for each Stock and the index and is called on a thread
+ * of its own, so a slow subscriber misses the values in between rather than holding up the publishing
+ * thread or the other subscribers.
+ *
+ * Must be registered with the history after the aggregator and index it reads from,
+ * so that they have been updated by the time the publishing thread reads them.
+ */
+class StockPricePublisher implements StockTradeListener, Closeable {
+
+    private final VolumeWeightedStockPriceAggregator volumeWeightedStockPriceAggregator;
+    private final GBCEAllShareIndex gbceAllShareIndex;
+
+    private final ChangedSymbols changedSymbols = new ChangedSymbols();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    //Last values published, only written by the publishing thread
+    private final Map<StockSymbol, BigDecimal> publishedValues = new ConcurrentHashMap<>();
+    private volatile BigDecimal publishedGBCE;
+
+    private final Thread publisherThread;
+    private final ExecutorService subscriberExecutorService;
+    private volatile boolean closed;
+
+    /**
+     * @param volumeWeightedStockPriceAggregator aggregator to read Volume Weighted Stock Prices from
+     * @param gbceAllShareIndex index to read the GBCE All Share Index from
+     */
+    StockPricePublisher(VolumeWeightedStockPriceAggregator volumeWeightedStockPriceAggregator, GBCEAllShareIndex gbceAllShareIndex){
+
+        this.volumeWeightedStockPriceAggregator = volumeWeightedStockPriceAggregator;
+        this.gbceAllShareIndex = gbceAllShareIndex;
+
+        subscriberExecutorService = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "stock-price-subscriber");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        publisherThread = new Thread(this::publish, "stock-price-publisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+    }
+
+    @Override
+    public void tradeAdded(StockSymbol symbol, TransactionType transactionType, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence) {
+        changed(symbol);
+    }
+
+    @Override
+    public void tradesAdded(StockTradeBatch stockTradeBatch) {
+
+        StockSymbol previous = null;
+
+        for(int i = 0; i < stockTradeBatch.size(); i++){
+
+            StockSymbol symbol = stockTradeBatch.getSymbol(i);
+
+            //Batches are usually for one Stock
+            if(symbol != previous){
+                changed(symbol);
+                previous = symbol;
+            }
+        }
+    }
+
+    /**
+     * Starts pushing updates to the subscriber, beginning with the latest values already published
+     *
+     * @param stockPriceSubscriber subscriber to push updates to
+     * @return subscription to close once the subscriber no longer wants updates
+     */
+    Subscription subscribe(StockPriceSubscriber stockPriceSubscriber){
+
+        Subscription subscription = new Subscription(stockPriceSubscriber);
+        subscriptions.add(subscription);
+
+        for(Map.Entry<StockSymbol, BigDecimal> publishedValue : publishedValues.entrySet()){
+            subscription.offerIfEmpty(publishedValue.getKey(), publishedValue.getValue());
+        }
+
+        BigDecimal gbce = publishedGBCE;
+
+        if(gbce != null){
+            subscription.offerIfEmpty(null, gbce);
+        }
+        return subscription;
+    }
+
+    /**
+     * Stops publishing, dropping any updates not yet passed to subscribers
+     */
+    @Override
+    public void close(){
+
+        closed = true;
+        LockSupport.unpark(publisherThread);
+
+        try {
+            publisherThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        subscriberExecutorService.shutdownNow();
+    }
+
+    private void changed(StockSymbol symbol){
+
+        //Most trades are for a Stock already marked, which needs no write
+        if(changedSymbols.add(symbol.getId())){
+            LockSupport.unpark(publisherThread);
+        }
+    }
+
+    private void publish(){
+
+        IntConsumer publishVolumeWeightedStockPrice = symbolId -> {
+            StockSymbol symbol = StockSymbol.forId(symbolId);
+            publishIfChanged(symbol, volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(symbol));
+        };
+
+        while(!closed){
+
+            if(!changedSymbols.removeAll(publishVolumeWeightedStockPrice)){
+                LockSupport.park(this);
+                continue;
+            }
+
+            try {
+                publishIfChanged(null, gbceAllShareIndex.getGBCE());
+            } catch (SuperSimpleStocksException e){
+                //No trades have reached the index yet
+            }
+        }
+    }
+
+    /**
+     * @param symbol Stock Symbol of a Volume Weighted Stock Price, or null for the GBCE All Share Index
+     * @param value value to publish
+     */
+    private void publishIfChanged(StockSymbol symbol, BigDecimal value){
+
+        BigDecimal published = symbol == null ? publishedGBCE : publishedValues.get(symbol);
+
+        if(published != null && published.compareTo(value) == 0){
+            return;
+        }
+
+        if(symbol == null){
+            publishedGBCE = value;
+        }else{
+            publishedValues.put(symbol, value);
+        }
+
+        for(Subscription subscription : subscriptions){
+            subscription.offer(symbol, value);
+        }
+    }
+
+    /**
+     * Set of the ids of the Stock Symbols changed since the publishing thread last looked,
+     * a bit for each id in an array of words that grows as more symbols are listed
+     *
+     * Marking a Stock that is already marked only reads its word. When the words grow they are copied
+     * and replaced, and a bit set in the old words while they were being copied is set again in the new ones.
+     * A bit removed from the old words while they were being copied may be seen again, which only means
+     * the Stock is checked again.
+     */
+    private static final class ChangedSymbols {
+
+        private volatile AtomicLongArray words = new AtomicLongArray(wordIndex(Math.max(1, StockSymbol.count()) - 1) + 1);
+
+        /**
+         * @param id Stock Symbol id
+         * @return true if the Stock was not already marked
+         */
+        boolean add(int id){
+
+            int wordIndex = wordIndex(id);
+            long bit = 1L << id;
+
+            AtomicLongArray current = words;
+
+            if(wordIndex < current.length() && (current.get(wordIndex) & bit) != 0){
+                return false;
+            }
+
+            boolean added = false;
+
+            do {
+                if(wordIndex >= current.length()){
+                    current = grow(wordIndex);
+                }
+
+                long word = current.get(wordIndex);
+
+                while((word & bit) == 0){
+
+                    if(current.compareAndSet(wordIndex, word, word | bit)){
+                        added = true;
+                        break;
+                    }
+                    word = current.get(wordIndex);
+                }
+            } while(current != (current = words));
+
+            return added;
+        }
+
+        /**
+         * Removes every id in the set, passing each to the consumer
+         *
+         * @param consumer receives each id removed
+         * @return true if any ids were removed
+         */
+        boolean removeAll(IntConsumer consumer){
+
+            AtomicLongArray current = words;
+            boolean removed = false;
+
+            for(int wordIndex = 0; wordIndex < current.length(); wordIndex++){
+
+                if(current.get(wordIndex) == 0){
+                    continue;
+                }
+
+                long word = current.getAndSet(wordIndex, 0);
+
+                while(word != 0){
+                    consumer.accept((wordIndex << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                    removed = true;
+                }
+            }
+            return removed;
+        }
+
+        private synchronized AtomicLongArray grow(int wordIndex){
+
+            AtomicLongArray current = words;
+
+            if(wordIndex < current.length()){
+                return current;
+            }
+
+            AtomicLongArray grown = new AtomicLongArray(Math.max(wordIndex + 1, current.length() * 2));
+
+            for(int i = 0; i < current.length(); i++){
+                grown.set(i, current.get(i));
+            }
+
+            words = grown;
+            return grown;
+        }
+
+        private static int wordIndex(int id){
+            return id >>> 6;
+        }
+    }
+
+    /**
+     * A subscriber's latest unsent values, sent to it on a thread of its own
+     */
+    final class Subscription implements Closeable {
+
+        private final StockPriceSubscriber stockPriceSubscriber;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean cancelled;
+
+        //Latest value offered for each Stock, and the values not sent yet, keyed by null for the GBCE All Share Index
+        private final Map<StockSymbol, BigDecimal> latestValues = new HashMap<>();
+        private final Map<StockSymbol, BigDecimal> unsentValues = new LinkedHashMap<>();
+
+        private Subscription(StockPriceSubscriber stockPriceSubscriber){
+            this.stockPriceSubscriber = stockPriceSubscriber;
+        }
+
+        /**
+         * Stops pushing updates to the subscriber
+         */
+        @Override
+        public void close(){
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        private void offer(StockSymbol symbol, BigDecimal value){
+
+            synchronized (this){
+                latestValues.put(symbol, value);
+                unsentValues.put(symbol, value);
+            }
+            send();
+        }
+
+        private void offerIfEmpty(StockSymbol symbol, BigDecimal value){
+
+            synchronized (this){
+
+                //A value offered by the publishing thread since subscribing is newer, so is kept
+                if(latestValues.putIfAbsent(symbol, value) != null){
+                    return;
+                }
+                unsentValues.put(symbol, value);
+            }
+            send();
+        }
+
+        private void send(){
+
+            if(cancelled || !sending.compareAndSet(false, true)){
+                return;
+            }
+
+            try {
+                subscriberExecutorService.execute(this::sendUnsent);
+            } catch (RuntimeException e){
+                //Rejected as the publisher has been closed
+                sending.set(false);
+            }
+        }
+
+        private void sendUnsent(){
+
+            try {
+                List<Map.Entry<StockSymbol, BigDecimal>> values;
+
+                while(!cancelled && !(values = takeUnsent()).isEmpty()){
+
+                    for(Map.Entry<StockSymbol, BigDecimal> value : values){
+                        sendValue(value.getKey(), value.getValue());
+                    }
+                }
+            } finally {
+                sending.set(false);
+            }
+
+            //Values offered after the last check but before sending was cleared would otherwise wait for the next trade
+            if(hasUnsent()){
+                send();
+            }
+        }
+
+        private synchronized List<Map.Entry<StockSymbol, BigDecimal>> takeUnsent(){
+
+            List<Map.Entry<StockSymbol, BigDecimal>> values = new ArrayList<>(unsentValues.entrySet());
+            unsentValues.clear();
+
+            return values;
+        }
+
+        private synchronized boolean hasUnsent(){
+            return !unsentValues.isEmpty();
+        }
+
+        private void sendValue(StockSymbol symbol, BigDecimal value){
+
+            try {
+                if(symbol == null){
+                    stockPriceSubscriber.gbceUpdated(value);
+                } else {
+                    stockPriceSubscriber.volumeWeightedStockPriceUpdated(symbol, value);
+                }
+            } catch (RuntimeException e){
+                //A failing subscriber must not stop the values after this one being sent
+            }
+        }
+    }
+}
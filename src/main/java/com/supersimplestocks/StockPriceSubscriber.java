@@ -0,0 +1,26 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+
+import java.math.BigDecimal;
+
+/**
+ * Told about new Volume Weighted Stock Prices and GBCE All Share Index values by a StockPricePublisher
+ *
+ * Updates are conflated, so a subscriber that is slow to handle them is only given
+ * the latest value for each Stock and the index, rather than every value in between.
+ * A subscriber is only called by one thread at a time.
+ */
+interface StockPriceSubscriber {
+
+    /**
+     * @param symbol Stock Symbol traded
+     * @param volumeWeightedStockPrice new Volume Weighted Stock Price to 2 Decimal Places
+     */
+    void volumeWeightedStockPriceUpdated(StockSymbol symbol, BigDecimal volumeWeightedStockPrice);
+
+    /**
+     * @param gbce new GBCE All Share Index
+     */
+    void gbceUpdated(BigDecimal gbce);
+}
@@ -0,0 +1,147 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockData;
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.StockType;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Reference data for a Stock used by the Dividend Yield and P/E Ratio calculations,
+ * as held in StockData but able to be loaded from a file and replaced while the application runs
+ *
+ * Immutable, so a calculation always sees one consistent set of values for a Stock,
+ * and checked when created, so a PREFERRED Stock always has a fixed dividend and a COMMON Stock never does.
+ * Values needed to calculate the Dividend Yield of a PREFERRED Stock without BigDecimals
+ * are worked out once here rather than on every calculation.
+ */
+final class StockReferenceData {
+
+    //Reference data for each StockData, indexed by its ordinal
+    private static final StockReferenceData[] FROM_STOCK_DATA = new StockReferenceData[StockData.values().length];
+
+    static {
+        for(StockData stockData : StockData.values()){
+            try {
+                FROM_STOCK_DATA[stockData.ordinal()] = new StockReferenceData(stockData.getSymbol(), stockData.getType(),
+                        stockData.getLastDividend(), stockData.getFixedDividend(), stockData.getParValue());
+            } catch (SuperSimpleStocksException e){
+                throw new IllegalStateException("Sample Stock Data is not valid reference data: " + e.getMessage());
+            }
+        }
+    }
+
+    private final StockSymbol symbol;
+    private final StockType type;
+    private final int lastDividend; //Pence
+    private final BigDecimal fixedDividend; //Percentage value. E.g. 1.5% = 0.015, null if not PREFERRED
+    private final int parValue; //Pence
+
+    //Fixed Dividend * Par Value * 100, split into its whole part and whether the fraction left over is at least a half
+    private final long fixedDividendMultipliedByParValueInHundredths;
+    private final boolean fixedDividendMultipliedByParValueFractionAtLeastHalf;
+
+    /**
+     * @param symbol Stock Symbol
+     * @param type Stock Type
+     * @param lastDividend last dividend in pence
+     * @param fixedDividend fixed dividend as a fraction, or null if the Stock is not PREFERRED
+     * @param parValue par value in pence
+     * @throws SuperSimpleStocksException if the values are not valid reference data, as checked by validate
+     */
+    StockReferenceData(StockSymbol symbol, StockType type, int lastDividend, BigDecimal fixedDividend, int parValue) throws SuperSimpleStocksException {
+
+        try {
+            validate(type, fixedDividend, parValue);
+        } catch (SuperSimpleStocksException e){
+            throw new SuperSimpleStocksException("Invalid reference data for " + symbol + ": " + e.getMessage());
+        }
+
+        this.symbol = symbol;
+        this.type = type;
+        this.lastDividend = lastDividend;
+        this.fixedDividend = fixedDividend;
+        this.parValue = parValue;
+
+        if(fixedDividend != null){
+
+            BigDecimal hundredths = fixedDividendMultipliedByParValueInHundredths(fixedDividend, parValue);
+            BigDecimal wholeHundredths = hundredths.setScale(0, RoundingMode.FLOOR);
+
+            fixedDividendMultipliedByParValueInHundredths = wholeHundredths.longValueExact();
+            fixedDividendMultipliedByParValueFractionAtLeastHalf = hundredths.subtract(wholeHundredths).compareTo(new BigDecimal("0.5")) >= 0;
+        }else{
+            fixedDividendMultipliedByParValueInHundredths = 0;
+            fixedDividendMultipliedByParValueFractionAtLeastHalf = false;
+        }
+    }
+
+    /**
+     * Checks that the fixed dividend suits the Stock Type, so a PREFERRED Stock can not quietly
+     * have a Dividend Yield of 0, and that the fixed dividend multiplied by the par value can be held
+     *
+     * @param type Stock Type
+     * @param fixedDividend fixed dividend as a fraction, or null if the Stock is not PREFERRED
+     * @param parValue par value in pence
+     * @throws SuperSimpleStocksException saying what is wrong, if the values are not valid reference data
+     */
+    static void validate(StockType type, BigDecimal fixedDividend, int parValue) throws SuperSimpleStocksException {
+
+        if(type == StockType.PREFERRED && fixedDividend == null){
+            throw new SuperSimpleStocksException("a PREFERRED Stock needs a fixed dividend");
+        }
+        if(type == StockType.COMMON && fixedDividend != null){
+            throw new SuperSimpleStocksException("a COMMON Stock must not have a fixed dividend");
+        }
+
+        if(fixedDividend != null){
+            try {
+                fixedDividendMultipliedByParValueInHundredths(fixedDividend, parValue).setScale(0, RoundingMode.FLOOR).longValueExact();
+            } catch (ArithmeticException e){
+                throw new SuperSimpleStocksException("fixed dividend " + fixedDividend + " multiplied by par value " + parValue + " is too large");
+            }
+        }
+    }
+
+    private static BigDecimal fixedDividendMultipliedByParValueInHundredths(BigDecimal fixedDividend, int parValue){
+        return fixedDividend.multiply(BigDecimal.valueOf(parValue)).movePointRight(2);
+    }
+
+    /**
+     * @param stockData sample Stock Data
+     * @return reference data with the same values as the sample Stock Data, without creating any objects
+     */
+    static StockReferenceData of(StockData stockData){
+        return FROM_STOCK_DATA[stockData.ordinal()];
+    }
+
+    StockSymbol getSymbol(){
+        return symbol;
+    }
+
+    StockType getType(){
+        return type;
+    }
+
+    int getLastDividend(){
+        return lastDividend;
+    }
+
+    BigDecimal getFixedDividend(){
+        return fixedDividend;
+    }
+
+    int getParValue(){
+        return parValue;
+    }
+
+    long getFixedDividendMultipliedByParValueInHundredths(){
+        return fixedDividendMultipliedByParValueInHundredths;
+    }
+
+    boolean isFixedDividendMultipliedByParValueFractionAtLeastHalf(){
+        return fixedDividendMultipliedByParValueFractionAtLeastHalf;
+    }
+}
@@ -0,0 +1,110 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Holds a value for each Stock in an array indexed by its Stock Symbol's id,
+ * creating the value the first time it is asked for
+ *
+ * Getting a value is an array read, with no hashing or locking. Symbols can be listed at any time,
+ * so when a symbol listed after the array was last grown is first asked for, the array is copied
+ * into a larger one which then replaces it. Only creating a value locks.
+ *
+ * Safe to use from several threads at once.
+ *
+ * @param <T> type of value held for each Stock
+ */
+final class StockSymbolTable<T> {
+
+    private final Function<StockSymbol, T> valueFactory;
+
+    private volatile AtomicReferenceArray<T> values;
+
+    /**
+     * @param valueFactory creates the value for a Stock the first time it is asked for
+     */
+    StockSymbolTable(Function<StockSymbol, T> valueFactory){
+        this.valueFactory = valueFactory;
+        values = new AtomicReferenceArray<>(Math.max(1, StockSymbol.count()));
+    }
+
+    /**
+     * @param symbol Stock Symbol
+     * @return value for the Stock, created if this is the first time it has been asked for
+     */
+    T get(StockSymbol symbol){
+
+        AtomicReferenceArray<T> current = values;
+        int id = symbol.getId();
+
+        if(id < current.length()){
+
+            T value = current.get(id);
+
+            if(value != null){
+                return value;
+            }
+        }
+        return create(symbol);
+    }
+
+    /**
+     * @param symbol Stock Symbol
+     * @return value for the Stock, or null if it has not been asked for yet
+     */
+    T find(StockSymbol symbol){
+
+        AtomicReferenceArray<T> current = values;
+        int id = symbol.getId();
+
+        return id < current.length() ? current.get(id) : null;
+    }
+
+    /**
+     * @return one more than the highest id that can have a value, for iterating with getById
+     */
+    int length(){
+        return values.length();
+    }
+
+    /**
+     * @param id Stock Symbol id
+     * @return value for the Stock with the id, or null if it has not been asked for yet
+     */
+    T getById(int id){
+
+        AtomicReferenceArray<T> current = values;
+
+        return id < current.length() ? current.get(id) : null;
+    }
+
+    private synchronized T create(StockSymbol symbol){
+
+        AtomicReferenceArray<T> current = values;
+        int id = symbol.getId();
+
+        if(id >= current.length()){
+
+            //Grow to hold every symbol listed so far, and at least double, so growing is rare
+            AtomicReferenceArray<T> grown = new AtomicReferenceArray<>(Math.max(id + 1, Math.max(StockSymbol.count(), current.length() * 2)));
+
+            for(int i = 0; i < current.length(); i++){
+                grown.set(i, current.get(i));
+            }
+
+            values = grown;
+            current = grown;
+        }
+
+        T value = current.get(id);
+
+        if(value == null){
+            value = valueFactory.apply(symbol);
+            current.set(id, value);
+        }
+        return value;
+    }
+}
@@ -1,6 +1,6 @@
 package com.supersimplestocks;
 
-import com.supersimplestocks.enums.StockSymbolEnum;
+import com.supersimplestocks.enums.StockSymbol;
 import com.supersimplestocks.enums.TransactionType;
 
 import java.math.BigDecimal;
@@ -9,40 +9,72 @@ import java.time.LocalDateTime;
 /**
  * Holds details of a single trade of a Stock item
  *
+ * Quantity, price and timestamp are held as fixed point longs
+ * (hundredths of a share, pence and nanoseconds since the epoch)
+ * so that a trade is a single object and calculations can use long arithmetic.
+ * The BigDecimal and LocalDateTime getters convert on each call.
+ *
  * Created by James Christie on 05/06/2017.
  */
  class StockTrade {
 
     private TransactionType transactionType;
-    private StockSymbolEnum symbol;
-    private LocalDateTime timeStamp;
-    private BigDecimal quantityOfShares;
-    private BigDecimal tradePrice;
+    private StockSymbol symbol;
+    private long timeStamp;
+    private long quantityOfShares;
+    private long tradePrice;
+
+    /**
+     * Quantity is rounded to 2 decimal places, and price to whole pence, if needed
+     */
+    StockTrade(TransactionType transactionType, StockSymbol symbol, LocalDateTime timeStamp, BigDecimal quantityOfShares, BigDecimal tradePrice){
+        this(transactionType, symbol,
+                FixedPointUtility.toEpochNanos(timeStamp),
+                FixedPointUtility.toHundredths(quantityOfShares),
+                FixedPointUtility.toPence(tradePrice));
+    }
 
-    StockTrade(TransactionType transactionType, StockSymbolEnum symbol, LocalDateTime timeStamp, BigDecimal quantityOfShares, BigDecimal tradePrice){
+    /**
+     * @param timeStampEpochNanos timestamp in nanoseconds since the epoch
+     * @param quantityInHundredths quantity of shares in hundredths of a share
+     * @param tradePriceInPence trade price in pence
+     */
+    StockTrade(TransactionType transactionType, StockSymbol symbol, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence){
         this.transactionType = transactionType;
         this.symbol = symbol;
-        this.timeStamp = timeStamp;
-        this.quantityOfShares = quantityOfShares;
-        this.tradePrice = tradePrice;
+        this.timeStamp = timeStampEpochNanos;
+        this.quantityOfShares = quantityInHundredths;
+        this.tradePrice = tradePriceInPence;
     }
 
     //Not used, but kept for completeness
     TransactionType getTransactionType() { return transactionType; }
 
-    StockSymbolEnum getSymbol() {
+    StockSymbol getSymbol() {
         return symbol;
     }
 
     LocalDateTime getTimeStamp() {
-        return timeStamp;
+        return FixedPointUtility.toLocalDateTime(timeStamp);
     }
 
     BigDecimal getQuantityOfShares() {
-        return quantityOfShares;
+        return FixedPointUtility.fromHundredths(quantityOfShares);
     }
 
     BigDecimal getTradePrice() {
+        return FixedPointUtility.fromPence(tradePrice);
+    }
+
+    long getTimeStampEpochNanos() {
+        return timeStamp;
+    }
+
+    long getQuantityInHundredths() {
+        return quantityOfShares;
+    }
+
+    long getTradePriceInPence() {
         return tradePrice;
     }
 
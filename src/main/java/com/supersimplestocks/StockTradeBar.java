@@ -0,0 +1,89 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+
+import java.math.BigDecimal;
+
+/**
+ * Open, high, low and close trade prices, volume and Volume Weighted Average Price
+ * of the trades for a Stock within one bar of a StockTradeBarAggregator
+ *
+ * Values are fixed point, prices in pence and volume in hundredths of a share.
+ */
+final class StockTradeBar {
+
+    private final StockSymbol symbol;
+    private final long startEpochNanos;
+    private final long lengthNanos;
+    private final long openInPence;
+    private final long highInPence;
+    private final long lowInPence;
+    private final long closeInPence;
+    private final long volumeInHundredths;
+    private final long sumOfTradePriceMultipliedByQuantity;
+
+    StockTradeBar(StockSymbol symbol, long startEpochNanos, long lengthNanos, long openInPence, long highInPence, long lowInPence,
+                  long closeInPence, long volumeInHundredths, long sumOfTradePriceMultipliedByQuantity){
+        this.symbol = symbol;
+        this.startEpochNanos = startEpochNanos;
+        this.lengthNanos = lengthNanos;
+        this.openInPence = openInPence;
+        this.highInPence = highInPence;
+        this.lowInPence = lowInPence;
+        this.closeInPence = closeInPence;
+        this.volumeInHundredths = volumeInHundredths;
+        this.sumOfTradePriceMultipliedByQuantity = sumOfTradePriceMultipliedByQuantity;
+    }
+
+    StockSymbol getSymbol(){
+        return symbol;
+    }
+
+    /**
+     * @return time the bar starts at in nanoseconds since the epoch, trades at this time are in the bar
+     */
+    long getStartEpochNanos(){
+        return startEpochNanos;
+    }
+
+    long getLengthNanos(){
+        return lengthNanos;
+    }
+
+    /**
+     * @return trade price of the earliest trade in the bar
+     */
+    long getOpenInPence(){
+        return openInPence;
+    }
+
+    long getHighInPence(){
+        return highInPence;
+    }
+
+    long getLowInPence(){
+        return lowInPence;
+    }
+
+    /**
+     * @return trade price of the latest trade in the bar
+     */
+    long getCloseInPence(){
+        return closeInPence;
+    }
+
+    long getVolumeInHundredths(){
+        return volumeInHundredths;
+    }
+
+    /**
+     * @return Volume Weighted Average Price of the trades in the bar to 2 Decimal Places
+     */
+    BigDecimal getVolumeWeightedAveragePrice(){
+
+        if(volumeInHundredths == 0){
+            return BigDecimal.ZERO;
+        }
+        return FixedPointUtility.divideHalfUp(sumOfTradePriceMultipliedByQuantity, volumeInHundredths);
+    }
+}
@@ -0,0 +1,340 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maintains open-high-low-close-volume bars of a fixed length, such as 1 second, 1 minute or 5 minutes,
+ * for every Stock as trades are recorded
+ *
+ * Bars start at multiples of the bar length since the epoch. For each Stock the most recent number of bars given
+ * are kept in a ring buffer of primitive arrays, counted back from the bar of its latest trade, so the
+ * Volume Weighted Stock Price over any window made up of whole bars can be found by summing the bars
+ * in the window rather than rescanning the trades. Trades for bars older than that are not kept.
+ *
+ * Each Stock's bars are locked separately, so trades and calculations
+ * for different Stocks can happen on different threads at the same time.
+ * Bars are held in an array indexed by the Stock Symbol's id, and created the first time a Stock is traded or asked for.
+ */
+class StockTradeBarAggregator implements StockTradeListener {
+
+    private final long barNanos;
+    private final int numberOfBars;
+    private final StockSymbolTable<Bars> bars;
+
+    /**
+     * @param barLength length of each bar
+     * @param unit unit of the bar length
+     * @param numberOfBars number of most recent bars to keep for each Stock
+     */
+    StockTradeBarAggregator(long barLength, TimeUnit unit, int numberOfBars){
+
+        this.barNanos = unit.toNanos(barLength);
+        this.numberOfBars = numberOfBars;
+
+        if(barNanos <= 0 || numberOfBars <= 0){
+            throw new IllegalArgumentException("Bar length and number of bars must be positive");
+        }
+
+        bars = new StockSymbolTable<>(symbol -> new Bars());
+    }
+
+    @Override
+    public void tradeAdded(StockSymbol symbol, TransactionType transactionType, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence) {
+
+        Bars symbolBars = bars.get(symbol);
+
+        synchronized (symbolBars){
+            symbolBars.add(timeStampEpochNanos, quantityInHundredths, tradePriceInPence);
+        }
+    }
+
+    @Override
+    public void checkTradeAdded(StockSymbol symbol, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence) {
+
+        Bars symbolBars = bars.get(symbol);
+
+        synchronized (symbolBars){
+            symbolBars.checkAdd(timeStampEpochNanos, quantityInHundredths, Math.multiplyExact(quantityInHundredths, tradePriceInPence));
+        }
+    }
+
+    @Override
+    public void checkTradesAdded(StockTradeBatch stockTradeBatch) {
+
+        int start = 0;
+
+        while(start < stockTradeBatch.size()){
+
+            StockSymbol symbol = stockTradeBatch.getSymbol(start);
+            Bars symbolBars = bars.get(symbol);
+            int end = start;
+
+            //The run's trades may fall in any of its bars, so each is checked as if every trade
+            //in the run so far were in its bar, which can only overstate the bar's sums
+            long quantity = 0;
+            long tradePriceMultipliedByQuantity = 0;
+
+            synchronized (symbolBars){
+                while(end < stockTradeBatch.size() && stockTradeBatch.getSymbol(end) == symbol){
+                    quantity = Math.addExact(quantity, stockTradeBatch.getQuantityInHundredths(end));
+                    tradePriceMultipliedByQuantity = Math.addExact(tradePriceMultipliedByQuantity,
+                            Math.multiplyExact(stockTradeBatch.getQuantityInHundredths(end), stockTradeBatch.getTradePriceInPence(end)));
+                    symbolBars.checkAdd(stockTradeBatch.getTimeStampEpochNanos(end), quantity, tradePriceMultipliedByQuantity);
+                    end++;
+                }
+            }
+            start = end;
+        }
+    }
+
+    @Override
+    public void tradesAdded(StockTradeBatch stockTradeBatch) {
+
+        //Add each run of trades for the same Stock to its bars in one go
+        int start = 0;
+
+        while(start < stockTradeBatch.size()){
+
+            StockSymbol symbol = stockTradeBatch.getSymbol(start);
+            Bars symbolBars = bars.get(symbol);
+            int end = start;
+
+            synchronized (symbolBars){
+                while(end < stockTradeBatch.size() && stockTradeBatch.getSymbol(end) == symbol){
+                    symbolBars.add(stockTradeBatch.getTimeStampEpochNanos(end), stockTradeBatch.getQuantityInHundredths(end),
+                            stockTradeBatch.getTradePriceInPence(end));
+                    end++;
+                }
+            }
+            start = end;
+        }
+    }
+
+    long getBarNanos(){
+        return barNanos;
+    }
+
+    /**
+     * @param symbol Stock Symbol
+     * @param timeEpochNanos any time within the bar in nanoseconds since the epoch
+     * @return the bar containing the given time, or null if there were no trades in it or it is no longer kept
+     */
+    StockTradeBar getBar(StockSymbol symbol, long timeEpochNanos){
+
+        Bars symbolBars = bars.get(symbol);
+
+        synchronized (symbolBars){
+            return symbolBars.getBar(symbol, Math.floorDiv(timeEpochNanos, barNanos));
+        }
+    }
+
+    /**
+     * Returns the bars with trades in them for the given Stock within the window, in time order
+     *
+     * @param symbol Stock Symbol
+     * @param fromEpochNanos start of the window, a multiple of the bar length
+     * @param toEpochNanos end of the window, a multiple of the bar length, trades at this time are not in the window
+     * @return bars in the window
+     * @throws SuperSimpleStocksException if the window is not made up of whole bars, or starts before the bars kept
+     */
+    List<StockTradeBar> getBars(StockSymbol symbol, long fromEpochNanos, long toEpochNanos) throws SuperSimpleStocksException {
+
+        long fromBar = toBar(fromEpochNanos);
+        long toBar = toBar(toEpochNanos);
+
+        Bars symbolBars = bars.get(symbol);
+        List<StockTradeBar> barsInWindow = new ArrayList<>();
+
+        synchronized (symbolBars){
+
+            symbolBars.checkKept(fromBar);
+
+            //Bars after the latest are empty, so there is no need to look past it
+            long lastBar = Math.min(toBar, symbolBars.latestBarNumber + 1);
+
+            for(long bar = fromBar; bar < lastBar; bar++){
+                StockTradeBar stockTradeBar = symbolBars.getBar(symbol, bar);
+
+                if(stockTradeBar != null){
+                    barsInWindow.add(stockTradeBar);
+                }
+            }
+        }
+        return barsInWindow;
+    }
+
+    /**
+     * Returns the Volume Weighted Stock Price for the given Stock based on the bars within the window
+     *
+     * @param symbol Stock Symbol
+     * @param fromEpochNanos start of the window, a multiple of the bar length
+     * @param toEpochNanos end of the window, a multiple of the bar length, trades at this time are not in the window
+     * @return Volume weighted Stock Price to 2 Decimal Places,
+     *         or 0 if no trades have happened in the window
+     * @throws SuperSimpleStocksException if the window is not made up of whole bars, or starts before the bars kept
+     */
+    BigDecimal getVolumeWeightedStockPrice(StockSymbol symbol, long fromEpochNanos, long toEpochNanos) throws SuperSimpleStocksException {
+
+        long fromBar = toBar(fromEpochNanos);
+        long toBar = toBar(toEpochNanos);
+
+        Bars symbolBars = bars.get(symbol);
+
+        synchronized (symbolBars){
+            symbolBars.checkKept(fromBar);
+            return symbolBars.getVolumeWeightedStockPrice(fromBar, toBar);
+        }
+    }
+
+    private long toBar(long epochNanos) throws SuperSimpleStocksException {
+
+        if(Math.floorMod(epochNanos, barNanos) != 0){
+            throw new SuperSimpleStocksException("Window must start and end on a bar, every " + barNanos + " nanoseconds");
+        }
+        return epochNanos / barNanos;
+    }
+
+    /**
+     * Bars for a single Stock, held in a ring buffer of primitive arrays where a bar is held
+     * at its number modulo the number of bars kept
+     *
+     * Sums are fixed point, volume in hundredths of a share and
+     * Quantity * Trade Price in hundredths of a share multiplied by pence
+     */
+    private class Bars {
+
+        //Number of the bar held in each slot, counted in bar lengths since the epoch
+        private final long[] barNumbers = new long[numberOfBars];
+        private final long[] openTimeStamps = new long[numberOfBars];
+        private final long[] closeTimeStamps = new long[numberOfBars];
+        private final long[] opens = new long[numberOfBars];
+        private final long[] highs = new long[numberOfBars];
+        private final long[] lows = new long[numberOfBars];
+        private final long[] closes = new long[numberOfBars];
+        private final long[] volumes = new long[numberOfBars];
+        private final long[] sumsOfTradePriceMultipliedByQuantity = new long[numberOfBars];
+
+        private long latestBarNumber = Long.MIN_VALUE;
+
+        Bars(){
+            Arrays.fill(barNumbers, Long.MIN_VALUE);
+        }
+
+        void add(long timeStamp, long quantity, long tradePrice){
+
+            long barNumber = Math.floorDiv(timeStamp, barNanos);
+
+            //Trades arriving out of order for a bar no longer kept are dropped
+            if(latestBarNumber != Long.MIN_VALUE && barNumber <= latestBarNumber - numberOfBars){
+                return;
+            }
+
+            long tradePriceMultipliedByQuantity = Math.multiplyExact(quantity, tradePrice);
+            int slot = slot(barNumber);
+
+            if(barNumbers[slot] != barNumber){
+                barNumbers[slot] = barNumber;
+                openTimeStamps[slot] = timeStamp;
+                closeTimeStamps[slot] = timeStamp;
+                opens[slot] = tradePrice;
+                highs[slot] = tradePrice;
+                lows[slot] = tradePrice;
+                closes[slot] = tradePrice;
+                volumes[slot] = quantity;
+                sumsOfTradePriceMultipliedByQuantity[slot] = tradePriceMultipliedByQuantity;
+            } else {
+                //Summed before the bar is changed, so a trade that would overflow leaves it as it was
+                long volume = Math.addExact(volumes[slot], quantity);
+                long sum = Math.addExact(sumsOfTradePriceMultipliedByQuantity[slot], tradePriceMultipliedByQuantity);
+
+                //Trades normally arrive in time order, but if not, the open and close
+                //are still the trades with the earliest and latest timestamps
+                if(timeStamp < openTimeStamps[slot]){
+                    openTimeStamps[slot] = timeStamp;
+                    opens[slot] = tradePrice;
+                }
+                if(timeStamp >= closeTimeStamps[slot]){
+                    closeTimeStamps[slot] = timeStamp;
+                    closes[slot] = tradePrice;
+                }
+                highs[slot] = Math.max(highs[slot], tradePrice);
+                lows[slot] = Math.min(lows[slot], tradePrice);
+                volumes[slot] = volume;
+                sumsOfTradePriceMultipliedByQuantity[slot] = sum;
+            }
+
+            latestBarNumber = Math.max(latestBarNumber, barNumber);
+        }
+
+        /**
+         * @throws ArithmeticException if adding the quantity and Quantity * Trade Price to the bar
+         *                             holding the given time would overflow its sums
+         */
+        void checkAdd(long timeStamp, long quantity, long tradePriceMultipliedByQuantity){
+
+            long barNumber = Math.floorDiv(timeStamp, barNanos);
+            int slot = slot(barNumber);
+
+            if(barNumbers[slot] == barNumber){
+                Math.addExact(volumes[slot], quantity);
+                Math.addExact(sumsOfTradePriceMultipliedByQuantity[slot], tradePriceMultipliedByQuantity);
+            }
+        }
+
+        void checkKept(long fromBarNumber) throws SuperSimpleStocksException {
+
+            if(latestBarNumber != Long.MIN_VALUE && fromBarNumber <= latestBarNumber - numberOfBars){
+                throw new SuperSimpleStocksException("Only the last " + numberOfBars + " bars are kept, the window starts before them");
+            }
+        }
+
+        StockTradeBar getBar(StockSymbol symbol, long barNumber){
+
+            int slot = slot(barNumber);
+
+            if(barNumbers[slot] != barNumber){
+                return null;
+            }
+            return new StockTradeBar(symbol, barNumber * barNanos, barNanos, opens[slot], highs[slot], lows[slot], closes[slot],
+                    volumes[slot], sumsOfTradePriceMultipliedByQuantity[slot]);
+        }
+
+        BigDecimal getVolumeWeightedStockPrice(long fromBarNumber, long toBarNumber){
+
+            long totalVolume = 0;
+            long sumOfTradePriceMultipliedByQuantity = 0;
+
+            //Bars after the latest are empty, so there is no need to look past it
+            long lastBarNumber = Math.min(toBarNumber, latestBarNumber + 1);
+
+            for(long barNumber = fromBarNumber; barNumber < lastBarNumber; barNumber++){
+
+                int slot = slot(barNumber);
+
+                if(barNumbers[slot] == barNumber){
+                    totalVolume = Math.addExact(totalVolume, volumes[slot]);
+                    sumOfTradePriceMultipliedByQuantity = Math.addExact(sumOfTradePriceMultipliedByQuantity, sumsOfTradePriceMultipliedByQuantity[slot]);
+                }
+            }
+
+            //If totalVolume is 0, then no trades are in the window so return 0
+            if(totalVolume == 0){
+                return BigDecimal.ZERO;
+            }
+            //Sum of (Quantity * Trade price) / Sum of Quantity, the hundredths cancel out leaving pence
+            return FixedPointUtility.divideHalfUp(sumOfTradePriceMultipliedByQuantity, totalVolume);
+        }
+
+        private int slot(long barNumber){
+            return (int) Math.floorMod(barNumber, (long) numberOfBars);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * A batch of trades held as columns of primitive arrays, so that a whole batch
+ * can be added to a trade history, and passed on to listeners, in one go
+ *
+ * A batch can be cleared and reused for the next batch of trades.
+ * Trades added as StockTrade objects keep the object so it can be stored as it is.
+ */
+class StockTradeBatch {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private StockSymbol[] symbols;
+    private TransactionType[] transactionTypes;
+    private long[] timeStamps;
+    private long[] quantities;
+    private long[] tradePrices;
+    private StockTrade[] stockTrades;
+
+    private int size;
+
+    StockTradeBatch(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    StockTradeBatch(int capacity){
+        capacity = Math.max(1, capacity);
+        symbols = new StockSymbol[capacity];
+        transactionTypes = new TransactionType[capacity];
+        timeStamps = new long[capacity];
+        quantities = new long[capacity];
+        tradePrices = new long[capacity];
+        stockTrades = new StockTrade[capacity];
+    }
+
+    /**
+     * @param stockTrades trades to put in a new batch
+     * @return batch holding the given trades in the same order
+     */
+    static StockTradeBatch of(Collection<StockTrade> stockTrades){
+
+        StockTradeBatch stockTradeBatch = new StockTradeBatch(stockTrades.size());
+
+        for(StockTrade stockTrade : stockTrades){
+            stockTradeBatch.add(stockTrade);
+        }
+        return stockTradeBatch;
+    }
+
+    void add(StockTrade stockTrade){
+        add(stockTrade.getSymbol(), stockTrade.getTransactionType(), stockTrade.getTimeStampEpochNanos(),
+                stockTrade.getQuantityInHundredths(), stockTrade.getTradePriceInPence());
+        stockTrades[size - 1] = stockTrade;
+    }
+
+    /**
+     * Adds a trade from its fixed point values
+     *
+     * @param symbol Stock Symbol traded
+     * @param transactionType BUY or SELL
+     * @param timeStampEpochNanos timestamp in nanoseconds since the epoch
+     * @param quantityInHundredths quantity of shares in hundredths of a share
+     * @param tradePriceInPence trade price in pence
+     */
+    void add(StockSymbol symbol, TransactionType transactionType, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence){
+
+        if(size == timeStamps.length){
+            grow();
+        }
+
+        symbols[size] = symbol;
+        transactionTypes[size] = transactionType;
+        timeStamps[size] = timeStampEpochNanos;
+        quantities[size] = quantityInHundredths;
+        tradePrices[size] = tradePriceInPence;
+        stockTrades[size] = null;
+
+        size++;
+    }
+
+    /**
+     * Adds a trade copied from another batch
+     *
+     * @param stockTradeBatch batch to copy from
+     * @param index index of the trade to copy
+     */
+    void add(StockTradeBatch stockTradeBatch, int index){
+        add(stockTradeBatch.symbols[index], stockTradeBatch.transactionTypes[index], stockTradeBatch.timeStamps[index],
+                stockTradeBatch.quantities[index], stockTradeBatch.tradePrices[index]);
+        stockTrades[size - 1] = stockTradeBatch.stockTrades[index];
+    }
+
+    /**
+     * Puts the trades in timestamp order, keeping trades with the same timestamp in the order they were added
+     */
+    void sortByTimeStamp(){
+
+        if(isSortedByTimeStamp()){
+            return;
+        }
+
+        StockTrade[] sortedStockTrades = new StockTrade[size];
+
+        for(int i = 0; i < size; i++){
+            sortedStockTrades[i] = getStockTrade(i);
+        }
+
+        Arrays.sort(sortedStockTrades, Comparator.comparingLong(StockTrade::getTimeStampEpochNanos));
+
+        clear();
+
+        for(StockTrade stockTrade : sortedStockTrades){
+            add(stockTrade);
+        }
+    }
+
+    boolean isSortedByTimeStamp(){
+
+        for(int i = 1; i < size; i++){
+            if(timeStamps[i - 1] > timeStamps[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes all trades so the batch can be reused
+     */
+    void clear(){
+        Arrays.fill(stockTrades, 0, size, null);
+        size = 0;
+    }
+
+    int size(){
+        return size;
+    }
+
+    StockSymbol getSymbol(int index){
+        return symbols[index];
+    }
+
+    TransactionType getTransactionType(int index){
+        return transactionTypes[index];
+    }
+
+    long getTimeStampEpochNanos(int index){
+        return timeStamps[index];
+    }
+
+    long getQuantityInHundredths(int index){
+        return quantities[index];
+    }
+
+    long getTradePriceInPence(int index){
+        return tradePrices[index];
+    }
+
+    /**
+     * @return sum of the natural logs of the trade prices of every trade in the batch, summed by TradeColumnKernels
+     */
+    double getSumOfLogTradePrices(){
+        return getSumOfLogTradePrices(0, size);
+    }
+
+    /**
+     * @param from index of the first trade (inclusive)
+     * @param to index after the last trade (exclusive)
+     * @return sum of the natural logs of the trade prices of the trades in the range, summed by TradeColumnKernels
+     */
+    double getSumOfLogTradePrices(int from, int to){
+        return TradeColumnKernels.get().sumLogTradePrices(tradePrices, from, to);
+    }
+
+    /**
+     * Returns the trade at the given index as a StockTrade,
+     * which is only created if the trade was not added as one
+     *
+     * @param index index of the trade
+     * @return trade
+     */
+    StockTrade getStockTrade(int index){
+
+        if(stockTrades[index] == null){
+            stockTrades[index] = new StockTrade(transactionTypes[index], symbols[index], timeStamps[index], quantities[index], tradePrices[index]);
+        }
+        return stockTrades[index];
+    }
+
+    private void grow(){
+
+        int capacity = timeStamps.length * 2;
+
+        symbols = Arrays.copyOf(symbols, capacity);
+        transactionTypes = Arrays.copyOf(transactionTypes, capacity);
+        timeStamps = Arrays.copyOf(timeStamps, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        tradePrices = Arrays.copyOf(tradePrices, capacity);
+        stockTrades = Arrays.copyOf(stockTrades, capacity);
+    }
+}
@@ -0,0 +1,182 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Blocking client for StockTradeServer, sending one request at a time
+ * and waiting for its response
+ *
+ * The server's id for each Stock is looked up by symbol the first time the Stock is used,
+ * so the client and server need not list their Stocks in the same order.
+ *
+ * Must only be used by one thread at a time.
+ */
+class StockTradeClient implements Closeable {
+
+    private final SocketChannel socketChannel;
+    private final ByteBuffer request = ByteBuffer.allocate(64).order(StockTradeProtocol.BYTE_ORDER);
+    private final ByteBuffer response = ByteBuffer.allocate(2048).order(StockTradeProtocol.BYTE_ORDER);
+
+    //Server's id for each Stock plus one, by the client's id, or 0 if not looked up yet
+    private int[] serverSymbolIds = new int[0];
+
+    /**
+     * @param host host the server is running on
+     * @param port port the server is listening on
+     * @throws IOException if the server can not be connected to
+     */
+    StockTradeClient(String host, int port) throws IOException {
+        socketChannel = SocketChannel.open(new InetSocketAddress(host, port));
+        socketChannel.socket().setTcpNoDelay(true);
+    }
+
+    /**
+     * Records a trade, timestamped by the server
+     *
+     * @return timestamp given to the trade in nanoseconds since the epoch
+     * @throws SuperSimpleStocksException if the server could not record the trade
+     */
+    long addTrade(StockSymbol symbol, TransactionType transactionType, long quantityInHundredths, long tradePriceInPence)
+            throws IOException, SuperSimpleStocksException {
+
+        int serverSymbolId = getServerSymbolId(symbol);
+
+        request.clear();
+        request.put(StockTradeProtocol.TRADE);
+        request.putInt(serverSymbolId);
+        request.put((byte) transactionType.ordinal());
+        request.putLong(quantityInHundredths);
+        request.putLong(tradePriceInPence);
+
+        return send();
+    }
+
+    BigDecimal calculateDividendYield(StockSymbol symbol, int marketPrice) throws IOException, SuperSimpleStocksException {
+        return calculateForPrice(StockTradeProtocol.DY, symbol, marketPrice);
+    }
+
+    BigDecimal calculatePriceEarningsRatio(StockSymbol symbol, int marketPrice) throws IOException, SuperSimpleStocksException {
+        return calculateForPrice(StockTradeProtocol.PE, symbol, marketPrice);
+    }
+
+    BigDecimal getVolumeWeightedStockPrice(StockSymbol symbol) throws IOException, SuperSimpleStocksException {
+
+        int serverSymbolId = getServerSymbolId(symbol);
+
+        request.clear();
+        request.put(StockTradeProtocol.VWSP);
+        request.putInt(serverSymbolId);
+
+        return BigDecimal.valueOf(send(), StockTradeProtocol.RESULT_SCALE);
+    }
+
+    BigDecimal getGBCE() throws IOException, SuperSimpleStocksException {
+
+        request.clear();
+        request.put(StockTradeProtocol.GBCE);
+
+        return BigDecimal.valueOf(send(), StockTradeProtocol.RESULT_SCALE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socketChannel.close();
+    }
+
+    private BigDecimal calculateForPrice(byte operation, StockSymbol symbol, int marketPrice) throws IOException, SuperSimpleStocksException {
+
+        int serverSymbolId = getServerSymbolId(symbol);
+
+        request.clear();
+        request.put(operation);
+        request.putInt(serverSymbolId);
+        request.putInt(marketPrice);
+
+        return BigDecimal.valueOf(send(), StockTradeProtocol.RESULT_SCALE);
+    }
+
+    /**
+     * @return the server's id for the Stock, looked up the first time the Stock is used
+     * @throws SuperSimpleStocksException if the server does not list the Stock
+     */
+    private int getServerSymbolId(StockSymbol symbol) throws IOException, SuperSimpleStocksException {
+
+        int id = symbol.getId();
+
+        if(id < serverSymbolIds.length && serverSymbolIds[id] != 0){
+            return serverSymbolIds[id] - 1;
+        }
+
+        String text = symbol.getSymbol();
+
+        request.clear();
+        request.put(StockTradeProtocol.SYMBOL);
+
+        for(int i = 0; i < StockTradeProtocol.SYMBOL_TEXT_LENGTH; i++){
+            request.put(i < text.length() ? (byte) text.charAt(i) : 0);
+        }
+
+        int serverSymbolId = (int) send();
+
+        if(id >= serverSymbolIds.length){
+            serverSymbolIds = Arrays.copyOf(serverSymbolIds, Math.max(id + 1, serverSymbolIds.length * 2));
+        }
+        serverSymbolIds[id] = serverSymbolId + 1;
+
+        return serverSymbolId;
+    }
+
+    /**
+     * Sends the request and reads its response
+     *
+     * @return result
+     * @throws SuperSimpleStocksException with the server's message if the response is an error
+     */
+    private long send() throws IOException, SuperSimpleStocksException {
+
+        request.flip();
+
+        while(request.hasRemaining()){
+            socketChannel.write(request);
+        }
+
+        response.clear();
+        readAtLeast(1);
+
+        if(response.get(0) == StockTradeProtocol.OK){
+            readAtLeast(1 + Long.BYTES);
+            return response.getLong(1);
+        }
+
+        readAtLeast(1 + Short.BYTES);
+        int messageLength = response.getShort(1);
+        readAtLeast(1 + Short.BYTES + messageLength);
+
+        byte[] message = new byte[messageLength];
+        response.position(1 + Short.BYTES);
+        response.get(message);
+
+        throw new SuperSimpleStocksException(new String(message, StandardCharsets.UTF_8));
+    }
+
+    private void readAtLeast(int bytes) throws IOException {
+
+        while(response.position() < bytes){
+            if(socketChannel.read(response) < 0){
+                throw new EOFException("Connection closed by server");
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+
+/**
+ * Moves over a sequence of trades one at a time, exposing the current trade's
+ * fixed point values, so trades can be read without creating an object per trade
+ *
+ * A cursor starts before the first trade, so next() must be called before reading values
+ */
+interface StockTradeCursor {
+
+    /**
+     * Moves to the next trade
+     *
+     * @return true if there is a next trade, false if the end has been reached
+     */
+    boolean next();
+
+    /**
+     * Moves back to before the first trade
+     */
+    void reset();
+
+    StockSymbol getSymbol();
+
+    TransactionType getTransactionType();
+
+    long getTimeStampEpochNanos();
+
+    long getQuantityInHundredths();
+
+    long getTradePriceInPence();
+}
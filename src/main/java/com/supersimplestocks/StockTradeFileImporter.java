@@ -0,0 +1,633 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Imports trades from a file straight into a trade history
+ *
+ * Two formats are read:
+ *
+ * CSV, one trade per line as timestamp,symbol,transaction type,quantity,price, for example
+ * 1496660400000000000,ALE,BUY,10.5,120 where the timestamp is in nanoseconds since the epoch,
+ * the quantity has at most 2 decimal places and the price is in pence.
+ * A header line is skipped if the file starts with one.
+ *
+ * Binary, fixed size records in the same layout as the trade journal's trade records, with no header
+ * and no symbol definitions, so Stocks are given by the ids of the Stocks as listed now.
+ *
+ * The file is mapped into memory a chunk at a time and the chunks are parsed on separate threads,
+ * straight from the mapped bytes into batches of trades that are added to the trade history,
+ * so large files are read using every core without creating a String per line.
+ * Trades from different chunks can be added in any order, which the trade history allows for.
+ *
+ * Every chunk is parsed twice, first only to check every trade in the file is valid, the same checks as
+ * for trades from the command line or clients, and then to add the trades. So a file with an invalid trade
+ * adds no trades at all. If adding trades still fails, for example as a running sum would overflow,
+ * every thread stops adding trades and the number already added is reported.
+ */
+class StockTradeFileImporter {
+
+    static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+
+    //Trades are added to the trade history in batches of this size
+    private static final int TRADES_PER_BATCH = 1 << 16;
+
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+
+    private static final byte[][] TRANSACTION_TYPE_NAMES = new byte[TRANSACTION_TYPES.length][];
+
+    static {
+        for(int transactionType = 0; transactionType < TRANSACTION_TYPES.length; transactionType++){
+            TRANSACTION_TYPE_NAMES[transactionType] = TRANSACTION_TYPES[transactionType].name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final StockTradeHistory stockTradeHistory;
+    private final int numberOfThreads;
+    private final int chunkSize;
+
+    StockTradeFileImporter(StockTradeHistory stockTradeHistory){
+        this(stockTradeHistory, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param stockTradeHistory history to add the imported trades to
+     * @param numberOfThreads number of threads to parse chunks on
+     * @param chunkSize number of bytes of the file each thread parses at a time
+     */
+    StockTradeFileImporter(StockTradeHistory stockTradeHistory, int numberOfThreads, int chunkSize){
+        this.stockTradeHistory = stockTradeHistory;
+        this.numberOfThreads = numberOfThreads;
+        this.chunkSize = Math.max(chunkSize, StockTradeJournal.RECORD_SIZE);
+    }
+
+    /**
+     * Imports a file of trades, read as CSV if the file name ends in .csv and as binary otherwise
+     *
+     * @param path file to import
+     * @return number of trades imported
+     * @throws IOException if the file can not be read
+     * @throws SuperSimpleStocksException if the file holds a trade that is not valid
+     */
+    long importFile(Path path) throws IOException, SuperSimpleStocksException {
+
+        if(path.getFileName().toString().toLowerCase().endsWith(".csv")){
+            return importCsv(path);
+        }else{
+            return importBinary(path);
+        }
+    }
+
+    /**
+     * Imports a CSV file of trades
+     *
+     * @param path file to import
+     * @return number of trades imported
+     * @throws IOException if the file can not be read
+     * @throws SuperSimpleStocksException if a line of the file is not a valid trade
+     */
+    long importCsv(Path path) throws IOException, SuperSimpleStocksException {
+
+        try(FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)){
+
+            //Chunks end at the end of a line, so that no line is split between chunks
+            List<Long> chunkStarts = new ArrayList<>();
+            long fileSize = fileChannel.size();
+            long chunkStart = 0;
+
+            while(chunkStart < fileSize){
+                chunkStarts.add(chunkStart);
+                chunkStart = findStartOfNextLine(fileChannel, chunkStart + chunkSize);
+            }
+            chunkStarts.add(fileSize);
+
+            List<ChunkImport> chunkImports = new ArrayList<>();
+
+            for(int chunk = 0; chunk < chunkStarts.size() - 1; chunk++){
+                long start = chunkStarts.get(chunk);
+                long end = chunkStarts.get(chunk + 1);
+                chunkImports.add(importRun -> importCsvChunk(fileChannel, start, end, importRun));
+            }
+
+            return importChunks(chunkImports);
+        }
+    }
+
+    /**
+     * Imports a binary file of trades
+     *
+     * @param path file to import
+     * @return number of trades imported
+     * @throws IOException if the file can not be read
+     * @throws SuperSimpleStocksException if the file is not a whole number of valid trade records
+     */
+    long importBinary(Path path) throws IOException, SuperSimpleStocksException {
+
+        try(FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)){
+
+            long fileSize = fileChannel.size();
+
+            if(fileSize % StockTradeJournal.RECORD_SIZE != 0){
+                throw new SuperSimpleStocksException(path + " is not a whole number of trade records");
+            }
+
+            int recordsPerChunk = chunkSize / StockTradeJournal.RECORD_SIZE;
+            long bytesPerChunk = (long) recordsPerChunk * StockTradeJournal.RECORD_SIZE;
+
+            List<ChunkImport> chunkImports = new ArrayList<>();
+
+            for(long start = 0; start < fileSize; start += bytesPerChunk){
+                long chunkStart = start;
+                long chunkEnd = Math.min(fileSize, start + bytesPerChunk);
+                chunkImports.add(importRun -> importBinaryChunk(fileChannel, chunkStart, chunkEnd, importRun));
+            }
+
+            return importChunks(chunkImports);
+        }
+    }
+
+    /**
+     * Checks every trade in every chunk, then adds them
+     *
+     * @return total number of trades imported
+     * @throws SuperSimpleStocksException if a trade is not valid, in which case none are added,
+     *                                    or adding trades failed, in which case the message says how many were added
+     */
+    private long importChunks(List<ChunkImport> chunkImports) throws IOException, SuperSimpleStocksException {
+
+        runChunks(chunkImports, new ImportRun(false));
+
+        ImportRun importRun = new ImportRun(true);
+
+        try {
+            runChunks(chunkImports, importRun);
+        } catch (SuperSimpleStocksException | RuntimeException e){
+            throw new SuperSimpleStocksException("Import stopped after " + importRun.numberOfTradesAdded.get() + " trades were added: " + e.getMessage());
+        }
+        return importRun.numberOfTradesAdded.get();
+    }
+
+    /**
+     * Runs the chunk imports across the threads, stopping every chunk as soon as one fails
+     * and waiting for them all to stop before returning
+     */
+    private void runChunks(List<ChunkImport> chunkImports, ImportRun importRun) throws IOException, SuperSimpleStocksException {
+
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(numberOfThreads, chunkImports.size())));
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+
+            for(ChunkImport chunkImport : chunkImports){
+                futures.add(executorService.submit(() -> {
+                    chunkImport.importChunk(importRun);
+                    return null;
+                }));
+            }
+
+            Throwable failure = null;
+
+            for(Future<?> future : futures){
+                try {
+                    future.get();
+                } catch (ExecutionException e){
+                    importRun.stopped = true;
+
+                    if(failure == null){
+                        failure = e.getCause();
+                    }
+                }
+            }
+
+            if(failure instanceof SuperSimpleStocksException){
+                throw (SuperSimpleStocksException) failure;
+            }else if(failure instanceof IOException){
+                throw (IOException) failure;
+            }else if(failure instanceof UncheckedIOException){
+                throw ((UncheckedIOException) failure).getCause();
+            }else if(failure instanceof RuntimeException){
+                throw (RuntimeException) failure;
+            }else if(failure != null){
+                throw new IllegalStateException(failure);
+            }
+
+        } catch (InterruptedException e){
+            importRun.stopped = true;
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing trades", e);
+
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void importCsvChunk(FileChannel fileChannel, long start, long end, ImportRun importRun) throws IOException, SuperSimpleStocksException {
+
+        MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        CsvParser csvParser = new CsvParser(buffer, start);
+        StockTradeBatch stockTradeBatch = new StockTradeBatch();
+
+        //Only the first line of the file can be a header, and a trade line starts with a digit
+        if(start == 0 && buffer.hasRemaining() && !isDigit(buffer.get(0))){
+            csvParser.skipLine();
+        }
+
+        while(csvParser.hasMoreLines() && !importRun.stopped){
+
+            if(csvParser.skipBlankLine()){
+                continue;
+            }
+
+            csvParser.parseTrade(stockTradeBatch);
+
+            if(stockTradeBatch.size() == TRADES_PER_BATCH){
+                addTrades(stockTradeBatch, importRun);
+            }
+        }
+        addTrades(stockTradeBatch, importRun);
+    }
+
+    private void importBinaryChunk(FileChannel fileChannel, long start, long end, ImportRun importRun) throws IOException, SuperSimpleStocksException {
+
+        ByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, end - start).order(StockTradeJournal.BYTE_ORDER);
+        StockTradeBatch stockTradeBatch = new StockTradeBatch();
+
+        for(int offset = 0; offset < buffer.limit() && !importRun.stopped; offset += StockTradeJournal.RECORD_SIZE){
+
+            int symbol = StockTradeJournal.getSymbolId(buffer, offset);
+            int transactionType = buffer.get(offset + StockTradeJournal.TRANSACTION_TYPE_OFFSET);
+            long quantity = buffer.getLong(offset + StockTradeJournal.QUANTITY_OFFSET);
+            long tradePrice = buffer.getLong(offset + StockTradeJournal.PRICE_OFFSET);
+
+            if(buffer.get(offset + StockTradeJournal.MARKER_OFFSET) != StockTradeJournal.MARKER
+                    || symbol >= StockSymbol.count()
+                    || transactionType < 0 || transactionType >= TRANSACTION_TYPES.length){
+                throw new SuperSimpleStocksException("Invalid trade record at byte " + (start + offset));
+            }
+
+            if(quantity <= 0 || tradePrice < 0){
+                throw new SuperSimpleStocksException("Invalid trade record at byte " + (start + offset) + ": Quantity must be positive and price must not be negative");
+            }
+
+            stockTradeBatch.add(StockSymbol.forId(symbol), TRANSACTION_TYPES[transactionType],
+                    buffer.getLong(offset + StockTradeJournal.TIMESTAMP_OFFSET), quantity, tradePrice);
+
+            if(stockTradeBatch.size() == TRADES_PER_BATCH){
+                addTrades(stockTradeBatch, importRun);
+            }
+        }
+        addTrades(stockTradeBatch, importRun);
+    }
+
+    /**
+     * Adds the trades parsed so far to the trade history, unless only checking them or the import has stopped
+     */
+    private void addTrades(StockTradeBatch stockTradeBatch, ImportRun importRun){
+
+        int numberOfTrades = stockTradeBatch.size();
+
+        if(numberOfTrades > 0 && importRun.adding && !importRun.stopped){
+            stockTradeHistory.addTrades(stockTradeBatch);
+            importRun.numberOfTradesAdded.addAndGet(numberOfTrades);
+        }
+        stockTradeBatch.clear();
+    }
+
+    /**
+     * @return position just after the first line feed at or after the given position less one,
+     *         so the given position is returned if it is already the start of a line,
+     *         or the file size if there is no such line feed
+     */
+    private static long findStartOfNextLine(FileChannel fileChannel, long position) throws IOException {
+
+        long fileSize = fileChannel.size();
+
+        if(position >= fileSize){
+            return fileSize;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long readPosition = position - 1;
+
+        while(readPosition < fileSize){
+
+            buffer.clear();
+            int bytesRead = fileChannel.read(buffer, readPosition);
+
+            for(int i = 0; i < bytesRead; i++){
+                if(buffer.get(i) == '\n'){
+                    return readPosition + i + 1;
+                }
+            }
+            readPosition += Math.max(bytesRead, 0);
+        }
+        return fileSize;
+    }
+
+    private static boolean isDigit(byte b){
+        return b >= '0' && b <= '9';
+    }
+
+    @FunctionalInterface
+    private interface ChunkImport {
+        void importChunk(ImportRun importRun) throws IOException, SuperSimpleStocksException;
+    }
+
+    /**
+     * One pass over every chunk, either checking the trades or adding them, shared by the threads running it
+     */
+    private static class ImportRun {
+
+        private final boolean adding;
+        private final AtomicLong numberOfTradesAdded = new AtomicLong();
+
+        //Set once a chunk fails, so the other chunks stop as soon as they see it
+        private volatile boolean stopped;
+
+        ImportRun(boolean adding){
+            this.adding = adding;
+        }
+    }
+
+    /**
+     * Parses the lines of a chunk of CSV in place in the mapped buffer
+     */
+    private static class CsvParser {
+
+        private final ByteBuffer buffer;
+        private final long chunkStart;
+
+        private int position;
+        private int lineStart;
+
+        private final Field field = new Field();
+
+        CsvParser(ByteBuffer buffer, long chunkStart){
+            this.buffer = buffer;
+            this.chunkStart = chunkStart;
+        }
+
+        boolean hasMoreLines(){
+            return position < buffer.limit();
+        }
+
+        void skipLine(){
+            while(position < buffer.limit() && buffer.get(position++) != '\n'){
+                //skip to the start of the next line
+            }
+        }
+
+        boolean skipBlankLine(){
+
+            byte b = buffer.get(position);
+
+            if(b == '\n'){
+                position++;
+                return true;
+            }else if(b == '\r' && position + 1 < buffer.limit() && buffer.get(position + 1) == '\n'){
+                position += 2;
+                return true;
+            }
+            return false;
+        }
+
+        void parseTrade(StockTradeBatch stockTradeBatch) throws SuperSimpleStocksException {
+
+            lineStart = position;
+
+            long timeStamp = parseFixedPoint(0);
+            expect(',');
+            StockSymbol symbol = parseSymbol();
+            expect(',');
+            TransactionType transactionType = TRANSACTION_TYPES[parseName(TRANSACTION_TYPE_NAMES)];
+            expect(',');
+            long quantity = parseFixedPoint(FixedPointUtility.QUANTITY_SCALE);
+            expect(',');
+            long tradePrice = parseFixedPoint(0);
+            expectEndOfLine();
+
+            //Prices can not be negative as they are only ever digits, but quantities can be 0
+            if(quantity <= 0){
+                throw invalidLine();
+            }
+
+            stockTradeBatch.add(symbol, transactionType, timeStamp, quantity, tradePrice);
+        }
+
+        /**
+         * Parses a positive decimal number as a long with the given number of decimal places,
+         * rounding any further decimal places half up
+         */
+        private long parseFixedPoint(int scale) throws SuperSimpleStocksException {
+
+            long value = 0;
+            int digits = 0;
+
+            while(position < buffer.limit() && isDigit(buffer.get(position))){
+                value = appendDigit(value, buffer.get(position++) - '0');
+                digits++;
+            }
+
+            if(digits == 0){
+                throw invalidLine();
+            }
+
+            int decimalPlaces = 0;
+            boolean roundUp = false;
+
+            if(position < buffer.limit() && buffer.get(position) == '.'){
+
+                position++;
+
+                while(position < buffer.limit() && isDigit(buffer.get(position))){
+
+                    int digit = buffer.get(position++) - '0';
+
+                    if(decimalPlaces < scale){
+                        value = appendDigit(value, digit);
+                    }else if(decimalPlaces == scale){
+                        roundUp = digit >= 5;
+                    }
+                    decimalPlaces++;
+                }
+            }
+
+            for(int i = decimalPlaces; i < scale; i++){
+                value = appendDigit(value, 0);
+            }
+
+            if(roundUp){
+
+                if(value == Long.MAX_VALUE){
+                    throw invalidLine();
+                }
+                value++;
+            }
+            return value;
+        }
+
+        private long appendDigit(long value, int digit) throws SuperSimpleStocksException {
+
+            if(value > (Long.MAX_VALUE - digit) / 10){
+                throw invalidLine();
+            }
+            return value * 10 + digit;
+        }
+
+        /**
+         * Looks up the field as a Stock Symbol, ignoring case, reading it straight from the mapped bytes
+         *
+         * @return Stock Symbol matched
+         */
+        private StockSymbol parseSymbol() throws SuperSimpleStocksException {
+
+            int fieldStart = position;
+
+            while(position < buffer.limit() && buffer.get(position) != ','){
+                position++;
+            }
+
+            StockSymbol symbol = StockSymbol.findStockSymbol(field.of(fieldStart, position));
+
+            if(symbol == null){
+                throw invalidLine();
+            }
+            return symbol;
+        }
+
+        /**
+         * Matches the field against the given names, ignoring case
+         *
+         * @return index of the name matched
+         */
+        private int parseName(byte[][] names) throws SuperSimpleStocksException {
+
+            int fieldStart = position;
+
+            while(position < buffer.limit() && buffer.get(position) != ','){
+                position++;
+            }
+
+            int fieldLength = position - fieldStart;
+
+            for(int name = 0; name < names.length; name++){
+
+                if(names[name].length == fieldLength && matchesIgnoringCase(fieldStart, names[name])){
+                    return name;
+                }
+            }
+            throw invalidLine();
+        }
+
+        private boolean matchesIgnoringCase(int fieldStart, byte[] name){
+
+            for(int i = 0; i < name.length; i++){
+
+                byte b = buffer.get(fieldStart + i);
+
+                if(b >= 'a' && b <= 'z'){
+                    b -= 'a' - 'A';
+                }
+                if(b != name[i]){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void expect(char c) throws SuperSimpleStocksException {
+
+            if(position >= buffer.limit() || buffer.get(position) != c){
+                throw invalidLine();
+            }
+            position++;
+        }
+
+        private void expectEndOfLine() throws SuperSimpleStocksException {
+
+            if(position < buffer.limit() && buffer.get(position) == '\r'){
+                position++;
+            }
+            if(position < buffer.limit()){
+                expect('\n');
+            }
+        }
+
+        private SuperSimpleStocksException invalidLine(){
+
+            int lineEnd = lineStart;
+
+            while(lineEnd < buffer.limit() && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r'){
+                lineEnd++;
+            }
+
+            byte[] line = new byte[lineEnd - lineStart];
+
+            for(int i = 0; i < line.length; i++){
+                line[i] = buffer.get(lineStart + i);
+            }
+
+            return new SuperSimpleStocksException("Invalid trade at byte " + (chunkStart + lineStart) + ": "
+                    + new String(line, StandardCharsets.US_ASCII));
+        }
+
+        /**
+         * Reusable view of a field of ASCII characters in the mapped buffer, for looking it up without creating a String
+         */
+        private class Field implements CharSequence {
+
+            private int start;
+            private int end;
+
+            Field of(int start, int end){
+                this.start = start;
+                this.end = end;
+                return this;
+            }
+
+            @Override
+            public int length() {
+                return end - start;
+            }
+
+            @Override
+            public char charAt(int index) {
+                return (char) (buffer.get(start + index) & 0xFF);
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return toString().subSequence(start, end);
+            }
+
+            @Override
+            public String toString() {
+
+                byte[] bytes = new byte[length()];
+
+                for(int i = 0; i < bytes.length; i++){
+                    bytes[i] = buffer.get(start + i);
+                }
+                return new String(bytes, StandardCharsets.US_ASCII);
+            }
+        }
+    }
+}
@@ -1,9 +1,19 @@
 package com.supersimplestocks;
 
-import com.supersimplestocks.enums.StockSymbolEnum;
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Holds a history of Stock Trades
@@ -11,35 +21,974 @@ import java.util.List;
  * Held in memory for the purposes of the exercise,
  * but in the real world would probably be stored in a database
  *
+ * A StockTradeJournal can be attached so that trades are also written to a file,
+ * and recovered from it when the application is restarted
+ *
+ * Trades are also partitioned by Stock Symbol, with each partition kept in
+ * timestamp order, so that lookups for a single Stock do not have to scan
+ * every trade and time range queries can use a binary search.
+ * Partitions are held in an array indexed by the Stock Symbol's id, and created
+ * the first time a Stock is traded, so any number of Stocks can be listed.
+ *
+ * Trades can be added from several threads at once. Adding a trade only locks the partition
+ * for its Stock, so trades for different Stocks are added in parallel. Lists returned are
+ * read only snapshots that are not changed by later trades, so they can be read without
+ * blocking, or being blocked by, threads adding trades.
+ *
+ * A RetentionPolicy can be given to bound the memory used. Trades it no longer keeps are evicted
+ * when a partition runs out of room, and are added to a summary for their Stock instead.
+ *
  * Created by James Christie on 05/06/2017.
  */
 class StockTradeHistory {
 
-    private List<StockTrade> stockTradeHistoryList;
+    private final StockSymbolTable<Partition> partitions;
+
+    private final List<StockTradeListener> stockTradeListeners;
+
+    private volatile StockTradeJournal stockTradeJournal;
 
     StockTradeHistory(){
-        stockTradeHistoryList = new ArrayList<>();
+        this(RetentionPolicy.keepAll());
+    }
+
+    /**
+     * @param retentionPolicy which trades to keep, older trades are evicted as new trades are added
+     *                        and only counted in the summary of evicted trades for their Stock
+     */
+    StockTradeHistory(RetentionPolicy retentionPolicy){
+
+        partitions = new StockSymbolTable<>(symbol -> new Partition(retentionPolicy));
+        stockTradeListeners = new CopyOnWriteArrayList<>();
     }
 
+    /**
+     * Registers a listener to be told about every trade added from now on
+     *
+     * Listeners are told about trades on the thread that added them, while the partition for the
+     * trade's Stock is locked, so must be safe to call from several threads for different Stocks
+     *
+     * @param stockTradeListener listener to register
+     */
+    void addStockTradeListener(StockTradeListener stockTradeListener){
+        stockTradeListeners.add(stockTradeListener);
+    }
+
+    /**
+     * Recovers all trades held in the given journal, then writes every trade added from now on to it
+     *
+     * Listeners should be registered first, so that they are told about the recovered trades,
+     * and no trades should be added until the journal has been attached
+     *
+     * @param stockTradeJournal journal to recover from and write to
+     * @return number of trades recovered
+     * @throws IllegalArgumentException if a record of the journal can not be read, as for StockTradeJournal.replay
+     */
+    long attachJournal(StockTradeJournal stockTradeJournal){
+
+        long numberOfTradesRecovered = stockTradeJournal.replay((symbol, transactionType, timeStampEpochNanos, quantityInHundredths, tradePriceInPence) ->
+                addTrade(new StockTrade(transactionType, symbol, timeStampEpochNanos, quantityInHundredths, tradePriceInPence)));
+
+        this.stockTradeJournal = stockTradeJournal;
+
+        return numberOfTradesRecovered;
+    }
+
+    /**
+     * @param stockTrade trade to add
+     * @throws ArithmeticException if a listener would overflow, in which case the trade is not added
+     */
     void addTrade(StockTrade stockTrade){
-        stockTradeHistoryList.add(stockTrade);
+
+        Partition partition = partitions.get(stockTrade.getSymbol());
+
+        synchronized (partition){
+
+            //Any listener that would overflow refuses the trade before it is stored or journaled
+            checkTradeAdded(stockTrade.getSymbol(), stockTrade.getTimeStampEpochNanos(), stockTrade.getQuantityInHundredths(), stockTrade.getTradePriceInPence());
+
+            partition.add(stockTrade);
+
+            //Only journaled once stored, so the journal never recovers a trade the history refused
+            journalTrade(stockTrade.getSymbol(), stockTrade.getTransactionType(), stockTrade.getTimeStampEpochNanos(),
+                    stockTrade.getQuantityInHundredths(), stockTrade.getTradePriceInPence());
+
+            notifyTradeAdded(stockTrade.getSymbol(), stockTrade.getTransactionType(), stockTrade.getTimeStampEpochNanos(),
+                    stockTrade.getQuantityInHundredths(), stockTrade.getTradePriceInPence());
+        }
+    }
+
+    /**
+     * Adds a collection of trades in one go
+     *
+     * @param stockTrades trades to add
+     */
+    void addTrades(Collection<StockTrade> stockTrades){
+        addTrades(StockTradeBatch.of(stockTrades));
+    }
+
+    /**
+     * Adds a batch of trades in one go
+     *
+     * The batch is split by Stock, and each Stock's trades are put in timestamp order,
+     * so each partition is locked once and its trades are stored, written to the journal
+     * and passed to listeners as a single batch
+     *
+     * @param stockTradeBatch trades to add
+     * @throws ArithmeticException if a listener would overflow, in which case none of the trades for that Stock are added,
+     *                             though those for Stocks with lower ids already have been
+     */
+    void addTrades(StockTradeBatch stockTradeBatch){
+
+        //Sort the indexes of the trades by Stock Symbol id, then by index, so each Stock's trades are together
+        //and keep their order. Packed into longs so a primitive sort can be used, and the cost depends
+        //only on the size of the batch, not on how many Stocks are listed.
+        int batchSize = stockTradeBatch.size();
+        long[] symbolIdsAndIndexes = new long[batchSize];
+
+        for(int i = 0; i < batchSize; i++){
+            symbolIdsAndIndexes[i] = (long) stockTradeBatch.getSymbol(i).getId() << 32 | i;
+        }
+
+        Arrays.sort(symbolIdsAndIndexes);
+
+        int from = 0;
+
+        while(from < batchSize){
+
+            long symbolId = symbolIdsAndIndexes[from] >>> 32;
+            int to = from + 1;
+
+            while(to < batchSize && symbolIdsAndIndexes[to] >>> 32 == symbolId){
+                to++;
+            }
+
+            StockTradeBatch symbolStockTradeBatch = new StockTradeBatch(to - from);
+
+            for(int i = from; i < to; i++){
+                symbolStockTradeBatch.add(stockTradeBatch, (int) symbolIdsAndIndexes[i]);
+            }
+
+            symbolStockTradeBatch.sortByTimeStamp();
+
+            Partition partition = partitions.get(symbolStockTradeBatch.getSymbol(0));
+
+            synchronized (partition){
+
+                checkTradesAdded(symbolStockTradeBatch);
+
+                partition.addAll(symbolStockTradeBatch);
+
+                journalTrades(symbolStockTradeBatch);
+
+                notifyTradesAdded(symbolStockTradeBatch);
+            }
+
+            from = to;
+        }
+    }
+
+    /*
+     * Steps every trade goes through on its way into a history, shared with histories that store trades differently:
+     * checked by the listeners, stored, journaled, then passed to the listeners. Each is called with the trade's
+     * Stock locked, or the whole history for histories that lock it as a whole.
+     */
+
+    void checkTradeAdded(StockSymbol symbol, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence){
+
+        for(StockTradeListener stockTradeListener : stockTradeListeners){
+            stockTradeListener.checkTradeAdded(symbol, timeStampEpochNanos, quantityInHundredths, tradePriceInPence);
+        }
+    }
+
+    void checkTradesAdded(StockTradeBatch stockTradeBatch){
+
+        for(StockTradeListener stockTradeListener : stockTradeListeners){
+            stockTradeListener.checkTradesAdded(stockTradeBatch);
+        }
+    }
+
+    void journalTrade(StockSymbol symbol, TransactionType transactionType, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence){
+
+        StockTradeJournal journal = stockTradeJournal;
+
+        if(journal != null){
+            journal.append(symbol, transactionType, timeStampEpochNanos, quantityInHundredths, tradePriceInPence);
+        }
+    }
+
+    void journalTrades(StockTradeBatch stockTradeBatch){
+
+        StockTradeJournal journal = stockTradeJournal;
+
+        if(journal != null){
+            journal.append(stockTradeBatch);
+        }
+    }
+
+    void notifyTradeAdded(StockSymbol symbol, TransactionType transactionType, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence){
+
+        for(StockTradeListener stockTradeListener : stockTradeListeners){
+            stockTradeListener.tradeAdded(symbol, transactionType, timeStampEpochNanos, quantityInHundredths, tradePriceInPence);
+        }
     }
 
+    void notifyTradesAdded(StockTradeBatch stockTradeBatch){
+
+        for(StockTradeListener stockTradeListener : stockTradeListeners){
+            stockTradeListener.tradesAdded(stockTradeBatch);
+        }
+    }
+
+    /**
+     * Returns a read only snapshot of all trades for all Stocks,
+     * grouped by Stock and in timestamp order within each Stock
+     *
+     * @return all trades for all Stocks
+     */
     List<StockTrade> getStockTradeHistoryListForAllStocks(){
-        return stockTradeHistoryList;
+
+        List<TradeSnapshot> tradeSnapshots = new ArrayList<>();
+
+        for(int symbolId = 0; symbolId < partitions.length(); symbolId++){
+
+            Partition partition = partitions.getById(symbolId);
+
+            if(partition != null){
+                tradeSnapshots.add(partition.snapshot());
+            }
+        }
+
+        return new AllStocksSnapshot(tradeSnapshots.toArray(new TradeSnapshot[0]));
+    }
+
+    /**
+     * Returns the timestamp of the latest trade held for the given Stock, read from the end of
+     * its trades in timestamp order, so costs the same however many trades are held
+     *
+     * @param symbol Stock Symbol
+     * @return timestamp in nanoseconds since the epoch, or Long.MIN_VALUE if no trades are held for the Stock
+     */
+    long getLatestTimeStamp(StockSymbol symbol){
+        return partitions.get(symbol).getLatestTimeStamp();
+    }
+
+    /**
+     * Returns how many trades are held for all Stocks, not counting evicted trades,
+     * without taking a snapshot so it is cheap enough to be polled
+     *
+     * @return number of trades held
+     */
+    long getNumberOfTradesHeld(){
+
+        long numberOfTradesHeld = 0;
+
+        for(int symbolId = 0; symbolId < partitions.length(); symbolId++){
+
+            Partition partition = partitions.getById(symbolId);
+
+            if(partition != null){
+                numberOfTradesHeld += partition.trades.size;
+            }
+        }
+        return numberOfTradesHeld;
+    }
+
+    /**
+     * Returns a read only snapshot of all trades for the given Stock in timestamp order
+     *
+     * @param symbol Stock Symbol
+     * @return all trades for the given Stock
+     */
+    List<StockTrade> getStockTradeHistoryListForSymbol(StockSymbol symbol){
+        return partitions.get(symbol).snapshot();
+    }
+
+    /**
+     * Returns a read only snapshot of the trades for the given Stock that happened
+     * at or after the from time and before the to time, in timestamp order
+     *
+     * @param symbol Stock Symbol
+     * @param from start of the time range (inclusive)
+     * @param to end of the time range (exclusive)
+     * @return trades for the given Stock in the time range
+     */
+    List<StockTrade> getStockTradeHistoryListForSymbol(StockSymbol symbol, LocalDateTime from, LocalDateTime to){
+        return getStockTradeHistoryListForSymbol(symbol, FixedPointUtility.toEpochNanos(from), FixedPointUtility.toEpochNanos(to));
+    }
+
+    /**
+     * Returns a read only snapshot of the trades for the given Stock that happened
+     * at or after the from time and before the to time, in timestamp order
+     *
+     * @param symbol Stock Symbol
+     * @param from start of the time range in nanoseconds since the epoch (inclusive)
+     * @param to end of the time range in nanoseconds since the epoch (exclusive)
+     * @return trades for the given Stock in the time range
+     */
+    List<StockTrade> getStockTradeHistoryListForSymbol(StockSymbol symbol, long from, long to){
+
+        List<StockTrade> partition = partitions.get(symbol).snapshot();
+
+        int fromIndex = indexOfFirstTradeNotBefore(partition, from);
+        int toIndex = Math.max(fromIndex, indexOfFirstTradeNotBefore(partition, to));
+
+        return partition.subList(fromIndex, toIndex);
+    }
+
+    /**
+     * Returns a cursor over all trades for all Stocks, grouped by Stock and in timestamp order within each Stock.
+     * Trades added after the cursor is created are not included.
+     *
+     * Reads trades where they are held rather than copying them into a List,
+     * so is the way to read a whole history whichever kind of history it is.
+     *
+     * @return cursor positioned before the first trade
+     */
+    StockTradeCursor getStockTradeCursorForAllStocks(){
+        return new StockTradeListCursor(getStockTradeHistoryListForAllStocks());
+    }
+
+    /**
+     * Returns a cursor over all trades for the given Stock in timestamp order.
+     * Trades added after the cursor is created are not included.
+     *
+     * @param symbol Stock Symbol
+     * @return cursor positioned before the first trade
+     */
+    StockTradeCursor getStockTradeCursorForSymbol(StockSymbol symbol){
+        return new StockTradeListCursor(getStockTradeHistoryListForSymbol(symbol));
+    }
+
+    /**
+     * Returns a cursor over the trades for the given Stock that happened
+     * at or after the from time and before the to time, in timestamp order
+     *
+     * @param symbol Stock Symbol
+     * @param from start of the time range in nanoseconds since the epoch (inclusive)
+     * @param to end of the time range in nanoseconds since the epoch (exclusive)
+     * @return cursor positioned before the first trade
+     */
+    StockTradeCursor getStockTradeCursorForSymbol(StockSymbol symbol, long from, long to){
+        return new StockTradeListCursor(getStockTradeHistoryListForSymbol(symbol, from, to));
+    }
+
+    /**
+     * Returns the Volume Weighted Stock Price for the given Stock based on trades
+     * that happened at or after the from time and before the to time
+     *
+     * @param symbol Stock Symbol
+     * @param from start of the time range (inclusive)
+     * @param to end of the time range (exclusive)
+     * @return Volume weighted Stock Price to 2 Decimal Places,
+     *         or 0 if no trades happened in the time range
+     */
+    BigDecimal getVolumeWeightedStockPrice(StockSymbol symbol, LocalDateTime from, LocalDateTime to){
+        return getVolumeWeightedStockPrice(symbol, FixedPointUtility.toEpochNanos(from), FixedPointUtility.toEpochNanos(to));
+    }
+
+    /**
+     * Returns the Volume Weighted Stock Price for the given Stock based on trades
+     * that happened at or after the from time and before the to time
+     *
+     * Uses running sums kept as trades are added rather than rescanning the trades,
+     * so costs the same however many trades are in the time range.
+     * Only trades still held count, not those evicted by the retention policy.
+     *
+     * @param symbol Stock Symbol
+     * @param from start of the time range in nanoseconds since the epoch (inclusive)
+     * @param to end of the time range in nanoseconds since the epoch (exclusive)
+     * @return Volume weighted Stock Price to 2 Decimal Places,
+     *         or 0 if no trades happened in the time range
+     */
+    BigDecimal getVolumeWeightedStockPrice(StockSymbol symbol, long from, long to){
+        return partitions.get(symbol).getVolumeWeightedStockPrice(from, to);
+    }
+
+    /**
+     * @param symbol Stock Symbol
+     * @return summary of the trades for the given Stock that have been evicted by the retention policy
+     */
+    StockTradeSummary getEvictedTrades(StockSymbol symbol){
+        return partitions.get(symbol).getEvictedTrades();
+    }
+
+    /**
+     * Returns the GBCE All Share Index for every trade added, using the summaries
+     * of trades that have been evicted along with the trades still held
+     *
+     * @return GBCE to 2 Decimal Places
+     * @throws SuperSimpleStocksException if there have been no trades
+     */
+    BigDecimal getGBCE() throws SuperSimpleStocksException {
+
+        long numberOfTrades = 0;
+        double sumOfLogTradePrices = 0;
+
+        for(int symbolId = 0; symbolId < partitions.length(); symbolId++){
+
+            Partition partition = partitions.getById(symbolId);
+
+            if(partition == null){
+                continue;
+            }
+
+            //The summary is replaced along with the trades, so the two always match
+            Trades current = partition.trades;
+            int size = current.size;
+
+            numberOfTrades += current.evictedTrades.getNumberOfTrades() + size;
+            sumOfLogTradePrices += current.evictedTrades.getSumOfLogTradePrices();
+
+            sumOfLogTradePrices += TradeColumnKernels.get().sumLogTradePrices(current.tradePrices, 0, size);
+        }
+
+        if(numberOfTrades == 0){
+            throw new SuperSimpleStocksException("GBCE can not be calculated as there have been no trades");
+        }
+
+        return BigDecimal.valueOf(Math.exp(sumOfLogTradePrices / numberOfTrades)).setScale(2, RoundingMode.HALF_UP); //Assume 2 dp is sufficient precision
+    }
+
+    /**
+     * Binary search for the first trade in a time ordered partition
+     * with a timestamp at or after the given time
+     *
+     * @param partition time ordered trades
+     * @param timeStamp time to search for in nanoseconds since the epoch
+     * @return index of the first matching trade, or the partition size if there is none
+     */
+    private static int indexOfFirstTradeNotBefore(List<StockTrade> partition, long timeStamp){
+
+        int low = 0;
+        int high = partition.size();
+
+        while(low < high){
+            int middle = (low + high) >>> 1;
+
+            if(partition.get(middle).getTimeStampEpochNanos() < timeStamp){
+                low = middle + 1;
+            }else{
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Trades for a single Stock in timestamp order
+     *
+     * Trades are held in an array where no slot below the published size is ever changed.
+     * A trade arriving in time order is written to the next free slot before the size is increased,
+     * while a trade arriving out of order, or one that needs more room, is written to a copy of the array
+     * which then replaces it. A snapshot therefore only needs the array and the size at the time it was taken.
+     *
+     * Adding trades must be done while holding the lock on the partition
+     */
+    private static class Partition {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final RetentionPolicy retentionPolicy;
+
+        private volatile Trades trades = new Trades(new StockTrade[INITIAL_CAPACITY], 0);
+
+        Partition(RetentionPolicy retentionPolicy){
+            this.retentionPolicy = retentionPolicy;
+        }
+
+        void add(StockTrade stockTrade){
+
+            evictIfFull(1, stockTrade.getTimeStampEpochNanos());
+
+            Trades current = trades;
+            StockTrade[] array = current.array;
+            int size = current.size;
+
+            //Trades normally arrive in time order so can simply be appended,
+            //otherwise insert after any trades with the same or an earlier timestamp
+            int insertionPoint = size;
+
+            if(insertionPoint > 0 && array[insertionPoint - 1].getTimeStampEpochNanos() > stockTrade.getTimeStampEpochNanos()){
+                insertionPoint = indexOfFirstTradeAfter(array, size, stockTrade.getTimeStampEpochNanos());
+            }
+
+            if(insertionPoint == size && size < array.length){
+                array[size] = stockTrade;
+                current.index(size, size + 1);
+                current.size = size + 1;
+                return;
+            }
+
+            StockTrade[] copy = new StockTrade[size < array.length ? array.length : array.length * 2];
+            System.arraycopy(array, 0, copy, 0, insertionPoint);
+            copy[insertionPoint] = stockTrade;
+            System.arraycopy(array, insertionPoint, copy, insertionPoint + 1, size - insertionPoint);
+
+            trades = new Trades(copy, size + 1, current, insertionPoint);
+        }
+
+        /**
+         * Adds a batch of trades that are in timestamp order
+         *
+         * @param stockTradeBatch trades to add, in timestamp order
+         */
+        void addAll(StockTradeBatch stockTradeBatch){
+
+            evictIfFull(stockTradeBatch.size(), stockTradeBatch.getTimeStampEpochNanos(stockTradeBatch.size() - 1));
+
+            Trades current = trades;
+            StockTrade[] array = current.array;
+            int size = current.size;
+            int batchSize = stockTradeBatch.size();
+
+            boolean inTimeOrder = size == 0 || array[size - 1].getTimeStampEpochNanos() <= stockTradeBatch.getTimeStampEpochNanos(0);
+
+            if(inTimeOrder && size + batchSize <= array.length){
+
+                for(int i = 0; i < batchSize; i++){
+                    array[size + i] = stockTradeBatch.getStockTrade(i);
+                }
+                current.index(size, size + batchSize);
+                current.size = size + batchSize;
+                return;
+            }
+
+            int capacity = size + batchSize <= array.length ? array.length : Math.max(array.length * 2, size + batchSize);
+            StockTrade[] copy = new StockTrade[capacity];
+
+            //Existing trades before the first trade of the batch keep their place
+            int unchanged = indexOfFirstTradeAfter(array, size, stockTradeBatch.getTimeStampEpochNanos(0));
+            int existing = unchanged;
+            int batch = 0;
+            int merged = unchanged;
+
+            System.arraycopy(array, 0, copy, 0, unchanged);
+
+            //Merge the remaining trades with the batch, existing trades first where timestamps are the same
+
+            while(existing < size || batch < batchSize){
+
+                if(batch == batchSize || (existing < size
+                        && array[existing].getTimeStampEpochNanos() <= stockTradeBatch.getTimeStampEpochNanos(batch))){
+                    copy[merged++] = array[existing++];
+                }else{
+                    copy[merged++] = stockTradeBatch.getStockTrade(batch++);
+                }
+            }
+
+            trades = new Trades(copy, merged, current, unchanged);
+        }
+
+        /**
+         * @param from start of the time range in nanoseconds since the epoch (inclusive)
+         * @param to end of the time range in nanoseconds since the epoch (exclusive)
+         * @return Volume Weighted Stock Price of the trades in the time range to 2 Decimal Places, or 0 if there are none
+         */
+        BigDecimal getVolumeWeightedStockPrice(long from, long to){
+
+            Trades current = trades;
+            int size = current.size;
+
+            int fromIndex = current.indexOfFirstTimeStampNotBefore(size, from);
+            int toIndex = Math.max(fromIndex, current.indexOfFirstTimeStampNotBefore(size, to));
+
+            if(fromIndex == toIndex){
+                return BigDecimal.ZERO;
+            }
+
+            long totalQuantity = current.cumulativeQuantity(toIndex) - current.cumulativeQuantity(fromIndex);
+            long sumOfTradePriceMultipliedByQuantity = current.cumulativeTradePriceMultipliedByQuantity(toIndex)
+                    - current.cumulativeTradePriceMultipliedByQuantity(fromIndex);
+
+            //The low words of the differences are only the sums if the high words of the differences are 0,
+            //and the sums fit in a long, otherwise work them out again as BigDecimals
+            if(highWordOfDifference(current.cumulativeQuantityHigh(toIndex), current.cumulativeQuantity(toIndex),
+                        current.cumulativeQuantityHigh(fromIndex), current.cumulativeQuantity(fromIndex)) != 0
+                    || highWordOfDifference(current.cumulativeTradePriceMultipliedByQuantityHigh(toIndex), current.cumulativeTradePriceMultipliedByQuantity(toIndex),
+                        current.cumulativeTradePriceMultipliedByQuantityHigh(fromIndex), current.cumulativeTradePriceMultipliedByQuantity(fromIndex)) != 0
+                    || totalQuantity < 0 || sumOfTradePriceMultipliedByQuantity < 0){
+                return CalculationUtility.calculateVolumeWeightedStockPrice(new TradeSnapshot(current.array, toIndex).subList(fromIndex, toIndex));
+            }
+
+            if(totalQuantity == 0){
+                return BigDecimal.ZERO;
+            }
+            //Sum of (Quantity * Trade price) / Sum of Quantity, the hundredths cancel out leaving pence
+            return FixedPointUtility.divideHalfUp(sumOfTradePriceMultipliedByQuantity, totalQuantity);
+        }
+
+        StockTradeSummary getEvictedTrades(){
+            return trades.evictedTrades;
+        }
+
+        long getLatestTimeStamp(){
+
+            Trades current = trades;
+            int size = current.size;
+
+            return size == 0 ? Long.MIN_VALUE : current.timeStamps[size - 1];
+        }
+
+        /**
+         * @return high word of the 128 bit difference between two 128 bit sums, each held as a high word and an unsigned low word
+         */
+        private static long highWordOfDifference(long high, long low, long otherHigh, long otherLow){
+            return high - otherHigh - (Long.compareUnsigned(low, otherLow) < 0 ? 1 : 0);
+        }
+
+        /**
+         * Evicts the trades the retention policy no longer keeps if the trades being added will not fit,
+         * so a partition only ever grows to hold the trades kept rather than every trade added.
+         * Evicting copies the trades that are left, so is only done when a copy would be needed anyway.
+         *
+         * @param numberOfTradesToAdd number of trades about to be added
+         * @param latestTimeStamp latest timestamp of the trades about to be added
+         */
+        private void evictIfFull(int numberOfTradesToAdd, long latestTimeStamp){
+
+            Trades current = trades;
+            int size = current.size;
+
+            if(size == 0 || size + numberOfTradesToAdd <= current.array.length || retentionPolicy.keepsAll()){
+                return;
+            }
+
+            //Ages are counted back from the latest trade
+            long latest = Math.max(current.timeStamps[size - 1], latestTimeStamp);
+            long maximumAge = retentionPolicy.getMaximumAgeNanos();
+            int evicted = 0;
+
+            if(latest > Long.MIN_VALUE + maximumAge){
+                evicted = current.indexOfFirstTimeStampNotBefore(size, latest - maximumAge);
+            }
+
+            long overLimit = (long) size + numberOfTradesToAdd - retentionPolicy.getMaximumTradesPerStock();
+
+            if(overLimit > evicted){
+                evicted = (int) Math.min(size, overLimit);
+            }
+
+            if(evicted == 0){
+                return;
+            }
+
+            double sumOfLogTradePrices = 0;
+
+            for(int i = 0; i < evicted; i++){
+                sumOfLogTradePrices += Math.log(current.array[i].getTradePriceInPence());
+            }
+
+            //The sums of the evicted trades are the 128 bit differences of the running sums, carried into the summary in full
+            StockTradeSummary evictedTrades = current.evictedTrades.plus(evicted,
+                    highWordOfDifference(current.cumulativeQuantityHigh(evicted), current.cumulativeQuantity(evicted),
+                            current.cumulativeQuantityHigh(0), current.cumulativeQuantity(0)),
+                    current.cumulativeQuantity(evicted) - current.cumulativeQuantity(0),
+                    highWordOfDifference(current.cumulativeTradePriceMultipliedByQuantityHigh(evicted), current.cumulativeTradePriceMultipliedByQuantity(evicted),
+                            current.cumulativeTradePriceMultipliedByQuantityHigh(0), current.cumulativeTradePriceMultipliedByQuantity(0)),
+                    current.cumulativeTradePriceMultipliedByQuantity(evicted) - current.cumulativeTradePriceMultipliedByQuantity(0),
+                    sumOfLogTradePrices, current.timeStamps[evicted - 1]);
+
+            //Leave room for half as many trades again as will be held, so evicting is not needed again straight away
+            int needed = size - evicted + numberOfTradesToAdd;
+
+            trades = new Trades(current, size, evicted, Math.max(INITIAL_CAPACITY, needed + (needed >> 1)), evictedTrades);
+        }
+
+        TradeSnapshot snapshot(){
+            Trades current = trades;
+            return new TradeSnapshot(current.array, current.size);
+        }
+
+        /**
+         * Binary search for the first trade with a timestamp strictly after the given time
+         *
+         * @param array time ordered trades
+         * @param size number of trades in the array
+         * @param timeStamp time to search for in nanoseconds since the epoch
+         * @return index of the first matching trade, or the size if there is none
+         */
+        private static int indexOfFirstTradeAfter(StockTrade[] array, int size, long timeStamp){
+
+            int low = 0;
+            int high = size;
+
+            while(low < high){
+                int middle = (low + high) >>> 1;
+
+                if(array[middle].getTimeStampEpochNanos() > timeStamp){
+                    high = middle;
+                }else{
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
     }
 
-    List<StockTrade> getStockTradeHistoryListForSymbol(StockSymbolEnum symbol){
+    /**
+     * Array of trades and the number of slots in use
+     *
+     * Alongside the trades are their timestamps and running sums of Quantity and Quantity * Trade Price
+     * up to and including each trade, so the Volume Weighted Stock Price of the trades between
+     * any two times can be found with two binary searches and a subtraction. Each running sum is 128 bits,
+     * an unsigned low word and a high word taking its carries, so never overflows. Their trade prices are held
+     * as a column too, so the logs of every trade price can be summed by TradeColumnKernels.
+     * A slot is filled in before the size is increased to include it.
+     *
+     * Also holds the summary of the trades evicted before the first trade, so the two can be read together.
+     */
+    private static class Trades {
+
+        final StockTrade[] array;
+        final long[] timeStamps;
+        final long[] tradePrices;
+        final long[] cumulativeQuantities;
+        final long[] cumulativeTradePricesMultipliedByQuantity;
+        final long[] cumulativeQuantitiesHigh;
+        final long[] cumulativeTradePricesMultipliedByQuantityHigh;
+        volatile int size;
+
+        //Running sums before the first trade, which are not 0 once trades have been evicted
+        private final long baseQuantity;
+        private final long baseTradePriceMultipliedByQuantity;
+        private final long baseQuantityHigh;
+        private final long baseTradePriceMultipliedByQuantityHigh;
+
+        final StockTradeSummary evictedTrades;
+
+        Trades(StockTrade[] array, int size){
+            this.array = array;
+            timeStamps = new long[array.length];
+            tradePrices = new long[array.length];
+            cumulativeQuantities = new long[array.length];
+            cumulativeTradePricesMultipliedByQuantity = new long[array.length];
+            cumulativeQuantitiesHigh = new long[array.length];
+            cumulativeTradePricesMultipliedByQuantityHigh = new long[array.length];
+            baseQuantity = 0;
+            baseTradePriceMultipliedByQuantity = 0;
+            baseQuantityHigh = 0;
+            baseTradePriceMultipliedByQuantityHigh = 0;
+            evictedTrades = StockTradeSummary.EMPTY;
+
+            index(0, size);
+            this.size = size;
+        }
+
+        /**
+         * @param array trades, the same as those in previous up to the unchanged index
+         * @param size number of trades in the array
+         * @param previous trades this replaces
+         * @param unchanged number of trades at the start of the array that are the same as in previous
+         */
+        Trades(StockTrade[] array, int size, Trades previous, int unchanged){
+            this.array = array;
+            timeStamps = Arrays.copyOf(previous.timeStamps, array.length);
+            tradePrices = Arrays.copyOf(previous.tradePrices, array.length);
+            cumulativeQuantities = Arrays.copyOf(previous.cumulativeQuantities, array.length);
+            cumulativeTradePricesMultipliedByQuantity = Arrays.copyOf(previous.cumulativeTradePricesMultipliedByQuantity, array.length);
+            cumulativeQuantitiesHigh = Arrays.copyOf(previous.cumulativeQuantitiesHigh, array.length);
+            cumulativeTradePricesMultipliedByQuantityHigh = Arrays.copyOf(previous.cumulativeTradePricesMultipliedByQuantityHigh, array.length);
+            baseQuantity = previous.baseQuantity;
+            baseTradePriceMultipliedByQuantity = previous.baseTradePriceMultipliedByQuantity;
+            baseQuantityHigh = previous.baseQuantityHigh;
+            baseTradePriceMultipliedByQuantityHigh = previous.baseTradePriceMultipliedByQuantityHigh;
+            evictedTrades = previous.evictedTrades;
+
+            index(unchanged, size);
+            this.size = size;
+        }
+
+        /**
+         * @param previous trades this replaces
+         * @param size number of trades in previous
+         * @param evicted number of trades at the start of previous to leave out
+         * @param capacity size of the new array
+         * @param evictedTrades summary of all trades evicted, including those left out of previous
+         */
+        Trades(Trades previous, int size, int evicted, int capacity, StockTradeSummary evictedTrades){
+            array = new StockTrade[capacity];
+            timeStamps = new long[capacity];
+            tradePrices = new long[capacity];
+            cumulativeQuantities = new long[capacity];
+            cumulativeTradePricesMultipliedByQuantity = new long[capacity];
+            cumulativeQuantitiesHigh = new long[capacity];
+            cumulativeTradePricesMultipliedByQuantityHigh = new long[capacity];
+            baseQuantity = previous.cumulativeQuantity(evicted);
+            baseTradePriceMultipliedByQuantity = previous.cumulativeTradePriceMultipliedByQuantity(evicted);
+            baseQuantityHigh = previous.cumulativeQuantityHigh(evicted);
+            baseTradePriceMultipliedByQuantityHigh = previous.cumulativeTradePriceMultipliedByQuantityHigh(evicted);
+            this.evictedTrades = evictedTrades;
 
-        List<StockTrade> stockTradeListForSymbol = new ArrayList<>();
+            int remaining = size - evicted;
 
-        for(StockTrade stockTrade : stockTradeHistoryList){
+            System.arraycopy(previous.array, evicted, array, 0, remaining);
+            System.arraycopy(previous.timeStamps, evicted, timeStamps, 0, remaining);
+            System.arraycopy(previous.tradePrices, evicted, tradePrices, 0, remaining);
+            System.arraycopy(previous.cumulativeQuantities, evicted, cumulativeQuantities, 0, remaining);
+            System.arraycopy(previous.cumulativeTradePricesMultipliedByQuantity, evicted, cumulativeTradePricesMultipliedByQuantity, 0, remaining);
+            System.arraycopy(previous.cumulativeQuantitiesHigh, evicted, cumulativeQuantitiesHigh, 0, remaining);
+            System.arraycopy(previous.cumulativeTradePricesMultipliedByQuantityHigh, evicted, cumulativeTradePricesMultipliedByQuantityHigh, 0, remaining);
 
-            if(stockTrade.getSymbol() == symbol){
-                stockTradeListForSymbol.add(stockTrade);
+            this.size = remaining;
+        }
+
+        /**
+         * Fills in the timestamps, trade prices and running sums for the trades in the given slots
+         */
+        void index(int from, int to){
+
+            long quantity = cumulativeQuantity(from);
+            long tradePriceMultipliedByQuantity = cumulativeTradePriceMultipliedByQuantity(from);
+            long quantityHigh = cumulativeQuantityHigh(from);
+            long tradePriceMultipliedByQuantityHigh = cumulativeTradePriceMultipliedByQuantityHigh(from);
+
+            for(int i = from; i < to; i++){
+                StockTrade stockTrade = array[i];
+                long quantityInHundredths = stockTrade.getQuantityInHundredths();
+                long tradePriceInPence = stockTrade.getTradePriceInPence();
+
+                //Low words wrap around, carrying into the high words. Quantities and trade prices are never negative,
+                //so the signed high word of their product is the same as the unsigned one
+                long sum = quantity + quantityInHundredths;
+                quantityHigh += Long.compareUnsigned(sum, quantity) < 0 ? 1 : 0;
+                quantity = sum;
+
+                sum = tradePriceMultipliedByQuantity + quantityInHundredths * tradePriceInPence;
+                tradePriceMultipliedByQuantityHigh += Math.multiplyHigh(quantityInHundredths, tradePriceInPence)
+                        + (Long.compareUnsigned(sum, tradePriceMultipliedByQuantity) < 0 ? 1 : 0);
+                tradePriceMultipliedByQuantity = sum;
+
+                timeStamps[i] = stockTrade.getTimeStampEpochNanos();
+                tradePrices[i] = tradePriceInPence;
+                cumulativeQuantities[i] = quantity;
+                cumulativeTradePricesMultipliedByQuantity[i] = tradePriceMultipliedByQuantity;
+                cumulativeQuantitiesHigh[i] = quantityHigh;
+                cumulativeTradePricesMultipliedByQuantityHigh[i] = tradePriceMultipliedByQuantityHigh;
             }
         }
 
-        return stockTradeListForSymbol;
+        /**
+         * @return low word of the sum of the quantities of the trades before the given index
+         */
+        long cumulativeQuantity(int index){
+            return index == 0 ? baseQuantity : cumulativeQuantities[index - 1];
+        }
+
+        /**
+         * @return low word of the sum of Quantity * Trade Price of the trades before the given index
+         */
+        long cumulativeTradePriceMultipliedByQuantity(int index){
+            return index == 0 ? baseTradePriceMultipliedByQuantity : cumulativeTradePricesMultipliedByQuantity[index - 1];
+        }
+
+        long cumulativeQuantityHigh(int index){
+            return index == 0 ? baseQuantityHigh : cumulativeQuantitiesHigh[index - 1];
+        }
+
+        long cumulativeTradePriceMultipliedByQuantityHigh(int index){
+            return index == 0 ? baseTradePriceMultipliedByQuantityHigh : cumulativeTradePricesMultipliedByQuantityHigh[index - 1];
+        }
+
+        /**
+         * Binary search for the first trade with a timestamp at or after the given time
+         *
+         * @return index of the first matching trade, or the size if there is none
+         */
+        int indexOfFirstTimeStampNotBefore(int size, long timeStamp){
+
+            int low = 0;
+            int high = size;
+
+            while(low < high){
+                int middle = (low + high) >>> 1;
+
+                if(timeStamps[middle] < timeStamp){
+                    low = middle + 1;
+                }else{
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Read only view of the first trades in an array that will not be changed
+     */
+    private static class TradeSnapshot extends AbstractList<StockTrade> implements RandomAccess {
+
+        private final StockTrade[] array;
+        private final int size;
+
+        TradeSnapshot(StockTrade[] array, int size){
+            this.array = array;
+            this.size = size;
+        }
+
+        @Override
+        public StockTrade get(int index) {
+            if(index < 0 || index >= size){
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return array[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Read only view of the snapshots for each Stock, one after another
+     */
+    private static class AllStocksSnapshot extends AbstractList<StockTrade> implements RandomAccess {
+
+        private final TradeSnapshot[] tradeSnapshots;
+
+        //Index of the first trade of each snapshot, followed by the total size
+        private final int[] offsets;
+
+        AllStocksSnapshot(TradeSnapshot[] tradeSnapshots){
+            this.tradeSnapshots = tradeSnapshots;
+
+            offsets = new int[tradeSnapshots.length + 1];
+
+            for(int symbol = 0; symbol < tradeSnapshots.length; symbol++){
+                offsets[symbol + 1] = offsets[symbol] + tradeSnapshots[symbol].size();
+            }
+        }
+
+        @Override
+        public StockTrade get(int index) {
+
+            if(index < 0 || index >= size()){
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+
+            //Binary search for the first offset after the index, the snapshot before it holds the trade
+            int low = 0;
+            int high = offsets.length;
+
+            while(low < high){
+                int middle = (low + high) >>> 1;
+
+                if(offsets[middle] > index){
+                    high = middle;
+                }else{
+                    low = middle + 1;
+                }
+            }
+
+            int symbol = low - 1;
+
+            return tradeSnapshots[symbol].get(index - offsets[symbol]);
+        }
+
+        @Override
+        public int size() {
+            return offsets[tradeSnapshots.length];
+        }
     }
 }
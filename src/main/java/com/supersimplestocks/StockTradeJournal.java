@@ -0,0 +1,439 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append only journal of trades held in a memory mapped file,
+ * so that trades survive the application being restarted
+ *
+ * The file starts with a header, followed by fixed size records in the order the trades were added.
+ * The file is mapped a region at a time and grows by a region whenever the last one is full.
+ * Each record is written with a marker in its last byte, so on opening the journal
+ * the number of records is found by reading forward until a record without a marker.
+ *
+ * Records are written to the mapped memory, so they survive the application stopping straight away,
+ * but are only guaranteed to survive the machine stopping once they have been forced to disk
+ * by a checkpoint, which happens every number of records given and when the journal is closed.
+ *
+ * Appending does not lock. Each append claims the next records with an atomic add and writes them
+ * to its own part of the mapped memory, so trades for different Stocks, which the trade history
+ * adds on different threads at once, are journaled at the same time. Only mapping a new region
+ * and checkpoints lock. If the application stops while an earlier record is still being written,
+ * the records after it are not recovered, as recovery stops at the first record without a marker.
+ *
+ * Stocks are recorded by their Stock Symbol id, which is only the order the Stocks were listed in by the process
+ * writing the journal. So before a Stock is first journaled, a symbol definition record giving its id and its symbol
+ * is written, and replaying the journal maps each id to the Stock with that symbol as listed now, listing it if need be.
+ * A definition applies to the records after it, so a journal reopened by a process that listed its Stocks
+ * in another order defines again any id it uses differently. Ids with no definition, as in journals written before
+ * symbol definitions, are read as the Stock with that id as listed now.
+ *
+ * Safe to use from several threads at once.
+ */
+class StockTradeJournal implements Closeable {
+
+    //Record layout, also used by the binary trade file format
+    static final int RECORD_SIZE = 32;
+    static final int TIMESTAMP_OFFSET = 0;
+    static final int QUANTITY_OFFSET = 8;
+    static final int PRICE_OFFSET = 16;
+    static final int SYMBOL_OFFSET = 24;
+    static final int TRANSACTION_TYPE_OFFSET = 25;
+    //Upper 16 bits of the Stock Symbol id, kept apart from the lowest 8 bits so records written before
+    //there were more than 256 Stocks, which have 0 here, are read the same
+    static final int SYMBOL_HIGH_OFFSET = 26;
+    static final int MARKER_OFFSET = 31;
+    static final byte MARKER = 1;
+
+    //A symbol definition record has this in place of the transaction type, and the symbol in ASCII, padded with zeros
+    static final byte SYMBOL_DEFINITION = -1;
+    static final int SYMBOL_TEXT_OFFSET = 0;
+    static final int SYMBOL_TEXT_LENGTH = 16;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final int DEFAULT_RECORDS_PER_CHECKPOINT = 10_000;
+
+    static final int HEADER_SIZE = 32;
+    private static final int MAGIC = 0x53535354; //"SSST"
+    private static final int VERSION = 2;
+    //Journals written before symbol definitions, which are read the same and upgraded when opened
+    private static final int VERSION_WITHOUT_SYMBOL_DEFINITIONS = 1;
+
+    private static final int RECORDS_PER_REGION = 1 << 20;
+    private static final long REGION_SIZE = (long) RECORDS_PER_REGION * RECORD_SIZE;
+
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+
+    private final FileChannel fileChannel;
+
+    //Replaced by a longer copy when a region is mapped, so appends can read it without locking
+    private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+    private final int recordsPerCheckpoint;
+
+    //Regions written to since the last checkpoint
+    private int firstUncheckpointedRegion;
+
+    //Number of records claimed by appends, some of which may still be being written
+    private final AtomicLong numberOfRecords = new AtomicLong();
+
+    //Number of those records that are symbol definitions rather than trades, only written while creating a definedSymbols value
+    private volatile long numberOfSymbolDefinitions;
+
+    //Symbol each id was last defined as in the journal when it was opened, by id
+    private final List<String> symbolsDefinedWhenOpened = new ArrayList<>();
+
+    //Whether each Stock's id is defined as its symbol by the records written so far, writing the definition if not
+    private final StockSymbolTable<Boolean> definedSymbols = new StockSymbolTable<>(this::defineSymbol);
+
+    StockTradeJournal(Path path) throws IOException {
+        this(path, DEFAULT_RECORDS_PER_CHECKPOINT);
+    }
+
+    /**
+     * Opens the journal, creating it if it does not exist
+     *
+     * @param path journal file
+     * @param recordsPerCheckpoint number of records written between each checkpoint
+     * @throws IOException if the file can not be opened or is not a trade journal
+     */
+    StockTradeJournal(Path path, int recordsPerCheckpoint) throws IOException {
+
+        this.recordsPerCheckpoint = Math.max(1, recordsPerCheckpoint);
+
+        fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            MappedByteBuffer header = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(BYTE_ORDER);
+
+            if(header.getInt(0) == 0){
+                header.putInt(0, MAGIC);
+                header.putInt(4, VERSION);
+                header.force();
+            }else if(header.getInt(0) == MAGIC && header.getInt(4) == VERSION_WITHOUT_SYMBOL_DEFINITIONS){
+                header.putInt(4, VERSION);
+                header.force();
+            }else if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION){
+                throw new IOException(path + " is not a trade journal");
+            }
+
+            numberOfRecords.set(findNumberOfRecords());
+            firstUncheckpointedRegion = region(numberOfRecords.get());
+
+        } catch (IOException | RuntimeException e){
+            fileChannel.close();
+            throw e;
+        }
+    }
+
+    long getNumberOfRecords(){
+        return numberOfRecords.get();
+    }
+
+    /**
+     * @return number of trades journaled, which is the number of records less the symbol definitions
+     */
+    long getNumberOfTrades(){
+        return numberOfRecords.get() - numberOfSymbolDefinitions;
+    }
+
+    /**
+     * Appends a trade to the journal
+     *
+     * @throws UncheckedIOException if the journal file could not be grown
+     */
+    void append(StockSymbol symbol, TransactionType transactionType, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence){
+
+        //Written before the trade's record is claimed, so always comes before it
+        definedSymbols.get(symbol);
+
+        long record = numberOfRecords.getAndIncrement();
+
+        writeRecord(record, symbol, transactionType, timeStampEpochNanos, quantityInHundredths, tradePriceInPence);
+        checkpointIfDue(record, 1);
+    }
+
+    /**
+     * Appends a batch of trades to the journal, as consecutive records
+     *
+     * @throws UncheckedIOException if the journal file could not be grown
+     */
+    void append(StockTradeBatch stockTradeBatch){
+
+        int batchSize = stockTradeBatch.size();
+
+        for(int i = 0; i < batchSize; i++){
+            definedSymbols.get(stockTradeBatch.getSymbol(i));
+        }
+
+        long firstRecord = numberOfRecords.getAndAdd(batchSize);
+
+        for(int i = 0; i < batchSize; i++){
+            writeRecord(firstRecord + i, stockTradeBatch.getSymbol(i), stockTradeBatch.getTransactionType(i), stockTradeBatch.getTimeStampEpochNanos(i),
+                    stockTradeBatch.getQuantityInHundredths(i), stockTradeBatch.getTradePriceInPence(i));
+        }
+        checkpointIfDue(firstRecord, batchSize);
+    }
+
+    private void writeRecord(long record, StockSymbol symbol, TransactionType transactionType, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence){
+
+        //Only absolute puts are used, which do not move the buffer's position, so threads writing different records do not interfere
+        MappedByteBuffer region = mapRegion(region(record));
+        int offset = offset(record);
+
+        region.putLong(offset + TIMESTAMP_OFFSET, timeStampEpochNanos);
+        region.putLong(offset + QUANTITY_OFFSET, quantityInHundredths);
+        region.putLong(offset + PRICE_OFFSET, tradePriceInPence);
+        putSymbolId(region, offset, symbol.getId());
+        region.put(offset + TRANSACTION_TYPE_OFFSET, (byte) transactionType.ordinal());
+        region.put(offset + MARKER_OFFSET, MARKER);
+    }
+
+    /**
+     * Writes a symbol definition record for the Stock, unless its id was last defined as its symbol
+     * when the journal was opened. Only called once for each Stock, while the table is locked.
+     *
+     * @return true once the id is defined
+     */
+    private Boolean defineSymbol(StockSymbol symbol){
+
+        int id = symbol.getId();
+
+        if(id < symbolsDefinedWhenOpened.size() && symbol.getSymbol().equals(symbolsDefinedWhenOpened.get(id))){
+            return Boolean.TRUE;
+        }
+
+        long record = numberOfRecords.getAndIncrement();
+        MappedByteBuffer region = mapRegion(region(record));
+        int offset = offset(record);
+        String text = symbol.getSymbol();
+
+        for(int i = 0; i < SYMBOL_TEXT_LENGTH; i++){
+            region.put(offset + SYMBOL_TEXT_OFFSET + i, i < text.length() ? (byte) text.charAt(i) : 0);
+        }
+        putSymbolId(region, offset, id);
+        region.put(offset + TRANSACTION_TYPE_OFFSET, SYMBOL_DEFINITION);
+        region.put(offset + MARKER_OFFSET, MARKER);
+
+        numberOfSymbolDefinitions++;
+        checkpointIfDue(record, 1);
+
+        return Boolean.TRUE;
+    }
+
+    /**
+     * Checkpoints if the given records, just written, took the journal past a multiple of the records per checkpoint,
+     * so only the append that does so checkpoints
+     */
+    private void checkpointIfDue(long firstRecord, int count){
+
+        if((firstRecord + count) / recordsPerCheckpoint != firstRecord / recordsPerCheckpoint){
+            checkpoint();
+        }
+    }
+
+    /**
+     * Reads every trade in the journal in the order they were added,
+     * passing each to the given listener with its Stock as listed now
+     *
+     * @param stockTradeListener receives each trade
+     * @return number of trades read
+     * @throws IllegalArgumentException if a symbol definition is not a valid Stock Symbol,
+     *         a trade's Stock has no definition and is not listed, or a trade's transaction type
+     *         is neither BUY nor SELL, as when its record has been corrupted
+     */
+    synchronized long replay(StockTradeListener stockTradeListener){
+
+        long numberOfRecords = this.numberOfRecords.get();
+        long numberOfTrades = 0;
+
+        //Stock each id was last defined as in the records read so far
+        List<StockSymbol> definedSymbols = new ArrayList<>();
+
+        for(long record = 0; record < numberOfRecords; record++){
+
+            MappedByteBuffer region = mapRegion(region(record));
+            int offset = offset(record);
+            int id = getSymbolId(region, offset);
+            byte transactionType = region.get(offset + TRANSACTION_TYPE_OFFSET);
+
+            if(transactionType == SYMBOL_DEFINITION){
+                setDefinition(definedSymbols, id, StockSymbol.intern(getSymbolText(region, offset)));
+                continue;
+            }
+
+            //Checked, as the marker only shows the record was written in full, not that it has not been corrupted since
+            if(transactionType < 0 || transactionType >= TRANSACTION_TYPES.length){
+                throw new IllegalArgumentException("Trade journal record " + record + " has an invalid transaction type " + transactionType);
+            }
+
+            StockSymbol symbol = id < definedSymbols.size() ? definedSymbols.get(id) : null;
+
+            stockTradeListener.tradeAdded(
+                    symbol == null ? StockSymbol.forId(id) : symbol,
+                    TRANSACTION_TYPES[transactionType],
+                    region.getLong(offset + TIMESTAMP_OFFSET),
+                    region.getLong(offset + QUANTITY_OFFSET),
+                    region.getLong(offset + PRICE_OFFSET));
+            numberOfTrades++;
+        }
+        return numberOfTrades;
+    }
+
+    private static <T> void setDefinition(List<T> definitions, int id, T definition){
+
+        while(definitions.size() <= id){
+            definitions.add(null);
+        }
+        definitions.set(id, definition);
+    }
+
+    /**
+     * @param buffer buffer holding a symbol definition record
+     * @param offset offset of the record in the buffer
+     * @return symbol the record defines
+     */
+    private static String getSymbolText(ByteBuffer buffer, int offset){
+
+        StringBuilder text = new StringBuilder(SYMBOL_TEXT_LENGTH);
+
+        for(int i = 0; i < SYMBOL_TEXT_LENGTH && buffer.get(offset + SYMBOL_TEXT_OFFSET + i) != 0; i++){
+            text.append((char) buffer.get(offset + SYMBOL_TEXT_OFFSET + i));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Writes a Stock Symbol id to a record, in the lowest 8 bits and the upper 16 bits of an id of up to 24 bits
+     *
+     * @param buffer buffer holding the record
+     * @param offset offset of the record in the buffer
+     * @param symbolId Stock Symbol id
+     */
+    static void putSymbolId(ByteBuffer buffer, int offset, int symbolId){
+        buffer.put(offset + SYMBOL_OFFSET, (byte) symbolId);
+        buffer.putShort(offset + SYMBOL_HIGH_OFFSET, (short) (symbolId >>> 8));
+    }
+
+    /**
+     * @param buffer buffer holding the record
+     * @param offset offset of the record in the buffer
+     * @return Stock Symbol id written to the record
+     */
+    static int getSymbolId(ByteBuffer buffer, int offset){
+        return (buffer.get(offset + SYMBOL_OFFSET) & 0xFF) | (buffer.getShort(offset + SYMBOL_HIGH_OFFSET) & 0xFFFF) << 8;
+    }
+
+    /**
+     * Forces all records written since the last checkpoint to disk
+     */
+    synchronized void checkpoint(){
+
+        long checkpointedRecords = numberOfRecords.get();
+        MappedByteBuffer[] mappedRegions = regions;
+
+        for(int region = firstUncheckpointedRegion; region < mappedRegions.length; region++){
+            mappedRegions[region].force();
+        }
+
+        firstUncheckpointedRegion = region(checkpointedRecords);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        checkpoint();
+        fileChannel.close();
+    }
+
+    /**
+     * Reads forward to the first record without a marker, noting the symbol definitions on the way
+     *
+     * @return number of records
+     */
+    private long findNumberOfRecords(){
+
+        long fileRecords = Math.max(0, (fileSize() - HEADER_SIZE) / RECORD_SIZE);
+        long record = 0;
+        long symbolDefinitions = 0;
+
+        while(record < fileRecords){
+
+            MappedByteBuffer region = mapRegion(region(record));
+            int offset = offset(record);
+
+            if(region.get(offset + MARKER_OFFSET) != MARKER){
+                break;
+            }
+
+            if(region.get(offset + TRANSACTION_TYPE_OFFSET) == SYMBOL_DEFINITION){
+                setDefinition(symbolsDefinedWhenOpened, getSymbolId(region, offset), getSymbolText(region, offset));
+                symbolDefinitions++;
+            }
+            record++;
+        }
+
+        numberOfSymbolDefinitions = symbolDefinitions;
+        return record;
+    }
+
+    private long fileSize(){
+        try {
+            return fileChannel.size();
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MappedByteBuffer mapRegion(int region){
+
+        MappedByteBuffer[] mappedRegions = regions;
+
+        return region < mappedRegions.length ? mappedRegions[region] : mapRegions(region);
+    }
+
+    /**
+     * Maps every region up to and including the given one that is not mapped yet
+     */
+    private synchronized MappedByteBuffer mapRegions(int region){
+
+        MappedByteBuffer[] mappedRegions = regions;
+
+        while(region >= mappedRegions.length){
+            try {
+                MappedByteBuffer mappedRegion = fileChannel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + mappedRegions.length * REGION_SIZE, REGION_SIZE);
+                mappedRegion.order(BYTE_ORDER);
+
+                mappedRegions = Arrays.copyOf(mappedRegions, mappedRegions.length + 1);
+                mappedRegions[mappedRegions.length - 1] = mappedRegion;
+                regions = mappedRegions;
+            } catch (IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+        return mappedRegions[region];
+    }
+
+    private static int region(long record){
+        return (int) (record / RECORDS_PER_REGION);
+    }
+
+    private static int offset(long record){
+        return (int) (record % RECORDS_PER_REGION) * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,64 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+
+import java.util.List;
+
+/**
+ * Cursor over a List of StockTrades
+ */
+class StockTradeListCursor implements StockTradeCursor {
+
+    private final List<StockTrade> stockTradeList;
+    private int index = -1;
+    private StockTrade stockTrade;
+
+    StockTradeListCursor(List<StockTrade> stockTradeList){
+        this.stockTradeList = stockTradeList;
+    }
+
+    @Override
+    public boolean next() {
+
+        if(index + 1 >= stockTradeList.size()){
+            stockTrade = null;
+            index = stockTradeList.size();
+            return false;
+        }
+
+        stockTrade = stockTradeList.get(++index);
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        index = -1;
+        stockTrade = null;
+    }
+
+    @Override
+    public StockSymbol getSymbol() {
+        return stockTrade.getSymbol();
+    }
+
+    @Override
+    public TransactionType getTransactionType() {
+        return stockTrade.getTransactionType();
+    }
+
+    @Override
+    public long getTimeStampEpochNanos() {
+        return stockTrade.getTimeStampEpochNanos();
+    }
+
+    @Override
+    public long getQuantityInHundredths() {
+        return stockTrade.getQuantityInHundredths();
+    }
+
+    @Override
+    public long getTradePriceInPence() {
+        return stockTrade.getTradePriceInPence();
+    }
+}
@@ -0,0 +1,69 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+
+/**
+ * Receives each trade as it is added to a trade history, so that derived
+ * values can be kept up to date as trades happen rather than being
+ * recalculated from the full history every time they are asked for
+ *
+ * Trades are passed as their fixed point values rather than as a StockTrade,
+ * so histories that do not hold StockTrade objects can also notify listeners
+ */
+interface StockTradeListener {
+
+    /**
+     * Called before a trade is added to the history, while the partition for its Stock is locked,
+     * so a listener can refuse a trade that would overflow the values it keeps.
+     * Nothing has been stored when this throws, so the history and its listeners still agree.
+     *
+     * @param symbol Stock Symbol traded
+     * @param timeStampEpochNanos timestamp in nanoseconds since the epoch
+     * @param quantityInHundredths quantity of shares in hundredths of a share
+     * @param tradePriceInPence trade price in pence
+     * @throws ArithmeticException if adding the trade would overflow
+     */
+    default void checkTradeAdded(StockSymbol symbol, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence){
+    }
+
+    /**
+     * Called before a batch of trades is added to the history, instead of calling checkTradeAdded for each trade.
+     * Listeners that keep sums should override this to check the whole batch, not each trade on its own.
+     *
+     * @param stockTradeBatch the trades that are to be added
+     * @throws ArithmeticException if adding the trades would overflow
+     */
+    default void checkTradesAdded(StockTradeBatch stockTradeBatch){
+
+        for(int i = 0; i < stockTradeBatch.size(); i++){
+            checkTradeAdded(stockTradeBatch.getSymbol(i), stockTradeBatch.getTimeStampEpochNanos(i),
+                    stockTradeBatch.getQuantityInHundredths(i), stockTradeBatch.getTradePriceInPence(i));
+        }
+    }
+
+    /**
+     * Called after a trade has been added to the history
+     *
+     * @param symbol Stock Symbol traded
+     * @param transactionType BUY or SELL
+     * @param timeStampEpochNanos timestamp in nanoseconds since the epoch
+     * @param quantityInHundredths quantity of shares in hundredths of a share
+     * @param tradePriceInPence trade price in pence
+     */
+    void tradeAdded(StockSymbol symbol, TransactionType transactionType, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence);
+
+    /**
+     * Called after a batch of trades has been added to the history, instead of calling tradeAdded for each trade.
+     * Listeners can override this to update their values once for the whole batch.
+     *
+     * @param stockTradeBatch the trades that have been added
+     */
+    default void tradesAdded(StockTradeBatch stockTradeBatch){
+
+        for(int i = 0; i < stockTradeBatch.size(); i++){
+            tradeAdded(stockTradeBatch.getSymbol(i), stockTradeBatch.getTransactionType(i), stockTradeBatch.getTimeStampEpochNanos(i),
+                    stockTradeBatch.getQuantityInHundredths(i), stockTradeBatch.getTradePriceInPence(i));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.supersimplestocks;
+
+import java.nio.ByteOrder;
+
+/**
+ * Binary protocol spoken between StockTradeServer and StockTradeClient
+ *
+ * Each request is an operation byte followed by fixed size fields for that operation:
+ *
+ * TRADE  symbol(4) transaction type(1) quantity in hundredths(8) trade price in pence(8)
+ * DY     symbol(4) market price in pence(4)
+ * PE     symbol(4) market price in pence(4)
+ * VWSP   symbol(4)
+ * GBCE   no fields
+ * SYMBOL symbol text(16), in ASCII padded with zeros
+ *
+ * Symbols are sent as the server's Stock Symbol ids, which are the order the server listed its Stocks in
+ * and need not match the client's. The result of a SYMBOL request is the server's id for the symbol given,
+ * so a client looks up each Stock once and then sends its id. Transaction types are sent as their enum ordinals.
+ *
+ * Each request gets one response, in the order the requests were sent, so a client can send
+ * several requests before reading the responses. The requests are run one at a time in that order,
+ * so a request sent after a TRADE sees the trade. A response is a status byte, then either
+ * a result(8) for OK, or a message length(2) and UTF-8 message for ERROR.
+ * The result of a TRADE is the timestamp given to the trade, in nanoseconds since the epoch,
+ * and the result of a calculation is the value to 2 decimal places, multiplied by 100.
+ *
+ * An unknown operation is answered with an ERROR and the connection is then closed,
+ * as the rest of the request can not be read.
+ */
+final class StockTradeProtocol {
+
+    static final ByteOrder BYTE_ORDER = ByteOrder.BIG_ENDIAN;
+
+    static final byte TRADE = 1;
+    static final byte DY = 2;
+    static final byte PE = 3;
+    static final byte VWSP = 4;
+    static final byte GBCE = 5;
+    static final byte SYMBOL = 6;
+
+    static final int SYMBOL_TEXT_LENGTH = 16;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    static final int RESULT_SCALE = 2;
+
+    private StockTradeProtocol(){
+    }
+
+    /**
+     * @param operation operation byte
+     * @return size of the request for the operation including the operation byte, or -1 if the operation is unknown
+     */
+    static int requestSize(byte operation){
+
+        switch(operation){
+            case TRADE:
+                return 1 + Integer.BYTES + 1 + Long.BYTES + Long.BYTES;
+            case DY:
+            case PE:
+                return 1 + Integer.BYTES + Integer.BYTES;
+            case VWSP:
+                return 1 + Integer.BYTES;
+            case GBCE:
+                return 1;
+            case SYMBOL:
+                return 1 + SYMBOL_TEXT_LENGTH;
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Recalculates the GBCE All Share Index and the Volume Weighted Stock Price of every Stock from a whole trade history,
+ * for example once a journal has been replayed, either on one thread or split across every core
+ *
+ * The trades are split into chunks, each summed on its own, and the sums of the chunks are then added together.
+ * Every sum is kept as whole numbers, so adding them is exact and gives the same total whatever the chunks
+ * and whatever order they are added in. PARALLEL mode therefore always gives exactly the same results as SEQUENTIAL.
+ *
+ * For the GBCE each chunk keeps the count of its trades, all of its trade prices multiplied for as long as that
+ * product can still be represented as a double, and the sum of the natural logs of its trade prices, each rounded
+ * to a fixed point number with 32 bits after the point. The index is the nth root of the product, exactly as
+ * CalculationUtility.calculateGBCE takes it, while the product can be represented as a double, and otherwise e raised
+ * to the mean of the logs. Prices must not be negative.
+ *
+ * For the Volume Weighted Stock Prices each chunk keeps the sum of quantities and the sum of trade price multiplied
+ * by quantity for each Stock, giving the same results as CalculationUtility.calculateVolumeWeightedStockPrice.
+ */
+final class StockTradeRecalculator {
+
+    /**
+     * How the trades are summed
+     */
+    enum Mode {
+
+        /**
+         * On the calling thread
+         */
+        SEQUENTIAL,
+
+        /**
+         * In chunks, as fork join tasks
+         */
+        PARALLEL
+    }
+
+    //Fewest trades worth giving a task of their own
+    private static final int MINIMUM_TRADES_PER_TASK = 1 << 16;
+
+    //Tasks per thread, so threads that finish early can take work from those that do not
+    private static final int TASKS_PER_THREAD = 4;
+
+    private final Mode mode;
+    private final ForkJoinPool forkJoinPool;
+
+    StockTradeRecalculator(Mode mode){
+        this(mode, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param mode how the trades are summed
+     * @param forkJoinPool pool to run the tasks in, in PARALLEL mode
+     */
+    StockTradeRecalculator(Mode mode, ForkJoinPool forkJoinPool){
+        this.mode = mode;
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    Mode getMode(){
+        return mode;
+    }
+
+    /**
+     * Calculates the GBCE All share index for the given trades
+     *
+     * @param stockTradeList List of transactions
+     * @return Calculated GBCE to 2 Decimal Places
+     * @throws SuperSimpleStocksException if there are no trades
+     */
+    BigDecimal calculateGBCE(List<StockTrade> stockTradeList) throws SuperSimpleStocksException {
+
+        GBCESums sums = sum(stockTradeList, GBCESums::new);
+
+        if(sums.numberOfTrades == 0){
+            throw new SuperSimpleStocksException("GBCE can not be calculated as there have been no trades");
+        }
+
+        double nThRoot = sums.numberOfTrades;
+        double result;
+
+        if(sums.zeroTradePrice){
+            //All trade prices multiplied is 0
+            result = Math.pow(0, 1 / nThRoot);
+        }else{
+            BigInteger allTradePricesMultiplied = sums.allTradePricesMultiplied();
+            double allTradePricesMultipliedAsDouble = allTradePricesMultiplied == null
+                    ? Double.POSITIVE_INFINITY
+                    : allTradePricesMultiplied.doubleValue();
+
+            result = Double.isInfinite(allTradePricesMultipliedAsDouble)
+                    ? Math.exp(sums.sumOfLogTradePrices() / nThRoot)
+                    : Math.pow(allTradePricesMultipliedAsDouble, 1 / nThRoot);
+        }
+
+        return BigDecimal.valueOf(result).setScale(2, RoundingMode.HALF_UP); //Assume 2 dp is sufficient precision
+    }
+
+    /**
+     * Calculates the Volume Weighted Stock Price of every Stock traded in the given trades,
+     * on trades that occurred after the given time
+     *
+     * @param stockTradeList List of transactions
+     * @param calculationTime Only trades after this time, in nanoseconds since the epoch, will be used in the calculation
+     * @return Calculated Volume Weighted Stock Price to 2 Decimal Places for each Stock traded, in Stock Symbol id order,
+     *         or 0 for a Stock with no trades after the given time
+     */
+    Map<StockSymbol, BigDecimal> calculateVolumeWeightedStockPrices(List<StockTrade> stockTradeList, long calculationTime){
+
+        //Trades can only be for Stocks already listed
+        int numberOfSymbols = StockSymbol.count();
+
+        VolumeSums sums = sum(stockTradeList, () -> new VolumeSums(numberOfSymbols, calculationTime));
+
+        Map<StockSymbol, BigDecimal> volumeWeightedStockPrices = new LinkedHashMap<>();
+
+        for(int symbolId = 0; symbolId < numberOfSymbols; symbolId++){
+
+            if(!sums.traded[symbolId]){
+                continue;
+            }
+
+            StockSymbol symbol = StockSymbol.forId(symbolId);
+
+            if(sums.tooLarge[symbolId]){
+                //Sums too large to be held as a long, so fall back to BigDecimal over just this Stock's trades
+                volumeWeightedStockPrices.put(symbol, CalculationUtility.calculateVolumeWeightedStockPrice(tradesAfter(stockTradeList, symbol, calculationTime)));
+            }else if(sums.totalQuantity[symbolId] == 0){
+                volumeWeightedStockPrices.put(symbol, BigDecimal.ZERO);
+            }else{
+                volumeWeightedStockPrices.put(symbol, FixedPointUtility.divideHalfUp(sums.sumOfTradePriceMultipliedByQuantity[symbolId], sums.totalQuantity[symbolId]));
+            }
+        }
+        return volumeWeightedStockPrices;
+    }
+
+    private <S extends Sums<S>> S sum(List<StockTrade> stockTradeList, Supplier<S> newSums){
+
+        if(mode == Mode.SEQUENTIAL){
+            return sum(stockTradeList, 0, stockTradeList.size(), newSums);
+        }
+
+        int tradesPerTask = Math.max(MINIMUM_TRADES_PER_TASK, stockTradeList.size() / (forkJoinPool.getParallelism() * TASKS_PER_THREAD));
+
+        return forkJoinPool.invoke(new SumTask<>(stockTradeList, 0, stockTradeList.size(), tradesPerTask, newSums));
+    }
+
+    private static <S extends Sums<S>> S sum(List<StockTrade> stockTradeList, int from, int to, Supplier<S> newSums){
+
+        S sums = newSums.get();
+
+        for(int i = from; i < to; i++){
+            sums.add(stockTradeList.get(i));
+        }
+        return sums;
+    }
+
+    private static List<StockTrade> tradesAfter(List<StockTrade> stockTradeList, StockSymbol symbol, long calculationTime){
+
+        List<StockTrade> tradesAfter = new ArrayList<>();
+
+        for(StockTrade stockTrade : stockTradeList){
+            if(stockTrade.getSymbol() == symbol && stockTrade.getTimeStampEpochNanos() > calculationTime){
+                tradesAfter.add(stockTrade);
+            }
+        }
+        return tradesAfter;
+    }
+
+    /**
+     * Sums over a chunk of trades, which can be added to the sums over another chunk
+     */
+    private interface Sums<S extends Sums<S>> {
+
+        void add(StockTrade stockTrade);
+
+        /**
+         * @param other sums over another chunk of trades
+         * @return sums over both chunks, which may be this
+         */
+        S add(S other);
+    }
+
+    /**
+     * Sums a range of trades, splitting it in two for another thread to take half while it is large enough
+     */
+    private static class SumTask<S extends Sums<S>> extends RecursiveTask<S> {
+
+        private static final long serialVersionUID = 1L;
+
+        //Tasks are never serialized, so the trades and the supplier are transient
+        private final transient List<StockTrade> stockTradeList;
+        private final int from;
+        private final int to;
+        private final int tradesPerTask;
+        private final transient Supplier<S> newSums;
+
+        SumTask(List<StockTrade> stockTradeList, int from, int to, int tradesPerTask, Supplier<S> newSums){
+            this.stockTradeList = stockTradeList;
+            this.from = from;
+            this.to = to;
+            this.tradesPerTask = tradesPerTask;
+            this.newSums = newSums;
+        }
+
+        @Override
+        protected S compute() {
+
+            if(to - from <= tradesPerTask){
+                return sum(stockTradeList, from, to, newSums);
+            }
+
+            int middle = (from + to) >>> 1;
+
+            SumTask<S> firstHalf = new SumTask<>(stockTradeList, from, middle, tradesPerTask, newSums);
+            firstHalf.fork();
+
+            S secondHalfSums = new SumTask<>(stockTradeList, middle, to, tradesPerTask, newSums).compute();
+
+            return firstHalf.join().add(secondHalfSums);
+        }
+    }
+
+    private static class GBCESums implements Sums<GBCESums> {
+
+        //A product of more bits than this is too large to be represented as a double
+        private static final int MAXIMUM_PRODUCT_BITS = 1024;
+
+        private static final double LOG_SCALE = 0x1p32;
+
+        long numberOfTrades;
+        boolean zeroTradePrice;
+
+        //Multiplied as a long for as long as the product fits, then as a BigInteger until too large for a double
+        long allTradePricesMultipliedAsLong = 1;
+        BigInteger allTradePricesMultipliedAsBigInteger;
+        boolean allTradePricesMultipliedTooLarge;
+
+        //Sum of the fixed point logs as an unsigned 128 bit number, as every log of a whole number is at least 0
+        long sumOfLogTradePricesLow;
+        long sumOfLogTradePricesHigh;
+
+        @Override
+        public void add(StockTrade stockTrade) {
+
+            numberOfTrades++;
+
+            long tradePrice = stockTrade.getTradePriceInPence();
+
+            if(tradePrice == 0){
+                zeroTradePrice = true;
+                return;
+            }
+
+            //StrictMath, so every log is the same wherever it is taken
+            addToSumOfLogTradePrices(0, Math.round(StrictMath.log(tradePrice) * LOG_SCALE));
+
+            if(allTradePricesMultipliedTooLarge){
+                return;
+            }
+
+            if(allTradePricesMultipliedAsBigInteger == null){
+                try {
+                    allTradePricesMultipliedAsLong = Math.multiplyExact(allTradePricesMultipliedAsLong, tradePrice);
+                    return;
+                } catch (ArithmeticException e){
+                    allTradePricesMultipliedAsBigInteger = BigInteger.valueOf(allTradePricesMultipliedAsLong);
+                }
+            }
+            multiplyAllTradePrices(BigInteger.valueOf(tradePrice));
+        }
+
+        @Override
+        public GBCESums add(GBCESums other) {
+
+            numberOfTrades += other.numberOfTrades;
+            zeroTradePrice |= other.zeroTradePrice;
+            addToSumOfLogTradePrices(other.sumOfLogTradePricesHigh, other.sumOfLogTradePricesLow);
+
+            if(allTradePricesMultipliedTooLarge || other.allTradePricesMultipliedTooLarge){
+                allTradePricesMultipliedTooLarge = true;
+                allTradePricesMultipliedAsBigInteger = null;
+                return this;
+            }
+
+            if(allTradePricesMultipliedAsBigInteger == null && other.allTradePricesMultipliedAsBigInteger == null){
+                try {
+                    allTradePricesMultipliedAsLong = Math.multiplyExact(allTradePricesMultipliedAsLong, other.allTradePricesMultipliedAsLong);
+                    return this;
+                } catch (ArithmeticException e){
+                    allTradePricesMultipliedAsBigInteger = BigInteger.valueOf(allTradePricesMultipliedAsLong);
+                }
+            }
+            allTradePricesMultipliedAsBigInteger = allTradePricesMultiplied();
+            multiplyAllTradePrices(other.allTradePricesMultiplied());
+
+            return this;
+        }
+
+        /**
+         * @return all trade prices multiplied, or null if too large to be represented as a double
+         */
+        BigInteger allTradePricesMultiplied(){
+
+            if(allTradePricesMultipliedTooLarge){
+                return null;
+            }
+            return allTradePricesMultipliedAsBigInteger == null ? BigInteger.valueOf(allTradePricesMultipliedAsLong) : allTradePricesMultipliedAsBigInteger;
+        }
+
+        double sumOfLogTradePrices(){
+
+            //Halved and doubled so the low 64 bits can be read as unsigned
+            double low = (double) (sumOfLogTradePricesLow >>> 1) * 2 + (sumOfLogTradePricesLow & 1);
+
+            return (sumOfLogTradePricesHigh * 0x1p64 + low) / LOG_SCALE;
+        }
+
+        private void multiplyAllTradePrices(BigInteger multiplier){
+
+            allTradePricesMultipliedAsBigInteger = allTradePricesMultipliedAsBigInteger.multiply(multiplier);
+
+            if(allTradePricesMultipliedAsBigInteger.bitLength() > MAXIMUM_PRODUCT_BITS){
+                allTradePricesMultipliedTooLarge = true;
+                allTradePricesMultipliedAsBigInteger = null;
+            }
+        }
+
+        private void addToSumOfLogTradePrices(long high, long low){
+
+            long sumLow = sumOfLogTradePricesLow + low;
+
+            //Carry when the unsigned sum wraps round
+            sumOfLogTradePricesHigh += high + (Long.compareUnsigned(sumLow, sumOfLogTradePricesLow) < 0 ? 1 : 0);
+            sumOfLogTradePricesLow = sumLow;
+        }
+    }
+
+    private static class VolumeSums implements Sums<VolumeSums> {
+
+        private final long calculationTime;
+
+        final boolean[] traded;
+        final boolean[] tooLarge;
+        final long[] totalQuantity; //Hundredths of a share
+        final long[] sumOfTradePriceMultipliedByQuantity; //Hundredths of a share multiplied by pence
+
+        VolumeSums(int numberOfSymbols, long calculationTime){
+            this.calculationTime = calculationTime;
+
+            traded = new boolean[numberOfSymbols];
+            tooLarge = new boolean[numberOfSymbols];
+            totalQuantity = new long[numberOfSymbols];
+            sumOfTradePriceMultipliedByQuantity = new long[numberOfSymbols];
+        }
+
+        @Override
+        public void add(StockTrade stockTrade) {
+
+            int symbolId = stockTrade.getSymbol().getId();
+
+            traded[symbolId] = true;
+
+            if(stockTrade.getTimeStampEpochNanos() > calculationTime && !tooLarge[symbolId]){
+
+                try {
+                    long tradePriceMultipliedByQuantity = Math.multiplyExact(stockTrade.getQuantityInHundredths(), stockTrade.getTradePriceInPence());
+
+                    add(symbolId, stockTrade.getQuantityInHundredths(), tradePriceMultipliedByQuantity);
+                } catch (ArithmeticException e){
+                    tooLarge[symbolId] = true;
+                }
+            }
+        }
+
+        @Override
+        public VolumeSums add(VolumeSums other) {
+
+            for(int symbolId = 0; symbolId < traded.length; symbolId++){
+
+                if(!other.traded[symbolId]){
+                    continue;
+                }
+
+                traded[symbolId] = true;
+                tooLarge[symbolId] |= other.tooLarge[symbolId];
+
+                if(!tooLarge[symbolId]){
+                    try {
+                        add(symbolId, other.totalQuantity[symbolId], other.sumOfTradePriceMultipliedByQuantity[symbolId]);
+                    } catch (ArithmeticException e){
+                        tooLarge[symbolId] = true;
+                    }
+                }
+            }
+            return this;
+        }
+
+        private void add(int symbolId, long quantity, long tradePriceMultipliedByQuantity){
+
+            long sum = Math.addExact(sumOfTradePriceMultipliedByQuantity[symbolId], tradePriceMultipliedByQuantity);
+
+            totalQuantity[symbolId] = Math.addExact(totalQuantity[symbolId], quantity);
+            sumOfTradePriceMultipliedByQuantity[symbolId] = sum;
+        }
+    }
+}
@@ -0,0 +1,599 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Accepts trades and calculation requests from clients over TCP, using the StockTradeProtocol
+ *
+ * Connections are shared between a number of event loops, each a thread with its own Selector,
+ * so many clients can be served by a few threads. The first event loop also accepts new connections.
+ * Requests are read on the event loop threads and run by the OperationDispatcher, so a slow request
+ * never holds up reading from or writing to other clients. Each client's requests are run one at a time
+ * in the order they were received, so a trade has been added before a later request from the same client
+ * is run, even when requests are sent without waiting for responses. Responses are sent as the requests finish.
+ *
+ * A client that is not reading its responses, or has sent more requests than can be buffered, is not read from
+ * until it catches up, and no client is read from while the dispatcher is full.
+ */
+class StockTradeServer implements Closeable {
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    //Longest error message sent, in bytes
+    private static final int MAXIMUM_MESSAGE_BYTES = 1024;
+
+    //Stop reading from a client that is not reading its responses once this many bytes are waiting to be sent
+    private static final int MAXIMUM_PENDING_RESPONSE_BYTES = 1024 * 1024;
+
+    //How long to wait before trying again to dispatch requests while the dispatcher is full
+    private static final long DISPATCHER_FULL_RETRY_MILLIS = 1;
+
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+
+    private final OperationDispatcher operationDispatcher;
+
+    private final ServerSocketChannel serverSocketChannel;
+    private final EventLoop[] eventLoops;
+    private int nextEventLoop;
+
+    private volatile boolean closed;
+
+    StockTradeServer(OperationDispatcher operationDispatcher, int port) throws IOException {
+        this(operationDispatcher, new InetSocketAddress(port), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Opens the server socket and starts the event loops
+     *
+     * @param operationDispatcher runs the requests received
+     * @param address address to listen on, port 0 for any free port
+     * @param numberOfEventLoops number of threads to serve connections on
+     * @throws IOException if the server socket can not be opened
+     */
+    StockTradeServer(OperationDispatcher operationDispatcher, InetSocketAddress address, int numberOfEventLoops) throws IOException {
+
+        this.operationDispatcher = operationDispatcher;
+
+        serverSocketChannel = ServerSocketChannel.open();
+        eventLoops = new EventLoop[Math.max(1, numberOfEventLoops)];
+
+        try {
+            serverSocketChannel.bind(address, 1024);
+            serverSocketChannel.configureBlocking(false);
+
+            for(int eventLoop = 0; eventLoop < eventLoops.length; eventLoop++){
+                eventLoops[eventLoop] = new EventLoop();
+            }
+            serverSocketChannel.register(eventLoops[0].selector, SelectionKey.OP_ACCEPT);
+
+        } catch (IOException | RuntimeException e){
+            close();
+            throw e;
+        }
+
+        for(int eventLoop = 0; eventLoop < eventLoops.length; eventLoop++){
+
+            Thread thread = new Thread(eventLoops[eventLoop], "stock-trade-server-" + eventLoop);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    int getLocalPort() throws IOException {
+        return ((InetSocketAddress) serverSocketChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Stops accepting connections and closes all connections
+     */
+    @Override
+    public void close() throws IOException {
+
+        closed = true;
+        serverSocketChannel.close();
+
+        for(EventLoop eventLoop : eventLoops){
+            if(eventLoop != null){
+                eventLoop.selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Reads a whole request, always reading every field so the next request starts in the right place
+     *
+     * @param tradeClock clock to timestamp trades by
+     * @return request read
+     * @throws SuperSimpleStocksException if a field of the request is not valid
+     */
+    private static OperationRequest readRequest(ByteBuffer request, TradeClock tradeClock) throws SuperSimpleStocksException {
+
+        byte operation = request.get();
+
+        switch(operation){
+            case StockTradeProtocol.TRADE: {
+                int symbol = request.getInt();
+                int transactionType = request.get();
+                long quantityInHundredths = request.getLong();
+                long tradePriceInPence = request.getLong();
+
+                if(transactionType < 0 || transactionType >= TRANSACTION_TYPES.length){
+                    throw new SuperSimpleStocksException("Unknown transaction type " + transactionType);
+                }
+                if(quantityInHundredths <= 0 || tradePriceInPence < 0){
+                    throw new SuperSimpleStocksException("Quantity must be positive and price must not be negative");
+                }
+                return OperationRequest.trade(getSymbol(symbol), TRANSACTION_TYPES[transactionType], quantityInHundredths, tradePriceInPence, tradeClock);
+            }
+            case StockTradeProtocol.DY: {
+                int symbol = request.getInt();
+                return OperationRequest.dividendYield(getSymbol(symbol), getMarketPrice(request.getInt()));
+            }
+            case StockTradeProtocol.PE: {
+                int symbol = request.getInt();
+                return OperationRequest.priceEarningsRatio(getSymbol(symbol), getMarketPrice(request.getInt()));
+            }
+            case StockTradeProtocol.VWSP:
+                return OperationRequest.volumeWeightedStockPrice(getSymbol(request.getInt()));
+            case StockTradeProtocol.GBCE:
+                return OperationRequest.gbce();
+            default:
+                throw new SuperSimpleStocksException("Unknown operation " + operation);
+        }
+    }
+
+    /**
+     * Reads the rest of a SYMBOL request
+     *
+     * @return id of the Stock Symbol requested
+     * @throws SuperSimpleStocksException if the Stock is not listed
+     */
+    private static int readSymbolId(ByteBuffer request) throws SuperSimpleStocksException {
+
+        StringBuilder text = new StringBuilder(StockTradeProtocol.SYMBOL_TEXT_LENGTH);
+
+        for(int i = 0; i < StockTradeProtocol.SYMBOL_TEXT_LENGTH; i++){
+
+            byte character = request.get();
+
+            if(character != 0){
+                text.append((char) character);
+            }
+        }
+
+        StockSymbol symbol = StockSymbol.findStockSymbol(text);
+
+        if(symbol == null){
+            throw new SuperSimpleStocksException("Unknown stock symbol " + text);
+        }
+        return symbol.getId();
+    }
+
+    private static StockSymbol getSymbol(int symbol) throws SuperSimpleStocksException {
+
+        if(symbol < 0 || symbol >= StockSymbol.count()){
+            throw new SuperSimpleStocksException("Unknown stock symbol " + symbol);
+        }
+        return StockSymbol.forId(symbol);
+    }
+
+    private static int getMarketPrice(int marketPriceInPence) throws SuperSimpleStocksException {
+
+        if(marketPriceInPence < 0){
+            throw new SuperSimpleStocksException("Price must not be negative");
+        }
+        return marketPriceInPence;
+    }
+
+    private static void writeResult(ByteBuffer response, long result){
+        response.put(StockTradeProtocol.OK);
+        response.putLong(result);
+    }
+
+    private static void writeError(ByteBuffer response, String message){
+
+        byte[] messageBytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(messageBytes.length, MAXIMUM_MESSAGE_BYTES);
+
+        response.put(StockTradeProtocol.ERROR);
+        response.putShort((short) length);
+        response.put(messageBytes, 0, length);
+    }
+
+    private static void closeQuietly(SelectionKey selectionKey){
+
+        selectionKey.cancel();
+
+        try {
+            selectionKey.channel().close();
+        } catch (IOException e){
+            //Already closing
+        }
+    }
+
+    /**
+     * A thread serving the connections registered with its Selector
+     */
+    private class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<SocketChannel> newConnections = new ConcurrentLinkedQueue<>();
+
+        //Connections with a request that has finished, added to by the threads running the requests
+        private final Queue<Connection> connectionsWithFinishedRequests = new ConcurrentLinkedQueue<>();
+
+        //Connections with a request waiting for room in the dispatcher
+        private final List<Connection> connectionsWaitingForDispatcher = new ArrayList<>();
+
+        EventLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        void addConnection(SocketChannel socketChannel){
+            newConnections.add(socketChannel);
+            selector.wakeup();
+        }
+
+        void requestFinished(Connection connection){
+            connectionsWithFinishedRequests.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+
+            try {
+                while(!closed){
+
+                    selector.select(connectionsWaitingForDispatcher.isEmpty() ? 0 : DISPATCHER_FULL_RETRY_MILLIS);
+
+                    SocketChannel socketChannel;
+
+                    while((socketChannel = newConnections.poll()) != null){
+                        Connection connection = new Connection(this, socketChannel);
+                        connection.selectionKey = socketChannel.register(selector, SelectionKey.OP_READ, connection);
+                    }
+
+                    Connection connection;
+
+                    while((connection = connectionsWithFinishedRequests.poll()) != null){
+                        connection.sendFinishedResponses();
+                    }
+
+                    for(Connection waitingConnection : new ArrayList<>(connectionsWaitingForDispatcher)){
+                        waitingConnection.dispatchRequests();
+                    }
+
+                    Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+
+                    while(selectedKeys.hasNext()){
+
+                        SelectionKey selectionKey = selectedKeys.next();
+                        selectedKeys.remove();
+
+                        if(!selectionKey.isValid()){
+                            continue;
+                        }
+
+                        if(selectionKey.isAcceptable()){
+                            accept();
+                        }else{
+                            ((Connection) selectionKey.attachment()).handle();
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e){
+                if(!closed){
+                    System.out.println("Stock trade server stopped: " + e.getMessage());
+                }
+            } finally {
+                closeAll();
+            }
+        }
+
+        private void accept() throws IOException {
+
+            SocketChannel socketChannel;
+
+            while((socketChannel = serverSocketChannel.accept()) != null){
+
+                socketChannel.configureBlocking(false);
+                socketChannel.socket().setTcpNoDelay(true);
+
+                eventLoops[nextEventLoop].addConnection(socketChannel);
+                nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+            }
+        }
+
+        private void closeAll(){
+
+            for(SelectionKey selectionKey : selector.keys()){
+                closeQuietly(selectionKey);
+            }
+            for(SocketChannel socketChannel : newConnections){
+                try {
+                    socketChannel.close();
+                } catch (IOException e){
+                    //Already closing
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e){
+                //Already closing
+            }
+        }
+    }
+
+    /**
+     * A request that has been dispatched, waiting to have its response sent
+     */
+    private static class DispatchedRequest {
+
+        private final OperationRequest operationRequest;
+        private final CompletableFuture<BigDecimal> result;
+
+        DispatchedRequest(OperationRequest operationRequest, CompletableFuture<BigDecimal> result){
+            this.operationRequest = operationRequest;
+            this.result = result;
+        }
+
+        void writeResponse(ByteBuffer response){
+
+            try {
+                BigDecimal value = result.join();
+
+                if(value == null){
+                    //The result of a trade is its timestamp
+                    writeResult(response, operationRequest.getTimeStampEpochNanos());
+                }else{
+                    writeResult(response, value.setScale(StockTradeProtocol.RESULT_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+                }
+            } catch (CompletionException e){
+                writeError(response, e.getCause().getMessage());
+            } catch (ArithmeticException e){
+                writeError(response, "Result is too large to be sent");
+            }
+        }
+    }
+
+    /**
+     * A request answered on the event loop without being dispatched, such as looking up a Stock Symbol's id
+     */
+    private static class AnsweredRequest extends DispatchedRequest {
+
+        private final long answer;
+
+        AnsweredRequest(long answer){
+            super(null, CompletableFuture.completedFuture(null));
+            this.answer = answer;
+        }
+
+        @Override
+        void writeResponse(ByteBuffer response){
+            writeResult(response, answer);
+        }
+    }
+
+    /**
+     * Buffers and dispatched requests for a single client connection, only used on its event loop's thread
+     */
+    private class Connection {
+
+        private final EventLoop eventLoop;
+        private final SocketChannel socketChannel;
+        private SelectionKey selectionKey;
+
+        private final ByteBuffer requests = ByteBuffer.allocate(READ_BUFFER_SIZE).order(StockTradeProtocol.BYTE_ORDER);
+        private ByteBuffer responses = ByteBuffer.allocate(READ_BUFFER_SIZE).order(StockTradeProtocol.BYTE_ORDER);
+
+        //Dispatched requests in the order they were received
+        private final ArrayDeque<DispatchedRequest> dispatchedRequests = new ArrayDeque<>();
+
+        private boolean waitingForDispatcher;
+        private boolean closeAfterResponses;
+
+        Connection(EventLoop eventLoop, SocketChannel socketChannel){
+            this.eventLoop = eventLoop;
+            this.socketChannel = socketChannel;
+        }
+
+        void handle(){
+
+            try {
+                if(selectionKey.isReadable()){
+
+                    if(socketChannel.read(requests) < 0){
+                        close();
+                        return;
+                    }
+                    dispatchRequests();
+                }
+
+                if(selectionKey.isValid() && selectionKey.isWritable()){
+                    sendResponses();
+                }
+            } catch (IOException e){
+                close();
+            }
+        }
+
+        /**
+         * Dispatches the next whole request read so far once the one before it has finished, until the dispatcher is full
+         */
+        void dispatchRequests(){
+
+            if(!selectionKey.isValid()){
+                return;
+            }
+
+            requests.flip();
+
+            boolean dispatcherFull = false;
+
+            while(!closeAfterResponses && requests.hasRemaining() && !previousRequestRunning()){
+
+                int requestStart = requests.position();
+                int requestSize = StockTradeProtocol.requestSize(requests.get(requestStart));
+
+                if(requestSize > 0 && requests.remaining() < requestSize){
+                    break;
+                }
+
+                CompletableFuture<BigDecimal> result;
+                OperationRequest operationRequest = null;
+
+                try {
+                    if(requests.get(requestStart) == StockTradeProtocol.SYMBOL){
+                        requests.get();
+                        dispatchedRequests.add(new AnsweredRequest(readSymbolId(requests)));
+                        eventLoop.requestFinished(this);
+                        continue;
+                    }
+
+                    operationRequest = readRequest(requests, operationDispatcher.getTradeClock());
+                    result = operationDispatcher.tryDispatch(operationRequest);
+
+                    if(result == null){
+                        requests.position(requestStart);
+                        dispatcherFull = true;
+                        break;
+                    }
+                } catch (SuperSimpleStocksException e){
+
+                    result = new CompletableFuture<>();
+                    result.completeExceptionally(e);
+
+                    if(requestSize < 0){
+                        //The rest of the request can not be read, so close once the responses are sent
+                        closeAfterResponses = true;
+                    }
+                }
+
+                dispatchedRequests.add(new DispatchedRequest(operationRequest, result));
+                result.whenComplete((value, exception) -> eventLoop.requestFinished(this));
+            }
+
+            requests.compact();
+
+            if(dispatcherFull != waitingForDispatcher){
+
+                waitingForDispatcher = dispatcherFull;
+
+                if(waitingForDispatcher){
+                    eventLoop.connectionsWaitingForDispatcher.add(this);
+                }else{
+                    eventLoop.connectionsWaitingForDispatcher.remove(this);
+                }
+            }
+
+            updateInterestOps();
+        }
+
+        /**
+         * @return whether the last request dispatched has not yet finished, so the next must wait for it
+         */
+        private boolean previousRequestRunning(){
+
+            DispatchedRequest previousRequest = dispatchedRequests.peekLast();
+
+            return previousRequest != null && !previousRequest.result.isDone();
+        }
+
+        /**
+         * Sends the responses for requests that have finished, in the order the requests were received
+         */
+        void sendFinishedResponses(){
+
+            if(!selectionKey.isValid()){
+                return;
+            }
+
+            while(!dispatchedRequests.isEmpty() && dispatchedRequests.peek().result.isDone()){
+                ensureResponseCapacity(1 + Short.BYTES + MAXIMUM_MESSAGE_BYTES);
+                dispatchedRequests.poll().writeResponse(responses);
+            }
+
+            try {
+                sendResponses();
+            } catch (IOException e){
+                close();
+            }
+        }
+
+        private void sendResponses() throws IOException {
+
+            responses.flip();
+            socketChannel.write(responses);
+            responses.compact();
+
+            if(closeAfterResponses && dispatchedRequests.isEmpty() && responses.position() == 0){
+                close();
+                return;
+            }
+
+            //The previous request has finished or room has been made for responses, so dispatch any requests already read
+            if(requests.position() > 0 && !waitingForDispatcher){
+                dispatchRequests();
+            }else{
+                updateInterestOps();
+            }
+        }
+
+        private void updateInterestOps(){
+
+            if(!selectionKey.isValid()){
+                return;
+            }
+
+            int interestOps = responses.position() > 0 ? SelectionKey.OP_WRITE : 0;
+
+            if(!closeAfterResponses && !waitingForDispatcher
+                    && requests.hasRemaining()
+                    && responses.position() < MAXIMUM_PENDING_RESPONSE_BYTES){
+                interestOps |= SelectionKey.OP_READ;
+            }
+            selectionKey.interestOps(interestOps);
+        }
+
+        private void ensureResponseCapacity(int bytes){
+
+            if(responses.remaining() < bytes){
+
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(responses.capacity() * 2, responses.position() + bytes))
+                        .order(StockTradeProtocol.BYTE_ORDER);
+                responses.flip();
+                grown.put(responses);
+                responses = grown;
+            }
+        }
+
+        private void close(){
+            eventLoop.connectionsWaitingForDispatcher.remove(this);
+            closeQuietly(selectionKey);
+        }
+    }
+}
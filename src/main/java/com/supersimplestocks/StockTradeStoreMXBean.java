@@ -0,0 +1,26 @@
+package com.supersimplestocks;
+
+/**
+ * Size of the trade history and how well the Dividend Yield and P/E Ratio cache is doing,
+ * as seen through JMX, registered as com.supersimplestocks:type=StockTradeStore
+ *
+ * Public only because JMX requires it.
+ */
+public interface StockTradeStoreMXBean {
+
+    /**
+     * @return trades held in memory for all Stocks, not counting evicted trades
+     */
+    long getNumberOfTradesHeld();
+
+    int getNumberOfStocks();
+
+    long getCacheHits();
+
+    /**
+     * @return results not found in the cache, each of which was calculated by CalculationUtility
+     */
+    long getCacheMisses();
+
+    long getCacheEvictions();
+}
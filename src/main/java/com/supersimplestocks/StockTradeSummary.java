@@ -0,0 +1,95 @@
+package com.supersimplestocks;
+
+import java.math.BigInteger;
+
+/**
+ * Totals of trades for a Stock that a StockTradeHistory no longer holds,
+ * enough to keep calculations over every trade correct without the trades themselves
+ *
+ * Sums are fixed point, quantity in hundredths of a share and
+ * Quantity * Trade Price in hundredths of a share multiplied by pence.
+ * Like the running sums the history keeps, each is held as 128 bits, an unsigned low word
+ * and a high word taking its carries, so never overflows however many trades are evicted.
+ */
+final class StockTradeSummary {
+
+    static final StockTradeSummary EMPTY = new StockTradeSummary(0, 0, 0, 0, 0, 0, Long.MIN_VALUE);
+
+    private final long numberOfTrades;
+    private final long totalQuantityHigh;
+    private final long totalQuantity;
+    private final long sumOfTradePriceMultipliedByQuantityHigh;
+    private final long sumOfTradePriceMultipliedByQuantity;
+    private final double sumOfLogTradePrices;
+    private final long latestTimeStampEpochNanos;
+
+    private StockTradeSummary(long numberOfTrades, long totalQuantityHigh, long totalQuantity,
+                              long sumOfTradePriceMultipliedByQuantityHigh, long sumOfTradePriceMultipliedByQuantity,
+                              double sumOfLogTradePrices, long latestTimeStampEpochNanos){
+        this.numberOfTrades = numberOfTrades;
+        this.totalQuantityHigh = totalQuantityHigh;
+        this.totalQuantity = totalQuantity;
+        this.sumOfTradePriceMultipliedByQuantityHigh = sumOfTradePriceMultipliedByQuantityHigh;
+        this.sumOfTradePriceMultipliedByQuantity = sumOfTradePriceMultipliedByQuantity;
+        this.sumOfLogTradePrices = sumOfLogTradePrices;
+        this.latestTimeStampEpochNanos = latestTimeStampEpochNanos;
+    }
+
+    /**
+     * Sums given as 128 bits, a high word and an unsigned low word
+     *
+     * @return summary of the trades in this summary and the trades given
+     */
+    StockTradeSummary plus(long numberOfTrades, long totalQuantityHigh, long totalQuantity,
+                           long sumOfTradePriceMultipliedByQuantityHigh, long sumOfTradePriceMultipliedByQuantity,
+                           double sumOfLogTradePrices, long latestTimeStampEpochNanos){
+
+        long quantity = this.totalQuantity + totalQuantity;
+        long tradePriceMultipliedByQuantity = this.sumOfTradePriceMultipliedByQuantity + sumOfTradePriceMultipliedByQuantity;
+
+        return new StockTradeSummary(this.numberOfTrades + numberOfTrades,
+                this.totalQuantityHigh + totalQuantityHigh + (Long.compareUnsigned(quantity, this.totalQuantity) < 0 ? 1 : 0),
+                quantity,
+                this.sumOfTradePriceMultipliedByQuantityHigh + sumOfTradePriceMultipliedByQuantityHigh
+                        + (Long.compareUnsigned(tradePriceMultipliedByQuantity, this.sumOfTradePriceMultipliedByQuantity) < 0 ? 1 : 0),
+                tradePriceMultipliedByQuantity,
+                this.sumOfLogTradePrices + sumOfLogTradePrices,
+                Math.max(this.latestTimeStampEpochNanos, latestTimeStampEpochNanos));
+    }
+
+    long getNumberOfTrades(){
+        return numberOfTrades;
+    }
+
+    /**
+     * @return sum of the quantities in hundredths of a share, which can be beyond the range of a long
+     */
+    BigInteger getTotalQuantity(){
+        return toBigInteger(totalQuantityHigh, totalQuantity);
+    }
+
+    /**
+     * @return sum of Quantity * Trade Price in hundredths of a share multiplied by pence, which can be beyond the range of a long
+     */
+    BigInteger getSumOfTradePriceMultipliedByQuantity(){
+        return toBigInteger(sumOfTradePriceMultipliedByQuantityHigh, sumOfTradePriceMultipliedByQuantity);
+    }
+
+    /**
+     * @return sum of the natural log of each trade price in pence, as used for the GBCE All Share Index
+     */
+    double getSumOfLogTradePrices(){
+        return sumOfLogTradePrices;
+    }
+
+    /**
+     * @return timestamp of the latest trade summarised in nanoseconds since the epoch, or Long.MIN_VALUE if there are none
+     */
+    long getLatestTimeStampEpochNanos(){
+        return latestTimeStampEpochNanos;
+    }
+
+    private static BigInteger toBigInteger(long high, long low){
+        return BigInteger.valueOf(high).shiftLeft(Long.SIZE).add(new BigInteger(Long.toUnsignedString(low)));
+    }
+}
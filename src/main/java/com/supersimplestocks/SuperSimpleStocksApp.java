@@ -1,14 +1,27 @@
 package com.supersimplestocks;
 
 import com.supersimplestocks.enums.Operations;
-import com.supersimplestocks.enums.StockData;
-import com.supersimplestocks.enums.StockSymbolEnum;
+import com.supersimplestocks.enums.StockSymbol;
 import com.supersimplestocks.enums.TransactionType;
 import com.supersimplestocks.exception.SuperSimpleStocksException;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
+import java.math.RoundingMode;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Super Simple Stocks Application
@@ -19,31 +32,85 @@ import java.util.Scanner;
  * but in the real world the interface would be a GUI or a web service
  *
  * As it is a command line application, there is no logging facility
- * as all output goes to the command line
+ * as all output goes to the command line. Counts and latencies of each Operation
+ * can be read through JMX and printed every so often instead, see getOperationMetrics
  *
  * Created by James Christie on 05/06/2017.
  */
 public class SuperSimpleStocksApp {
 
     private static Scanner scanner;
+    private static OperationEventLog operationEventLog = OperationEventLog.disabled();
     private final static int minutes = 15;
 
     /**
      * Main processing loop that receives input from user
      * and creates trades or performs calculations
      *
-     * @param args none
+     * @param args optionally --journal followed by a file to record trades in,
+     *             trades already in the file are recovered at start up,
+     *             and optionally --import followed by a file of trades to run in batch mode,
+     *             where the trades are imported and the results displayed without asking the user,
+     *             and optionally --server followed by a port to accept trades and calculations
+     *             from clients over TCP instead of from the command line,
+     *             and optionally --retain-minutes and --retain-megabytes to limit the trades held in memory,
+     *             or --off-heap to hold every trade in direct memory instead,
+     *             and optionally --reference-data followed by a file of Stock reference data to use instead of the sample data,
+     *             which also lists any Stocks in it besides the sample Stocks,
+     *             and optionally --reference-data-seconds followed by how often to check the file for changes and reload it,
+     *             and optionally --metrics to record counts and latencies of each Operation for JMX,
+     *             or --metrics-seconds followed by how often to also print them,
+     *             and optionally --event-log followed by a file to log every request to as binary records
      */
     public static void main(String[] args) {
 
         System.out.println("Super Simple Stock Application");
+
+        //Lists the Stocks, so must be loaded before anything that depends on which Stocks there are
+        String referenceDataFile = getOptionValue(args, "--reference-data");
+        ReferenceDataRegistry referenceDataRegistry = getReferenceDataRegistry(referenceDataFile);
+        reloadReferenceDataWhenChanged(referenceDataRegistry, referenceDataFile, getOptionValue(args, "--reference-data-seconds"));
+
+        StockTradeHistory stockTradeHistory = getStockTradeHistory(args);
+        //Trades are timestamped, and the Volume Weighted Stock Price window measured, by the same cheap clock
+        VolumeWeightedStockPriceAggregator volumeWeightedStockPriceAggregator = new VolumeWeightedStockPriceAggregator(minutes, TradeClock.coarse());
+        stockTradeHistory.addStockTradeListener(volumeWeightedStockPriceAggregator);
+        GBCEAllShareIndex gbceAllShareIndex = new GBCEAllShareIndex();
+        stockTradeHistory.addStockTradeListener(gbceAllShareIndex);
+
+        String journalFile = getOptionValue(args, "--journal");
+
+        if(journalFile != null){
+            attachJournal(stockTradeHistory, journalFile);
+        }
+
+        String importFile = getOptionValue(args, "--import");
+
+        if(importFile != null){
+            importTrades(stockTradeHistory, importFile);
+            printImportResults(stockTradeHistory, volumeWeightedStockPriceAggregator, gbceAllShareIndex);
+            System.exit(0);
+        }
+
+        //Results are shown on the command line by the event log, but clients of the server are sent them instead
+        String serverPort = getOptionValue(args, "--server");
+        operationEventLog = getOperationEventLog(getOptionValue(args, "--event-log"), serverPort == null);
+
+        OperationMetrics operationMetrics = getOperationMetrics(args);
+        OperationDispatcher operationDispatcher = new OperationDispatcher(stockTradeHistory, volumeWeightedStockPriceAggregator, gbceAllShareIndex,
+                referenceDataRegistry, operationMetrics, operationEventLog, OperationDispatcher.DEFAULT_MAXIMUM_PENDING_REQUESTS);
+
+        if(serverPort != null){
+            runServer(operationDispatcher, serverPort);
+            return;
+        }
+
         System.out.println("Please choose from the following Operations:");
         printMenu();
 
         scanner = new Scanner(System.in);
         String selection;
-        StockTradeHistory stockTradeHistory = new StockTradeHistory();
-        StockSymbolEnum stockSymbol;
+        StockSymbol stockSymbol;
         int price;
 
         while(true){
@@ -58,26 +125,26 @@ public class SuperSimpleStocksApp {
                     case DY:
                         stockSymbol = getStockSymbolFromUser();
                         price = getMarketPriceFromUser();
-                        calculateDividendYield(stockSymbol, price);
+                        calculateDividendYield(operationDispatcher, stockSymbol, price);
                         break;
                     case PE:
                         stockSymbol = getStockSymbolFromUser();
                         price = getMarketPriceFromUser();
-                        calculatePriceEarnngsRatio(stockSymbol, price);
+                        calculatePriceEarnngsRatio(operationDispatcher, stockSymbol, price);
                         break;
                     case T:
                         TransactionType transactionType = getTransactionTypeFromUser();
                         stockSymbol = getStockSymbolFromUser();
                         BigDecimal quantity = getStockQuantityFromUser();
                         price = getTradePriceFromUser();
-                        createTradeForStock(stockSymbol, quantity, transactionType, new BigDecimal(price), stockTradeHistory);
+                        createTradeForStock(operationDispatcher, stockSymbol, quantity, transactionType, price);
                         break;
                     case VWSP:
                         stockSymbol = getStockSymbolFromUser();
-                        calculateVolumeWeightedStockPriceForSingleStock(stockTradeHistory, stockSymbol);
+                        calculateVolumeWeightedStockPriceForSingleStock(operationDispatcher, stockSymbol);
                         break;
                     case GBCE:
-                        calculateGBCEAllShareIndex(stockTradeHistory);
+                        calculateGBCEAllShareIndex(operationDispatcher);
                         break;
                     case Q:
                         System.out.println("Quitting");
@@ -96,6 +163,377 @@ public class SuperSimpleStocksApp {
 
     }
 
+    /**
+     * Keeps every trade unless --retain-minutes or --retain-megabytes is given. Trades are always kept for
+     * at least the Volume Weighted Stock Price window, so only a memory limit can evict trades within it.
+     *
+     * @param args command line arguments
+     * @return retention policy for the trade history
+     */
+    private static RetentionPolicy getRetentionPolicy(String[] args){
+
+        RetentionPolicy retentionPolicy = RetentionPolicy.keepAll();
+
+        try {
+            String retainMinutes = getOptionValue(args, "--retain-minutes");
+
+            if(retainMinutes != null){
+                retentionPolicy = retentionPolicy.and(RetentionPolicy.keepFor(Math.max(minutes, Long.parseLong(retainMinutes)), TimeUnit.MINUTES));
+            }
+
+            String retainMegabytes = getOptionValue(args, "--retain-megabytes");
+
+            if(retainMegabytes != null){
+                retentionPolicy = retentionPolicy.and(RetentionPolicy.keepWithin(Long.parseLong(retainMegabytes) << 20));
+            }
+        } catch (IllegalArgumentException e){
+            System.out.println("Invalid retention, keeping every trade: " + e.getMessage());
+            return RetentionPolicy.keepAll();
+        }
+        return retentionPolicy;
+    }
+
+    /**
+     * Holds trades in direct memory if --off-heap is given, which keeps every trade,
+     * otherwise on the heap within the retention policy
+     *
+     * @param args command line arguments
+     * @return trade history to add trades to
+     */
+    private static StockTradeHistory getStockTradeHistory(String[] args){
+
+        if(!Arrays.asList(args).contains("--off-heap")){
+            return new StockTradeHistory(getRetentionPolicy(args));
+        }
+
+        if(getOptionValue(args, "--retain-minutes") != null || getOptionValue(args, "--retain-megabytes") != null){
+            System.out.println("Every trade is kept off heap, so --retain-minutes and --retain-megabytes are ignored");
+        }
+        return new OffHeapStockTradeHistory();
+    }
+
+    /**
+     * Records metrics, registered with JMX, if --metrics or --metrics-seconds is given,
+     * and prints them every given number of seconds for --metrics-seconds
+     *
+     * @param args command line arguments
+     * @return metrics for the dispatcher to record, disabled unless asked for
+     */
+    private static OperationMetrics getOperationMetrics(String[] args){
+
+        String metricsSeconds = getOptionValue(args, "--metrics-seconds");
+
+        if(metricsSeconds == null && !Arrays.asList(args).contains("--metrics")){
+            return OperationMetrics.disabled();
+        }
+
+        OperationMetrics operationMetrics = new OperationMetrics();
+
+        try {
+            operationMetrics.registerMBeans();
+        } catch (SuperSimpleStocksException e) {
+            System.out.println(e.getMessage());
+        }
+
+        if(metricsSeconds != null){
+            try {
+                operationMetrics.startReporting(System.out, Long.parseLong(metricsSeconds), TimeUnit.SECONDS);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid --metrics-seconds, metrics will not be printed: " + metricsSeconds);
+            }
+        }
+        return operationMetrics;
+    }
+
+    /**
+     * Logs every request to the given file, if any, as binary records,
+     * and also to the command line as text when taking Operations from the command line
+     *
+     * @param eventLogFile file to append binary records to, or null
+     * @param commandLine whether Operations are taken from the command line
+     * @return log for the dispatcher to log to, disabled if there is nowhere to log to
+     */
+    private static OperationEventLog getOperationEventLog(String eventLogFile, boolean commandLine){
+
+        if(eventLogFile == null && !commandLine){
+            return OperationEventLog.disabled();
+        }
+
+        FileChannel fileChannel = null;
+
+        if(eventLogFile != null){
+            try {
+                fileChannel = FileChannel.open(Paths.get(eventLogFile), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.out.println("Unable to open event log " + eventLogFile + ": " + e.getMessage());
+                System.exit(1);
+                return null;
+            }
+        }
+
+        OperationEventLog eventLog = new OperationEventLog(OperationEventLog.DEFAULT_CAPACITY, fileChannel, commandLine ? System.out : null);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(SuperSimpleStocksApp::closeOperationEventLog));
+
+        return eventLog;
+    }
+
+    /**
+     * Writes any events still waiting and closes the event log, when the application stops
+     */
+    private static void closeOperationEventLog(){
+
+        try {
+            operationEventLog.close();
+        } catch (IOException e) {
+            System.out.println("Unable to write event log: " + e.getMessage());
+        }
+
+        if(operationEventLog.getDropped() > 0){
+            System.out.println(operationEventLog.getDropped() + " events were not logged as they arrived faster than they could be written");
+        }
+    }
+
+    /**
+     * Returns the value following the given option in the command line arguments
+     *
+     * @param args command line arguments
+     * @param option option to find, e.g. --journal
+     * @return value of the option, or null if the option was not given
+     */
+    private static String getOptionValue(String[] args, String option){
+
+        for(int i = 0; i < args.length - 1; i++){
+
+            if(option.equals(args[i])){
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads the Stock reference data file, or uses the sample StockData if no file is given
+     *
+     * @param referenceDataFile reference data file, or null
+     * @return registry holding the reference data
+     */
+    private static ReferenceDataRegistry getReferenceDataRegistry(String referenceDataFile){
+
+        if(referenceDataFile == null){
+            return new ReferenceDataRegistry();
+        }
+
+        try {
+            ReferenceDataRegistry referenceDataRegistry = ReferenceDataRegistry.load(Paths.get(referenceDataFile));
+            System.out.println("Loaded reference data from " + referenceDataFile);
+            return referenceDataRegistry;
+        } catch (IOException | SuperSimpleStocksException e) {
+            System.out.println("Unable to load reference data " + referenceDataFile + ": " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Checks the reference data file every given number of seconds, and reloads it once it has changed,
+     * so dividends and par values can be changed while the application runs. A file that can not be loaded
+     * leaves the reference data already loaded in place.
+     *
+     * @param referenceDataRegistry registry to reload
+     * @param referenceDataFile reference data file, or null
+     * @param referenceDataSeconds how often to check the file, or null to never reload it
+     */
+    private static void reloadReferenceDataWhenChanged(ReferenceDataRegistry referenceDataRegistry, String referenceDataFile, String referenceDataSeconds){
+
+        if(referenceDataFile == null || referenceDataSeconds == null){
+            return;
+        }
+
+        long period;
+
+        try {
+            period = Long.parseLong(referenceDataSeconds);
+
+            if(period <= 0){
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid --reference-data-seconds, reference data will not be reloaded: " + referenceDataSeconds);
+            return;
+        }
+
+        Path path = Paths.get(referenceDataFile);
+        AtomicReference<FileTime> lastModified = new AtomicReference<>();
+
+        try {
+            lastModified.set(Files.getLastModifiedTime(path));
+        } catch (IOException e) {
+            //Reloaded once it can be read
+        }
+
+        ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reference-data-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        reloader.scheduleWithFixedDelay(() -> {
+            try {
+                FileTime modified = Files.getLastModifiedTime(path);
+
+                if(!modified.equals(lastModified.get())){
+                    lastModified.set(modified);
+                    referenceDataRegistry.reload(path);
+                    System.out.println("Reloaded reference data from " + referenceDataFile);
+                }
+            } catch (IOException | SuperSimpleStocksException | RuntimeException e) {
+                //Caught whatever it is, as an exception escaping the task would cancel every later reload
+                System.out.println("Unable to reload reference data " + referenceDataFile + ", keeping the reference data already loaded: " + e.getMessage());
+            }
+        }, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Opens the trade journal, recovering any trades already in it,
+     * and closes it again when the application stops
+     *
+     * @param stockTradeHistory history to recover trades into
+     * @param journalFile trade journal file
+     */
+    private static void attachJournal(StockTradeHistory stockTradeHistory, String journalFile){
+
+        StockTradeJournal stockTradeJournal;
+
+        try {
+            stockTradeJournal = new StockTradeJournal(Paths.get(journalFile));
+        } catch (IOException e) {
+            System.out.println("Unable to open trade journal " + journalFile + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        long numberOfTradesRecovered;
+
+        try {
+            numberOfTradesRecovered = stockTradeHistory.attachJournal(stockTradeJournal);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unable to recover trades from trade journal " + journalFile + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        System.out.println("Recovered " + numberOfTradesRecovered + " trades from " + journalFile
+                + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + "ms");
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                stockTradeJournal.close();
+            } catch (IOException e) {
+                System.out.println("Unable to close trade journal " + journalFile + ": " + e.getMessage());
+            }
+        }));
+    }
+
+    /**
+     * Imports all trades in the given file, read as CSV if the file name ends in .csv and as binary otherwise
+     *
+     * @param stockTradeHistory history to import trades into
+     * @param importFile file of trades
+     */
+    private static void importTrades(StockTradeHistory stockTradeHistory, String importFile){
+
+        long startTime = System.nanoTime();
+        long numberOfTradesImported;
+
+        try {
+            numberOfTradesImported = new StockTradeFileImporter(stockTradeHistory).importFile(Paths.get(importFile));
+        } catch (IOException | SuperSimpleStocksException e) {
+            System.out.println("Unable to import trades from " + importFile + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        System.out.println("Imported " + numberOfTradesImported + " trades from " + importFile
+                + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + "ms");
+    }
+
+    /**
+     * Displays the Volume Weighted Stock Price for every Stock as at the time of the latest trade,
+     * and the GBCE All Share Index for all trades
+     *
+     * @param stockTradeHistory history holding the imported trades
+     * @param volumeWeightedStockPriceAggregator rolling Volume Weighted Stock Price for all Stocks
+     * @param gbceAllShareIndex GBCE All Share Index maintained for all trades
+     */
+    private static void printImportResults(StockTradeHistory stockTradeHistory, VolumeWeightedStockPriceAggregator volumeWeightedStockPriceAggregator,
+                                           GBCEAllShareIndex gbceAllShareIndex){
+
+        long latestTimeStamp = Long.MIN_VALUE;
+
+        for(StockSymbol stockSymbol : StockSymbol.values()){
+
+            latestTimeStamp = Math.max(latestTimeStamp, stockTradeHistory.getLatestTimeStamp(stockSymbol));
+        }
+
+        if(latestTimeStamp == Long.MIN_VALUE){
+            System.out.println("No trades to calculate results for");
+            return;
+        }
+
+        System.out.println("Volume Weighted Stock Price for trades in the " + minutes + " minutes before "
+                + FixedPointUtility.toLocalDateTime(latestTimeStamp));
+
+        for(StockSymbol stockSymbol : StockSymbol.values()){
+            System.out.println(stockSymbol + " = " + volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(stockSymbol, latestTimeStamp));
+        }
+
+        try {
+            System.out.println("GBCE All Share Index = " + gbceAllShareIndex.getGBCE());
+        } catch (SuperSimpleStocksException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Accepts trades and calculation requests from clients over TCP until the application is stopped
+     *
+     * @param operationDispatcher runs the requests received from clients
+     * @param serverPort port to listen on
+     */
+    private static void runServer(OperationDispatcher operationDispatcher, String serverPort){
+
+        StockTradeServer stockTradeServer;
+
+        try {
+            stockTradeServer = new StockTradeServer(operationDispatcher, Integer.parseInt(serverPort));
+            System.out.println("Accepting trades and calculations on port " + stockTradeServer.getLocalPort() + ", running each request on a virtual thread");
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("Unable to start server on port " + serverPort + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                stockTradeServer.close();
+            } catch (IOException e) {
+                System.out.println("Unable to stop server: " + e.getMessage());
+            }
+            operationDispatcher.close();
+            stopped.countDown();
+        }));
+
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Displays to the user what Operations they can perform
      */
@@ -116,13 +554,13 @@ public class SuperSimpleStocksApp {
      * @return Stock Symbol
      * @throws SuperSimpleStocksException if Stock Symbol is not recognised
      */
-    private static StockSymbolEnum getStockSymbolFromUser() throws SuperSimpleStocksException {
+    private static StockSymbol getStockSymbolFromUser() throws SuperSimpleStocksException {
 
         System.out.println("Please input stock symbol");
 
         String enteredStockSymbol = scanner.nextLine();
 
-        return StockSymbolEnum.getStockSymbolFor(enteredStockSymbol);
+        return StockSymbol.getStockSymbolFor(enteredStockSymbol);
     }
 
     /**
@@ -210,7 +648,7 @@ public class SuperSimpleStocksApp {
         if(quantityAsBigDecimal.scale() > 2){
 
             //If the value entered has more than 2 decimal places, truncate the value to 2 decimal places
-            quantityAsBigDecimal = quantityAsBigDecimal.setScale(2, BigDecimal.ROUND_HALF_UP);
+            quantityAsBigDecimal = quantityAsBigDecimal.setScale(2, RoundingMode.HALF_UP);
 
             System.out.println("Maximum allowed scale is 2 decimal places, quantity to be used for trade has been set to "+quantityAsBigDecimal);
         }
@@ -236,101 +674,117 @@ public class SuperSimpleStocksApp {
     }
 
     /**
-     * Makes a call to the CalculationUtility Class to calculate
-     * the Dividend Yield and displays the result
+     * Dispatches a request to calculate the Dividend Yield,
+     * whose result the event log displays
      *
+     * @param operationDispatcher runs the calculation
      * @param stockSymbol Stock Symbol
      * @param marketPrice Market Price
      * @throws SuperSimpleStocksException if exception occurred during the calculation
      */
-    private static void calculateDividendYield(StockSymbolEnum stockSymbol, int marketPrice) throws SuperSimpleStocksException{
-
-        System.out.println("Calculating Dividend Yield for Stock "+ stockSymbol.getSymbol() + " and Market Price "+marketPrice);
-
-        StockData stockData = StockData.getStockDataForSymbol(stockSymbol);
+    private static void calculateDividendYield(OperationDispatcher operationDispatcher, StockSymbol stockSymbol, int marketPrice) throws SuperSimpleStocksException{
 
-        System.out.println("Result = " + CalculationUtility.calculateDividendYield(stockData, marketPrice));
+        runOperation(operationDispatcher, OperationRequest.dividendYield(stockSymbol, marketPrice));
 
         printContinuation();
     }
 
     /**
-     * Makes a call to the CalculationUtility Class to calculate
-     * the Price Earnings Ratio and displays the result
+     * Dispatches a request to calculate the Price Earnings Ratio,
+     * whose result the event log displays
      *
+     * @param operationDispatcher runs the calculation
      * @param stockSymbol Stock Symbol
      * @param marketPrice Market Price
      * @throws SuperSimpleStocksException if exception occurred during the calculation
      */
-    private static void calculatePriceEarnngsRatio(StockSymbolEnum stockSymbol, int marketPrice) throws SuperSimpleStocksException{
+    private static void calculatePriceEarnngsRatio(OperationDispatcher operationDispatcher, StockSymbol stockSymbol, int marketPrice) throws SuperSimpleStocksException{
 
-        System.out.println("Calculating Price Earnings Ratio for Stock "+ stockSymbol.getSymbol() + " and Market Price "+marketPrice);
-
-        StockData stockData = StockData.getStockDataForSymbol(stockSymbol);
-
-        System.out.println("Result = " + CalculationUtility.calculatePriceEarningsRatio(stockData, marketPrice));
+        runOperation(operationDispatcher, OperationRequest.priceEarningsRatio(stockSymbol, marketPrice));
 
         printContinuation();
     }
 
     /**
-     * Creates and stores a new trade for a given Stock
+     * Dispatches a request to create and store a new trade for a given Stock,
+     * which the event log displays once stored
      *
+     * @param operationDispatcher stores the trade
      * @param stockSymbol StockSymbol to be traded
      * @param quantity how many shares of the stock to be traded
      * @param transactionType BUY or SELL
      * @param price per share in pence
-     * @param stockTradeHistory current list of all trades for all Stocks
+     * @throws SuperSimpleStocksException if the trade could not be stored
      */
-    private static void createTradeForStock(StockSymbolEnum stockSymbol, BigDecimal quantity, TransactionType transactionType, BigDecimal price, StockTradeHistory stockTradeHistory){
-
-        //Timestamp of trade
-        LocalDateTime now = LocalDateTime.now();
+    private static void createTradeForStock(OperationDispatcher operationDispatcher, StockSymbol stockSymbol, BigDecimal quantity,
+                                            TransactionType transactionType, int price) throws SuperSimpleStocksException{
 
-        //Create the new Trade
-        StockTrade stockTrade = new StockTrade(transactionType, stockSymbol, now, quantity, price);
+        //The trade is timestamped when the request is created
+        OperationRequest operationRequest = OperationRequest.trade(stockSymbol, transactionType, FixedPointUtility.toHundredths(quantity), price,
+                operationDispatcher.getTradeClock());
 
-        //Add the new Trade to the current list of all trades for all Stocks
-        stockTradeHistory.addTrade(stockTrade);
-
-        System.out.println("New Trade added:");
-        System.out.println("Transaction Type: " + transactionType + " Stock Symbol: "+ stockSymbol + " quantity: " + quantity + " TimeStamp: "+ now +" Price: " + price);
+        runOperation(operationDispatcher, operationRequest);
 
         printContinuation();
 
     }
 
     /**
-     * calculates and displays the Volume Weighted Stock Price for a given Stock
+     * calculates the Volume Weighted Stock Price for a given Stock
      * that has been traded in the last number of minutes given
-     * (currently defaulted to 15 minutes)
+     * (currently defaulted to 15 minutes), whose result the event log displays
      *
-     * @param stockTradeHistory List of all trades for all Stocks
+     * @param operationDispatcher runs the calculation
      * @param stockSymbol to perform the calculation on
      * @throws SuperSimpleStocksException if exception occurred during the calculation
      */
-    private static void calculateVolumeWeightedStockPriceForSingleStock(StockTradeHistory stockTradeHistory, StockSymbolEnum stockSymbol) throws SuperSimpleStocksException{
+    private static void calculateVolumeWeightedStockPriceForSingleStock(OperationDispatcher operationDispatcher, StockSymbol stockSymbol) throws SuperSimpleStocksException{
 
-        System.out.println("Calculating Volume Weighted Stock Price for all trades for " + stockSymbol + " in the last " + minutes + " minutes");
-        System.out.println("Result = " + CalculationUtility.calculateVolumeWeightedStockPrice(stockTradeHistory.getStockTradeHistoryListForSymbol(stockSymbol), minutes));
+        runOperation(operationDispatcher, OperationRequest.volumeWeightedStockPrice(stockSymbol));
 
         printContinuation();
     }
 
     /**
-     * Calculates and displays the GBCE All Shares Index
+     * Calculates the GBCE All Shares Index, whose result the event log displays
      *
-     * @param stockTradeHistory List of all trades for all Stocks
+     * @param operationDispatcher runs the calculation
      * @throws SuperSimpleStocksException if exception occurred during the calculation
      */
-    private static void calculateGBCEAllShareIndex(StockTradeHistory stockTradeHistory) throws SuperSimpleStocksException{
+    private static void calculateGBCEAllShareIndex(OperationDispatcher operationDispatcher) throws SuperSimpleStocksException{
 
-        System.out.println("Calculating GBCE All Share Index");
-        System.out.println("Result = " + CalculationUtility.calculateGBCE(stockTradeHistory.getStockTradeHistoryListForAllStocks()));
+        runOperation(operationDispatcher, OperationRequest.gbce());
 
         printContinuation();
     }
 
+    /**
+     * Dispatches the request and waits for its result, and for the event log to display it
+     *
+     * @param operationDispatcher runs the request
+     * @param operationRequest request to run
+     * @return result of the request, null for a trade
+     * @throws SuperSimpleStocksException if exception occurred running the request
+     */
+    private static BigDecimal runOperation(OperationDispatcher operationDispatcher, OperationRequest operationRequest) throws SuperSimpleStocksException{
+
+        try {
+            return operationDispatcher.dispatch(operationRequest).get();
+        } catch (ExecutionException e) {
+
+            if(e.getCause() instanceof SuperSimpleStocksException){
+                throw (SuperSimpleStocksException) e.getCause();
+            }
+            throw new SuperSimpleStocksException(operationRequest.getOperation() + " failed: " + e.getCause());
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SuperSimpleStocksException("Interrupted while waiting for " + operationRequest.getOperation());
+        } finally {
+            operationEventLog.awaitWritten();
+        }
+    }
+
     /**
      * Helper method to inform the user that they can perform another operation
      */
@@ -0,0 +1,141 @@
+package com.supersimplestocks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Source of the current time in nanoseconds since the epoch, used to timestamp trades
+ * and to find where Volume Weighted Stock Price windows start
+ *
+ * Times are plain longs, so working out and comparing against the start of a window creates no objects.
+ * The clocks are:
+ *
+ * system, the wall clock to the nanosecond where the JVM and OS allow, which is the most precise but the dearest to read,
+ * monotonic, the wall clock at start up moved on by System.nanoTime, so never goes backwards when the wall clock is changed,
+ * coarse, the monotonic clock read by a background thread every millisecond, so reading it is a single volatile read,
+ * and simulated, which only moves when told to, so trades can be replayed and tested against windows at chosen times.
+ */
+abstract class TradeClock {
+
+    private static final TradeClock SYSTEM = new TradeClock() {
+        @Override
+        long currentEpochNanos() {
+            return FixedPointUtility.currentEpochNanos();
+        }
+    };
+
+    /**
+     * @return the current time in nanoseconds since the epoch
+     */
+    abstract long currentEpochNanos();
+
+    static TradeClock system(){
+        return SYSTEM;
+    }
+
+    /**
+     * @return clock that moves at the rate of System.nanoTime from the wall clock at start up,
+     *         so may drift from the wall clock over days as the two are corrected differently
+     */
+    static TradeClock monotonic(){
+        return MonotonicTradeClock.INSTANCE;
+    }
+
+    /**
+     * @return monotonic clock cached every millisecond, for timestamping every trade and calculation,
+     *         which lags the monotonic clock by up to a millisecond and never goes backwards
+     */
+    static TradeClock coarse(){
+        return CoarseTradeClock.INSTANCE;
+    }
+
+    /**
+     * @param startEpochNanos time the clock starts at in nanoseconds since the epoch
+     * @return clock that only moves when set or advanced
+     */
+    static Simulated simulated(long startEpochNanos){
+        return new Simulated(startEpochNanos);
+    }
+
+    /**
+     * Clock that only moves when set or advanced, and never moves backwards,
+     * as Volume Weighted Stock Price windows expect time to move forward
+     */
+    static final class Simulated extends TradeClock {
+
+        private volatile long epochNanos;
+
+        private Simulated(long startEpochNanos){
+            this.epochNanos = startEpochNanos;
+        }
+
+        @Override
+        long currentEpochNanos() {
+            return epochNanos;
+        }
+
+        /**
+         * @param epochNanos time to move to in nanoseconds since the epoch, for example that of the next trade replayed
+         * @throws IllegalArgumentException if the time is before the clock's current time
+         */
+        synchronized void set(long epochNanos){
+
+            if(epochNanos < this.epochNanos){
+                throw new IllegalArgumentException("Simulated clock can not move backwards from " + this.epochNanos + " to " + epochNanos);
+            }
+            this.epochNanos = epochNanos;
+        }
+
+        /**
+         * @param duration time to move forward by
+         * @param unit unit of the duration
+         * @throws IllegalArgumentException if the duration is negative
+         */
+        synchronized void advance(long duration, TimeUnit unit){
+
+            if(duration < 0){
+                throw new IllegalArgumentException("Simulated clock can not move backwards by " + duration + " " + unit);
+            }
+            epochNanos = Math.addExact(epochNanos, unit.toNanos(duration));
+        }
+    }
+
+    private static final class MonotonicTradeClock extends TradeClock {
+
+        private static final MonotonicTradeClock INSTANCE = new MonotonicTradeClock();
+
+        private final long startEpochNanos = FixedPointUtility.currentEpochNanos();
+        private final long startNanoTime = System.nanoTime();
+
+        @Override
+        long currentEpochNanos() {
+            return startEpochNanos + (System.nanoTime() - startNanoTime);
+        }
+    }
+
+    private static final class CoarseTradeClock extends TradeClock {
+
+        private static final long RESOLUTION_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+        private static final CoarseTradeClock INSTANCE = new CoarseTradeClock();
+
+        private volatile long epochNanos = MonotonicTradeClock.INSTANCE.currentEpochNanos();
+
+        private CoarseTradeClock(){
+
+            Thread ticker = new Thread(() -> {
+                while(true){
+                    LockSupport.parkNanos(RESOLUTION_NANOS);
+                    epochNanos = MonotonicTradeClock.INSTANCE.currentEpochNanos();
+                }
+            }, "trade-clock");
+            ticker.setDaemon(true);
+            ticker.start();
+        }
+
+        @Override
+        long currentEpochNanos() {
+            return epochNanos;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.supersimplestocks;
+
+/**
+ * Sums over trades held in columns of primitive arrays, as used by the Volume Weighted Stock Price
+ * and GBCE All Share Index calculations
+ *
+ * The kernels used are chosen once, at start up. When the application is built with the vector profile and
+ * run with --add-modules jdk.incubator.vector they are VectorTradeColumnKernels, which sum as many trades at a time
+ * as the CPU's vector registers hold, otherwise they are ScalarTradeColumnKernels. Setting the system property
+ * supersimplestocks.scalarKernels to true always chooses the scalar kernels.
+ *
+ * Each kernel sums the trades from the from index up to but not including the to index.
+ * Sums of whole numbers are exact whichever kernels are used. Sums of logs may differ in the last bits,
+ * as the vector kernels add them in a different order.
+ */
+abstract class TradeColumnKernels {
+
+    private static final String VECTOR_KERNELS = "com.supersimplestocks.VectorTradeColumnKernels";
+
+    private static final TradeColumnKernels KERNELS = select();
+
+    /**
+     * @return the kernels chosen at start up
+     */
+    static TradeColumnKernels get(){
+        return KERNELS;
+    }
+
+    /**
+     * @param timeStamps timestamps in nanoseconds since the epoch
+     * @param from index of the first trade
+     * @param to index after the last trade
+     * @param calculationTime only trades after this time, in nanoseconds since the epoch, are counted
+     * @return number of trades after the given time
+     */
+    abstract long countAfter(long[] timeStamps, int from, int to, long calculationTime);
+
+    /**
+     * @param timeStamps timestamps in nanoseconds since the epoch
+     * @param quantities quantities in hundredths of a share
+     * @param from index of the first trade
+     * @param to index after the last trade
+     * @param calculationTime only trades after this time, in nanoseconds since the epoch, are summed
+     * @return sum of the quantities of the trades after the given time
+     * @throws ArithmeticException if the sum is too large to be held as a long
+     */
+    abstract long sumQuantitiesAfter(long[] timeStamps, long[] quantities, int from, int to, long calculationTime);
+
+    /**
+     * @param timeStamps timestamps in nanoseconds since the epoch
+     * @param quantities quantities in hundredths of a share
+     * @param tradePrices trade prices in pence
+     * @param from index of the first trade
+     * @param to index after the last trade
+     * @param calculationTime only trades after this time, in nanoseconds since the epoch, are summed
+     * @return sum of Quantity * Trade Price of the trades after the given time
+     * @throws ArithmeticException if the sum is too large to be held as a long
+     */
+    abstract long sumTradePricesMultipliedByQuantitiesAfter(long[] timeStamps, long[] quantities, long[] tradePrices, int from, int to, long calculationTime);
+
+    /**
+     * @param tradePrices trade prices in pence
+     * @param from index of the first trade
+     * @param to index after the last trade
+     * @return sum of the natural logs of the trade prices
+     */
+    abstract double sumLogTradePrices(long[] tradePrices, int from, int to);
+
+    private static TradeColumnKernels select(){
+
+        if(!Boolean.getBoolean("supersimplestocks.scalarKernels")){
+            try {
+                return (TradeColumnKernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e){
+                //Not built with the vector profile, not run with the vector module, or the CPU has no vector registers
+            }
+        }
+        return new ScalarTradeColumnKernels();
+    }
+}
@@ -0,0 +1,335 @@
+package com.supersimplestocks;
+
+import com.supersimplestocks.enums.StockSymbol;
+import com.supersimplestocks.enums.TransactionType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maintains the Volume Weighted Stock Price for every Stock over a rolling window
+ * of the last number of minutes given, so it can be returned without rescanning the trade history
+ *
+ * For each Stock a running sum of Quantity * Trade Price and a running sum of Quantity
+ * are kept for the trades in the window. Trades are added to the sums as they are recorded
+ * and subtracted again as they age out of the window.
+ *
+ * Each Stock's window is locked separately, so trades and calculations
+ * for different Stocks can happen on different threads at the same time.
+ * Windows are held in an array indexed by the Stock Symbol's id, and created the first time a Stock is traded.
+ */
+class VolumeWeightedStockPriceAggregator implements StockTradeListener {
+
+    private final long minutes;
+    private final long windowNanos;
+    private final TradeClock tradeClock;
+    private final StockSymbolTable<TradeWindow> tradeWindows;
+
+    /**
+     * @param minutes Only trades that have occurred in the last number of minutes set will be used in the calculation
+     */
+    VolumeWeightedStockPriceAggregator(long minutes){
+        this(minutes, TradeClock.system());
+    }
+
+    /**
+     * @param minutes Only trades that have occurred in the last number of minutes set will be used in the calculation
+     * @param tradeClock clock the window ends at the current time of, which trades should be timestamped by too
+     */
+    VolumeWeightedStockPriceAggregator(long minutes, TradeClock tradeClock){
+        this.minutes = minutes;
+        this.windowNanos = TimeUnit.MINUTES.toNanos(minutes);
+        this.tradeClock = tradeClock;
+
+        tradeWindows = new StockSymbolTable<>(symbol -> new TradeWindow());
+    }
+
+    @Override
+    public void tradeAdded(StockSymbol symbol, TransactionType transactionType, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence) {
+        tradeWindows.get(symbol).add(timeStampEpochNanos, quantityInHundredths, tradePriceInPence, windowNanos);
+    }
+
+    @Override
+    public void checkTradeAdded(StockSymbol symbol, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence) {
+        tradeWindows.get(symbol).checkAdd(quantityInHundredths, tradePriceInPence);
+    }
+
+    @Override
+    public void checkTradesAdded(StockTradeBatch stockTradeBatch) {
+
+        int start = 0;
+
+        while(start < stockTradeBatch.size()){
+
+            StockSymbol symbol = stockTradeBatch.getSymbol(start);
+            int end = start + 1;
+
+            while(end < stockTradeBatch.size() && stockTradeBatch.getSymbol(end) == symbol){
+                end++;
+            }
+
+            tradeWindows.get(symbol).checkAddAll(stockTradeBatch, start, end);
+            start = end;
+        }
+    }
+
+    @Override
+    public void tradesAdded(StockTradeBatch stockTradeBatch) {
+
+        //Add each run of trades for the same Stock to its window in one go
+        int start = 0;
+
+        while(start < stockTradeBatch.size()){
+
+            StockSymbol symbol = stockTradeBatch.getSymbol(start);
+            int end = start + 1;
+
+            while(end < stockTradeBatch.size() && stockTradeBatch.getSymbol(end) == symbol){
+                end++;
+            }
+
+            tradeWindows.get(symbol).addAll(stockTradeBatch, start, end, windowNanos);
+            start = end;
+        }
+    }
+
+    long getMinutes(){
+        return minutes;
+    }
+
+    TradeClock getTradeClock(){
+        return tradeClock;
+    }
+
+    /**
+     * Returns the Volume Weighted Stock Price for the given Stock based on
+     * trades that have occurred in the last number of minutes by the trade clock
+     *
+     * @param symbol Stock Symbol
+     * @return Volume weighted Stock Price to 2 Decimal Places,
+     *         or 0 if no trades have happened in the last number of minutes
+     */
+    BigDecimal getVolumeWeightedStockPrice(StockSymbol symbol){
+        return getVolumeWeightedStockPrice(symbol, tradeClock.currentEpochNanos());
+    }
+
+    /**
+     * Returns the Volume Weighted Stock Price for the given Stock based on
+     * trades that occurred in the number of minutes before the given time
+     *
+     * @param symbol Stock Symbol
+     * @param now time the window ends at
+     * @return Volume weighted Stock Price to 2 Decimal Places,
+     *         or 0 if no trades have happened in the window
+     */
+    BigDecimal getVolumeWeightedStockPrice(StockSymbol symbol, LocalDateTime now){
+        return getVolumeWeightedStockPrice(symbol, FixedPointUtility.toEpochNanos(now));
+    }
+
+    /**
+     * Returns the Volume Weighted Stock Price for the given Stock based on
+     * trades that occurred in the number of minutes before the given time
+     *
+     * Time is expected to move forward between calls, as trades that
+     * have aged out of the window are discarded
+     *
+     * @param symbol Stock Symbol
+     * @param now time the window ends at in nanoseconds since the epoch
+     * @return Volume weighted Stock Price to 2 Decimal Places,
+     *         or 0 if no trades have happened in the window
+     */
+    BigDecimal getVolumeWeightedStockPrice(StockSymbol symbol, long now){
+
+        TradeWindow tradeWindow = tradeWindows.find(symbol);
+
+        if(tradeWindow == null){
+            return BigDecimal.ZERO;
+        }
+
+        synchronized (tradeWindow){
+
+            tradeWindow.expireTradesNotAfter(now - windowNanos);
+
+            return tradeWindow.getVolumeWeightedStockPrice();
+        }
+    }
+
+    /**
+     * Returns the Volume Weighted Stock Price for the given Stock as getVolumeWeightedStockPrice does,
+     * into the given result without creating any objects
+     *
+     * @param symbol Stock Symbol
+     * @param now time the window ends at in nanoseconds since the epoch
+     * @param result holder to fill in with the Volume Weighted Stock Price, or 0 if no trades have happened in the window
+     */
+    void getVolumeWeightedStockPrice(StockSymbol symbol, long now, CalculationResult result){
+
+        TradeWindow tradeWindow = tradeWindows.find(symbol);
+
+        if(tradeWindow == null){
+            result.set(0, 0);
+            return;
+        }
+
+        synchronized (tradeWindow){
+
+            tradeWindow.expireTradesNotAfter(now - windowNanos);
+            tradeWindow.getVolumeWeightedStockPrice(result);
+        }
+    }
+
+    /**
+     * Trades for a single Stock that are in the window, held in timestamp order
+     * in a ring buffer of primitive arrays, along with the running sums for those trades
+     *
+     * Sums are fixed point, quantity in hundredths of a share and
+     * Quantity * Trade Price in hundredths of a share multiplied by pence
+     */
+    private static class TradeWindow {
+
+        private static final int INITIAL_CAPACITY = 16; //Must be a power of 2
+
+        private long[] timeStamps = new long[INITIAL_CAPACITY];
+        private long[] quantities = new long[INITIAL_CAPACITY];
+        private long[] tradePrices = new long[INITIAL_CAPACITY];
+
+        private int first;
+        private int size;
+
+        private long totalQuantity;
+        private long sumOfTradePriceMultipliedByQuantity;
+
+        synchronized void add(long timeStamp, long quantity, long tradePrice, long windowNanos){
+
+            insert(timeStamp, quantity, tradePrice, windowNanos);
+
+            //Trades older than the window before the latest trade can never be in a later window,
+            //so discard them now rather than waiting for the next calculation
+            expireTradesNotAfter(timeStamps[index(size - 1)] - windowNanos);
+        }
+
+        synchronized void addAll(StockTradeBatch stockTradeBatch, int start, int end, long windowNanos){
+
+            for(int i = start; i < end; i++){
+                insert(stockTradeBatch.getTimeStampEpochNanos(i), stockTradeBatch.getQuantityInHundredths(i), stockTradeBatch.getTradePriceInPence(i), windowNanos);
+            }
+
+            expireTradesNotAfter(timeStamps[index(size - 1)] - windowNanos);
+        }
+
+        /**
+         * @throws ArithmeticException if adding the trade would overflow the sums
+         */
+        synchronized void checkAdd(long quantity, long tradePrice){
+
+            Math.addExact(sumOfTradePriceMultipliedByQuantity, Math.multiplyExact(quantity, tradePrice));
+            Math.addExact(totalQuantity, quantity);
+        }
+
+        /**
+         * @throws ArithmeticException if adding the trades would overflow the sums
+         */
+        synchronized void checkAddAll(StockTradeBatch stockTradeBatch, int start, int end){
+
+            long sum = sumOfTradePriceMultipliedByQuantity;
+            long total = totalQuantity;
+
+            for(int i = start; i < end; i++){
+                sum = Math.addExact(sum, Math.multiplyExact(stockTradeBatch.getQuantityInHundredths(i), stockTradeBatch.getTradePriceInPence(i)));
+                total = Math.addExact(total, stockTradeBatch.getQuantityInHundredths(i));
+            }
+        }
+
+        private void insert(long timeStamp, long quantity, long tradePrice, long windowNanos){
+
+            //A trade at or before the window of the latest trade would be expired straight away,
+            //so drop it before moving any later trades along for it, as chunks imported in parallel often arrive this late
+            if(size > 0 && timeStamp <= timeStamps[index(size - 1)] - windowNanos){
+                return;
+            }
+
+            //Summed before the window is changed, so a trade that would overflow leaves it as it was
+            long sum = Math.addExact(sumOfTradePriceMultipliedByQuantity, Math.multiplyExact(quantity, tradePrice));
+            long total = Math.addExact(totalQuantity, quantity);
+
+            if(size == timeStamps.length){
+                grow();
+            }
+
+            //Trades normally arrive in time order, but if not, move any later trades
+            //along one place so the window stays in time order for expiring trades
+            int position = size;
+
+            while(position > 0 && timeStamps[index(position - 1)] > timeStamp){
+                int from = index(position - 1);
+                int to = index(position);
+                timeStamps[to] = timeStamps[from];
+                quantities[to] = quantities[from];
+                tradePrices[to] = tradePrices[from];
+                position--;
+            }
+
+            int index = index(position);
+            timeStamps[index] = timeStamp;
+            quantities[index] = quantity;
+            tradePrices[index] = tradePrice;
+            size++;
+
+            sumOfTradePriceMultipliedByQuantity = sum;
+            totalQuantity = total;
+        }
+
+        synchronized void expireTradesNotAfter(long calculationTime){
+
+            while(size > 0 && timeStamps[first] <= calculationTime){
+
+                sumOfTradePriceMultipliedByQuantity -= quantities[first] * tradePrices[first];
+                totalQuantity -= quantities[first];
+
+                first = (first + 1) & (timeStamps.length - 1);
+                size--;
+            }
+        }
+
+        synchronized BigDecimal getVolumeWeightedStockPrice(){
+
+            //If totalQuantity is 0, then no trades are in the window so return 0
+            if(totalQuantity == 0){
+                return BigDecimal.ZERO;
+            }else {
+                //Sum of (Quantity * Trade price) / Sum of Quantity, the hundredths cancel out leaving pence
+                return FixedPointUtility.divideHalfUp(sumOfTradePriceMultipliedByQuantity, totalQuantity);
+            }
+        }
+
+        synchronized void getVolumeWeightedStockPrice(CalculationResult result){
+            result.set(totalQuantity == 0 ? 0 : FixedPointUtility.divideHalfUpUnscaled(sumOfTradePriceMultipliedByQuantity, totalQuantity), size);
+        }
+
+        private int index(int position){
+            return (first + position) & (timeStamps.length - 1);
+        }
+
+        private void grow(){
+
+            int capacity = timeStamps.length * 2;
+
+            long[] grownTimeStamps = new long[capacity];
+            long[] grownQuantities = new long[capacity];
+            long[] grownTradePrices = new long[capacity];
+
+            for(int position = 0; position < size; position++){
+                int index = index(position);
+                grownTimeStamps[position] = timeStamps[index];
+                grownQuantities[position] = quantities[index];
+                grownTradePrices[position] = tradePrices[index];
+            }
+
+            timeStamps = grownTimeStamps;
+            quantities = grownQuantities;
+            tradePrices = grownTradePrices;
+            first = 0;
+        }
+    }
+}
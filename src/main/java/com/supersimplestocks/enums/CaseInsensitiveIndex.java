@@ -0,0 +1,111 @@
+package com.supersimplestocks.enums;
+
+/**
+ * Fixed table of values looked up by a case insensitive code, such as a Stock Symbol or Operation code
+ *
+ * Codes are hashed and upper cased once when the table is built, and the code being looked up
+ * is hashed and compared a character at a time, so a lookup neither scans every value
+ * nor creates an upper case copy of the code. Only ASCII letters are treated as case insensitive.
+ *
+ * @param <T> type of value held
+ */
+public final class CaseInsensitiveIndex<T> {
+
+    private final String[] codes;
+    private final Object[] values;
+    private final int mask;
+
+    /**
+     * @param codes code for each value, which must be different ignoring case
+     * @param values value for each code
+     */
+    public CaseInsensitiveIndex(String[] codes, T[] values){
+
+        if(codes.length != values.length){
+            throw new IllegalArgumentException("Number of codes and values must be the same");
+        }
+
+        //At most half full, so probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(1, codes.length) * 2) * 2;
+
+        this.codes = new String[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+
+        for(int i = 0; i < codes.length; i++){
+
+            String code = upperCase(codes[i]);
+            int slot = hash(code) & mask;
+
+            while(this.codes[slot] != null){
+
+                if(this.codes[slot].equals(code)){
+                    throw new IllegalArgumentException("Code " + codes[i] + " is given more than once");
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            this.codes[slot] = code;
+            this.values[slot] = values[i];
+        }
+    }
+
+    /**
+     * @param code code to look up, in any case
+     * @return value for the code, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public T get(CharSequence code){
+
+        int slot = hash(code) & mask;
+
+        while(codes[slot] != null){
+
+            if(equalsIgnoreCase(codes[slot], code)){
+                return (T) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    static int hash(CharSequence code){
+
+        int hash = 0;
+
+        for(int i = 0; i < code.length(); i++){
+            hash = 31 * hash + upperCase(code.charAt(i));
+        }
+
+        //Spread the higher bits into the lower bits used to pick a slot
+        return hash ^ (hash >>> 16);
+    }
+
+    static boolean equalsIgnoreCase(String upperCaseCode, CharSequence code){
+
+        if(upperCaseCode.length() != code.length()){
+            return false;
+        }
+
+        for(int i = 0; i < code.length(); i++){
+            if(upperCaseCode.charAt(i) != upperCase(code.charAt(i))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String upperCase(String code){
+
+        char[] characters = new char[code.length()];
+
+        for(int i = 0; i < characters.length; i++){
+            characters[i] = upperCase(code.charAt(i));
+        }
+        return new String(characters);
+    }
+
+    private static char upperCase(char character){
+        return character >= 'a' && character <= 'z' ? (char) (character - ('a' - 'A')) : character;
+    }
+}
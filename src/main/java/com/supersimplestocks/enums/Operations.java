@@ -16,6 +16,18 @@ public enum Operations {
     GBCE("GBCE"),
     Q("Q");
 
+    private static final CaseInsensitiveIndex<Operations> BY_OPERATION_CODE;
+
+    static {
+        Operations[] operations = values();
+        String[] operationCodes = new String[operations.length];
+
+        for(Operations operation : operations){
+            operationCodes[operation.ordinal()] = operation.operationCode;
+        }
+        BY_OPERATION_CODE = new CaseInsensitiveIndex<>(operationCodes, operations);
+    }
+
     private final String operationCode;
 
     Operations(String operationCode){
@@ -31,12 +43,11 @@ public enum Operations {
      */
     public static Operations getOperationFor(String enteredOperationCode) throws SuperSimpleStocksException{
 
-        for(Operations operation: Operations.values()){
+        Operations operation = BY_OPERATION_CODE.get(enteredOperationCode);
 
-            if(enteredOperationCode.toUpperCase().equals(operation.operationCode)){
-                return operation;
-            }
+        if(operation == null){
+            throw new SuperSimpleStocksException("Entry "+enteredOperationCode+" is not a recognised Operation");
         }
-        throw new SuperSimpleStocksException("Entry "+enteredOperationCode+" is not a recognised Operation");
+        return operation;
     }
 }
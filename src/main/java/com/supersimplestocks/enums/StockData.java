@@ -17,19 +17,28 @@ import java.math.BigDecimal;
  */
 public enum StockData {
 
-    TEA(StockSymbolEnum.TEA, StockType.COMMON, 0, null, 100),
-    POP(StockSymbolEnum.POP, StockType.COMMON, 8, null, 100),
-    ALE(StockSymbolEnum.ALE, StockType.COMMON, 23, null, 60),
-    GIN(StockSymbolEnum.GIN, StockType.PREFERRED, 8, new BigDecimal(0.02), 100),
-    JOE(StockSymbolEnum.JOE, StockType.COMMON, 13, null, 250);
+    TEA(StockSymbol.TEA, StockType.COMMON, 0, null, 100),
+    POP(StockSymbol.POP, StockType.COMMON, 8, null, 100),
+    ALE(StockSymbol.ALE, StockType.COMMON, 23, null, 60),
+    GIN(StockSymbol.GIN, StockType.PREFERRED, 8, new BigDecimal(0.02), 100),
+    JOE(StockSymbol.JOE, StockType.COMMON, 13, null, 250);
 
-    private final StockSymbolEnum symbol;
+    //Stock Data for each sample Stock Symbol, indexed by the symbol's id
+    private static final StockData[] BY_SYMBOL_ID = new StockData[values().length];
+
+    static {
+        for(StockData stockData : values()){
+            BY_SYMBOL_ID[stockData.symbol.getId()] = stockData;
+        }
+    }
+
+    private final StockSymbol symbol;
     private final StockType type;
     private final int lastDividend; //Pence. integer used as it is assumed fractions of pennies will not be needed
     private final BigDecimal fixedDividend; //Percentage value. E.g. 1.5% = 0.015, 100% = 1.00
     private final int parValue; //Pence. integer used as it is assumed fractions of pennies will not be needed
 
-    StockData(StockSymbolEnum symbol, StockType type, int lastDividend, BigDecimal fixedDividend, int parValue){
+    StockData(StockSymbol symbol, StockType type, int lastDividend, BigDecimal fixedDividend, int parValue){
         this.symbol = symbol;
         this.type = type;
         this.lastDividend = lastDividend;
@@ -38,7 +47,7 @@ public enum StockData {
 
     }
 
-    public StockSymbolEnum getSymbol(){
+    public StockSymbol getSymbol(){
         return symbol;
     }
 
@@ -66,12 +75,13 @@ public enum StockData {
      * @return Stock Data enum for given symbol
      * @throws SuperSimpleStocksException if no Stock data Enum found
      */
-    public static StockData getStockDataForSymbol(StockSymbolEnum symbol) throws SuperSimpleStocksException{
-        for(StockData stockData: StockData.values()){
-            if (stockData.getSymbol() == symbol){
-                return  stockData;
-            }
+    public static StockData getStockDataForSymbol(StockSymbol symbol) throws SuperSimpleStocksException{
+
+        StockData stockData = symbol == null || symbol.getId() >= BY_SYMBOL_ID.length ? null : BY_SYMBOL_ID[symbol.getId()];
+
+        if(stockData == null){
+            throw new SuperSimpleStocksException("No Sample Stock Data found for symbol " + symbol);
         }
-        throw new SuperSimpleStocksException("No Sample Stock Data found for symbol " + symbol);
+        return stockData;
     }
 }
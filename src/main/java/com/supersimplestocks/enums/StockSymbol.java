@@ -0,0 +1,119 @@
+package com.supersimplestocks.enums;
+
+import com.supersimplestocks.exception.SuperSimpleStocksException;
+
+import java.util.List;
+
+/**
+ * Symbol representation of a listed Stock
+ *
+ * Symbols are listed while the application runs, for example from a reference data file, and interned
+ * so there is only ever one StockSymbol for each symbol and they can be compared with ==.
+ * Each has a dense id counting up from 0 in the order the symbols were listed, so anything held
+ * for each Stock can be kept in an array indexed by id. The sample Stocks are always listed first,
+ * so TEA, POP, ALE, GIN and JOE always have ids 0 to 4.
+ *
+ * Created by James Christie on 05/06/2017.
+ */
+public final class StockSymbol {
+
+    //Must be created before the sample Stocks are listed
+    private static final SymbolRegistry REGISTRY = new SymbolRegistry();
+
+    public static final StockSymbol TEA = REGISTRY.intern("TEA");
+    public static final StockSymbol POP = REGISTRY.intern("POP");
+    public static final StockSymbol ALE = REGISTRY.intern("ALE");
+    public static final StockSymbol GIN = REGISTRY.intern("GIN");
+    public static final StockSymbol JOE = REGISTRY.intern("JOE");
+
+    private final String symbol;
+    private final int id;
+
+    StockSymbol(String symbol, int id){
+        this.symbol = symbol;
+        this.id = id;
+    }
+
+    /**
+     * Returns the relevant Stock Symbol for the given symbol
+     * if no data found, throws an Exception
+     *
+     * @param enteredSymbol to search for
+     * @return Stock Symbol for given symbol
+     * @throws SuperSimpleStocksException if given symbol has no match
+     */
+    public static StockSymbol getStockSymbolFor(String enteredSymbol) throws SuperSimpleStocksException{
+
+        StockSymbol stockSymbol = enteredSymbol == null ? null : REGISTRY.find(enteredSymbol);
+
+        if(stockSymbol == null){
+            throw new SuperSimpleStocksException("No stock exists with Symbol " + enteredSymbol);
+        }
+        return stockSymbol;
+    }
+
+    /**
+     * Returns the Stock Symbol for the given symbol, in any case, without creating any objects
+     *
+     * @param symbol to search for
+     * @return Stock Symbol for given symbol, or null if given symbol has no match
+     */
+    public static StockSymbol findStockSymbol(CharSequence symbol){
+        return REGISTRY.find(symbol);
+    }
+
+    /**
+     * Lists a Stock Symbol, if it is not listed already
+     *
+     * @param symbol 1 to 16 letters, digits or dots, in any case
+     * @return Stock Symbol for given symbol
+     * @throws IllegalArgumentException if the symbol is not 1 to 16 letters, digits or dots
+     */
+    public static StockSymbol intern(String symbol){
+        return REGISTRY.intern(symbol);
+    }
+
+    /**
+     * @param symbol to check
+     * @return whether the symbol could be listed
+     */
+    public static boolean isValidSymbol(CharSequence symbol){
+        return SymbolRegistry.isValidSymbol(symbol);
+    }
+
+    /**
+     * @param id id of a listed Stock Symbol
+     * @return Stock Symbol with the given id
+     * @throws IllegalArgumentException if no Stock Symbol is listed with the id
+     */
+    public static StockSymbol forId(int id){
+        return REGISTRY.forId(id);
+    }
+
+    /**
+     * @return number of Stock Symbols listed so far, which is one more than the highest id
+     */
+    public static int count(){
+        return REGISTRY.size();
+    }
+
+    /**
+     * @return read only view of the Stock Symbols listed so far, in id order
+     */
+    public static List<StockSymbol> values(){
+        return REGISTRY.symbols();
+    }
+
+    public String getSymbol(){
+        return  symbol;
+    }
+
+    public int getId(){
+        return id;
+    }
+
+    @Override
+    public String toString(){
+        return symbol;
+    }
+}
@@ -0,0 +1,200 @@
+package com.supersimplestocks.enums;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Interns Stock Symbols, giving each symbol listed a dense id counting up from 0 in the order they were listed
+ *
+ * Symbols are held in an array indexed by id, alongside an open addressing hash table of ids that is kept
+ * at most half full. A symbol is upper cased and hashed once when it is listed. Looking one up hashes and compares
+ * the characters given, as CaseInsensitiveIndex does, so creates no objects, and neither looking up a symbol
+ * nor reading one by id locks.
+ *
+ * Listing a symbol locks the registry. A new symbol is written to a free slot and only then counted,
+ * so readers never see it half written, and the arrays are copied and replaced when they run out of room
+ * rather than being changed under a reader.
+ */
+final class SymbolRegistry {
+
+    //Ids are written to the trade journal in 3 bytes
+    static final int MAXIMUM_SYMBOLS = 1 << 24;
+
+    static final int MAXIMUM_SYMBOL_LENGTH = 16;
+
+    private static final int INITIAL_CAPACITY = 64; //Must be a power of 2
+
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+
+    /**
+     * @param symbol symbol to list, in any case
+     * @return the Stock Symbol for the symbol, listing it with the next id if it is not already listed
+     * @throws IllegalArgumentException if the symbol is not 1 to 16 letters, digits or dots
+     * @throws IllegalStateException if the most symbols that can be listed already have been
+     */
+    synchronized StockSymbol intern(String symbol){
+
+        StockSymbol stockSymbol = find(symbol);
+
+        if(stockSymbol != null){
+            return stockSymbol;
+        }
+
+        if(!isValidSymbol(symbol)){
+            throw new IllegalArgumentException("Stock Symbol must be 1 to " + MAXIMUM_SYMBOL_LENGTH + " letters, digits or dots: " + symbol);
+        }
+
+        Table current = table;
+
+        if(current.size == MAXIMUM_SYMBOLS){
+            throw new IllegalStateException("No more than " + MAXIMUM_SYMBOLS + " Stock Symbols can be listed");
+        }
+
+        if(current.size == current.symbols.length){
+            current = new Table(current);
+            table = current;
+        }
+
+        stockSymbol = new StockSymbol(CaseInsensitiveIndex.upperCase(symbol), current.size);
+        current.add(stockSymbol);
+
+        return stockSymbol;
+    }
+
+    /**
+     * @param symbol symbol to look up, in any case
+     * @return the Stock Symbol for the symbol, or null if it is not listed
+     */
+    StockSymbol find(CharSequence symbol){
+
+        Table current = table;
+
+        //Every symbol counted has been written, along with its slot
+        int size = current.size;
+        int slot = CaseInsensitiveIndex.hash(symbol) & current.mask;
+        int id;
+
+        while((id = current.slots[slot] - 1) >= 0){
+
+            if(id < size && CaseInsensitiveIndex.equalsIgnoreCase(current.symbols[id].getSymbol(), symbol)){
+                return current.symbols[id];
+            }
+            slot = (slot + 1) & current.mask;
+        }
+        return null;
+    }
+
+    /**
+     * @param id id of a listed symbol
+     * @return the Stock Symbol with the id
+     * @throws IllegalArgumentException if no symbol is listed with the id
+     */
+    StockSymbol forId(int id){
+
+        Table current = table;
+
+        if(id < 0 || id >= current.size){
+            throw new IllegalArgumentException("No Stock Symbol is listed with id " + id);
+        }
+        return current.symbols[id];
+    }
+
+    int size(){
+        return table.size;
+    }
+
+    /**
+     * @return read only view of the symbols listed so far, in id order
+     */
+    List<StockSymbol> symbols(){
+        Table current = table;
+        return new SymbolList(current.symbols, current.size);
+    }
+
+    static boolean isValidSymbol(CharSequence symbol){
+
+        if(symbol == null || symbol.length() == 0 || symbol.length() > MAXIMUM_SYMBOL_LENGTH){
+            return false;
+        }
+
+        for(int i = 0; i < symbol.length(); i++){
+
+            char character = symbol.charAt(i);
+
+            if(!(character >= 'A' && character <= 'Z' || character >= 'a' && character <= 'z'
+                    || character >= '0' && character <= '9' || character == '.')){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Symbols by id, and the hash table of their ids, which hold one more than the id so that 0 is a free slot
+     */
+    private static class Table {
+
+        final StockSymbol[] symbols;
+        final int[] slots;
+        final int mask;
+        volatile int size;
+
+        Table(int capacity){
+            symbols = new StockSymbol[capacity / 2];
+            slots = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        /**
+         * @param previous full table to copy into one twice the size
+         */
+        Table(Table previous){
+            this(previous.slots.length * 2);
+
+            for(int id = 0; id < previous.size; id++){
+                add(previous.symbols[id]);
+            }
+        }
+
+        void add(StockSymbol stockSymbol){
+
+            int slot = CaseInsensitiveIndex.hash(stockSymbol.getSymbol()) & mask;
+
+            while(slots[slot] != 0){
+                slot = (slot + 1) & mask;
+            }
+
+            symbols[stockSymbol.getId()] = stockSymbol;
+            slots[slot] = stockSymbol.getId() + 1;
+            size = stockSymbol.getId() + 1;
+        }
+    }
+
+    /**
+     * Read only view of the first symbols in an array that will not be changed
+     */
+    private static class SymbolList extends AbstractList<StockSymbol> implements RandomAccess {
+
+        private final StockSymbol[] symbols;
+        private final int size;
+
+        SymbolList(StockSymbol[] symbols, int size){
+            this.symbols = symbols;
+            this.size = size;
+        }
+
+        @Override
+        public StockSymbol get(int index) {
+            if(index < 0 || index >= size){
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return symbols[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
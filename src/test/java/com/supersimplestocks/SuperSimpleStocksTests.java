@@ -1,17 +1,49 @@
 package com.supersimplestocks;
 
+import com.supersimplestocks.enums.Operations;
 import com.supersimplestocks.enums.StockData;
-import com.supersimplestocks.enums.StockSymbolEnum;
+import com.supersimplestocks.enums.StockSymbol;
 import com.supersimplestocks.enums.TransactionType;
 import com.supersimplestocks.exception.SuperSimpleStocksException;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 
@@ -22,7 +54,13 @@ import static org.junit.Assert.assertTrue;
  */
 public class SuperSimpleStocksTests {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private StockTradeHistory stockTradeHistory = new StockTradeHistory();
+    private VolumeWeightedStockPriceAggregator volumeWeightedStockPriceAggregator = new VolumeWeightedStockPriceAggregator(15);
+    private GBCEAllShareIndex gbceAllShareIndex = new GBCEAllShareIndex();
+    private GBCEAllShareIndex compatibleGBCEAllShareIndex = new GBCEAllShareIndex(GBCEAllShareIndex.Mode.COMPATIBLE);
 
     /**
      * Creates test Trades for various stocks with different simulated
@@ -33,21 +71,25 @@ public class SuperSimpleStocksTests {
     @Before
     public void setUp() throws Exception {
 
+        stockTradeHistory.addStockTradeListener(volumeWeightedStockPriceAggregator);
+        stockTradeHistory.addStockTradeListener(gbceAllShareIndex);
+        stockTradeHistory.addStockTradeListener(compatibleGBCEAllShareIndex);
+
         LocalDateTime tenMinsAgo = LocalDateTime.now().minusMinutes(10L);
         LocalDateTime twentyMinsAgo = LocalDateTime.now().minusMinutes((20L));
 
         //simulate some trades from 10 minutes ago
-        StockTrade buyAleTenMinsAgo = new StockTrade(TransactionType.BUY, StockSymbolEnum.ALE, tenMinsAgo, new BigDecimal(6), new BigDecimal(120));
-        StockTrade sellAleTenMinsAgo = new StockTrade(TransactionType.SELL, StockSymbolEnum.ALE, tenMinsAgo, new BigDecimal(4), new BigDecimal(140));
-        StockTrade sellTeaTenMinsAgo = new StockTrade(TransactionType.SELL, StockSymbolEnum.TEA, tenMinsAgo, new BigDecimal(20), new BigDecimal(30));
+        StockTrade buyAleTenMinsAgo = new StockTrade(TransactionType.BUY, StockSymbol.ALE, tenMinsAgo, new BigDecimal(6), new BigDecimal(120));
+        StockTrade sellAleTenMinsAgo = new StockTrade(TransactionType.SELL, StockSymbol.ALE, tenMinsAgo, new BigDecimal(4), new BigDecimal(140));
+        StockTrade sellTeaTenMinsAgo = new StockTrade(TransactionType.SELL, StockSymbol.TEA, tenMinsAgo, new BigDecimal(20), new BigDecimal(30));
         stockTradeHistory.addTrade(buyAleTenMinsAgo);
         stockTradeHistory.addTrade(sellAleTenMinsAgo);
         stockTradeHistory.addTrade(sellTeaTenMinsAgo);
 
         //simulate some trades from 20 minutes ago
-        StockTrade buyAleTwentyMinsAgo = new StockTrade(TransactionType.BUY, StockSymbolEnum.ALE, twentyMinsAgo, new BigDecimal(10), new BigDecimal(120));
-        StockTrade buyPopTwentyMinsAgo = new StockTrade(TransactionType.BUY, StockSymbolEnum.POP, twentyMinsAgo, new BigDecimal(15), new BigDecimal(10));
-        StockTrade sellGinTwentyMinsAgo = new StockTrade(TransactionType.SELL, StockSymbolEnum.GIN, twentyMinsAgo, new BigDecimal(17), new BigDecimal(230));
+        StockTrade buyAleTwentyMinsAgo = new StockTrade(TransactionType.BUY, StockSymbol.ALE, twentyMinsAgo, new BigDecimal(10), new BigDecimal(120));
+        StockTrade buyPopTwentyMinsAgo = new StockTrade(TransactionType.BUY, StockSymbol.POP, twentyMinsAgo, new BigDecimal(15), new BigDecimal(10));
+        StockTrade sellGinTwentyMinsAgo = new StockTrade(TransactionType.SELL, StockSymbol.GIN, twentyMinsAgo, new BigDecimal(17), new BigDecimal(230));
 
         stockTradeHistory.addTrade(buyAleTwentyMinsAgo);
         stockTradeHistory.addTrade(buyPopTwentyMinsAgo);
@@ -73,7 +115,7 @@ public class SuperSimpleStocksTests {
     public void calculateDividendYieldForCommonTestSuccess() throws Exception {
 
         //POP COMMON type, last dividend = 8
-        StockData stockData = StockData.getStockDataForSymbol(StockSymbolEnum.POP);
+        StockData stockData = StockData.getStockDataForSymbol(StockSymbol.POP);
 
         int marketPrice = 4;
 
@@ -93,7 +135,7 @@ public class SuperSimpleStocksTests {
     public void calculateDividendYieldForPreferredTestSuccess() throws Exception {
 
         //GIN PREFERRED type, fixed dividend = 2%, par value = 100
-        StockData stockData = StockData.getStockDataForSymbol(StockSymbolEnum.GIN);
+        StockData stockData = StockData.getStockDataForSymbol(StockSymbol.GIN);
 
         int marketPrice = 4;
 
@@ -114,7 +156,7 @@ public class SuperSimpleStocksTests {
     public void calculatePriceEarningsRatioTestSuccess() throws Exception {
 
         //ALE last dividend = 23
-        StockData stockData = StockData.getStockDataForSymbol(StockSymbolEnum.ALE);
+        StockData stockData = StockData.getStockDataForSymbol(StockSymbol.ALE);
 
         int marketPrice = 46;
 
@@ -133,7 +175,7 @@ public class SuperSimpleStocksTests {
     @Test
     public void calculateVolumeWeightedStockPriceTestSuccess() throws Exception {
 
-        List<StockTrade> aleTradeHistory = stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbolEnum.ALE);
+        List<StockTrade> aleTradeHistory = stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.ALE);
 
         //ALE has 3 trades, 2 at 10 minutes ago and 1 at twenty minutes ago
         //The cut off time is set to 15 minutes ago, so only the first 2 trades should be taken into account
@@ -160,7 +202,7 @@ public class SuperSimpleStocksTests {
         //in the calculation as it is only considering trades in the last 15 minutes,
         // so should return 0
 
-        List<StockTrade> popTradeHistory = stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbolEnum.POP);
+        List<StockTrade> popTradeHistory = stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.POP);
 
         //Ensure the List is not empty
         assertTrue(!popTradeHistory.isEmpty());
@@ -184,7 +226,7 @@ public class SuperSimpleStocksTests {
         //JOE has had no trades, so should result in an empty List being entered
         //for the calculation, which should result in 0 being returned
 
-        List<StockTrade> joeTradeHistory = stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbolEnum.JOE);
+        List<StockTrade> joeTradeHistory = stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.JOE);
 
         //Ensure the List is empty
         assertTrue(joeTradeHistory.isEmpty());
@@ -215,88 +257,2049 @@ public class SuperSimpleStocksTests {
 
     }
 
-    /*
-     * -------------------------------------------------------------------------------------------------------------------------------
-     * FAILURE TESTS
-     * -------------------------------------------------------------------------------------------------------------------------------
+    /**
+     * Tests that the rolling Volume Weighted Stock Price gives
+     * the same results as the calculation over the trade history
+     *
+     * @throws Exception if there is an Exception
      */
+    @Test
+    public void volumeWeightedStockPriceAggregatorTestSuccess() throws Exception {
+
+        //Same trades as calculateVolumeWeightedStockPriceTestSuccess,
+        //so ((120 * 6) + (140 * 4))/(6 + 4) = 128
+        assertEquals(new BigDecimal("128.00"), volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.ALE));
+
+        //POP only has a trade from 20 minutes ago, and JOE has no trades
+        assertEquals(BigDecimal.ZERO, volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.POP));
+        assertEquals(BigDecimal.ZERO, volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.JOE));
+    }
 
     /**
-     * Tests that the Dividend Yield for a COMMON type stock
-     * calculation will handle a divide by 0 exception
+     * Tests that trades are removed from the rolling Volume Weighted Stock Price
+     * as they age out of the window
      *
      * @throws Exception if there is an Exception
      */
     @Test
-    public void calculateDividendYieldForCommonTestFail() throws Exception {
+    public void volumeWeightedStockPriceAggregatorExpiresTradesTestSuccess() throws Exception {
 
-        //POP COMMON type, last dividend = 8
-        StockData stockData = StockData.getStockDataForSymbol(StockSymbolEnum.POP);
+        //A new ALE trade now
+        stockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.ALE, LocalDateTime.now(), new BigDecimal(10), new BigDecimal(100)));
 
-        int marketPrice = 0;
+        //((120 * 6) + (140 * 4) + (100 * 10))/(6 + 4 + 10) = 2280/20 = 114
+        assertEquals(new BigDecimal("114.00"), volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.ALE));
 
-        //Last Dividend / Market Price = 8/0 = Exception
-        String expectedException = ("Price cannot be 0 for the Dividend Yield Calculation");
+        //In 10 minutes time the trades from 10 minutes ago will be 20 minutes old, leaving only the new trade
+        LocalDateTime tenMinsLater = LocalDateTime.now().plusMinutes(10L);
 
-        try{
-            BigDecimal result = CalculationUtility.calculateDividendYield(stockData, marketPrice);
+        assertEquals(new BigDecimal("100.00"), volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.ALE, tenMinsLater));
+    }
+
+    /**
+     * Tests that the rolling Volume Weighted Stock Price gives the same results as the calculation
+     * over the trade history when chunks of trades arrive interleaved, as from a parallel import,
+     * and that a trade arriving after its window has passed is dropped
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void volumeWeightedStockPriceAggregatorInterleavedChunksTestSuccess() throws Exception {
+
+        long start = FixedPointUtility.toEpochNanos(LocalDateTime.of(2017, 6, 5, 9, 0));
+        long minute = TimeUnit.MINUTES.toNanos(1);
+
+        VolumeWeightedStockPriceAggregator aggregator = new VolumeWeightedStockPriceAggregator(15);
+        StockTradeHistory orderedStockTradeHistory = new StockTradeHistory();
+
+        //4 chunks of an hour of trades a minute apart, each delivered 10 trades at a time, taking a batch from each chunk in turn
+        int numberOfChunks = 4;
+        int tradesPerChunk = 60;
+        int tradesPerBatch = 10;
+
+        for(int batchStart = 0; batchStart < tradesPerChunk; batchStart += tradesPerBatch){
+
+            for(int chunk = numberOfChunks - 1; chunk >= 0; chunk--){
+
+                StockTradeBatch stockTradeBatch = new StockTradeBatch();
+
+                for(int i = batchStart; i < batchStart + tradesPerBatch; i++){
+
+                    int tradeMinute = chunk * tradesPerChunk + i;
+                    stockTradeBatch.add(StockSymbol.TEA, TransactionType.BUY, start + tradeMinute * minute, 100 + (tradeMinute % 5) * 100, 100 + tradeMinute % 37);
+                }
+
+                aggregator.tradesAdded(stockTradeBatch);
+                orderedStockTradeHistory.addTrades(stockTradeBatch);
+            }
         }
-        catch(SuperSimpleStocksException e){
-            assertEquals(expectedException, e.getMessage());
+
+        long latest = start + (numberOfChunks * tradesPerChunk - 1) * minute;
+        long windowNanos = TimeUnit.MINUTES.toNanos(15);
+
+        //A trade inside the window of the latest trade still counts, one at its start is dropped as it has already expired
+        aggregator.tradeAdded(StockSymbol.TEA, TransactionType.SELL, latest - windowNanos + 1, 500, 200);
+        orderedStockTradeHistory.addTrade(new StockTrade(TransactionType.SELL, StockSymbol.TEA, latest - windowNanos + 1, 500, 200));
+        aggregator.tradeAdded(StockSymbol.TEA, TransactionType.SELL, latest - windowNanos, 500, 1_000);
+
+        BigDecimal expectedResult = orderedStockTradeHistory.getVolumeWeightedStockPrice(StockSymbol.TEA, latest - windowNanos + 1, latest + 1);
+        CalculationResult result = new CalculationResult();
+
+        aggregator.getVolumeWeightedStockPrice(StockSymbol.TEA, latest, result);
+
+        assertEquals(expectedResult, aggregator.getVolumeWeightedStockPrice(StockSymbol.TEA, latest));
+        assertEquals(expectedResult, result.toBigDecimal());
+
+        //The trades from the last 14 minutes and the one at the start of the window
+        assertEquals(16, result.getNumberOfTrades());
+    }
+
+    /**
+     * Tests that the streaming GBCE All Shares Index gives the same
+     * result as the calculation over all trades, in both modes
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void gbceAllShareIndexTestSuccess() throws Exception {
+
+        //Same trades as calculateGBCETestSuccess, so 71.98 to 2 dp
+        BigDecimal expectedResult = new BigDecimal("71.98");
+
+        assertEquals(expectedResult, gbceAllShareIndex.getGBCE());
+        assertEquals(expectedResult, compatibleGBCEAllShareIndex.getGBCE());
+    }
+
+    /**
+     * Tests that the streaming GBCE All Shares Index can still be calculated
+     * once all trade prices multiplied is too large to be held as a double
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void gbceAllShareIndexProductTooLargeTestSuccess() throws Exception {
+
+        GBCEAllShareIndex logarithmicIndex = new GBCEAllShareIndex();
+        GBCEAllShareIndex compatibleIndex = new GBCEAllShareIndex(GBCEAllShareIndex.Mode.COMPATIBLE);
+
+        List<StockTrade> stockTradeList = new ArrayList<>();
+
+        //200 trades at 1000 pence multiplied together is 10^600, far beyond the range of a double
+        for(int i = 0; i < 200; i++){
+            logarithmicIndex.tradeAdded(StockSymbol.JOE, TransactionType.BUY, FixedPointUtility.currentEpochNanos(), 100, 1000);
+            compatibleIndex.tradeAdded(StockSymbol.JOE, TransactionType.BUY, FixedPointUtility.currentEpochNanos(), 100, 1000);
+            stockTradeList.add(new StockTrade(TransactionType.BUY, StockSymbol.JOE, FixedPointUtility.currentEpochNanos(), 100, 1000));
         }
 
+        //200th root of 1000^200 = 1000
+        BigDecimal expectedResult = new BigDecimal("1000.00");
+
+        assertEquals(expectedResult, logarithmicIndex.getGBCE());
+        assertEquals(expectedResult, compatibleIndex.getGBCE());
+        assertEquals(expectedResult, CalculationUtility.calculateGBCE(stockTradeList));
     }
 
     /**
-     * Tests that the Dividend Yield for a PREFERRED type stock
-     * calculation will handle a divide by 0 exception
+     * Tests that the GBCE All Shares Index is calculated as expected
+     * once all trade prices multiplied is too large to be held as a long
      *
      * @throws Exception if there is an Exception
      */
     @Test
-    public void calculateDividendYieldForPreferredTestFail() throws Exception {
+    public void calculateGBCEProductLargerThanLongTestSuccess() throws Exception {
 
-        //GIN PREFERRED type, fixed dividend = 2%, par value = 100
-        StockData stockData = StockData.getStockDataForSymbol(StockSymbolEnum.GIN);
+        List<StockTrade> stockTradeList = new ArrayList<>();
 
-        int marketPrice = 0;
+        //10 trades at 1000 pence multiplied together is 10^30, larger than a long can hold
+        for(int i = 0; i < 10; i++){
+            stockTradeList.add(new StockTrade(TransactionType.BUY, StockSymbol.JOE, LocalDateTime.now(), new BigDecimal(1), new BigDecimal(1000)));
+        }
 
-        //(Fixed dividend * par value) / Market Price = (0.02 * 100)/0 = Exception
-        String expectedException = ("Price cannot be 0 for the Dividend Yield Calculation");
+        assertEquals(new BigDecimal("1000.00"), CalculationUtility.calculateGBCE(stockTradeList));
+    }
 
-        try{
-            BigDecimal result = CalculationUtility.calculateDividendYield(stockData, marketPrice);
+    /**
+     * Tests that the GBCE All Shares Index is calculated as expected
+     * once all trade prices multiplied is too large to be held as a double
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void calculateGBCEProductLargerThanDoubleTestSuccess() throws Exception {
+
+        List<StockTrade> stockTradeList = new ArrayList<>();
+
+        //150 trades at 2000 pence and 150 at 500 pence multiplied together is 10^900, larger than a double can hold
+        for(int i = 0; i < 150; i++){
+            stockTradeList.add(new StockTrade(TransactionType.BUY, StockSymbol.JOE, LocalDateTime.now(), new BigDecimal(1), new BigDecimal(2000)));
+            stockTradeList.add(new StockTrade(TransactionType.BUY, StockSymbol.GIN, LocalDateTime.now(), new BigDecimal(1), new BigDecimal(500)));
         }
-        catch(SuperSimpleStocksException e){
-            assertEquals(expectedException, e.getMessage());
+
+        //300th root of 10^900 = 1000
+        assertEquals(new BigDecimal("1000.00"), CalculationUtility.calculateGBCE(stockTradeList));
+    }
+
+    /**
+     * Tests that fixed point division gives the same result
+     * as BigDecimal division to 2 decimal places rounded half up
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void fixedPointDivideHalfUpTestSuccess() throws Exception {
+
+        long[][] dividendsAndDivisors = {{1280, 10}, {2, 3}, {1, 8}, {-1, 8}, {5, -8}, {2280, 20}, {Long.MAX_VALUE, 7}};
+
+        for(long[] dividendAndDivisor : dividendsAndDivisors){
+
+            BigDecimal expectedResult = BigDecimal.valueOf(dividendAndDivisor[0])
+                    .divide(BigDecimal.valueOf(dividendAndDivisor[1]), 2, RoundingMode.HALF_UP);
+
+            assertEquals(expectedResult, FixedPointUtility.divideHalfUp(dividendAndDivisor[0], dividendAndDivisor[1]));
         }
     }
 
     /**
-     * Test that the Price Earnings ratio for a Stock
-     * calculation will handle a divide by 0 exception
+     * Tests that the calculations over an off heap trade history
+     * give the same results as over the in memory trade history
      *
      * @throws Exception if there is an Exception
      */
     @Test
-    public void calculatePriceEarningsRatioTestFail() throws Exception {
+    public void offHeapStockTradeHistoryTestSuccess() throws Exception {
 
-        //TEA last dividend = 0
-        StockData stockData = StockData.getStockDataForSymbol(StockSymbolEnum.TEA);
+        OffHeapStockTradeHistory offHeapStockTradeHistory = new OffHeapStockTradeHistory();
 
-        int marketPrice = 46;
+        for(StockTrade stockTrade : stockTradeHistory.getStockTradeHistoryListForAllStocks()){
+            offHeapStockTradeHistory.addTrade(stockTrade);
+        }
 
-        //market Price / Dividend = 46/0 = Exception
-        String expectedException = ("Cannot calculate PE Ratio as last Dividend for TEA is zero and would result in a divide by zero Arithmetic Exception");
+        assertEquals(6, offHeapStockTradeHistory.getNumberOfTrades());
+        assertEquals(3, offHeapStockTradeHistory.getNumberOfTrades(StockSymbol.ALE));
+
+        //Same results as calculateVolumeWeightedStockPriceTestSuccess and calculateGBCETestSuccess
+        assertEquals(new BigDecimal("128.00"), CalculationUtility.calculateVolumeWeightedStockPrice(offHeapStockTradeHistory.getStockTradeCursorForSymbol(StockSymbol.ALE), 15));
+        assertEquals(BigDecimal.ZERO, CalculationUtility.calculateVolumeWeightedStockPrice(offHeapStockTradeHistory.getStockTradeCursorForSymbol(StockSymbol.JOE), 15));
+        assertEquals(new BigDecimal("71.98"), CalculationUtility.calculateGBCE(offHeapStockTradeHistory.getStockTradeCursorForAllStocks()));
+
+        //Either history can be read through a cursor
+        assertEquals(new BigDecimal("71.98"), CalculationUtility.calculateGBCE(stockTradeHistory.getStockTradeCursorForAllStocks()));
+        assertEquals(new BigDecimal("128.00"), CalculationUtility.calculateVolumeWeightedStockPrice(stockTradeHistory.getStockTradeCursorForSymbol(StockSymbol.ALE), 15));
+
+        //Cursor only visits trades for its Stock
+        StockTradeCursor stockTradeCursor = offHeapStockTradeHistory.getStockTradeCursorForSymbol(StockSymbol.GIN);
+
+        assertTrue(stockTradeCursor.next());
+        assertEquals(StockSymbol.GIN, stockTradeCursor.getSymbol());
+        assertEquals(TransactionType.SELL, stockTradeCursor.getTransactionType());
+        assertEquals(1700L, stockTradeCursor.getQuantityInHundredths());
+        assertEquals(230L, stockTradeCursor.getTradePriceInPence());
+        assertTrue(!stockTradeCursor.next());
+
+        //Used as a StockTradeHistory, with listeners told about each trade
+        StockTradeHistory offHeapTradeHistory = new OffHeapStockTradeHistory();
+        VolumeWeightedStockPriceAggregator offHeapVolumeWeightedStockPriceAggregator = new VolumeWeightedStockPriceAggregator(15);
+        offHeapTradeHistory.addStockTradeListener(offHeapVolumeWeightedStockPriceAggregator);
+
+        long now = FixedPointUtility.currentEpochNanos();
+        long fiveMinsAgo = now - TimeUnit.MINUTES.toNanos(5);
+        long tenMinsAgo = now - TimeUnit.MINUTES.toNanos(10);
+
+        //Added out of time order, but read back in time order
+        offHeapTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.TEA, now, 100, 100));
+        offHeapTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.TEA, tenMinsAgo, 100, 300));
+        offHeapTradeHistory.addTrade(new StockTrade(TransactionType.SELL, StockSymbol.TEA, fiveMinsAgo, 200, 200));
+
+        assertEquals(now, offHeapTradeHistory.getLatestTimeStamp(StockSymbol.TEA));
+        assertEquals(Long.MIN_VALUE, offHeapTradeHistory.getLatestTimeStamp(StockSymbol.GIN));
+
+        StockTradeCursor teaTrades = offHeapTradeHistory.getStockTradeCursorForSymbol(StockSymbol.TEA);
+
+        assertTrue(teaTrades.next());
+        assertEquals(tenMinsAgo, teaTrades.getTimeStampEpochNanos());
+        assertTrue(teaTrades.next());
+        assertEquals(fiveMinsAgo, teaTrades.getTimeStampEpochNanos());
+        assertTrue(teaTrades.next());
+        assertEquals(now, teaTrades.getTimeStampEpochNanos());
+        assertTrue(!teaTrades.next());
+
+        //The List is a copy, so still the same trades in the same order
+        assertEquals(3, offHeapTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.TEA).size());
+        assertEquals(tenMinsAgo, offHeapTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.TEA).get(0).getTimeStampEpochNanos());
+
+        //Only the trade from 5 minutes ago is before now, and including now gives ((200 * 2) + (100 * 1))/(2 + 1) = 166.67
+        StockTradeCursor teaTradesBeforeNow = offHeapTradeHistory.getStockTradeCursorForSymbol(StockSymbol.TEA, fiveMinsAgo, now);
+
+        assertTrue(teaTradesBeforeNow.next());
+        assertEquals(fiveMinsAgo, teaTradesBeforeNow.getTimeStampEpochNanos());
+        assertTrue(!teaTradesBeforeNow.next());
+        assertEquals(new BigDecimal("200.00"), offHeapTradeHistory.getVolumeWeightedStockPrice(StockSymbol.TEA, fiveMinsAgo, now));
+        assertEquals(new BigDecimal("166.67"), offHeapTradeHistory.getVolumeWeightedStockPrice(StockSymbol.TEA, fiveMinsAgo, now + 1));
+
+        //((300 * 1) + (200 * 2) + (100 * 1))/(1 + 2 + 1) = 200, and cube root of 300 * 200 * 100 = 181.71
+        assertEquals(new BigDecimal("200.00"), offHeapVolumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.TEA, now));
+        assertEquals(new BigDecimal("181.71"), offHeapTradeHistory.getGBCE());
+        assertEquals(3, offHeapTradeHistory.getNumberOfTradesHeld());
+    }
 
-        try{
-            BigDecimal result = CalculationUtility.calculatePriceEarningsRatio(stockData, marketPrice);
+    /**
+     * Tests that trades written to a journal are recovered into a new
+     * trade history, along with the Volume Weighted Stock Price and GBCE
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeJournalRecoveryTestSuccess() throws Exception {
+
+        Path journalFile = temporaryFolder.getRoot().toPath().resolve("trades.journal");
+
+        //Record the trades from setUp in a journal, then close it as if the application stopped
+        try(StockTradeJournal stockTradeJournal = new StockTradeJournal(journalFile)){
+
+            StockTradeHistory journalledStockTradeHistory = new StockTradeHistory();
+            journalledStockTradeHistory.attachJournal(stockTradeJournal);
+
+            for(StockTrade stockTrade : stockTradeHistory.getStockTradeHistoryListForAllStocks()){
+                journalledStockTradeHistory.addTrade(stockTrade);
+            }
         }
-        catch(SuperSimpleStocksException e){
-            assertEquals(expectedException, e.getMessage());
+
+        //Recover the trades into a new history as if the application restarted
+        StockTradeHistory recoveredStockTradeHistory = new StockTradeHistory();
+        VolumeWeightedStockPriceAggregator recoveredVolumeWeightedStockPriceAggregator = new VolumeWeightedStockPriceAggregator(15);
+        GBCEAllShareIndex recoveredGBCEAllShareIndex = new GBCEAllShareIndex();
+        recoveredStockTradeHistory.addStockTradeListener(recoveredVolumeWeightedStockPriceAggregator);
+        recoveredStockTradeHistory.addStockTradeListener(recoveredGBCEAllShareIndex);
+
+        try(StockTradeJournal stockTradeJournal = new StockTradeJournal(journalFile)){
+
+            assertEquals(6, recoveredStockTradeHistory.attachJournal(stockTradeJournal));
+
+            //Same results as before the restart
+            assertEquals(3, recoveredStockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.ALE).size());
+            assertEquals(new BigDecimal("128.00"), recoveredVolumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.ALE));
+            assertEquals(new BigDecimal("71.98"), recoveredGBCEAllShareIndex.getGBCE());
+
+            //New trades are added to the end of the journal
+            recoveredStockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.JOE, LocalDateTime.now(), new BigDecimal(1), new BigDecimal(100)));
+
+            //But not trades the history refuses, here as Quantity * Trade Price would overflow
+            try{
+                recoveredStockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.JOE, FixedPointUtility.currentEpochNanos(), Long.MAX_VALUE, 2));
+                assertTrue("Trade should not be added", false);
+            }
+            catch(ArithmeticException e){
+                assertEquals("long overflow", e.getMessage());
+            }
+        }
+
+        try(StockTradeJournal stockTradeJournal = new StockTradeJournal(journalFile)){
+            assertEquals(7, stockTradeJournal.getNumberOfTrades());
+        }
+    }
+
+    /**
+     * Tests that a journal written by a process that listed its Stocks in another order
+     * is replayed by symbol rather than by id, and that trades added after replaying it
+     * are recovered by symbol too
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeJournalSymbolDefinitionsTestSuccess() throws Exception {
+
+        Path journalFile = temporaryFolder.getRoot().toPath().resolve("trades.journal");
+        long now = FixedPointUtility.currentEpochNanos();
+
+        try(StockTradeJournal stockTradeJournal = new StockTradeJournal(journalFile)){
+            stockTradeJournal.append(StockSymbol.GIN, TransactionType.BUY, now, 1000, 200);
+            stockTradeJournal.append(StockSymbol.ALE, TransactionType.SELL, now, 1000, 100);
+            stockTradeJournal.append(StockSymbol.GIN, TransactionType.BUY, now, 1000, 300);
+
+            //Each Stock is defined once, before its first trade
+            assertEquals(5, stockTradeJournal.getNumberOfRecords());
+            assertEquals(3, stockTradeJournal.getNumberOfTrades());
+        }
+
+        //Rewrite GIN's id as TEA's, as if written by a process that listed GIN first
+        try(FileChannel fileChannel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+
+            ByteBuffer records = ByteBuffer.allocate(5 * StockTradeJournal.RECORD_SIZE).order(StockTradeJournal.BYTE_ORDER);
+            fileChannel.read(records, StockTradeJournal.HEADER_SIZE);
+
+            for(int offset = 0; offset < records.capacity(); offset += StockTradeJournal.RECORD_SIZE){
+                if(StockTradeJournal.getSymbolId(records, offset) == StockSymbol.GIN.getId()){
+                    StockTradeJournal.putSymbolId(records, offset, StockSymbol.TEA.getId());
+                }
+            }
+            records.flip();
+            fileChannel.write(records, StockTradeJournal.HEADER_SIZE);
+        }
+
+        try(StockTradeJournal stockTradeJournal = new StockTradeJournal(journalFile)){
+
+            StockTradeHistory recoveredStockTradeHistory = new StockTradeHistory();
+            assertEquals(3, recoveredStockTradeHistory.attachJournal(stockTradeJournal));
+
+            assertEquals(2, recoveredStockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.GIN).size());
+            assertEquals(1, recoveredStockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.ALE).size());
+            assertEquals(0, recoveredStockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.TEA).size());
+
+            //TEA's id means GIN in the journal so far, so is defined again before TEA's trade, as is GIN's id which has no definition yet.
+            //ALE's id already means ALE, so is not
+            recoveredStockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.TEA, now, 1000, 50));
+            recoveredStockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.GIN, now, 1000, 400));
+            recoveredStockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.ALE, now, 1000, 150));
+
+            assertEquals(10, stockTradeJournal.getNumberOfRecords());
+            assertEquals(6, stockTradeJournal.getNumberOfTrades());
+        }
+
+        try(StockTradeJournal stockTradeJournal = new StockTradeJournal(journalFile)){
+
+            StockTradeHistory recoveredStockTradeHistory = new StockTradeHistory();
+            assertEquals(6, recoveredStockTradeHistory.attachJournal(stockTradeJournal));
+
+            assertEquals(3, recoveredStockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.GIN).size());
+            assertEquals(2, recoveredStockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.ALE).size());
+            assertEquals(1, recoveredStockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.TEA).size());
+            assertEquals(50L, recoveredStockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.TEA).get(0).getTradePriceInPence());
+        }
+    }
+
+
+    /**
+     * Tests that replaying a journal with a corrupted transaction type
+     * fails with an IllegalArgumentException rather than reading past the transaction types
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeJournalCorruptRecordTestFail() throws Exception {
+
+        Path journalFile = temporaryFolder.getRoot().toPath().resolve("corrupt.journal");
+        long now = FixedPointUtility.currentEpochNanos();
+
+        try(StockTradeJournal stockTradeJournal = new StockTradeJournal(journalFile)){
+            stockTradeJournal.append(StockSymbol.GIN, TransactionType.BUY, now, 1000, 200);
+            stockTradeJournal.append(StockSymbol.GIN, TransactionType.SELL, now, 1000, 300);
+        }
+
+        //Record 0 defines GIN, so record 2 is the second trade
+        try(FileChannel fileChannel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            fileChannel.write(ByteBuffer.wrap(new byte[]{7}), StockTradeJournal.HEADER_SIZE + 2 * StockTradeJournal.RECORD_SIZE + StockTradeJournal.TRANSACTION_TYPE_OFFSET);
+        }
+
+        try(StockTradeJournal stockTradeJournal = new StockTradeJournal(journalFile)){
+
+            List<Long> replayedPrices = new ArrayList<>();
+
+            try {
+                stockTradeJournal.replay((symbol, transactionType, timeStampEpochNanos, quantityInHundredths, tradePriceInPence) -> replayedPrices.add(tradePriceInPence));
+                assertTrue("Corrupted record should not be replayed", false);
+            } catch (IllegalArgumentException e){
+                assertEquals("Trade journal record 2 has an invalid transaction type 7", e.getMessage());
+            }
+
+            //Trades before the corrupted record are still read
+            assertEquals(1, replayedPrices.size());
+            assertEquals(Long.valueOf(200L), replayedPrices.get(0));
+        }
+    }
+    /**
+     * Tests that trades can be added from several threads at once
+     * while other threads read snapshots of the trade history
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeHistoryConcurrentTradesTestSuccess() throws Exception {
+
+        int numberOfThreads = 4;
+        int tradesPerThread = 20000;
+
+        //Journaled as well, with frequent checkpoints, so threads append to the journal at the same time too
+        Path journalFile = temporaryFolder.getRoot().toPath().resolve("trades.journal");
+        StockTradeJournal stockTradeJournal = new StockTradeJournal(journalFile, 1000);
+        stockTradeHistory.attachJournal(stockTradeJournal);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads + 1);
+        AtomicBoolean adding = new AtomicBoolean(true);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+
+            //Each thread adds trades for every Stock at 100 pence, quantity 1
+            for(int thread = 0; thread < numberOfThreads; thread++){
+                futures.add(executorService.submit(() -> {
+                    for(int i = 0; i < tradesPerThread; i++){
+                        StockSymbol symbol = StockData.values()[i % StockData.values().length].getSymbol();
+                        stockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, symbol, FixedPointUtility.currentEpochNanos(), 100, 100));
+                    }
+                }));
+            }
+
+            //Meanwhile keep reading snapshots, which must never change size or be out of time order
+            Future<?> reader = executorService.submit(() -> {
+                while(adding.get()){
+                    List<StockTrade> joeTradeHistory = stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.JOE);
+                    int size = joeTradeHistory.size();
+
+                    for(int i = 1; i < joeTradeHistory.size(); i++){
+                        assertTrue(joeTradeHistory.get(i - 1).getTimeStampEpochNanos() <= joeTradeHistory.get(i).getTimeStampEpochNanos());
+                    }
+                    assertEquals(size, joeTradeHistory.size());
+                }
+            });
+
+            for(Future<?> future : futures){
+                future.get();
+            }
+            adding.set(false);
+            reader.get();
+
+        } finally {
+            executorService.shutdown();
+            stockTradeJournal.close();
+        }
+
+        //6 trades from setUp, plus all trades added by the threads
+        assertEquals(6 + numberOfThreads * tradesPerThread, stockTradeHistory.getStockTradeHistoryListForAllStocks().size());
+        assertEquals(numberOfThreads * tradesPerThread / 5, stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.JOE).size());
+        assertEquals(6 + numberOfThreads * tradesPerThread, gbceAllShareIndex.getNumberOfTrades());
+        assertEquals(stockTradeHistory.getGBCE(), gbceAllShareIndex.getGBCE());
+
+        //JOE only has the new trades, all at 100 pence
+        assertEquals(new BigDecimal("100.00"), volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.JOE));
+
+        //Every trade added by the threads was journaled, none lost or overwritten
+        StockTradeHistory recoveredStockTradeHistory = new StockTradeHistory();
+
+        try(StockTradeJournal recoveredStockTradeJournal = new StockTradeJournal(journalFile)){
+            assertEquals(numberOfThreads * tradesPerThread, recoveredStockTradeHistory.attachJournal(recoveredStockTradeJournal));
+        }
+        assertEquals(numberOfThreads * tradesPerThread / 5, recoveredStockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.JOE).size());
+    }
+
+    /**
+     * Tests that adding a batch of trades, out of order and for several Stocks,
+     * gives the same history and results as adding them one at a time
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeHistoryAddTradesTestSuccess() throws Exception {
+
+        long now = FixedPointUtility.currentEpochNanos();
+        long oneMinute = 60_000_000_000L;
+
+        StockTradeBatch stockTradeBatch = new StockTradeBatch();
+        stockTradeBatch.add(StockSymbol.ALE, TransactionType.BUY, now - oneMinute, 1000, 100);
+        stockTradeBatch.add(StockSymbol.JOE, TransactionType.SELL, now, 500, 250);
+        stockTradeBatch.add(StockSymbol.ALE, TransactionType.SELL, now - 12 * oneMinute, 1000, 160);
+        stockTradeBatch.add(StockSymbol.JOE, TransactionType.BUY, now - 2 * oneMinute, 1500, 210);
+
+        stockTradeHistory.addTrades(stockTradeBatch);
+
+        //ALE trades from the batch are merged in time order with those from setUp
+        List<StockTrade> aleTradeHistory = stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.ALE);
+
+        assertEquals(5, aleTradeHistory.size());
+
+        for(int i = 1; i < aleTradeHistory.size(); i++){
+            assertTrue(aleTradeHistory.get(i - 1).getTimeStampEpochNanos() <= aleTradeHistory.get(i).getTimeStampEpochNanos());
+        }
+        assertEquals(160L, aleTradeHistory.get(1).getTradePriceInPence());
+        assertEquals(100L, aleTradeHistory.get(4).getTradePriceInPence());
+
+        //((120 * 6) + (140 * 4) + (160 * 10) + (100 * 10))/(6 + 4 + 10 + 10) = 3880/30 = 129.33
+        assertEquals(new BigDecimal("129.33"), volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.ALE));
+
+        //((210 * 15) + (250 * 5))/(15 + 5) = 4400/20 = 220
+        assertEquals(new BigDecimal("220.00"), volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.JOE));
+
+        //The GBCE matches the calculation over every trade
+        BigDecimal expectedGBCE = CalculationUtility.calculateGBCE(stockTradeHistory.getStockTradeHistoryListForAllStocks());
+
+        assertEquals(10, gbceAllShareIndex.getNumberOfTrades());
+        assertEquals(expectedGBCE, gbceAllShareIndex.getGBCE());
+        assertEquals(expectedGBCE, compatibleGBCEAllShareIndex.getGBCE());
+    }
+
+    /**
+     * Tests that adding many small batches that each have to be merged into the trades already held
+     * only grows the partition as needed, rather than doubling it for every batch
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeHistoryAddTradesOutOfOrderTestSuccess() throws Exception {
+
+        StockTradeHistory mergedStockTradeHistory = new StockTradeHistory();
+        long now = FixedPointUtility.currentEpochNanos();
+
+        //Each batch is a single trade earlier than every trade held, so has to be merged in
+        for(int i = 0; i < 1000; i++){
+            StockTradeBatch stockTradeBatch = new StockTradeBatch(1);
+            stockTradeBatch.add(StockSymbol.JOE, TransactionType.BUY, now - i, 100, 100 + i);
+            mergedStockTradeHistory.addTrades(stockTradeBatch);
+        }
+
+        List<StockTrade> joeTradeHistory = mergedStockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.JOE);
+
+        assertEquals(1000, joeTradeHistory.size());
+        assertEquals(now - 999, joeTradeHistory.get(0).getTimeStampEpochNanos());
+        assertEquals(now, joeTradeHistory.get(999).getTimeStampEpochNanos());
+
+        //Sum of 100 to 1099 / 1000 = 599.5
+        assertEquals(new BigDecimal("599.50"), mergedStockTradeHistory.getVolumeWeightedStockPrice(StockSymbol.JOE, now - 999, now + 1));
+    }
+
+    /**
+     * Tests that a CSV file and a binary file of the same trades, split into
+     * many chunks parsed on several threads, both import every trade
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeFileImporterTestSuccess() throws Exception {
+
+        int numberOfTrades = 5000;
+        long startTime = FixedPointUtility.currentEpochNanos() - TimeUnit.HOURS.toNanos(2);
+
+        Path csvFile = temporaryFolder.getRoot().toPath().resolve("trades.csv");
+        Path binaryFile = temporaryFolder.getRoot().toPath().resolve("trades.bin");
+
+        StringBuilder csv = new StringBuilder("timestamp,symbol,type,quantity,price\n");
+        ByteBuffer binary = ByteBuffer.allocate(numberOfTrades * StockTradeJournal.RECORD_SIZE).order(StockTradeJournal.BYTE_ORDER);
+
+        for(int i = 0; i < numberOfTrades; i++){
+
+            //Trades are not in time order in the file
+            long timeStamp = startTime + TimeUnit.SECONDS.toNanos((i * 7919L) % numberOfTrades);
+            StockSymbol symbol = StockData.values()[i % StockData.values().length].getSymbol();
+            TransactionType transactionType = TransactionType.values()[i % 2];
+            long quantity = 100 + i % 50;
+            long tradePrice = 50 + i % 200;
+
+            csv.append(timeStamp).append(',').append(i % 3 == 0 ? symbol.getSymbol().toLowerCase() : symbol.getSymbol())
+                    .append(',').append(transactionType).append(',').append(quantity / 100).append('.').append(String.format("%02d", quantity % 100))
+                    .append(',').append(tradePrice).append(i % 4 == 0 ? "\r\n" : "\n");
+
+            int offset = i * StockTradeJournal.RECORD_SIZE;
+            binary.putLong(offset + StockTradeJournal.TIMESTAMP_OFFSET, timeStamp);
+            binary.putLong(offset + StockTradeJournal.QUANTITY_OFFSET, quantity);
+            binary.putLong(offset + StockTradeJournal.PRICE_OFFSET, tradePrice);
+            StockTradeJournal.putSymbolId(binary, offset, symbol.getId());
+            binary.put(offset + StockTradeJournal.TRANSACTION_TYPE_OFFSET, (byte) transactionType.ordinal());
+            binary.put(offset + StockTradeJournal.MARKER_OFFSET, StockTradeJournal.MARKER);
+        }
+
+        Files.write(csvFile, csv.toString().getBytes(StandardCharsets.US_ASCII));
+        Files.write(binaryFile, binary.array());
+
+        StockTradeHistory csvStockTradeHistory = new StockTradeHistory();
+        GBCEAllShareIndex csvGBCEAllShareIndex = new GBCEAllShareIndex();
+        csvStockTradeHistory.addStockTradeListener(csvGBCEAllShareIndex);
+
+        StockTradeHistory binaryStockTradeHistory = new StockTradeHistory();
+        GBCEAllShareIndex binaryGBCEAllShareIndex = new GBCEAllShareIndex();
+        binaryStockTradeHistory.addStockTradeListener(binaryGBCEAllShareIndex);
+
+        //Small chunks so the files are split between the threads
+        assertEquals(numberOfTrades, new StockTradeFileImporter(csvStockTradeHistory, 4, 4096).importFile(csvFile));
+        assertEquals(numberOfTrades, new StockTradeFileImporter(binaryStockTradeHistory, 4, 4096).importFile(binaryFile));
+
+        List<StockTrade> csvTrades = csvStockTradeHistory.getStockTradeHistoryListForAllStocks();
+        List<StockTrade> binaryTrades = binaryStockTradeHistory.getStockTradeHistoryListForAllStocks();
+
+        assertEquals(numberOfTrades, csvTrades.size());
+        assertEquals(numberOfTrades, binaryTrades.size());
+
+        for(int i = 0; i < numberOfTrades; i++){
+            assertEquals(binaryTrades.get(i).getTimeStampEpochNanos(), csvTrades.get(i).getTimeStampEpochNanos());
+            assertEquals(binaryTrades.get(i).getSymbol(), csvTrades.get(i).getSymbol());
+        }
+
+        assertEquals(numberOfTrades, csvGBCEAllShareIndex.getNumberOfTrades());
+        assertEquals(binaryGBCEAllShareIndex.getGBCE(), csvGBCEAllShareIndex.getGBCE());
+    }
+
+    /**
+     * Tests that many clients connected to the server at once
+     * can add trades to, and run calculations on, the one trade history
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeServerTestSuccess() throws Exception {
+
+        int numberOfClients = 200;
+        int tradesPerClient = 25;
+
+        try(OperationDispatcher operationDispatcher = new OperationDispatcher(stockTradeHistory, volumeWeightedStockPriceAggregator, gbceAllShareIndex, 64);
+            StockTradeServer stockTradeServer = new StockTradeServer(operationDispatcher, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2)){
+
+            //Connect every client before any trades are sent, so they are all connected at once
+            List<StockTradeClient> stockTradeClients = new ArrayList<>();
+            ExecutorService executorService = Executors.newFixedThreadPool(16);
+
+            try {
+                for(int client = 0; client < numberOfClients; client++){
+                    stockTradeClients.add(new StockTradeClient(InetAddress.getLoopbackAddress().getHostAddress(), stockTradeServer.getLocalPort()));
+                }
+
+                List<Future<?>> futures = new ArrayList<>();
+
+                for(StockTradeClient stockTradeClient : stockTradeClients){
+                    futures.add(executorService.submit(() -> {
+                        for(int i = 0; i < tradesPerClient; i++){
+                            stockTradeClient.addTrade(StockSymbol.JOE, TransactionType.BUY, 100, 100);
+                        }
+                        return null;
+                    }));
+                }
+
+                for(Future<?> future : futures){
+                    future.get();
+                }
+
+                StockTradeClient stockTradeClient = stockTradeClients.get(0);
+
+                assertEquals(numberOfClients * tradesPerClient, stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.JOE).size());
+                assertEquals(new BigDecimal("100.00"), stockTradeClient.getVolumeWeightedStockPrice(StockSymbol.JOE));
+                assertEquals(new BigDecimal("128.00"), stockTradeClient.getVolumeWeightedStockPrice(StockSymbol.ALE));
+                assertEquals(gbceAllShareIndex.getGBCE(), stockTradeClient.getGBCE());
+                assertEquals(new BigDecimal("2.00"), stockTradeClient.calculateDividendYield(StockSymbol.POP, 4));
+                assertEquals(new BigDecimal("2.00"), stockTradeClient.calculatePriceEarningsRatio(StockSymbol.ALE, 46));
+
+            } finally {
+                executorService.shutdown();
+
+                for(StockTradeClient stockTradeClient : stockTradeClients){
+                    stockTradeClient.close();
+                }
+            }
         }
     }
 
+    /**
+     * Tests that the trades for a given Stock are returned in timestamp order,
+     * even when added out of order, and that the latest of them is found without reading them
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeHistoryForSymbolIsTimeOrderedTestSuccess() throws Exception {
+
+        //ALE trades from 10 minutes ago were added before the ALE trade from 20 minutes ago
+        List<StockTrade> aleTradeHistory = stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.ALE);
 
+        assertEquals(3, aleTradeHistory.size());
+        assertEquals(1000L, aleTradeHistory.get(0).getQuantityInHundredths());
+        assertEquals(600L, aleTradeHistory.get(1).getQuantityInHundredths());
+        assertEquals(400L, aleTradeHistory.get(2).getQuantityInHundredths());
+
+        //The latest trade held is the last in timestamp order, and JOE has not been traded
+        assertEquals(aleTradeHistory.get(2).getTimeStampEpochNanos(), stockTradeHistory.getLatestTimeStamp(StockSymbol.ALE));
+        assertEquals(Long.MIN_VALUE, stockTradeHistory.getLatestTimeStamp(StockSymbol.JOE));
+    }
+
+    /**
+     * Tests that a time range query for a given Stock
+     * only returns the trades in that range
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeHistoryForSymbolTimeRangeTestSuccess() throws Exception {
+
+        LocalDateTime fifteenMinsAgo = LocalDateTime.now().minusMinutes(15L);
+
+        //Only the 2 ALE trades from 10 minutes ago are in the last 15 minutes
+        List<StockTrade> aleTradeHistory = stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.ALE, fifteenMinsAgo, LocalDateTime.now());
+
+        assertEquals(2, aleTradeHistory.size());
+
+        //No JOE trades at all
+        assertTrue(stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.JOE, fifteenMinsAgo, LocalDateTime.now()).isEmpty());
+    }
+
+    /**
+     * Tests that the trade history can not be modified
+     * other than by adding a trade to it
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void stockTradeHistoryForSymbolIsReadOnlyTestFail() throws Exception {
+
+        stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.ALE).clear();
+    }
+
+    /*
+     * -------------------------------------------------------------------------------------------------------------------------------
+     * FAILURE TESTS
+     * -------------------------------------------------------------------------------------------------------------------------------
+     */
+
+    /**
+     * Tests that the Dividend Yield for a COMMON type stock
+     * calculation will handle a divide by 0 exception
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void calculateDividendYieldForCommonTestFail() throws Exception {
+
+        //POP COMMON type, last dividend = 8
+        StockData stockData = StockData.getStockDataForSymbol(StockSymbol.POP);
+
+        int marketPrice = 0;
+
+        //Last Dividend / Market Price = 8/0 = Exception
+        String expectedException = ("Price cannot be 0 for the Dividend Yield Calculation");
+
+        try{
+            BigDecimal result = CalculationUtility.calculateDividendYield(stockData, marketPrice);
+        }
+        catch(SuperSimpleStocksException e){
+            assertEquals(expectedException, e.getMessage());
+        }
+
+    }
+
+    /**
+     * Tests that the Dividend Yield for a PREFERRED type stock
+     * calculation will handle a divide by 0 exception
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void calculateDividendYieldForPreferredTestFail() throws Exception {
+
+        //GIN PREFERRED type, fixed dividend = 2%, par value = 100
+        StockData stockData = StockData.getStockDataForSymbol(StockSymbol.GIN);
+
+        int marketPrice = 0;
+
+        //(Fixed dividend * par value) / Market Price = (0.02 * 100)/0 = Exception
+        String expectedException = ("Price cannot be 0 for the Dividend Yield Calculation");
+
+        try{
+            BigDecimal result = CalculationUtility.calculateDividendYield(stockData, marketPrice);
+        }
+        catch(SuperSimpleStocksException e){
+            assertEquals(expectedException, e.getMessage());
+        }
+    }
+
+    /**
+     * Test that the Price Earnings ratio for a Stock
+     * calculation will handle a divide by 0 exception
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void calculatePriceEarningsRatioTestFail() throws Exception {
+
+        //TEA last dividend = 0
+        StockData stockData = StockData.getStockDataForSymbol(StockSymbol.TEA);
+
+        int marketPrice = 46;
+
+        //market Price / Dividend = 46/0 = Exception
+        String expectedException = ("Cannot calculate PE Ratio as last Dividend for TEA is zero and would result in a divide by zero Arithmetic Exception");
+
+        try{
+            BigDecimal result = CalculationUtility.calculatePriceEarningsRatio(stockData, marketPrice);
+        }
+        catch(SuperSimpleStocksException e){
+            assertEquals(expectedException, e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that the streaming GBCE All Shares Index
+     * can not be calculated when there have been no trades
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void gbceAllShareIndexNoTradesTestFail() throws Exception {
+
+        String expectedException = ("GBCE can not be calculated as there have been no trades");
+
+        try{
+            BigDecimal result = new GBCEAllShareIndex().getGBCE();
+        }
+        catch(SuperSimpleStocksException e){
+            assertEquals(expectedException, e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that a trade that would overflow the rolling Volume Weighted Stock Price
+     * is not added, leaving the history and the rolling values as they were
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeHistoryOverflowingTradeTestFail() throws Exception {
+
+        StockTradeBarAggregator stockTradeBarAggregator = new StockTradeBarAggregator(1, TimeUnit.MINUTES, 60);
+        stockTradeHistory.addStockTradeListener(stockTradeBarAggregator);
+
+        //Quantity * Trade Price of this trade alone is just below the largest long, so the window's sum would overflow
+        StockTrade overflowingTrade = new StockTrade(TransactionType.BUY, StockSymbol.ALE, FixedPointUtility.currentEpochNanos(), Long.MAX_VALUE / 2, 2);
+
+        try{
+            stockTradeHistory.addTrade(overflowingTrade);
+            assertTrue("Trade should not be added", false);
+        }
+        catch(ArithmeticException e){
+            assertEquals("long overflow", e.getMessage());
+        }
+
+        //Still ((120 * 6) + (140 * 4))/(6 + 4) = 128 from the 3 ALE trades in setUp
+        assertEquals(3, stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.ALE).size());
+        assertEquals(new BigDecimal("128.00"), volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.ALE));
+
+        //The same applies when the trades that overflow only do so together in a batch
+        StockTradeBatch stockTradeBatch = new StockTradeBatch(2);
+        stockTradeBatch.add(StockSymbol.JOE, TransactionType.BUY, FixedPointUtility.currentEpochNanos(), Long.MAX_VALUE / 2, 1);
+        stockTradeBatch.add(StockSymbol.JOE, TransactionType.BUY, FixedPointUtility.currentEpochNanos(), Long.MAX_VALUE / 2 + 2, 1);
+
+        try{
+            stockTradeHistory.addTrades(stockTradeBatch);
+            assertTrue("Trades should not be added", false);
+        }
+        catch(ArithmeticException e){
+            assertEquals("long overflow", e.getMessage());
+        }
+
+        assertEquals(0, stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.JOE).size());
+        assertEquals(BigDecimal.ZERO, volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.JOE));
+        assertNull(stockTradeBarAggregator.getBar(StockSymbol.JOE, FixedPointUtility.currentEpochNanos()));
+    }
+
+    /**
+     * Tests that importing a CSV file with a line that is not a valid trade
+     * gives the position and contents of the line, and adds none of the trades
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeFileImporterInvalidTradeTestFail() throws Exception {
+
+        Path csvFile = temporaryFolder.getRoot().toPath().resolve("trades.csv");
+        Files.write(csvFile, "1496660400000000000,ALE,BUY,10.5,120\n1496660400000000000,XYZ,BUY,1,100\n".getBytes(StandardCharsets.US_ASCII));
+
+        String expectedException = ("Invalid trade at byte 37: 1496660400000000000,XYZ,BUY,1,100");
+        StockTradeHistory importedStockTradeHistory = new StockTradeHistory();
+
+        //Small chunks, so the valid trade is in a chunk of its own
+        try{
+            new StockTradeFileImporter(importedStockTradeHistory, 2, 16).importFile(csvFile);
+            assertTrue("Import should fail", false);
+        }
+        catch(SuperSimpleStocksException e){
+            assertEquals(expectedException, e.getMessage());
+        }
+        assertEquals(0, importedStockTradeHistory.getNumberOfTradesHeld());
+
+        //A quantity of 0 is refused as it is from the command line or clients
+        Files.write(csvFile, "1496660400000000000,ALE,BUY,0,120\n".getBytes(StandardCharsets.US_ASCII));
+
+        try{
+            new StockTradeFileImporter(importedStockTradeHistory).importFile(csvFile);
+            assertTrue("Import should fail", false);
+        }
+        catch(SuperSimpleStocksException e){
+            assertEquals("Invalid trade at byte 0: 1496660400000000000,ALE,BUY,0,120", e.getMessage());
+        }
+
+        //And so is a negative price in a binary file
+        Path binaryFile = temporaryFolder.getRoot().toPath().resolve("trades.bin");
+        ByteBuffer binary = ByteBuffer.allocate(2 * StockTradeJournal.RECORD_SIZE).order(StockTradeJournal.BYTE_ORDER);
+
+        for(int offset = 0; offset < binary.capacity(); offset += StockTradeJournal.RECORD_SIZE){
+            binary.putLong(offset + StockTradeJournal.TIMESTAMP_OFFSET, FixedPointUtility.currentEpochNanos());
+            binary.putLong(offset + StockTradeJournal.QUANTITY_OFFSET, Long.MAX_VALUE / 2 + 1);
+            binary.putLong(offset + StockTradeJournal.PRICE_OFFSET, offset == 0 ? 1 : -1);
+            StockTradeJournal.putSymbolId(binary, offset, StockSymbol.JOE.getId());
+            binary.put(offset + StockTradeJournal.MARKER_OFFSET, StockTradeJournal.MARKER);
+        }
+        Files.write(binaryFile, binary.array());
+
+        try{
+            new StockTradeFileImporter(importedStockTradeHistory).importFile(binaryFile);
+            assertTrue("Import should fail", false);
+        }
+        catch(SuperSimpleStocksException e){
+            assertEquals("Invalid trade record at byte 32: Quantity must be positive and price must not be negative", e.getMessage());
+        }
+        assertEquals(0, importedStockTradeHistory.getNumberOfTradesHeld());
+
+        //Valid trades that are refused as they are added stop the import, which says how many were added
+        binary.putLong(StockTradeJournal.RECORD_SIZE + StockTradeJournal.PRICE_OFFSET, 1);
+        Files.write(binaryFile, binary.array());
+        importedStockTradeHistory.addStockTradeListener(new VolumeWeightedStockPriceAggregator(15));
+
+        try{
+            new StockTradeFileImporter(importedStockTradeHistory, 1, StockTradeJournal.RECORD_SIZE).importFile(binaryFile);
+            assertTrue("Import should fail", false);
+        }
+        catch(SuperSimpleStocksException e){
+            assertEquals("Import stopped after 1 trades were added: long overflow", e.getMessage());
+        }
+        assertEquals(1, importedStockTradeHistory.getNumberOfTradesHeld());
+    }
+
+    /**
+     * Tests that a calculation that fails on the server, or a request with a negative market price,
+     * gives the client the reason, and the connection can still be used
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeServerCalculationTestFail() throws Exception {
+
+        try(OperationDispatcher operationDispatcher = new OperationDispatcher(stockTradeHistory, volumeWeightedStockPriceAggregator, gbceAllShareIndex);
+            StockTradeServer stockTradeServer = new StockTradeServer(operationDispatcher, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+            StockTradeClient stockTradeClient = new StockTradeClient(InetAddress.getLoopbackAddress().getHostAddress(), stockTradeServer.getLocalPort())){
+
+            //TEA last dividend = 0
+            String expectedException = ("Cannot calculate PE Ratio as last Dividend for TEA is zero and would result in a divide by zero Arithmetic Exception");
+
+            try{
+                stockTradeClient.calculatePriceEarningsRatio(StockSymbol.TEA, 46);
+            }
+            catch(SuperSimpleStocksException e){
+                assertEquals(expectedException, e.getMessage());
+            }
+
+            //A negative market price is refused, as it is on the command line
+            try{
+                stockTradeClient.calculateDividendYield(StockSymbol.POP, -1);
+                assertTrue("Negative market price should have been refused", false);
+            }
+            catch(SuperSimpleStocksException e){
+                assertEquals("Price must not be negative", e.getMessage());
+            }
+
+            try{
+                stockTradeClient.calculatePriceEarningsRatio(StockSymbol.ALE, -1);
+                assertTrue("Negative market price should have been refused", false);
+            }
+            catch(SuperSimpleStocksException e){
+                assertEquals("Price must not be negative", e.getMessage());
+            }
+
+            assertEquals(new BigDecimal("128.00"), stockTradeClient.getVolumeWeightedStockPrice(StockSymbol.ALE));
+        }
+    }
+
+    /**
+     * Tests that a Stock's id can be looked up by symbol, and that requests sent on one connection without waiting
+     * for responses are run in the order they were sent, so a Volume Weighted Stock Price sent after a trade includes the trade
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeServerPipelinedRequestsTestSuccess() throws Exception {
+
+        //Hold up the trade before it is stored, so a request run alongside it would not see it
+        CountDownLatch tradeStarted = new CountDownLatch(1);
+        CountDownLatch releaseTrade = new CountDownLatch(1);
+        stockTradeHistory.addStockTradeListener(new StockTradeListener() {
+            @Override
+            public void checkTradeAdded(StockSymbol symbol, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence){
+                tradeStarted.countDown();
+                try {
+                    releaseTrade.await();
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void tradeAdded(StockSymbol symbol, TransactionType transactionType, long timeStampEpochNanos, long quantityInHundredths, long tradePriceInPence){
+            }
+        });
+
+        try(OperationDispatcher operationDispatcher = new OperationDispatcher(stockTradeHistory, volumeWeightedStockPriceAggregator, gbceAllShareIndex);
+            StockTradeServer stockTradeServer = new StockTradeServer(operationDispatcher, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+            SocketChannel socketChannel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), stockTradeServer.getLocalPort()))){
+
+            //Look up the server's id for JOE, and for a symbol the server does not list
+            ByteBuffer requests = ByteBuffer.allocate(64).order(StockTradeProtocol.BYTE_ORDER);
+            requests.put(StockTradeProtocol.SYMBOL).put("JOE".getBytes(StandardCharsets.US_ASCII)).put(new byte[StockTradeProtocol.SYMBOL_TEXT_LENGTH - 3]);
+            requests.put(StockTradeProtocol.SYMBOL).put("NOPE".getBytes(StandardCharsets.US_ASCII)).put(new byte[StockTradeProtocol.SYMBOL_TEXT_LENGTH - 4]);
+            requests.flip();
+
+            while(requests.hasRemaining()){
+                socketChannel.write(requests);
+            }
+
+            String unknownSymbol = "Unknown stock symbol NOPE";
+            ByteBuffer lookups = ByteBuffer.allocate(1 + Long.BYTES + 1 + Short.BYTES + unknownSymbol.length()).order(StockTradeProtocol.BYTE_ORDER);
+
+            while(lookups.hasRemaining()){
+                assertTrue("Connection closed by server", socketChannel.read(lookups) >= 0);
+            }
+
+            assertEquals(StockTradeProtocol.OK, lookups.get(0));
+            int joe = (int) lookups.getLong(1);
+            assertEquals(StockSymbol.JOE.getId(), joe);
+            assertEquals(StockTradeProtocol.ERROR, lookups.get(1 + Long.BYTES));
+            assertEquals(unknownSymbol, new String(lookups.array(), 1 + Long.BYTES + 1 + Short.BYTES, unknownSymbol.length(), StandardCharsets.US_ASCII));
+
+            //JOE has no trades, so its Volume Weighted Stock Price is the price of the trade sent first
+            requests.clear();
+            requests.put(StockTradeProtocol.TRADE).putInt(joe).put((byte) TransactionType.BUY.ordinal()).putLong(100).putLong(250);
+            requests.put(StockTradeProtocol.VWSP).putInt(joe);
+            requests.flip();
+
+            while(requests.hasRemaining()){
+                socketChannel.write(requests);
+            }
+
+            //Give the Volume Weighted Stock Price the chance to run while the trade is held up
+            tradeStarted.await();
+            Thread.sleep(100);
+            releaseTrade.countDown();
+
+            ByteBuffer responses = ByteBuffer.allocate(2 * (1 + Long.BYTES)).order(StockTradeProtocol.BYTE_ORDER);
+
+            while(responses.hasRemaining()){
+                assertTrue("Connection closed by server", socketChannel.read(responses) >= 0);
+            }
+
+            assertEquals(StockTradeProtocol.OK, responses.get(0));
+            assertEquals(StockTradeProtocol.OK, responses.get(1 + Long.BYTES));
+            assertEquals(250_00L, responses.getLong(2 + Long.BYTES));
+        }
+    }
+
+    /**
+     * Tests that the dispatcher runs each kind of request on a virtual thread, and refuses a request
+     * rather than waiting when its limit of pending requests is reached
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void operationDispatcherTestSuccess() throws Exception {
+
+        //Hold up trades in the history so the one pending request stays pending
+        CountDownLatch tradeStarted = new CountDownLatch(1);
+        CountDownLatch releaseTrade = new CountDownLatch(1);
+        AtomicBoolean tradeOnVirtualThread = new AtomicBoolean();
+        stockTradeHistory.addStockTradeListener((symbol, transactionType, timeStampEpochNanos, quantityInHundredths, tradePriceInPence) -> {
+            tradeOnVirtualThread.set(Thread.currentThread().isVirtual());
+            tradeStarted.countDown();
+            try {
+                releaseTrade.await();
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try(OperationDispatcher operationDispatcher = new OperationDispatcher(stockTradeHistory, volumeWeightedStockPriceAggregator, gbceAllShareIndex, 1)){
+
+            CompletableFuture<BigDecimal> trade = operationDispatcher.dispatch(OperationRequest.trade(StockSymbol.GIN, TransactionType.BUY, 100, 100));
+            tradeStarted.await();
+
+            //Limit reached, so the request is not taken
+            assertEquals(null, operationDispatcher.tryDispatch(OperationRequest.gbce()));
+
+            releaseTrade.countDown();
+            assertEquals(null, trade.get());
+            assertTrue(tradeOnVirtualThread.get());
+
+            assertEquals(CalculationUtility.calculateDividendYield(StockData.getStockDataForSymbol(StockSymbol.POP), 46),
+                    operationDispatcher.dispatch(OperationRequest.dividendYield(StockSymbol.POP, 46)).get());
+            assertEquals(volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.GIN),
+                    operationDispatcher.dispatch(OperationRequest.volumeWeightedStockPrice(StockSymbol.GIN)).get());
+        }
+    }
+
+    /**
+     * Tests that a subscriber held up on an update is sent the latest Volume Weighted Stock Price
+     * and GBCE All Share Index once it catches up, rather than every update it missed
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockPricePublisherTestSuccess() throws Exception {
+
+        try(StockPricePublisher stockPricePublisher = new StockPricePublisher(volumeWeightedStockPriceAggregator, gbceAllShareIndex)){
+
+            stockTradeHistory.addStockTradeListener(stockPricePublisher);
+
+            //Subscriber held up on its first update while every other trade is added
+            CountDownLatch firstUpdate = new CountDownLatch(1);
+            CountDownLatch releaseSubscriber = new CountDownLatch(1);
+            List<BigDecimal> ginPrices = new CopyOnWriteArrayList<>();
+            List<BigDecimal> gbceValues = new CopyOnWriteArrayList<>();
+
+            stockPricePublisher.subscribe(new StockPriceSubscriber() {
+                @Override
+                public void volumeWeightedStockPriceUpdated(StockSymbol symbol, BigDecimal volumeWeightedStockPrice) {
+                    if(symbol == StockSymbol.GIN){
+                        ginPrices.add(volumeWeightedStockPrice);
+                    }
+                    firstUpdate.countDown();
+                    try {
+                        releaseSubscriber.await();
+                    } catch (InterruptedException e){
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                @Override
+                public void gbceUpdated(BigDecimal gbce) {
+                    gbceValues.add(gbce);
+                }
+            });
+
+            stockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.GIN, LocalDateTime.now(), new BigDecimal(10), new BigDecimal(100)));
+            assertTrue(firstUpdate.await(5, TimeUnit.SECONDS));
+
+            for(int price = 101; price <= 200; price++){
+                stockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.GIN, LocalDateTime.now(), new BigDecimal(10), new BigDecimal(price)));
+            }
+            releaseSubscriber.countDown();
+
+            BigDecimal expectedGinPrice = volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.GIN);
+            BigDecimal expectedGBCE = gbceAllShareIndex.getGBCE();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+            while((!expectedGinPrice.equals(last(ginPrices)) || !expectedGBCE.equals(last(gbceValues))) && System.nanoTime() < deadline){
+                Thread.sleep(10);
+            }
+
+            assertEquals(expectedGinPrice, last(ginPrices));
+            assertEquals(expectedGBCE, last(gbceValues));
+
+            //The trades added while the subscriber was busy were conflated rather than each sent
+            assertTrue(ginPrices.size() < 100);
+        }
+    }
+
+    private static BigDecimal last(List<BigDecimal> values){
+        return values.isEmpty() ? null : values.get(values.size() - 1);
+    }
+
+    /**
+     * Tests that trades are aggregated into open, high, low, close and volume bars,
+     * including a trade arriving out of order, and that the Volume Weighted Stock Price over a range of bars is correct
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeBarAggregatorTestSuccess() throws Exception {
+
+        StockTradeBarAggregator oneMinuteBars = new StockTradeBarAggregator(1, TimeUnit.MINUTES, 60);
+        stockTradeHistory.addStockTradeListener(oneMinuteBars);
+
+        long minute = TimeUnit.MINUTES.toNanos(1);
+        long start = (FixedPointUtility.currentEpochNanos() / minute - 10) * minute;
+
+        //Two trades in the first bar, the second arriving out of order, then one trade two bars later
+        stockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.GIN, start + 30_000_000_000L, 1000, 110));
+        stockTradeHistory.addTrade(new StockTrade(TransactionType.SELL, StockSymbol.GIN, start + 10_000_000_000L, 3000, 90));
+        stockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.GIN, start + 2 * minute, 1000, 130));
+
+        StockTradeBar firstBar = oneMinuteBars.getBar(StockSymbol.GIN, start);
+        assertEquals(90, firstBar.getOpenInPence());
+        assertEquals(110, firstBar.getHighInPence());
+        assertEquals(90, firstBar.getLowInPence());
+        assertEquals(110, firstBar.getCloseInPence());
+        assertEquals(4000, firstBar.getVolumeInHundredths());
+        assertEquals(new BigDecimal("95.00"), firstBar.getVolumeWeightedAveragePrice());
+
+        assertEquals(null, oneMinuteBars.getBar(StockSymbol.GIN, start + minute));
+        assertEquals(2, oneMinuteBars.getBars(StockSymbol.GIN, start, start + 3 * minute).size());
+
+        //(110*10 + 90*30 + 130*10) / 50
+        assertEquals(new BigDecimal("102.00"), oneMinuteBars.getVolumeWeightedStockPrice(StockSymbol.GIN, start, start + 3 * minute));
+        assertEquals(new BigDecimal("130.00"), oneMinuteBars.getVolumeWeightedStockPrice(StockSymbol.GIN, start + minute, start + 3 * minute));
+    }
+
+    /**
+     * Tests that the Volume Weighted Stock Price for a time range, worked out from running sums,
+     * matches the calculation over the trades in the range, including trades added out of order and in batches
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeHistoryVolumeWeightedStockPriceForTimeRangeTestSuccess() throws Exception {
+
+        long now = FixedPointUtility.currentEpochNanos();
+        long minute = TimeUnit.MINUTES.toNanos(1);
+        Random random = new Random(42);
+
+        //Trades spread over the last hour, some added out of order and some in batches
+        List<StockTrade> batch = new ArrayList<>();
+
+        for(int i = 0; i < 2000; i++){
+            StockTrade stockTrade = new StockTrade(TransactionType.BUY, StockSymbol.GIN, now - random.nextInt(60) * minute - random.nextInt(1000),
+                    1 + random.nextInt(10000), 1 + random.nextInt(500));
+
+            if(i % 3 == 0){
+                batch.add(stockTrade);
+            } else {
+                stockTradeHistory.addTrade(stockTrade);
+            }
+        }
+        stockTradeHistory.addTrades(batch);
+
+        for(int i = 0; i < 100; i++){
+            long from = now - random.nextInt(70) * minute;
+            long to = from + random.nextInt(30) * minute;
+
+            assertEquals(CalculationUtility.calculateVolumeWeightedStockPrice(stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.GIN, from, to)),
+                    stockTradeHistory.getVolumeWeightedStockPrice(StockSymbol.GIN, from, to));
+        }
+
+        //ALE trades from setUp, only those from 10 minutes ago are in the range
+        assertEquals(new BigDecimal("128.00"), stockTradeHistory.getVolumeWeightedStockPrice(StockSymbol.ALE,
+                LocalDateTime.now().minusMinutes(15), LocalDateTime.now()));
+    }
+
+    /**
+     * Tests that the Volume Weighted Stock Price for a time range is right when the sums of
+     * Quantity and of Quantity * Trade Price over the range are 2^64 or more, which a long can not hold
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeHistoryVolumeWeightedStockPriceForTimeRangeOverflowTestSuccess() throws Exception {
+
+        //No listeners, whose own running sums would refuse trades this large
+        StockTradeHistory largeStockTradeHistory = new StockTradeHistory();
+
+        long now = FixedPointUtility.currentEpochNanos();
+        long minute = TimeUnit.MINUTES.toNanos(1);
+
+        //Quantity * Trade Price of 2^70 wraps around to exactly 0 in a long
+        largeStockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.GIN, now - 50 * minute, 1L << 40, 1L << 30));
+        largeStockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.GIN, now - 40 * minute, 100, 250));
+
+        //Quantities summing to 2^64, which also wraps around to exactly 0
+        for(int i = 0; i < 4; i++){
+            largeStockTradeHistory.addTrade(new StockTrade(TransactionType.SELL, StockSymbol.GIN, now - 30 * minute, 1L << 62, 1));
+        }
+
+        largeStockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.GIN, now - 20 * minute, 300, 120));
+        largeStockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.GIN, now - 10 * minute, 100, 160));
+
+        long[][] ranges = {{now - 60 * minute, now - 35 * minute}, {now - 35 * minute, now - 25 * minute}, {now - 60 * minute, now},
+                {now - 25 * minute, now}, {now - 45 * minute, now - 35 * minute}};
+
+        for(long[] range : ranges){
+            assertEquals(CalculationUtility.calculateVolumeWeightedStockPrice(largeStockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.GIN, range[0], range[1])),
+                    largeStockTradeHistory.getVolumeWeightedStockPrice(StockSymbol.GIN, range[0], range[1]));
+        }
+
+        //Trades after the large ones are still worked out from the running sums, (300*120 + 100*160) / 400
+        assertEquals(new BigDecimal("130.00"), largeStockTradeHistory.getVolumeWeightedStockPrice(StockSymbol.GIN, now - 25 * minute, now));
+        assertEquals(new BigDecimal("1.00"), largeStockTradeHistory.getVolumeWeightedStockPrice(StockSymbol.GIN, now - 35 * minute, now - 25 * minute));
+    }
+
+    /**
+     * Tests that a history limited by number of trades and by age evicts the trades it no longer keeps,
+     * summarising them so the GBCE All Share Index still covers every trade
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeHistoryRetentionPolicyTestSuccess() throws Exception {
+
+        StockTradeHistory boundedStockTradeHistory = new StockTradeHistory(RetentionPolicy.keepLatest(100).and(RetentionPolicy.keepFor(1, TimeUnit.HOURS)));
+        GBCEAllShareIndex boundedGBCEAllShareIndex = new GBCEAllShareIndex();
+        boundedStockTradeHistory.addStockTradeListener(boundedGBCEAllShareIndex);
+
+        long start = FixedPointUtility.currentEpochNanos() - TimeUnit.HOURS.toNanos(3);
+        long second = TimeUnit.SECONDS.toNanos(1);
+
+        //JOE is traded every second for an hour so is limited by count, ALE once a minute for three hours so is limited by age
+        for(int i = 0; i < 3600; i++){
+            boundedStockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.JOE, start + i * second, 100, 100 + i % 50));
+        }
+
+        List<StockTrade> aleTrades = new ArrayList<>();
+
+        for(int i = 0; i < 180; i++){
+            aleTrades.add(new StockTrade(TransactionType.SELL, StockSymbol.ALE, start + i * 60 * second, 100, 200 + i));
+        }
+        boundedStockTradeHistory.addTrades(aleTrades);
+        boundedStockTradeHistory.addTrade(new StockTrade(TransactionType.SELL, StockSymbol.ALE, start + 180 * 60 * second, 100, 380));
+
+        List<StockTrade> joeTrades = boundedStockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.JOE);
+        assertTrue(joeTrades.size() >= 100 && joeTrades.size() < 200);
+        assertEquals(3600 - joeTrades.size(), boundedStockTradeHistory.getEvictedTrades(StockSymbol.JOE).getNumberOfTrades());
+        assertEquals(start + 3599 * second, joeTrades.get(joeTrades.size() - 1).getTimeStampEpochNanos());
+
+        //Trades more than an hour before the latest ALE trade have gone
+        List<StockTrade> retainedAleTrades = boundedStockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.ALE);
+        assertEquals(start + 120 * 60 * second, retainedAleTrades.get(0).getTimeStampEpochNanos());
+        assertEquals(181 - retainedAleTrades.size(), boundedStockTradeHistory.getEvictedTrades(StockSymbol.ALE).getNumberOfTrades());
+
+        //Evicted JOE trades are the first ones added, each 1.00 share at 100p to 149p
+        long evictedJoeTrades = 3600 - joeTrades.size();
+        BigInteger evictedJoeTradePricesMultipliedByQuantity = BigInteger.ZERO;
+
+        for(int i = 0; i < evictedJoeTrades; i++){
+            evictedJoeTradePricesMultipliedByQuantity = evictedJoeTradePricesMultipliedByQuantity.add(BigInteger.valueOf(100L * (100 + i % 50)));
+        }
+        assertEquals(BigInteger.valueOf(100 * evictedJoeTrades), boundedStockTradeHistory.getEvictedTrades(StockSymbol.JOE).getTotalQuantity());
+        assertEquals(evictedJoeTradePricesMultipliedByQuantity, boundedStockTradeHistory.getEvictedTrades(StockSymbol.JOE).getSumOfTradePriceMultipliedByQuantity());
+
+        //Summaries of evicted trades whose sums pass the range of a long are still exact
+        StockTradeHistory largeStockTradeHistory = new StockTradeHistory(RetentionPolicy.keepLatest(16));
+        long largeQuantity = Long.MAX_VALUE / 4;
+
+        for(int i = 0; i < 100; i++){
+            largeStockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, StockSymbol.TEA, start + i * second, largeQuantity, 1000));
+        }
+
+        StockTradeSummary largeEvictedTrades = largeStockTradeHistory.getEvictedTrades(StockSymbol.TEA);
+        BigInteger largeEvictedQuantity = BigInteger.valueOf(largeQuantity).multiply(BigInteger.valueOf(largeEvictedTrades.getNumberOfTrades()));
+
+        assertTrue(largeEvictedTrades.getNumberOfTrades() > 4);
+        assertEquals(largeEvictedQuantity, largeEvictedTrades.getTotalQuantity());
+        assertEquals(largeEvictedQuantity.multiply(BigInteger.valueOf(1000)), largeEvictedTrades.getSumOfTradePriceMultipliedByQuantity());
+
+        //GBCE still covers every trade, evicted or not
+        assertEquals(boundedGBCEAllShareIndex.getGBCE(), boundedStockTradeHistory.getGBCE());
+
+        //VWSP over the retained trades is unaffected by the evicted ones
+        long from = joeTrades.get(0).getTimeStampEpochNanos();
+        assertEquals(CalculationUtility.calculateVolumeWeightedStockPrice(joeTrades),
+                boundedStockTradeHistory.getVolumeWeightedStockPrice(StockSymbol.JOE, from, start + 3600 * second));
+    }
+
+    /**
+     * Tests that the calculations into a CalculationResult give the same results as the BigDecimal calculations,
+     * and create no objects once they have been compiled
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void calculationResultTestSuccess() throws Exception {
+
+        CalculationResult result = new CalculationResult();
+
+        //Same results as the BigDecimal calculations
+        for(StockData stockData : StockData.values()){
+            for(int price = 1; price <= 1000; price++){
+
+                CalculationUtility.calculateDividendYield(StockReferenceData.of(stockData), price, result);
+                assertEquals(CalculationUtility.calculateDividendYield(stockData, price), result.toBigDecimal());
+
+                if(stockData.getLastDividend() != 0){
+                    CalculationUtility.calculatePriceEarningsRatio(StockReferenceData.of(stockData), price, result);
+                    assertEquals(CalculationUtility.calculatePriceEarningsRatio(stockData, price), result.toBigDecimal());
+                }
+            }
+        }
+
+        List<StockTrade> aleTrades = stockTradeHistory.getStockTradeHistoryListForSymbol(StockSymbol.ALE);
+        StockTradeListCursor aleTradeCursor = new StockTradeListCursor(aleTrades);
+        long calculationTime = FixedPointUtility.currentEpochNanos() - TimeUnit.MINUTES.toNanos(15);
+
+        CalculationUtility.calculateVolumeWeightedStockPrice(aleTradeCursor, calculationTime, result);
+        assertEquals(new BigDecimal("128.00"), result.toBigDecimal());
+        assertEquals(2, result.getNumberOfTrades());
+
+        StockTradeListCursor allTradeCursor = new StockTradeListCursor(stockTradeHistory.getStockTradeHistoryListForAllStocks());
+        CalculationUtility.calculateGBCE(allTradeCursor, result);
+        assertEquals(CalculationUtility.calculateGBCE(stockTradeHistory.getStockTradeHistoryListForAllStocks()), result.toBigDecimal());
+
+        //Repeating the calculations creates no garbage once they have been compiled
+        StockReferenceData gin = StockReferenceData.of(StockData.GIN);
+        StockReferenceData pop = StockReferenceData.of(StockData.POP);
+        long now = FixedPointUtility.currentEpochNanos();
+
+        long allocatedBytes = 0;
+
+        for(int run = 0; run < 5; run++){
+
+            long allocatedBefore = allocatedBytes();
+
+            for(int i = 0; i < 100_000; i++){
+                CalculationUtility.calculateDividendYield(gin, 100 + (i & 255), result);
+                CalculationUtility.calculateDividendYield(pop, 100 + (i & 255), result);
+                CalculationUtility.calculatePriceEarningsRatio(pop, 100 + (i & 255), result);
+
+                aleTradeCursor.reset();
+                CalculationUtility.calculateVolumeWeightedStockPrice(aleTradeCursor, calculationTime, result);
+
+                allTradeCursor.reset();
+                CalculationUtility.calculateGBCE(allTradeCursor, result);
+
+                volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(StockSymbol.ALE, now, result);
+                gbceAllShareIndex.getGBCE(result);
+            }
+
+            allocatedBytes = allocatedBytes() - allocatedBefore;
+        }
+
+        //Allow for the measurement itself, which is far less than an object per calculation
+        assertTrue("Allocated " + allocatedBytes + " bytes", allocatedBytes < 10_000);
+    }
+
+    /**
+     * Tests that reference data loaded from a file is looked up in any case, that dividends can be changed while
+     * calculations are running without the calculations seeing a mixture of old and new values,
+     * and that reference data not valid for its Stock Type is refused whether loaded or updated
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void referenceDataRegistryTestSuccess() throws Exception {
+
+        Path referenceDataFile = temporaryFolder.getRoot().toPath().resolve("stocks.csv");
+
+        Files.write(referenceDataFile, ("symbol,type,lastDividend,fixedDividend,parValue\n"
+                + "# Sample Stocks, with GIN paying a higher fixed dividend\n"
+                + "TEA,COMMON,0,,100\n"
+                + "pop,common,8,,100\n"
+                + "GIN,PREFERRED,8,4%,100\n").getBytes(StandardCharsets.US_ASCII));
+
+        ReferenceDataRegistry referenceDataRegistry = ReferenceDataRegistry.load(referenceDataFile);
+
+        assertEquals(StockSymbol.POP, referenceDataRegistry.findStockReferenceData("Pop").getSymbol());
+        assertNull(referenceDataRegistry.findStockReferenceData("ALE"));
+        assertNull(referenceDataRegistry.findStockReferenceData("XYZ"));
+        assertEquals(StockSymbol.POP, StockSymbol.getStockSymbolFor("pOp"));
+        assertEquals(StockData.GIN, StockData.getStockDataForSymbol(StockSymbol.GIN));
+
+        //4% of 100p, on a price of 200p
+        assertEquals(new BigDecimal("0.02"), CalculationUtility.calculateDividendYield(referenceDataRegistry.getStockReferenceData(StockSymbol.GIN), 200));
+
+        try {
+            referenceDataRegistry.getStockReferenceData(StockSymbol.ALE);
+            assertTrue("ALE should not be listed", false);
+        } catch (SuperSimpleStocksException e){
+            assertEquals("No Stock Data found for symbol ALE", e.getMessage());
+        }
+
+        //Hot swap GIN's fixed dividend and par value while other threads are calculating with it
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicBoolean mixture = new AtomicBoolean(false);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+        try {
+            List<Future<?>> calculations = new ArrayList<>();
+
+            for(int i = 0; i < 2; i++){
+                calculations.add(executorService.submit(() -> {
+                    while(running.get()){
+                        StockReferenceData gin = referenceDataRegistry.getStockReferenceData(StockSymbol.GIN);
+
+                        //Updates always keep the fixed dividend multiplied by the par value at 4p
+                        if(gin.getFixedDividend().multiply(BigDecimal.valueOf(gin.getParValue())).compareTo(new BigDecimal("4")) != 0){
+                            mixture.set(true);
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            //Par values that 4p divides exactly
+            int[] parValues = {1, 2, 4, 5, 8, 10, 16, 20, 25, 40, 50, 80, 100, 200, 400};
+
+            for(int i = 0; i < 10_000; i++){
+                int parValue = parValues[i % parValues.length];
+                referenceDataRegistry.update(StockSymbol.GIN, 8, new BigDecimal("4").divide(BigDecimal.valueOf(parValue)), parValue);
+            }
+
+            running.set(false);
+
+            for(Future<?> calculation : calculations){
+                calculation.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            running.set(false);
+            executorService.shutdownNow();
+        }
+
+        assertTrue("A calculation saw a mixture of old and new reference data", !mixture.get());
+
+        referenceDataRegistry.update(StockSymbol.GIN, 8, new BigDecimal("0.05"), 100);
+        assertEquals(new BigDecimal("0.03"), CalculationUtility.calculateDividendYield(referenceDataRegistry.getStockReferenceData(StockSymbol.GIN), 200));
+
+        //A file that can not be loaded leaves the reference data as it was
+        Files.write(referenceDataFile, "GIN,PREFERRED,8,,100\n".getBytes(StandardCharsets.US_ASCII));
+
+        try {
+            referenceDataRegistry.reload(referenceDataFile);
+            assertTrue("GIN should need a fixed dividend", false);
+        } catch (SuperSimpleStocksException e){
+            assertEquals("Invalid reference data at line 1: a PREFERRED Stock needs a fixed dividend", e.getMessage());
+        }
+        assertEquals(new BigDecimal("0.05"), referenceDataRegistry.getStockReferenceData(StockSymbol.GIN).getFixedDividend());
+
+        Files.write(referenceDataFile, "TEA,COMMON,0,2%,100\n".getBytes(StandardCharsets.US_ASCII));
+
+        try {
+            referenceDataRegistry.reload(referenceDataFile);
+            assertTrue("TEA should not have a fixed dividend", false);
+        } catch (SuperSimpleStocksException e){
+            assertEquals("Invalid reference data at line 1: a COMMON Stock must not have a fixed dividend", e.getMessage());
+        }
+        assertEquals(StockSymbol.GIN, referenceDataRegistry.findStockReferenceData("GIN").getSymbol());
+
+        //A fixed dividend too large to calculate with is refused before its Stock is listed
+        Files.write(referenceDataFile, "BIG,PREFERRED,8,1E+30,100\n".getBytes(StandardCharsets.US_ASCII));
+
+        try {
+            referenceDataRegistry.reload(referenceDataFile);
+            assertTrue("BIG should have too large a fixed dividend", false);
+        } catch (SuperSimpleStocksException e){
+            assertEquals("Invalid reference data at line 1: fixed dividend 1E+30 multiplied by par value 100 is too large", e.getMessage());
+        }
+        assertNull(StockSymbol.findStockSymbol("BIG"));
+
+        //Updates are checked in the same way as files
+        try {
+            referenceDataRegistry.update(StockSymbol.TEA, 0, new BigDecimal("0.02"), 100);
+            assertTrue("TEA should not have a fixed dividend", false);
+        } catch (SuperSimpleStocksException e){
+            assertEquals("Invalid reference data for TEA: a COMMON Stock must not have a fixed dividend", e.getMessage());
+        }
+
+        try {
+            referenceDataRegistry.update(StockSymbol.GIN, 8, null, 100);
+            assertTrue("GIN should need a fixed dividend", false);
+        } catch (SuperSimpleStocksException e){
+            assertEquals("Invalid reference data for GIN: a PREFERRED Stock needs a fixed dividend", e.getMessage());
+        }
+        assertEquals(new BigDecimal("0.05"), referenceDataRegistry.getStockReferenceData(StockSymbol.GIN).getFixedDividend());
+        assertEquals(null, referenceDataRegistry.getStockReferenceData(StockSymbol.TEA).getFixedDividend());
+    }
+
+    /**
+     * Tests that Stocks can be listed while running, well beyond the sample Stocks,
+     * and traded and calculated on like the sample Stocks
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockSymbolTestSuccess() throws Exception {
+
+        assertEquals(0, StockSymbol.TEA.getId());
+        assertEquals(4, StockSymbol.JOE.getId());
+        assertTrue(StockSymbol.intern("tea") == StockSymbol.TEA);
+
+        List<StockSymbol> listed = new ArrayList<>();
+
+        for(int i = 0; i < 10_000; i++){
+            listed.add(StockSymbol.intern("LST" + i));
+        }
+
+        //Ids are dense, in the order the symbols were listed
+        for(int i = 1; i < listed.size(); i++){
+            assertEquals(listed.get(i - 1).getId() + 1, listed.get(i).getId());
+        }
+
+        StockSymbol last = listed.get(listed.size() - 1);
+
+        assertTrue(StockSymbol.findStockSymbol("lst9999") == last);
+        assertTrue(StockSymbol.forId(last.getId()) == last);
+        assertTrue(StockSymbol.count() > last.getId());
+        assertNull(StockSymbol.findStockSymbol("LST10000"));
+
+        //Trades for a newly listed Stock, one at a time and in a batch
+        long now = FixedPointUtility.currentEpochNanos();
+
+        stockTradeHistory.addTrade(new StockTrade(TransactionType.BUY, last, now, 1000, 300));
+
+        StockTradeBatch stockTradeBatch = new StockTradeBatch();
+        stockTradeBatch.add(listed.get(0), TransactionType.SELL, now, 1000, 50);
+        stockTradeBatch.add(last, TransactionType.SELL, now, 3000, 100);
+        stockTradeHistory.addTrades(stockTradeBatch);
+
+        //((300 * 10) + (100 * 30))/(10 + 30) = 150
+        assertEquals(new BigDecimal("150.00"), volumeWeightedStockPriceAggregator.getVolumeWeightedStockPrice(last));
+        assertEquals(2, stockTradeHistory.getStockTradeHistoryListForSymbol(last).size());
+
+        BigDecimal expectedGBCE = CalculationUtility.calculateGBCE(stockTradeHistory.getStockTradeHistoryListForAllStocks());
+
+        assertEquals(9, gbceAllShareIndex.getNumberOfTrades());
+        assertEquals(expectedGBCE, gbceAllShareIndex.getGBCE());
+
+        //Ids too large for a byte still fit a journal record
+        ByteBuffer record = ByteBuffer.allocate(StockTradeJournal.RECORD_SIZE);
+        StockTradeJournal.putSymbolId(record, 0, last.getId());
+        assertEquals(last.getId(), StockTradeJournal.getSymbolId(record, 0));
+
+        try {
+            StockSymbol.intern("NOT A SYMBOL");
+            assertTrue("NOT A SYMBOL should not be listed", false);
+        } catch (IllegalArgumentException e){
+            assertEquals("Stock Symbol must be 1 to 16 letters, digits or dots: NOT A SYMBOL", e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that cached Dividend Yields and P/E Ratios match those calculated,
+     * are recalculated once the reference data changes, and are evicted least recently used first
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockCalculationCacheTestSuccess() throws Exception {
+
+        ReferenceDataRegistry referenceDataRegistry = new ReferenceDataRegistry();
+        StockCalculationCache stockCalculationCache = new StockCalculationCache(referenceDataRegistry, 32);
+
+        for(int i = 0; i < 2; i++){
+            assertEquals(CalculationUtility.calculateDividendYield(StockData.GIN, 200), stockCalculationCache.getDividendYield(StockSymbol.GIN, 200));
+            assertEquals(CalculationUtility.calculatePriceEarningsRatio(StockData.POP, 200), stockCalculationCache.getPriceEarningsRatio(StockSymbol.POP, 200));
+        }
+        assertEquals(2, stockCalculationCache.getHits());
+        assertEquals(2, stockCalculationCache.getMisses());
+
+        //2% of 100p on 200p is 0.01, 5% is 0.03 to 2 dp
+        assertEquals(new BigDecimal("0.01"), stockCalculationCache.getDividendYield(StockSymbol.GIN, 200));
+        referenceDataRegistry.update(StockSymbol.GIN, 8, new BigDecimal("0.05"), 100);
+        assertEquals(new BigDecimal("0.03"), stockCalculationCache.getDividendYield(StockSymbol.GIN, 200));
+        assertEquals(1, stockCalculationCache.getInvalidations());
+
+        //Failures are not cached
+        try {
+            stockCalculationCache.getPriceEarningsRatio(StockSymbol.TEA, 200);
+            assertTrue("TEA has no last dividend", false);
+        } catch (SuperSimpleStocksException e){
+            assertEquals("Cannot calculate PE Ratio as last Dividend for TEA is zero and would result in a divide by zero Arithmetic Exception", e.getMessage());
+        }
+        assertEquals(2, stockCalculationCache.size());
+
+        for(int price = 1; price <= 1000; price++){
+            stockCalculationCache.getPriceEarningsRatio(StockSymbol.ALE, price);
+        }
+        assertTrue(stockCalculationCache.size() <= 32);
+        assertEquals(1002 - stockCalculationCache.size(), stockCalculationCache.getEvictions());
+    }
+
+    /**
+     * Tests that recalculating the GBCE and Volume Weighted Stock Prices in parallel
+     * gives exactly the same results as recalculating them on one thread, and as CalculationUtility
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void stockTradeRecalculatorTestSuccess() throws Exception {
+
+        StockTradeRecalculator sequential = new StockTradeRecalculator(StockTradeRecalculator.Mode.SEQUENTIAL);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+        StockTradeRecalculator parallel = new StockTradeRecalculator(StockTradeRecalculator.Mode.PARALLEL, forkJoinPool);
+
+        try {
+            //Few enough trades that all of the trade prices multiplied can be held as a double
+            List<StockTrade> allStocks = stockTradeHistory.getStockTradeHistoryListForAllStocks();
+
+            assertEquals(CalculationUtility.calculateGBCE(allStocks), sequential.calculateGBCE(allStocks));
+            assertEquals(CalculationUtility.calculateGBCE(allStocks), parallel.calculateGBCE(allStocks));
+
+            //Enough trades to be split into several tasks
+            Random random = new Random(42);
+            long now = FixedPointUtility.currentEpochNanos();
+            List<StockTrade> stockTrades = new ArrayList<>();
+
+            for(int i = 0; i < 500_000; i++){
+                stockTrades.add(new StockTrade(TransactionType.BUY, StockData.values()[i % StockData.values().length].getSymbol(),
+                        now - random.nextInt(1_000_000), 1 + random.nextInt(100_000), 1 + random.nextInt(1_000)));
+            }
+
+            //One trade too large for the sums of quantity multiplied by price to be held as a long
+            stockTrades.add(new StockTrade(TransactionType.SELL, StockSymbol.JOE, now, Long.MAX_VALUE / 2, 3));
+
+            assertEquals(sequential.calculateGBCE(stockTrades), parallel.calculateGBCE(stockTrades));
+
+            long calculationTime = now - 500_000;
+            Map<StockSymbol, BigDecimal> volumeWeightedStockPrices = parallel.calculateVolumeWeightedStockPrices(stockTrades, calculationTime);
+
+            assertEquals(sequential.calculateVolumeWeightedStockPrices(stockTrades, calculationTime), volumeWeightedStockPrices);
+            assertEquals(StockData.values().length, volumeWeightedStockPrices.size());
+
+            for(StockData stockData : StockData.values()){
+
+                List<StockTrade> symbolTrades = new ArrayList<>();
+
+                for(StockTrade stockTrade : stockTrades){
+                    if(stockTrade.getSymbol() == stockData.getSymbol() && stockTrade.getTimeStampEpochNanos() > calculationTime){
+                        symbolTrades.add(stockTrade);
+                    }
+                }
+                assertEquals(CalculationUtility.calculateVolumeWeightedStockPrice(symbolTrades), volumeWeightedStockPrices.get(stockData.getSymbol()));
+            }
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    /**
+     * Tests that the kernels chosen at start up, vector or scalar, give the same results as the scalar kernels
+     * and as the calculations over a cursor, including once the sums are too large for a long
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void tradeColumnKernelsTestSuccess() throws Exception {
+
+        TradeColumnKernels tradeColumnKernels = TradeColumnKernels.get();
+        TradeColumnKernels scalarTradeColumnKernels = new ScalarTradeColumnKernels();
+
+        //An odd number of trades, so some are left over once the vectors are full
+        int numberOfTrades = 1001;
+        long now = FixedPointUtility.currentEpochNanos();
+        long calculationTime = now - 500;
+        Random random = new Random(42);
+
+        long[] timeStamps = new long[numberOfTrades];
+        long[] quantities = new long[numberOfTrades];
+        long[] tradePrices = new long[numberOfTrades];
+        List<StockTrade> stockTrades = new ArrayList<>();
+
+        for(int i = 0; i < numberOfTrades; i++){
+            timeStamps[i] = now - random.nextInt(1000);
+            quantities[i] = 1 + random.nextInt(100_000);
+            tradePrices[i] = 1 + random.nextInt(1000);
+            stockTrades.add(new StockTrade(TransactionType.BUY, StockSymbol.ALE, timeStamps[i], quantities[i], tradePrices[i]));
+        }
+
+        //Trades from the second onwards, so the vectors do not start at the start of the arrays
+        assertEquals(scalarTradeColumnKernels.countAfter(timeStamps, 1, numberOfTrades, calculationTime),
+                tradeColumnKernels.countAfter(timeStamps, 1, numberOfTrades, calculationTime));
+        assertEquals(scalarTradeColumnKernels.sumQuantitiesAfter(timeStamps, quantities, 1, numberOfTrades, calculationTime),
+                tradeColumnKernels.sumQuantitiesAfter(timeStamps, quantities, 1, numberOfTrades, calculationTime));
+        assertEquals(scalarTradeColumnKernels.sumTradePricesMultipliedByQuantitiesAfter(timeStamps, quantities, tradePrices, 1, numberOfTrades, calculationTime),
+                tradeColumnKernels.sumTradePricesMultipliedByQuantitiesAfter(timeStamps, quantities, tradePrices, 1, numberOfTrades, calculationTime));
+        assertEquals(scalarTradeColumnKernels.sumLogTradePrices(tradePrices, 1, numberOfTrades),
+                tradeColumnKernels.sumLogTradePrices(tradePrices, 1, numberOfTrades), 1e-9);
+
+        CalculationResult columnResult = new CalculationResult();
+        CalculationResult cursorResult = new CalculationResult();
+
+        CalculationUtility.calculateVolumeWeightedStockPrice(timeStamps, quantities, tradePrices, 0, numberOfTrades, calculationTime, columnResult);
+        CalculationUtility.calculateVolumeWeightedStockPrice(new StockTradeListCursor(stockTrades), calculationTime, cursorResult);
+        assertEquals(cursorResult.getUnscaledValue(), columnResult.getUnscaledValue());
+        assertEquals(cursorResult.getNumberOfTrades(), columnResult.getNumberOfTrades());
+
+        CalculationUtility.calculateGBCE(tradePrices, 0, numberOfTrades, columnResult);
+        CalculationUtility.calculateGBCE(new StockTradeListCursor(stockTrades), cursorResult);
+        assertEquals(cursorResult.getUnscaledValue(), columnResult.getUnscaledValue());
+
+        //Too large for the sum of Quantity * Trade Price to be held as a long
+        quantities[numberOfTrades - 1] = Long.MAX_VALUE / 2;
+        timeStamps[numberOfTrades - 1] = now;
+        stockTrades.set(numberOfTrades - 1, new StockTrade(TransactionType.BUY, StockSymbol.ALE, now, quantities[numberOfTrades - 1], tradePrices[numberOfTrades - 1]));
+
+        try {
+            tradeColumnKernels.sumTradePricesMultipliedByQuantitiesAfter(timeStamps, quantities, tradePrices, 0, numberOfTrades, calculationTime);
+            assertTrue("Sum should be too large for a long", false);
+        } catch (ArithmeticException e){
+            //Expected
+        }
+
+        CalculationUtility.calculateVolumeWeightedStockPrice(timeStamps, quantities, tradePrices, 0, numberOfTrades, calculationTime, columnResult);
+        CalculationUtility.calculateVolumeWeightedStockPrice(new StockTradeListCursor(stockTrades), calculationTime, cursorResult);
+        assertEquals(cursorResult.getUnscaledValue(), columnResult.getUnscaledValue());
+    }
+
+    /**
+     * Tests that the histogram's percentiles are within its precision, and that the metrics count
+     * each Operation dispatched, including failures, and can be read through JMX
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void operationMetricsTestSuccess() throws Exception {
+
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+        for(long nanos = 1; nanos <= 100_000; nanos++){
+            latencyHistogram.record(nanos);
+        }
+
+        assertEquals(100_000, latencyHistogram.getCount());
+        assertEquals(100_000, latencyHistogram.getMaximumNanos());
+        assertEquals(50_000.5, latencyHistogram.getMeanNanos(), 1e-9);
+        assertTrue(Math.abs(latencyHistogram.getValueAtPercentile(50) - 50_000) <= 50_000 / 64);
+        assertTrue(Math.abs(latencyHistogram.getValueAtPercentile(99) - 99_000) <= 99_000 / 64);
+        assertEquals(100, latencyHistogram.getValueAtPercentile(0.1));
+
+        long numberOfTradesHeld = stockTradeHistory.getStockTradeHistoryListForAllStocks().size();
+
+        try(OperationMetrics operationMetrics = new OperationMetrics();
+            OperationDispatcher operationDispatcher = new OperationDispatcher(stockTradeHistory, volumeWeightedStockPriceAggregator, gbceAllShareIndex,
+                    new ReferenceDataRegistry(), operationMetrics, 64)){
+
+            operationDispatcher.dispatch(OperationRequest.trade(StockSymbol.GIN, TransactionType.BUY, 100, 100)).get();
+            operationDispatcher.dispatch(OperationRequest.dividendYield(StockSymbol.GIN, 100)).get();
+            operationDispatcher.dispatch(OperationRequest.dividendYield(StockSymbol.GIN, 100)).get();
+            operationDispatcher.dispatch(OperationRequest.priceEarningsRatio(StockSymbol.TEA, 46)).handle((result, e) -> e).get();
+            operationDispatcher.dispatch(OperationRequest.gbce()).get();
+
+            assertEquals(1, operationMetrics.getOperationStatistics(Operations.T).getCount());
+            assertEquals(2, operationMetrics.getOperationStatistics(Operations.DY).getCount());
+            assertEquals(1, operationMetrics.getOperationStatistics(Operations.PE).getCount());
+            assertEquals(1, operationMetrics.getOperationStatistics(Operations.PE).getFailures());
+            assertEquals(0, operationMetrics.getOperationStatistics(Operations.VWSP).getCount());
+            assertEquals(numberOfTradesHeld + 1, operationMetrics.getStockTradeStore().getNumberOfTradesHeld());
+            assertEquals(1, operationMetrics.getStockTradeStore().getCacheHits());
+            assertTrue(operationMetrics.report().contains("Trades held: " + (numberOfTradesHeld + 1)));
+
+            operationMetrics.registerMBeans();
+            ObjectName operationName = new ObjectName("com.supersimplestocks:type=Operation,name=DY");
+            assertEquals(2L, ManagementFactory.getPlatformMBeanServer().getAttribute(operationName, "Count"));
+
+            operationMetrics.close();
+            assertTrue(!ManagementFactory.getPlatformMBeanServer().isRegistered(operationName));
+        }
+
+        //Disabled metrics record nothing
+        OperationMetrics.disabled().record(Operations.GBCE, OperationMetrics.disabled().startTime(), false);
+        assertEquals(0, OperationMetrics.disabled().getOperationStatistics(Operations.GBCE).getCount());
+    }
+
+    /**
+     * Tests that each request dispatched is logged in order as a binary record and as text,
+     * and that logging creates no objects
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void operationEventLogTestSuccess() throws Exception {
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+
+        try(OperationEventLog operationEventLog = new OperationEventLog(16, Channels.newChannel(records), new PrintStream(text, true, "UTF-8"));
+            OperationDispatcher operationDispatcher = new OperationDispatcher(stockTradeHistory, volumeWeightedStockPriceAggregator, gbceAllShareIndex,
+                    new ReferenceDataRegistry(), OperationMetrics.disabled(), operationEventLog, 64)){
+
+            OperationRequest trade = OperationRequest.trade(StockSymbol.GIN, TransactionType.SELL, 1050, 120);
+            operationDispatcher.dispatch(trade).get();
+            operationDispatcher.dispatch(OperationRequest.dividendYield(StockSymbol.GIN, 100)).get();
+            operationDispatcher.dispatch(OperationRequest.priceEarningsRatio(StockSymbol.TEA, 46)).handle((result, e) -> e).get();
+            operationEventLog.awaitWritten();
+
+            assertEquals("T SELL GIN quantity 10.50 price 120 at " + FixedPointUtility.toLocalDateTime(trade.getTimeStampEpochNanos()) + System.lineSeparator()
+                    + "DY GIN price 100 = 0.02" + System.lineSeparator()
+                    + "PE TEA price 46 failed" + System.lineSeparator(), text.toString("UTF-8"));
+
+            //GIN is defined before its first event and TEA before its, each only once
+            ByteBuffer record = ByteBuffer.wrap(records.toByteArray()).order(StockTradeJournal.BYTE_ORDER);
+            assertEquals(5 * OperationEventLog.RECORD_SIZE, record.limit());
+            assertEquals(OperationEventLog.SYMBOL_DEFINITION, record.get(OperationEventLog.OPERATION_OFFSET));
+            assertEquals(StockSymbol.GIN.getId(), record.getInt(OperationEventLog.SYMBOL_OFFSET));
+            assertEquals("GIN", new String(record.array(), OperationEventLog.SYMBOL_TEXT_OFFSET, 3, StandardCharsets.US_ASCII));
+            assertEquals(0, record.get(OperationEventLog.SYMBOL_TEXT_OFFSET + 3));
+
+            record.position(OperationEventLog.RECORD_SIZE);
+            record = record.slice().order(StockTradeJournal.BYTE_ORDER);
+            assertEquals(0, record.getLong(OperationEventLog.SEQUENCE_OFFSET));
+            assertEquals(trade.getTimeStampEpochNanos(), record.getLong(OperationEventLog.TIMESTAMP_OFFSET));
+            assertEquals(1050, record.getLong(OperationEventLog.QUANTITY_OFFSET));
+            assertEquals(OperationEventLog.NO_RESULT, record.getLong(OperationEventLog.RESULT_OFFSET));
+            assertEquals(StockSymbol.GIN.getId(), record.getInt(OperationEventLog.SYMBOL_OFFSET));
+            assertEquals(TransactionType.SELL.ordinal(), record.get(OperationEventLog.TRANSACTION_TYPE_OFFSET));
+            assertEquals(1, record.getLong(OperationEventLog.RECORD_SIZE + OperationEventLog.SEQUENCE_OFFSET));
+            assertEquals(2, record.getLong(OperationEventLog.RECORD_SIZE + OperationEventLog.RESULT_OFFSET));
+            assertEquals(OperationEventLog.SYMBOL_DEFINITION, record.get(2 * OperationEventLog.RECORD_SIZE + OperationEventLog.OPERATION_OFFSET));
+            assertEquals(StockSymbol.TEA.getId(), record.getInt(2 * OperationEventLog.RECORD_SIZE + OperationEventLog.SYMBOL_OFFSET));
+            assertEquals(2, record.getLong(3 * OperationEventLog.RECORD_SIZE + OperationEventLog.SEQUENCE_OFFSET));
+            assertEquals(Operations.PE.ordinal(), record.get(3 * OperationEventLog.RECORD_SIZE + OperationEventLog.OPERATION_OFFSET));
+            assertEquals(1, record.get(3 * OperationEventLog.RECORD_SIZE + OperationEventLog.FAILED_OFFSET));
+        }
+
+        try(OperationEventLog operationEventLog = new OperationEventLog(OperationEventLog.DEFAULT_CAPACITY, Channels.newChannel(new ByteArrayOutputStream()), null)){
+
+            BigDecimal result = new BigDecimal("123.45");
+            long allocatedBytes = 0;
+
+            for(int run = 0; run < 5; run++){
+
+                long allocatedBefore = allocatedBytes();
+
+                for(int i = 0; i < 10_000; i++){
+                    operationEventLog.log(Operations.VWSP, StockSymbol.ALE, null, i, 0, 0, result, false);
+                }
+
+                allocatedBytes = allocatedBytes() - allocatedBefore;
+                operationEventLog.awaitWritten();
+            }
+
+            assertTrue("Allocated " + allocatedBytes + " bytes", allocatedBytes < 10_000);
+            assertEquals(0, operationEventLog.getDropped());
+        }
+    }
+
+    /**
+     * Tests that a simulated clock decides which trades are in the Volume Weighted Stock Price window,
+     * both for the aggregator and for the calculation over a cursor, and that the live clocks never go backwards
+     *
+     * @throws Exception if there is an Exception
+     */
+    @Test
+    public void tradeClockTestSuccess() throws Exception {
+
+        long start = FixedPointUtility.toEpochNanos(LocalDateTime.of(2017, 6, 5, 9, 0));
+        TradeClock.Simulated tradeClock = TradeClock.simulated(start);
+
+        VolumeWeightedStockPriceAggregator aggregator = new VolumeWeightedStockPriceAggregator(15, tradeClock);
+        List<StockTrade> stockTradeList = new ArrayList<>();
+
+        for(int minute = 0; minute < 30; minute++){
+
+            OperationRequest trade = OperationRequest.trade(StockSymbol.TEA, TransactionType.BUY, 100, 100 + minute, tradeClock);
+            StockTrade stockTrade = new StockTrade(TransactionType.BUY, StockSymbol.TEA, trade.getTimeStampEpochNanos(), 100, 100 + minute);
+
+            aggregator.tradeAdded(StockSymbol.TEA, TransactionType.BUY, stockTrade.getTimeStampEpochNanos(), 100, 100 + minute);
+            stockTradeList.add(stockTrade);
+            tradeClock.advance(1, TimeUnit.MINUTES);
+        }
+
+        //Now 09:30, so the trades from 09:16 to 09:29 at 116p to 129p are in the window
+        assertEquals(new BigDecimal("122.50"), aggregator.getVolumeWeightedStockPrice(StockSymbol.TEA));
+        assertEquals(new BigDecimal("122.50"), CalculationUtility.calculateVolumeWeightedStockPrice(new StockTradeListCursor(stockTradeList), 15, tradeClock));
+
+        tradeClock.set(start + TimeUnit.HOURS.toNanos(1));
+        assertEquals(BigDecimal.ZERO, aggregator.getVolumeWeightedStockPrice(StockSymbol.TEA));
+
+        try {
+            tradeClock.set(start);
+            assertTrue("Simulated clock should not move backwards", false);
+        } catch (IllegalArgumentException e){
+            assertEquals("Simulated clock can not move backwards from " + (start + TimeUnit.HOURS.toNanos(1)) + " to " + start, e.getMessage());
+        }
+
+        long previousMonotonic = TradeClock.monotonic().currentEpochNanos();
+        long previousCoarse = TradeClock.coarse().currentEpochNanos();
+
+        for(int i = 0; i < 100_000; i++){
+
+            long monotonic = TradeClock.monotonic().currentEpochNanos();
+            long coarse = TradeClock.coarse().currentEpochNanos();
+
+            assertTrue(monotonic >= previousMonotonic);
+            assertTrue(coarse >= previousCoarse);
+            previousMonotonic = monotonic;
+            previousCoarse = coarse;
+        }
+
+        assertTrue(Math.abs(TradeClock.coarse().currentEpochNanos() - TradeClock.system().currentEpochNanos()) < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static long allocatedBytes(){
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,135 @@
+package com.supersimplestocks;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Sums over trades held in columns using the JDK Vector API, as many trades at a time as the CPU's
+ * vector registers hold, for example 8 with 512 bit registers
+ *
+ * Vector lanes wrap around on overflow rather than failing, so alongside each sum the bits set in any of the values
+ * are kept. Once summed, if the values were too large for there to be no chance the sum overflowed, the trades are
+ * summed again by ScalarTradeColumnKernels, which fails if it did. Trades left over once the vectors are full
+ * are also summed one at a time.
+ *
+ * Only built by the vector profile, and only chosen when run with --add-modules jdk.incubator.vector.
+ */
+final class VectorTradeColumnKernels extends TradeColumnKernels {
+
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+    //Same size registers, so the same number of lanes, as LONGS
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    private final ScalarTradeColumnKernels scalarTradeColumnKernels = new ScalarTradeColumnKernels();
+
+    /**
+     * @throws IllegalStateException if the CPU can not hold more than one long in a vector register
+     */
+    VectorTradeColumnKernels(){
+        if(LONGS.length() < 2 || DOUBLES.length() != LONGS.length()){
+            throw new IllegalStateException("No vector registers to use, " + LONGS);
+        }
+    }
+
+    @Override
+    long countAfter(long[] timeStamps, int from, int to, long calculationTime) {
+
+        long numberOfTrades = 0;
+        int i = from;
+
+        for(int upperBound = from + LONGS.loopBound(to - from); i < upperBound; i += LONGS.length()){
+            numberOfTrades += LongVector.fromArray(LONGS, timeStamps, i).compare(VectorOperators.GT, calculationTime).trueCount();
+        }
+        return numberOfTrades + scalarTradeColumnKernels.countAfter(timeStamps, i, to, calculationTime);
+    }
+
+    @Override
+    long sumQuantitiesAfter(long[] timeStamps, long[] quantities, int from, int to, long calculationTime) {
+
+        LongVector totalQuantities = LongVector.zero(LONGS);
+        LongVector quantityBits = LongVector.zero(LONGS);
+        int i = from;
+
+        for(int upperBound = from + LONGS.loopBound(to - from); i < upperBound; i += LONGS.length()){
+
+            VectorMask<Long> after = LongVector.fromArray(LONGS, timeStamps, i).compare(VectorOperators.GT, calculationTime);
+            LongVector quantity = LongVector.fromArray(LONGS, quantities, i);
+
+            totalQuantities = totalQuantities.add(quantity, after);
+            quantityBits = quantityBits.or(quantity);
+        }
+
+        if(!fits(i - from, bits(quantityBits))){
+            return scalarTradeColumnKernels.sumQuantitiesAfter(timeStamps, quantities, from, to, calculationTime);
+        }
+        return Math.addExact(totalQuantities.reduceLanes(VectorOperators.ADD),
+                scalarTradeColumnKernels.sumQuantitiesAfter(timeStamps, quantities, i, to, calculationTime));
+    }
+
+    @Override
+    long sumTradePricesMultipliedByQuantitiesAfter(long[] timeStamps, long[] quantities, long[] tradePrices, int from, int to, long calculationTime) {
+
+        LongVector sumsOfTradePriceMultipliedByQuantity = LongVector.zero(LONGS);
+        LongVector quantityBits = LongVector.zero(LONGS);
+        LongVector tradePriceBits = LongVector.zero(LONGS);
+        int i = from;
+
+        for(int upperBound = from + LONGS.loopBound(to - from); i < upperBound; i += LONGS.length()){
+
+            VectorMask<Long> after = LongVector.fromArray(LONGS, timeStamps, i).compare(VectorOperators.GT, calculationTime);
+            LongVector quantity = LongVector.fromArray(LONGS, quantities, i);
+            LongVector tradePrice = LongVector.fromArray(LONGS, tradePrices, i);
+
+            sumsOfTradePriceMultipliedByQuantity = sumsOfTradePriceMultipliedByQuantity.add(quantity.mul(tradePrice), after);
+            quantityBits = quantityBits.or(quantity);
+            tradePriceBits = tradePriceBits.or(tradePrice);
+        }
+
+        //Each product is less than 2 to the power of the bits of the quantity plus the bits of the trade price
+        if(!fits(i - from, bits(quantityBits) + bits(tradePriceBits))){
+            return scalarTradeColumnKernels.sumTradePricesMultipliedByQuantitiesAfter(timeStamps, quantities, tradePrices, from, to, calculationTime);
+        }
+        return Math.addExact(sumsOfTradePriceMultipliedByQuantity.reduceLanes(VectorOperators.ADD),
+                scalarTradeColumnKernels.sumTradePricesMultipliedByQuantitiesAfter(timeStamps, quantities, tradePrices, i, to, calculationTime));
+    }
+
+    @Override
+    double sumLogTradePrices(long[] tradePrices, int from, int to) {
+
+        DoubleVector sumsOfLogTradePrices = DoubleVector.zero(DOUBLES);
+        int i = from;
+
+        for(int upperBound = from + LONGS.loopBound(to - from); i < upperBound; i += LONGS.length()){
+
+            DoubleVector tradePrice = (DoubleVector) LongVector.fromArray(LONGS, tradePrices, i).convert(VectorOperators.L2D, 0);
+
+            sumsOfLogTradePrices = sumsOfLogTradePrices.add(tradePrice.lanewise(VectorOperators.LOG));
+        }
+        return sumsOfLogTradePrices.reduceLanes(VectorOperators.ADD) + scalarTradeColumnKernels.sumLogTradePrices(tradePrices, i, to);
+    }
+
+    /**
+     * @return bits needed to hold the largest of the values whose bits were combined, or 64 if any was negative
+     */
+    private static int bits(LongVector combinedBits){
+        return Long.SIZE - Long.numberOfLeadingZeros(combinedBits.reduceLanes(VectorOperators.OR));
+    }
+
+    /**
+     * @param numberOfValues number of values summed
+     * @param bitsPerValue bits needed to hold the largest value
+     * @return whether the sum is certain to fit in a long
+     */
+    private static boolean fits(long numberOfValues, int bitsPerValue){
+        return bitsPerValue + Long.SIZE - Long.numberOfLeadingZeros(numberOfValues) < Long.SIZE;
+    }
+
+    @Override
+    public String toString(){
+        return "vector " + LONGS.vectorBitSize() + " bit";
+    }
+}